@@ -452,6 +452,24 @@ abstract public class KylinConfigBase implements Serializable {
         return Integer.parseInt(getOptional("kylin.dictionary.max.cardinality", "30000000"));
     }
 
+    // the total number of ids of all the dictionary remap tables a merge mapper precomputes, 4 bytes each
+    public int getMergeDictRemapTablesMaxSize() {
+        return Integer.parseInt(getOptional("kylin.job.merge.dict.remap.tables.max.size", "10000000"));
+    }
+
+    public int getDictionaryBuildParallelism() {
+        return Integer.parseInt(getOptional("kylin.dictionary.build.parallelism", "4"));
+    }
+
+    // more than 1 builds each big string dictionary in chunks, on top of kylin.dictionary.build.parallelism columns at a time
+    public int getDictionaryTrieBuildThreads() {
+        return Integer.parseInt(getOptional("kylin.dictionary.trie.build.threads", "1"));
+    }
+
+    public int getDictionaryTrieBuildChunkSize() {
+        return Integer.parseInt(getOptional("kylin.dictionary.trie.build.chunk.size", "1000000"));
+    }
+
     public int getTableSnapshotMaxMB() {
         return Integer.parseInt(getOptional("kylin.table.snapshot.max_mb", "300"));
     }
@@ -473,6 +491,10 @@ abstract public class KylinConfigBase implements Serializable {
         return Float.parseFloat(getOptional("kylin.hbase.hfile.size.gb", "2.0"));
     }
 
+    public boolean isHBaseHFileDirectOutputEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.hbase.hfile.direct.output", "false"));
+    }
+
     public int getStoragePushDownLimitMax() {
         return Integer.parseInt(getOptional("kylin.query.pushdown.limit.max", "10000"));
     }
@@ -529,10 +551,38 @@ abstract public class KylinConfigBase implements Serializable {
         return Long.parseLong(this.getOptional("kylin.query.mem.budget", String.valueOf(3L * 1024 * 1024 * 1024)));
     }
 
+    /** the engine to run queries on hive when no realization can answer them, see hive.url */
+    public String getHivePushDownEngine() {
+        return getOptional("kylin.query.hive.pushdown.engine", "org.apache.kylin.query.pushdown.JdbcPushDownEngine");
+    }
+
+    public int getHivePushDownFetchSize() {
+        return Integer.parseInt(getOptional("kylin.query.hive.pushdown.fetch.size", "1000"));
+    }
+
+    public int getHivePushDownTimeoutSeconds() {
+        return Integer.parseInt(getOptional("kylin.query.hive.pushdown.timeout.seconds", "300"));
+    }
+
+    /** the max estimated size of all rows a hive push down query can return */
+    public long getHivePushDownMaxResultBytes() {
+        return Long.parseLong(getOptional("kylin.query.hive.pushdown.max.result.bytes", String.valueOf(512L * 1024 * 1024)));
+    }
+
     public double getQueryCoprocessorMemGB() {
         return Double.parseDouble(this.getOptional("kylin.query.coprocessor.mem.gb", "3.0"));
     }
 
+    /** idle direct buffers kept by a region server for coprocessor outputs, in MB */
+    public int getQueryCoprocessorOutputBufferPoolMB() {
+        return Integer.parseInt(this.getOptional("kylin.query.coprocessor.output.buffer.pool.mb", "256"));
+    }
+
+    /** all the direct buffers of a region server for coprocessor outputs, in MB, heap buffers are used beyond */
+    public int getQueryCoprocessorOutputDirectBufferMaxMB() {
+        return Integer.parseInt(this.getOptional("kylin.query.coprocessor.output.direct.buffer.max.mb", "1024"));
+    }
+
     public boolean isQuerySecureEnabled() {
         return Boolean.parseBoolean(this.getOptional("kylin.query.security.enabled", "true"));
     }
@@ -541,6 +591,51 @@ abstract public class KylinConfigBase implements Serializable {
         return Boolean.parseBoolean(this.getOptional("kylin.query.cache.enabled", "true"));
     }
 
+    public boolean isQueryPlanCacheEnabled() {
+        return Boolean.parseBoolean(this.getOptional("kylin.query.plan.cache.enabled", "true"));
+    }
+
+    // max number of prepared plans kept by the query server
+    public int getQueryPlanCacheSize() {
+        return Integer.parseInt(this.getOptional("kylin.query.plan.cache.size", "200"));
+    }
+
+    // threads running asynchronous queries, apart from the servlet threads
+    public int getQueryAsyncThreads() {
+        return Integer.parseInt(this.getOptional("kylin.query.async.threads", "16"));
+    }
+
+    public int getQueryAsyncQueueSize() {
+        return Integer.parseInt(this.getOptional("kylin.query.async.queue.size", "100"));
+    }
+
+    // max asynchronous queries of a project, queued or running
+    public int getQueryAsyncProjectConcurrency() {
+        return Integer.parseInt(this.getOptional("kylin.query.async.project.concurrency", "8"));
+    }
+
+    // how long a finished asynchronous query keeps its result for polling
+    public int getQueryAsyncResultRetentionSeconds() {
+        return Integer.parseInt(this.getOptional("kylin.query.async.result.retention.seconds", "3600"));
+    }
+
+    // rows a project may scan per minute, 0 means no budget; can be set per project by suffixing ".<project>"
+    public long getQueryProjectScanRowsBudget(String project) {
+        String defaultBudget = this.getOptional("kylin.query.budget.project.scan.rows.per.minute", "0");
+        return Long.parseLong(this.getOptional("kylin.query.budget.project.scan.rows.per.minute." + project, defaultBudget));
+    }
+
+    // rows a user may scan per minute, 0 means no budget; can be set per user by suffixing ".<user>"
+    public long getQueryUserScanRowsBudget(String user) {
+        String defaultBudget = this.getOptional("kylin.query.budget.user.scan.rows.per.minute", "0");
+        return Long.parseLong(this.getOptional("kylin.query.budget.user.scan.rows.per.minute." + user, defaultBudget));
+    }
+
+    // how long an async query over budget stays queued for the budget to refill before being rejected
+    public int getQueryAdmissionWaitSeconds() {
+        return Integer.parseInt(this.getOptional("kylin.query.admission.wait.seconds", "10"));
+    }
+
     public boolean isQueryIgnoreUnknownFunction() {
         return Boolean.parseBoolean(this.getOptional("kylin.query.ignore_unknown_function", "false"));
     }
@@ -574,6 +669,94 @@ abstract public class KylinConfigBase implements Serializable {
         return getOptional("kylin.query.storage.default.gtstorage", "org.apache.kylin.storage.hbase.cube.v2.CubeHBaseEndpointRPC");
     }
 
+    public boolean isQuerySegmentBatchVisitEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.query.segment.batch.visit.enabled", "false"));
+    }
+
+    public int getQuerySegmentBatchVisitMaxRegions() {
+        return Integer.parseInt(getOptional("kylin.query.segment.batch.visit.max.regions", "20"));
+    }
+
+    // threads of a region server that scan the batched regions of a call in parallel
+    public int getQuerySegmentBatchVisitThreads() {
+        return Integer.parseInt(getOptional("kylin.query.segment.batch.visit.threads", "8"));
+    }
+
+    public boolean isQueryCrossSegmentAggregationEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.query.cross.segment.aggregation.enabled", "false"));
+    }
+
+    public boolean isQueryScanSplitEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.query.scan.split.enabled", "false"));
+    }
+
+    // estimated rows for each split, a region with more rows of the queried cuboid is scanned as multiple sub ranges
+    public long getQueryScanSplitRows() {
+        return Long.parseLong(getOptional("kylin.query.scan.split.rows", "5000000"));
+    }
+
+    public int getQueryScanSplitMax() {
+        return Integer.parseInt(getOptional("kylin.query.scan.split.max", "8"));
+    }
+
+    // max concurrent split endpoint calls of one segment scan
+    public int getQueryScanSplitConcurrency() {
+        return Integer.parseInt(getOptional("kylin.query.scan.split.concurrency", "4"));
+    }
+
+    // an approximate query cuts each raw scan into this many blocks, and scans a percentage of them
+    public int getQuerySamplingBlocksPerScan() {
+        return Integer.parseInt(getOptional("kylin.query.sampling.blocks.per.scan", "100"));
+    }
+
+    // threads scanning a dictionary for the ids matching a function filter like LIKE
+    public int getQueryDictFilterThreads() {
+        return Integer.parseInt(getOptional("kylin.query.dict.filter.threads", "4"));
+    }
+
+    // matching ids cached per dictionary, one entry for each function filter
+    public int getQueryDictFilterCacheSize() {
+        return Integer.parseInt(getOptional("kylin.query.dict.filter.cache.size", "100"));
+    }
+
+    // encoded MASSIN value sets cached on the query server, bounded by their total size
+    public int getQueryMassInCacheMB() {
+        return Integer.parseInt(getOptional("kylin.query.massin.cache.mb", "256"));
+    }
+
+    // memory of one post-aggregation or sort on the query server, beyond which it spills to local disk; 0 never spills
+    public int getQuerySpillThresholdMB() {
+        return Integer.parseInt(getOptional("kylin.query.spill.threshold.mb", "512"));
+    }
+
+    // hot small cuboids copied to memory-mapped files on the query server and scanned there instead of in hbase
+    public boolean isQueryLocalCuboidCacheEnabled() {
+        return Boolean.parseBoolean(getOptional("kylin.query.local.cuboid.cache.enabled", "false"));
+    }
+
+    public String getQueryLocalCuboidCacheDir() {
+        return getOptional("kylin.query.local.cuboid.cache.dir", System.getProperty("java.io.tmpdir") + "/kylin-cuboid-cache");
+    }
+
+    // total size of the cached cuboid files, least recently used ones are evicted beyond it
+    public int getQueryLocalCuboidCacheMB() {
+        return Integer.parseInt(getOptional("kylin.query.local.cuboid.cache.mb", "1024"));
+    }
+
+    // a cuboid larger than this is never cached
+    public int getQueryLocalCuboidCacheMaxCuboidMB() {
+        return Integer.parseInt(getOptional("kylin.query.local.cuboid.cache.max.cuboid.mb", "16"));
+    }
+
+    // scans of a cuboid within the window below before it is copied to the cache
+    public int getQueryLocalCuboidCacheAdmitScans() {
+        return Integer.parseInt(getOptional("kylin.query.local.cuboid.cache.admit.scans", "3"));
+    }
+
+    public int getQueryLocalCuboidCacheAdmitWindowSeconds() {
+        return Integer.parseInt(getOptional("kylin.query.local.cuboid.cache.admit.window.seconds", "600"));
+    }
+
     public int getHBaseScanCacheRows() {
         return Integer.parseInt(this.getOptional("kylin.hbase.scan.cache_rows", "1024"));
     }
@@ -637,6 +820,17 @@ abstract public class KylinConfigBase implements Serializable {
         return getRequired("kylin.spark.master");
     }
 
+    /**
+     * Estimated MB of cuboid data per RDD partition when building a cuboid layer in spark cubing
+     */
+    public int getSparkRDDPartitionCutMB() {
+        return Integer.parseInt(getOptional("kylin.engine.spark.rdd.partition.cut.mb", "10"));
+    }
+
+    public int getSparkMaxPartitions() {
+        return Integer.parseInt(getOptional("kylin.engine.spark.max.partition", "5000"));
+    }
+
     public boolean isMailEnabled() {
         return Boolean.parseBoolean(getOptional("mail.enabled", "false"));
     }
@@ -717,6 +911,20 @@ abstract public class KylinConfigBase implements Serializable {
         return r;
     }
 
+    /**
+     * how many polled batches of messages a kafka record reader buffers ahead of the mapper
+     */
+    public int getKafkaPrefetchBatches() {
+        return Integer.parseInt(getOptional("kylin.source.kafka.prefetch.batches", "4"));
+    }
+
+    /**
+     * how often the continuous streaming builder refreshes the in-memory segment of the current window
+     */
+    public int getStreamingMicroBatchIntervalSeconds() {
+        return Integer.parseInt(getOptional("kylin.streaming.micro.batch.interval.seconds", "10"));
+    }
+
     public Map<Integer, String> getStorageEngines() {
         Map<Integer, String> r = convertKeyToInteger(getPropertiesByPrefix("kylin.storage.engine."));
         // ref constants in IStorageAware
@@ -802,10 +1010,28 @@ abstract public class KylinConfigBase implements Serializable {
         setProperty("kylin.dict.append.cache.size", String.valueOf(cacheSize));
     }
 
+    /**
+     * Values appended to a global dictionary in one bulk, sorted and grouped by slice
+     */
+    public int getAppendDictBatchSize() {
+        return Integer.parseInt(getOptional("kylin.dict.append.batch.size", "1000000"));
+    }
+
+    public int getAppendDictThreads() {
+        return Integer.parseInt(getOptional("kylin.dict.append.threads", "4"));
+    }
+
     public String getCreateFlatHiveTableMethod() {
         return getOptional("kylin.hive.create.flat.table.method", "1");
     }
 
+    /**
+     * SEQUENCEFILE or ORC, the flat table in ORC is read by a vectorized columnar reader
+     */
+    public String getFlatHiveTableStorageFormat() {
+        return getOptional("kylin.hive.flat.table.storage.format", "SEQUENCEFILE").toUpperCase();
+    }
+
     public int getMaxBuildingSegments() {
         return Integer.parseInt(getOptional("kylin.cube.building.segment.max", "2"));
     }
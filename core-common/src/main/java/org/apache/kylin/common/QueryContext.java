@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.common;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Identity, deadline, cancellation and resource usage of the query running on the current thread.
+ *
+ * Storage layers capture the context when they start work for the query on other threads, check
+ * {@link #isCancelled()} before each remote call, and register a {@link Cancellable} to abort calls in
+ * flight. A query without explicit context gets a default one, which never expires nor cancels.
+ */
+public class QueryContext {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryContext.class);
+
+    private static final ThreadLocal<QueryContext> contexts = new ThreadLocal<QueryContext>() {
+        @Override
+        protected QueryContext initialValue() {
+            return new QueryContext();
+        }
+    };
+
+    public static QueryContext current() {
+        return contexts.get();
+    }
+
+    public static void set(QueryContext context) {
+        contexts.set(context);
+    }
+
+    public static void reset() {
+        contexts.remove();
+    }
+
+    public interface Cancellable {
+        void cancel();
+    }
+
+    private final String queryId;
+    private final long deadline;
+    private final List<Cancellable> cancellables = new CopyOnWriteArrayList<Cancellable>();
+    private final QueryResourceUsage resourceUsage = new QueryResourceUsage();
+    private volatile boolean cancelled;
+
+    public QueryContext() {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * @param deadline the time in millis after which storage should stop working for the query
+     */
+    public QueryContext(long deadline) {
+        this.queryId = UUID.randomUUID().toString();
+        this.deadline = deadline;
+    }
+
+    public String getQueryId() {
+        return queryId;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public QueryResourceUsage getResourceUsage() {
+        return resourceUsage;
+    }
+
+    /**
+     * @return millis until the deadline, Long.MAX_VALUE if there is none
+     */
+    public long getRemainingMillis() {
+        return deadline == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void checkCancelled() {
+        if (cancelled)
+            throw new QueryCancelledException("Query " + queryId + " is cancelled");
+    }
+
+    /**
+     * Registers work to abort on cancel; it is aborted at once if the query is already cancelled.
+     */
+    public void addCancellable(Cancellable cancellable) {
+        cancellables.add(cancellable);
+        if (cancelled)
+            cancellable.cancel();
+    }
+
+    public void removeCancellable(Cancellable cancellable) {
+        cancellables.remove(cancellable);
+    }
+
+    public void cancel() {
+        if (cancelled)
+            return;
+
+        logger.info("Cancelling query " + queryId);
+        cancelled = true;
+        for (Cancellable cancellable : cancellables) {
+            try {
+                cancellable.cancel();
+            } catch (Exception e) {
+                logger.warn("Error when cancelling query " + queryId, e);
+            }
+        }
+    }
+
+    public static class QueryCancelledException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public QueryCancelledException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.common;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resources consumed by one query, on the query server and on all region servers it visited.
+ *
+ * Storage threads add the stats of each endpoint response as they come back, so all counters are atomic.
+ */
+public class QueryResourceUsage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // region servers
+    private final AtomicLong rpcCount = new AtomicLong();
+    private final AtomicLong scannedRows = new AtomicLong();
+    private final AtomicLong returnedRows = new AtomicLong();
+    private final AtomicLong networkBytes = new AtomicLong();
+    private final AtomicLong regionServerMillis = new AtomicLong();
+    private final AtomicLong regionServerCpuNanos = new AtomicLong();
+
+    // query server
+    private final AtomicLong queryServerCpuNanos = new AtomicLong();
+    private final AtomicLong queryServerAllocatedBytes = new AtomicLong();
+
+    /**
+     * Adds the stats of one endpoint response.
+     *
+     * @param cpuNanos cpu time of the region server threads, -1 if not reported
+     */
+    public void addRpc(long scanned, long returned, long bytes, long elapsedMillis, long cpuNanos) {
+        rpcCount.incrementAndGet();
+        scannedRows.addAndGet(scanned);
+        returnedRows.addAndGet(returned);
+        networkBytes.addAndGet(bytes);
+        regionServerMillis.addAndGet(elapsedMillis);
+        if (cpuNanos > 0)
+            regionServerCpuNanos.addAndGet(cpuNanos);
+    }
+
+    public void addQueryServer(long cpuNanos, long allocatedBytes) {
+        if (cpuNanos > 0)
+            queryServerCpuNanos.addAndGet(cpuNanos);
+        if (allocatedBytes > 0)
+            queryServerAllocatedBytes.addAndGet(allocatedBytes);
+    }
+
+    public long getRpcCount() {
+        return rpcCount.get();
+    }
+
+    public long getScannedRows() {
+        return scannedRows.get();
+    }
+
+    public long getReturnedRows() {
+        return returnedRows.get();
+    }
+
+    public long getNetworkBytes() {
+        return networkBytes.get();
+    }
+
+    public long getRegionServerMillis() {
+        return regionServerMillis.get();
+    }
+
+    public long getRegionServerCpuNanos() {
+        return regionServerCpuNanos.get();
+    }
+
+    public long getQueryServerCpuNanos() {
+        return queryServerCpuNanos.get();
+    }
+
+    public long getQueryServerAllocatedBytes() {
+        return queryServerAllocatedBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "rpc count: " + rpcCount + ", scanned rows: " + scannedRows + ", returned rows: " + returnedRows + ", network bytes: " + networkBytes //
+                + ", region server time: " + regionServerMillis + "(ms), region server cpu: " + regionServerCpuNanos / 1000000 + "(ms)" //
+                + ", query server cpu: " + queryServerCpuNanos / 1000000 + "(ms), query server allocated bytes: " + queryServerAllocatedBytes;
+    }
+}
@@ -65,6 +65,14 @@ public class BackdoorToggles {
             return Integer.valueOf(v);
     }
 
+    public static int getSamplingPercentage() {
+        String v = getString(DEBUG_TOGGLE_SAMPLING_PERCENTAGE);
+        if (v == null)
+            return 100;
+        else
+            return Math.max(1, Math.min(100, Integer.valueOf(v)));
+    }
+
     public static Pair<Short, Short> getShardAssignment() {
         String v = getString(DEBUG_TOGGLE_SHARD_ASSIGNMENT);
         if (v == null) {
@@ -177,4 +185,15 @@ public class BackdoorToggles {
      */
     public final static String DEBUG_TOGGLE_SHARD_ASSIGNMENT = "DEBUG_TOGGLE_SHARD_ASSIGNMENT";
 
+    /**
+     * set DEBUG_TOGGLE_SAMPLING_PERCENTAGE="percentage" to run an approximate query, which scans only the given percentage
+     * of each region and scales up the additive measures (SUM, COUNT), the estimated error is returned with the result
+     *
+     example:(put it into request body)
+     "backdoorToggles": {
+     "DEBUG_TOGGLE_SAMPLING_PERCENTAGE": "10"
+     }
+     */
+    public final static String DEBUG_TOGGLE_SAMPLING_PERCENTAGE = "DEBUG_TOGGLE_SAMPLING_PERCENTAGE";
+
 }
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.common.util;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * A pool of direct byte buffers for big temporary outputs, like the rows of a coprocessor response. Reusing them
+ * avoids both heap churn and growing a buffer from scratch for every request.
+ *
+ * Idle buffers are kept up to a total capacity, beyond which released buffers are left to the GC. The direct
+ * buffers of the pool, in use or idle, are bounded by another total capacity, beyond which heap buffers are lent.
+ */
+public class DirectBufferPool {
+
+    private final long maxIdleBytes;
+    private final long maxDirectBytes;
+    private final int initialCapacity;
+    private final LinkedList<ByteBuffer> idleBuffers = new LinkedList<ByteBuffer>();
+    private long idleBytes = 0;
+    // direct buffers in use or idle, those left to the GC excluded
+    private long directBytes = 0;
+
+    public DirectBufferPool(long maxIdleBytes, long maxDirectBytes, int initialCapacity) {
+        this.maxIdleBytes = maxIdleBytes;
+        this.maxDirectBytes = maxDirectBytes;
+        this.initialCapacity = initialCapacity;
+    }
+
+    /** @return a cleared buffer of at least the given capacity, to be released after use; a heap buffer if direct memory is used up */
+    public ByteBuffer borrow(int minCapacity) {
+        int capacity = Math.max(minCapacity, initialCapacity);
+        synchronized (idleBuffers) {
+            Iterator<ByteBuffer> iterator = idleBuffers.iterator();
+            while (iterator.hasNext()) {
+                ByteBuffer buffer = iterator.next();
+                if (buffer.capacity() >= minCapacity) {
+                    iterator.remove();
+                    idleBytes -= buffer.capacity();
+                    buffer.clear();
+                    return buffer;
+                }
+            }
+            if (directBytes + capacity > maxDirectBytes) {
+                return ByteBuffer.allocate(capacity);
+            }
+            directBytes += capacity;
+        }
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    /** @return a bigger buffer holding the content before the position of the given one, which is released */
+    public ByteBuffer grow(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer bigger = borrow(Math.max(minCapacity, buffer.capacity() * 2));
+        buffer.flip();
+        bigger.put(buffer);
+        release(buffer);
+        return bigger;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect())
+            return;
+
+        synchronized (idleBuffers) {
+            if (idleBytes + buffer.capacity() <= maxIdleBytes) {
+                buffer.clear();
+                idleBuffers.add(buffer);
+                idleBytes += buffer.capacity();
+            } else {
+                directBytes -= buffer.capacity();
+            }
+        }
+    }
+
+    public long getIdleBytes() {
+        synchronized (idleBuffers) {
+            return idleBytes;
+        }
+    }
+
+    public long getDirectBytes() {
+        synchronized (idleBuffers) {
+            return directBytes;
+        }
+    }
+}
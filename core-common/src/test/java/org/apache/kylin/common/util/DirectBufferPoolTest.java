@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class DirectBufferPoolTest {
+
+    @Test
+    public void testBorrowAndRelease() {
+        DirectBufferPool pool = new DirectBufferPool(1024, 1024, 64);
+
+        ByteBuffer buffer = pool.borrow(16);
+        assertTrue(buffer.isDirect());
+        assertEquals(64, buffer.capacity());
+
+        buffer.put((byte) 1);
+        pool.release(buffer);
+        assertEquals(64, pool.getIdleBytes());
+
+        ByteBuffer again = pool.borrow(32);
+        assertSame(buffer, again);
+        assertEquals(0, again.position());
+        assertEquals(0, pool.getIdleBytes());
+    }
+
+    @Test
+    public void testGrow() {
+        DirectBufferPool pool = new DirectBufferPool(1024, 1024, 4);
+
+        ByteBuffer buffer = pool.borrow(4);
+        buffer.put(new byte[] { 1, 2, 3 });
+        ByteBuffer bigger = pool.grow(buffer, 6);
+        assertEquals(8, bigger.capacity());
+        assertEquals(3, bigger.position());
+        assertEquals(2, bigger.get(1));
+        assertEquals(4, pool.getIdleBytes());
+    }
+
+    @Test
+    public void testIdleBound() {
+        DirectBufferPool pool = new DirectBufferPool(100, 1024, 64);
+
+        ByteBuffer a = pool.borrow(64);
+        ByteBuffer b = pool.borrow(64);
+        pool.release(a);
+        pool.release(b);
+        assertEquals(64, pool.getIdleBytes());
+    }
+
+    @Test
+    public void testDirectBound() {
+        DirectBufferPool pool = new DirectBufferPool(1024, 128, 64);
+
+        ByteBuffer a = pool.borrow(64);
+        ByteBuffer b = pool.borrow(64);
+        assertTrue(a.isDirect() && b.isDirect());
+        assertEquals(128, pool.getDirectBytes());
+
+        // no more direct memory, a heap buffer is lent and not pooled
+        ByteBuffer c = pool.borrow(16);
+        assertFalse(c.isDirect());
+        assertEquals(64, c.capacity());
+        pool.release(c);
+        assertEquals(0, pool.getIdleBytes());
+
+        pool.release(a);
+        assertSame(a, pool.borrow(16));
+        assertEquals(128, pool.getDirectBytes());
+    }
+
+    @Test
+    public void testDirectBytesOfDroppedBuffers() {
+        DirectBufferPool pool = new DirectBufferPool(64, 128, 64);
+
+        ByteBuffer a = pool.borrow(64);
+        ByteBuffer b = pool.borrow(64);
+        pool.release(a);
+        // not kept idle, left to the GC
+        pool.release(b);
+        assertEquals(64, pool.getIdleBytes());
+        assertEquals(64, pool.getDirectBytes());
+
+        ByteBuffer big = pool.borrow(128);
+        assertFalse(big.isDirect());
+        ByteBuffer c = pool.borrow(64);
+        assertSame(a, c);
+        assertTrue(pool.borrow(64).isDirect());
+    }
+}
@@ -32,7 +32,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.google.common.collect.Maps;
 import org.apache.commons.lang3.StringUtils;
@@ -41,6 +46,7 @@ import org.apache.kylin.common.KylinConfigExt;
 import org.apache.kylin.common.persistence.JsonSerializer;
 import org.apache.kylin.common.persistence.ResourceStore;
 import org.apache.kylin.common.persistence.Serializer;
+import org.apache.kylin.common.util.DaemonThreadFactory;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.cube.model.CubeDesc;
@@ -232,6 +238,62 @@ public class CubeManager implements IRealizationProvider {
         return dictInfo;
     }
 
+    /**
+     * Builds the dictionaries of given columns by a bounded pool of threads, then records them in the segment
+     * in the order of the columns and updates the cube once.
+     */
+    public void buildDictionaries(final CubeSegment cubeSeg, Collection<TblColRef> cols, final DistinctColumnValuesProvider factTableValueProvider, int parallelism) throws IOException {
+        if (parallelism <= 1 || cols.size() <= 1) {
+            for (TblColRef col : cols) {
+                logger.info("Building dictionary for " + col);
+                buildDictionary(cubeSeg, col, factTableValueProvider);
+            }
+            return;
+        }
+
+        final CubeDesc cubeDesc = cubeSeg.getCubeDesc();
+        final DictionaryManager dictMgr = getDictionaryManager();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, cols.size()), new DaemonThreadFactory());
+        List<Pair<TblColRef, Future<DictionaryInfo>>> futures = Lists.newArrayList();
+        try {
+            for (final TblColRef col : cols) {
+                if (!cubeDesc.getAllColumnsNeedDictionaryBuilt().contains(col))
+                    continue;
+
+                futures.add(Pair.newPair(col, pool.submit(new Callable<DictionaryInfo>() {
+                    @Override
+                    public DictionaryInfo call() throws Exception {
+                        logger.info("Building dictionary for " + col);
+                        return dictMgr.buildDictionary(cubeDesc.getModel(), col, factTableValueProvider, cubeDesc.getDictionaryBuilderClass(col));
+                    }
+                })));
+            }
+
+            for (Pair<TblColRef, Future<DictionaryInfo>> pair : futures) {
+                DictionaryInfo dictInfo = pair.getSecond().get();
+                if (dictInfo != null) {
+                    Dictionary<?> dict = dictInfo.getDictionaryObject();
+                    cubeSeg.putDictResPath(pair.getFirst(), dictInfo.getResourcePath());
+                    cubeSeg.getRowkeyStats().add(new Object[] { pair.getFirst().getName(), dict.getSize(), dict.getSizeOfId() });
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building dictionaries of " + cubeSeg, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IOException("Failed to build dictionaries of " + cubeSeg, cause);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        CubeUpdate cubeBuilder = new CubeUpdate(cubeSeg.getCubeInstance());
+        cubeBuilder.setToUpdateSegs(cubeSeg);
+        updateCube(cubeBuilder);
+    }
+
     /**
      * return null if no dictionary for given column
      */
@@ -541,6 +603,11 @@ public class CubeManager implements IRealizationProvider {
         if (mergingSegments.size() <= 1)
             throw new IllegalArgumentException("Range " + newSegment.getSourceOffsetStart() + "-" + newSegment.getSourceOffsetEnd() + " must contain at least 2 segments, but there is " + mergingSegments.size());
 
+        for (CubeSegment seg : mergingSegments) {
+            if (Boolean.parseBoolean(seg.getAdditionalInfo().get(CubeSegment.INFO_NO_CUBOID_FILES)))
+                throw new IllegalArgumentException("Segment " + seg.getName() + " of cube " + cube + " was built with kylin.hbase.hfile.direct.output and has no cuboid files to merge from, refresh it with the option off before merging");
+        }
+
         CubeSegment first = mergingSegments.get(0);
         CubeSegment last = mergingSegments.get(mergingSegments.size() - 1);
         if (newSegment.isSourceOffsetsOn()) {
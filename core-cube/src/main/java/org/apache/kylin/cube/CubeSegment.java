@@ -52,6 +52,9 @@ import com.google.common.collect.Maps;
 @JsonAutoDetect(fieldVisibility = Visibility.NONE, getterVisibility = Visibility.NONE, isGetterVisibility = Visibility.NONE, setterVisibility = Visibility.NONE)
 public class CubeSegment implements Comparable<CubeSegment>, IBuildable, ISegment {
 
+    // additional info of a segment whose in-mem cubing wrote HFiles directly, it keeps no cuboid files to merge from
+    public static final String INFO_NO_CUBOID_FILES = "no_cuboid_files";
+
     @JsonBackReference
     private CubeInstance cubeInstance;
     @JsonProperty("uuid")
@@ -26,7 +26,6 @@ import org.apache.kylin.cube.CubeManager;
 import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.model.DimensionDesc;
 import org.apache.kylin.dict.DistinctColumnValuesProvider;
-import org.apache.kylin.metadata.model.TblColRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,11 +43,8 @@ public class DictionaryGeneratorCLI {
     private static void processSegment(KylinConfig config, CubeSegment cubeSeg, DistinctColumnValuesProvider factTableValueProvider) throws IOException {
         CubeManager cubeMgr = CubeManager.getInstance(config);
 
-        // dictionary
-        for (TblColRef col : cubeSeg.getCubeDesc().getAllColumnsNeedDictionaryBuilt()) {
-            logger.info("Building dictionary for " + col);
-            cubeMgr.buildDictionary(cubeSeg, col, factTableValueProvider);
-        }
+        // dictionary, columns are built in parallel
+        cubeMgr.buildDictionaries(cubeSeg, cubeSeg.getCubeDesc().getAllColumnsNeedDictionaryBuilt(), factTableValueProvider, config.getDictionaryBuildParallelism());
 
         for (DimensionDesc dim : cubeSeg.getCubeDesc().getDimensions()) {
             // build snapshot
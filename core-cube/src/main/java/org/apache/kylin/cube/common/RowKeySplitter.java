@@ -86,8 +86,16 @@ public class RowKeySplitter {
      * @return cuboid ID
      */
     public long split(byte[] bytes) {
+        return split(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Splits the rowkey held in bytes[offset, offset + length).
+     *
+     * @return cuboid ID
+     */
+    public long split(byte[] bytes, int offset, int length) {
         this.bufferSize = 0;
-        int offset = 0;
 
         if (enableSharding) {
             // extract shard
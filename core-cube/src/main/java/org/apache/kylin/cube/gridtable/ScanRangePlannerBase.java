@@ -34,6 +34,7 @@ import org.apache.kylin.gridtable.GTInfo;
 import org.apache.kylin.gridtable.GTScanRequest;
 import org.apache.kylin.metadata.filter.CompareTupleFilter;
 import org.apache.kylin.metadata.filter.ConstantTupleFilter;
+import org.apache.kylin.metadata.filter.EncodedSetTupleFilter;
 import org.apache.kylin.metadata.filter.LogicalTupleFilter;
 import org.apache.kylin.metadata.filter.TupleFilter;
 import org.apache.kylin.metadata.model.TblColRef;
@@ -54,6 +55,9 @@ public abstract class ScanRangePlannerBase {
     protected String[] gtAggrFuncs;
     protected boolean isPartitionColUsingDatetimeEncoding = true;
 
+    // an encoded set no larger than this is planned as an IN range, giving fuzzy keys
+    protected int maxFuzzyKeys;
+
     protected RecordComparator rangeStartComparator;
     protected RecordComparator rangeEndComparator;
     protected RecordComparator rangeStartEndComparator;
@@ -103,6 +107,21 @@ public abstract class ScanRangePlannerBase {
     private Collection<ColumnRange> translateToAndDimRanges(List<? extends TupleFilter> andFilters) {
         Map<TblColRef, ColumnRange> rangeMap = new HashMap<TblColRef, ColumnRange>();
         for (TupleFilter filter : andFilters) {
+            if (filter instanceof EncodedSetTupleFilter) {
+                EncodedSetTupleFilter setFilter = (EncodedSetTupleFilter) filter;
+                if (setFilter.isNegated()) {
+                    // values out of the set may be anywhere in the column range
+                    continue;
+                } else if (setFilter.size() <= maxFuzzyKeys) {
+                    andMerge(rangeMap, new ColumnRange(setFilter.getColumn(), Sets.newHashSet(setFilter.getCodes()), TupleFilter.FilterOperatorEnum.IN));
+                } else {
+                    // the range between the smallest and the largest encoded value
+                    andMerge(rangeMap, new ColumnRange(setFilter.getColumn(), Collections.singleton(setFilter.getMinCode()), TupleFilter.FilterOperatorEnum.GTE));
+                    andMerge(rangeMap, new ColumnRange(setFilter.getColumn(), Collections.singleton(setFilter.getMaxCode()), TupleFilter.FilterOperatorEnum.LTE));
+                }
+                continue;
+            }
+
             if ((filter instanceof CompareTupleFilter) == false) {
                 if (filter instanceof ConstantTupleFilter && !filter.evaluate(null, null)) {
                     return null;
@@ -118,16 +137,20 @@ public abstract class ScanRangePlannerBase {
 
             @SuppressWarnings("unchecked")
             ColumnRange newRange = new ColumnRange(comp.getColumn(), (Set<ByteArray>) comp.getValues(), comp.getOperator());
-            ColumnRange existing = rangeMap.get(newRange.column);
-            if (existing == null) {
-                rangeMap.put(newRange.column, newRange);
-            } else {
-                existing.andMerge(newRange);
-            }
+            andMerge(rangeMap, newRange);
         }
         return rangeMap.values();
     }
 
+    private void andMerge(Map<TblColRef, ColumnRange> rangeMap, ColumnRange newRange) {
+        ColumnRange existing = rangeMap.get(newRange.column);
+        if (existing == null) {
+            rangeMap.put(newRange.column, newRange);
+        } else {
+            existing.andMerge(newRange);
+        }
+    }
+
     private List<Collection<ColumnRange>> preEvaluateConstantConditions(List<Collection<ColumnRange>> orAndRanges) {
         boolean globalAlwaysTrue = false;
         Iterator<Collection<ColumnRange>> iterator = orAndRanges.iterator();
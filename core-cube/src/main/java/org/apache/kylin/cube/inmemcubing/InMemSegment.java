@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.cube.inmemcubing;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.metadata.model.SegmentStatusEnum;
+import org.apache.kylin.metadata.model.TblColRef;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A segment of the latest streaming window, whose cuboids and dictionaries are only kept in memory.
+ * It is queryable once published through InMemSegmentRegistry, before the window is built into a normal segment.
+ *
+ * Not saved as part of the cube, and not changed after being built.
+ */
+public class InMemSegment extends CubeSegment {
+
+    private final Map<TblColRef, Dictionary<String>> dictionaryMap;
+    private final Map<Long, List<byte[]>> cuboidRows;
+    private long rowCount = 0;
+
+    public InMemSegment(CubeInstance cube, long startDate, long endDate, Map<TblColRef, Dictionary<String>> dictionaryMap) {
+        this(cube, UUID.randomUUID().toString(), startDate, endDate, dictionaryMap, Maps.<Long, List<byte[]>> newHashMap());
+    }
+
+    InMemSegment(CubeInstance cube, String uuid, long startDate, long endDate, Map<TblColRef, Dictionary<String>> dictionaryMap, Map<Long, List<byte[]>> cuboidRows) {
+        setUuid(uuid);
+        setName(makeSegmentName(startDate, endDate, 0, 0));
+        setCreateTimeUTC(System.currentTimeMillis());
+        setDateRangeStart(startDate);
+        setDateRangeEnd(endDate);
+        setStatus(SegmentStatusEnum.NEW);
+        setCubeInstance(cube);
+        this.dictionaryMap = dictionaryMap;
+        this.cuboidRows = cuboidRows;
+        for (List<byte[]> rows : cuboidRows.values()) {
+            rowCount += rows.size();
+        }
+    }
+
+    Map<TblColRef, Dictionary<String>> getDictionaryMap() {
+        return dictionaryMap;
+    }
+
+    Map<Long, List<byte[]>> getAllCuboidRows() {
+        return cuboidRows;
+    }
+
+    @Override
+    public Dictionary<String> getDictionary(TblColRef col) {
+        Dictionary<String> dict = dictionaryMap.get(col);
+        if (dict == null) {
+            dict = dictionaryMap.get(getCubeDesc().getDictionaryReuseColumn(col));
+        }
+        return dict;
+    }
+
+    /**
+     * @return the rows of a cuboid, each encoded as all columns of the cuboid grid table; null if the cuboid has no row
+     */
+    public List<byte[]> getCuboidRows(long cuboidId) {
+        return cuboidRows.get(cuboidId);
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the writer to collect the output of a cube builder into this segment
+     */
+    public ICuboidWriter getCuboidWriter() {
+        return new ICuboidWriter() {
+            @Override
+            public void write(long cuboidId, GTRecord record) throws IOException {
+                List<byte[]> rows = cuboidRows.get(cuboidId);
+                if (rows == null) {
+                    rows = Lists.newArrayList();
+                    cuboidRows.put(cuboidId, rows);
+                }
+                rows.add(record.exportColumns(record.getInfo().getAllColumns()).copy().array());
+                rowCount++;
+            }
+
+            @Override
+            public void flush() throws IOException {
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "InMemSegment [" + getCubeInstance().getName() + "[" + getName() + "], rows=" + rowCount + "]";
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.cube.inmemcubing;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.gridtable.EmptyGTScanner;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.IGTStorage;
+import org.apache.kylin.gridtable.memstore.GTSimpleMemStore;
+import org.apache.kylin.metadata.model.ISegment;
+
+/**
+ * Scans a cuboid of an InMemSegment, filtering and aggregating in the query thread like a coprocessor does.
+ */
+public class InMemSegmentGTStorage implements IGTStorage {
+
+    private final InMemSegment segment;
+    private final Cuboid cuboid;
+    private final GTInfo info;
+
+    public InMemSegmentGTStorage(ISegment segment, Cuboid cuboid, GTInfo info) {
+        this.segment = (InMemSegment) segment;
+        this.cuboid = cuboid;
+        this.info = info;
+    }
+
+    @Override
+    public IGTScanner getGTScanner(GTScanRequest scanRequest) throws IOException {
+        List<byte[]> rows = segment.getCuboidRows(cuboid.getId());
+        if (rows == null) {
+            return new EmptyGTScanner(0);
+        }
+
+        // the rows are encoded the same way as the grid table of the query
+        GTSimpleMemStore store = new GTSimpleMemStore(info, rows);
+        return scanRequest.decorateScanner(store.scan(scanRequest));
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.cube.inmemcubing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.persistence.RawResource;
+import org.apache.kylin.common.persistence.ResourceStore;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.metadata.model.ISourceAware;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * The in-memory segments of the latest streaming window of each cube, scanned by queries along with the READY segments.
+ *
+ * The continuous streaming builder publishes the segments to the metadata store, so that every query server sees them.
+ * Each segment is saved once under /streaming_inmem/{cube}/{uuid}, and the manifest /streaming_inmem/{cube}.list names
+ * the current ones. The manifest is replaced after the segments it names are saved, so a query sees either the previous
+ * set of segments or the new one, never a mix. Query servers check the manifest at most every micro batch interval
+ * and only load the segments they do not have yet.
+ */
+public class InMemSegmentRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemSegmentRegistry.class);
+
+    public static final String RESOURCE_ROOT = "/streaming_inmem";
+
+    private static final ConcurrentMap<KylinConfig, InMemSegmentRegistry> CACHE = new ConcurrentHashMap<>();
+
+    public static InMemSegmentRegistry getInstance(KylinConfig config) {
+        InMemSegmentRegistry r = CACHE.get(config);
+        if (r == null) {
+            CACHE.putIfAbsent(config, new InMemSegmentRegistry(config));
+            r = CACHE.get(config);
+        }
+        return r;
+    }
+
+    public static void clearCache() {
+        CACHE.clear();
+    }
+
+    // ============================================================================
+
+    private static class Loaded {
+        final long manifestTimestamp;
+        final long checkTime;
+        final List<InMemSegment> segments;
+
+        Loaded(long manifestTimestamp, long checkTime, List<InMemSegment> segments) {
+            this.manifestTimestamp = manifestTimestamp;
+            this.checkTime = checkTime;
+            this.segments = segments;
+        }
+    }
+
+    private final KylinConfig config;
+    private final long refreshIntervalMs;
+    private final ConcurrentMap<String, Loaded> loaded = new ConcurrentHashMap<>();
+
+    InMemSegmentRegistry(KylinConfig config) {
+        this.config = config;
+        this.refreshIntervalMs = config.getStreamingMicroBatchIntervalSeconds() * 1000L;
+    }
+
+    /**
+     * Replaces the in-memory segments of a cube. Segments published before are not saved again.
+     */
+    public void publish(CubeInstance cube, List<InMemSegment> segments) throws IOException {
+        ResourceStore store = ResourceStore.getStore(config);
+        List<String> uuids = Lists.newArrayList();
+        for (InMemSegment segment : segments) {
+            String path = segmentPath(cube.getName(), segment.getUuid());
+            if (!store.exists(path)) {
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                InMemSegmentSerializer.serialize(segment, buf);
+                store.putResource(path, new ByteArrayInputStream(buf.toByteArray()), System.currentTimeMillis());
+            }
+            uuids.add(segment.getUuid());
+        }
+
+        long ts = System.currentTimeMillis();
+        store.putResource(manifestPath(cube.getName()), new ByteArrayInputStream(Bytes.toBytes(StringUtils.join(uuids, "\n"))), ts);
+        loaded.put(cube.getName(), new Loaded(ts, ts, Lists.newArrayList(segments)));
+        logger.info("Published in-memory segments {}", segments);
+
+        // a reader still on the previous manifest misses them and keeps its segments until the next check
+        deleteSegmentsExcept(store, cube.getName(), uuids);
+    }
+
+    /**
+     * Drops the in-memory segments of a cube, e.g. once its window is built into a normal segment.
+     */
+    public void clear(CubeInstance cube) throws IOException {
+        ResourceStore store = ResourceStore.getStore(config);
+        store.deleteResource(manifestPath(cube.getName()));
+        loaded.remove(cube.getName());
+        deleteSegmentsExcept(store, cube.getName(), Collections.<String> emptyList());
+        logger.info("Cleared in-memory segments of {}", cube.getName());
+    }
+
+    /**
+     * @return the in-memory segments of the cube not overlapping any of the given segments, e.g. the window has just
+     * been built into a READY segment
+     */
+    public List<InMemSegment> get(CubeInstance cube, Iterable<CubeSegment> readySegments) {
+        if (cube.getSourceType() != ISourceAware.ID_STREAMING) {
+            return Collections.emptyList();
+        }
+
+        long now = System.currentTimeMillis();
+        Loaded current = loaded.get(cube.getName());
+        if (current == null || now - current.checkTime >= refreshIntervalMs) {
+            current = reload(cube, current, now);
+        }
+
+        List<InMemSegment> result = Lists.newArrayList();
+        for (InMemSegment segment : current.segments) {
+            if (!overlaps(segment, readySegments)) {
+                result.add(segment);
+            }
+        }
+        return result;
+    }
+
+    private static boolean overlaps(InMemSegment segment, Iterable<CubeSegment> readySegments) {
+        for (CubeSegment seg : readySegments) {
+            if (seg.getDateRangeStart() < segment.getDateRangeEnd() && seg.getDateRangeEnd() > segment.getDateRangeStart()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Loaded reload(CubeInstance cube, Loaded current, long now) {
+        Loaded result;
+        try {
+            result = load(cube, current, now);
+        } catch (IOException e) {
+            // e.g. a segment is replaced between reading the manifest and loading it, try again next time
+            logger.warn("Failed to load in-memory segments of " + cube.getName(), e);
+            result = new Loaded(current == null ? 0 : current.manifestTimestamp, now, current == null ? Collections.<InMemSegment> emptyList() : current.segments);
+        }
+        loaded.put(cube.getName(), result);
+        return result;
+    }
+
+    private Loaded load(CubeInstance cube, Loaded current, long now) throws IOException {
+        ResourceStore store = ResourceStore.getStore(config);
+        RawResource manifest = store.getResource(manifestPath(cube.getName()));
+        if (manifest == null) {
+            return new Loaded(0, now, Collections.<InMemSegment> emptyList());
+        }
+
+        String[] uuids;
+        try {
+            if (current != null && manifest.timestamp == current.manifestTimestamp) {
+                return new Loaded(current.manifestTimestamp, now, current.segments);
+            }
+            uuids = StringUtils.split(Bytes.toString(IOUtils.toByteArray(manifest.inputStream)), "\n");
+        } finally {
+            IOUtils.closeQuietly(manifest.inputStream);
+        }
+
+        Map<String, InMemSegment> known = Maps.newHashMap();
+        if (current != null) {
+            for (InMemSegment segment : current.segments) {
+                known.put(segment.getUuid(), segment);
+            }
+        }
+        List<InMemSegment> segments = Lists.newArrayList();
+        for (String uuid : uuids) {
+            InMemSegment segment = known.get(uuid);
+            if (segment == null) {
+                segment = loadSegment(store, cube, uuid);
+            }
+            segments.add(segment);
+        }
+        logger.info("Loaded in-memory segments {}", segments);
+        return new Loaded(manifest.timestamp, now, segments);
+    }
+
+    private InMemSegment loadSegment(ResourceStore store, CubeInstance cube, String uuid) throws IOException {
+        String path = segmentPath(cube.getName(), uuid);
+        RawResource res = store.getResource(path);
+        if (res == null) {
+            throw new IOException("In-memory segment " + path + " no longer exists");
+        }
+        try {
+            return InMemSegmentSerializer.deserialize(cube, res.inputStream);
+        } finally {
+            IOUtils.closeQuietly(res.inputStream);
+        }
+    }
+
+    private void deleteSegmentsExcept(ResourceStore store, String cubeName, List<String> uuids) throws IOException {
+        NavigableSet<String> paths = store.listResources(RESOURCE_ROOT + "/" + cubeName);
+        if (paths == null) {
+            return;
+        }
+        for (String path : paths) {
+            if (!uuids.contains(path.substring(path.lastIndexOf('/') + 1))) {
+                store.deleteResource(path);
+            }
+        }
+    }
+
+    private static String manifestPath(String cubeName) {
+        return RESOURCE_ROOT + "/" + cubeName + ".list";
+    }
+
+    private static String segmentPath(String cubeName, String uuid) {
+        return RESOURCE_ROOT + "/" + cubeName + "/" + uuid;
+    }
+}
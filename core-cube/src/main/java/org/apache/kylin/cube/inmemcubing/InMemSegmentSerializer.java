@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.cube.inmemcubing;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.dict.DictionarySerializer;
+import org.apache.kylin.metadata.model.TblColRef;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Writes an InMemSegment to a stream and reads it back for another process, e.g. a query server.
+ */
+public final class InMemSegmentSerializer {
+
+    private InMemSegmentSerializer() {
+    }
+
+    public static void serialize(InMemSegment segment, OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeUTF(segment.getUuid());
+        out.writeLong(segment.getDateRangeStart());
+        out.writeLong(segment.getDateRangeEnd());
+        out.writeLong(segment.getInputRecords());
+
+        Map<TblColRef, Dictionary<String>> dictionaryMap = segment.getDictionaryMap();
+        out.writeInt(dictionaryMap.size());
+        for (Map.Entry<TblColRef, Dictionary<String>> entry : dictionaryMap.entrySet()) {
+            out.writeUTF(entry.getKey().getCanonicalName());
+            writeBytes(out, DictionarySerializer.serialize(entry.getValue()));
+        }
+
+        Map<Long, List<byte[]>> cuboidRows = segment.getAllCuboidRows();
+        out.writeInt(cuboidRows.size());
+        for (Map.Entry<Long, List<byte[]>> entry : cuboidRows.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (byte[] row : entry.getValue()) {
+                out.writeInt(row.length);
+                out.write(row);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * @param cube the cube the segment belongs to, whose dimensions must not have changed since the segment was built
+     */
+    @SuppressWarnings("unchecked")
+    public static InMemSegment deserialize(CubeInstance cube, InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        String uuid = in.readUTF();
+        long startDate = in.readLong();
+        long endDate = in.readLong();
+        long inputRecords = in.readLong();
+
+        Map<String, TblColRef> columns = Maps.newHashMap();
+        for (TblColRef col : cube.getDescriptor().listDimensionColumnsExcludingDerived(true)) {
+            columns.put(col.getCanonicalName(), col);
+        }
+        int nDicts = in.readInt();
+        Map<TblColRef, Dictionary<String>> dictionaryMap = Maps.newHashMap();
+        for (int i = 0; i < nDicts; i++) {
+            String colName = in.readUTF();
+            TblColRef col = columns.get(colName);
+            if (col == null) {
+                throw new IOException("Column " + colName + " is no longer a dimension of cube " + cube.getName());
+            }
+            dictionaryMap.put(col, (Dictionary<String>) DictionarySerializer.deserialize(readBytes(in)));
+        }
+
+        int nCuboids = in.readInt();
+        Map<Long, List<byte[]>> cuboidRows = Maps.newHashMap();
+        for (int i = 0; i < nCuboids; i++) {
+            long cuboidId = in.readLong();
+            int nRows = in.readInt();
+            List<byte[]> rows = Lists.newArrayListWithCapacity(nRows);
+            for (int j = 0; j < nRows; j++) {
+                rows.add(readBytes(in).array());
+            }
+            cuboidRows.put(cuboidId, rows);
+        }
+
+        InMemSegment segment = new InMemSegment(cube, uuid, startDate, endDate, dictionaryMap, cuboidRows);
+        segment.setInputRecords(inputRecords);
+        return segment;
+    }
+
+    private static void writeBytes(DataOutputStream out, ByteArray bytes) throws IOException {
+        out.writeInt(bytes.length());
+        out.write(bytes.array(), bytes.offset(), bytes.length());
+    }
+
+    private static ByteArray readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new ByteArray(bytes);
+    }
+}
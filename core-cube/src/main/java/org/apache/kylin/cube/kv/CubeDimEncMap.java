@@ -87,4 +87,12 @@ public class CubeDimEncMap implements IDimensionEncodingMap {
             return seg.getDictionary(col);
     }
 
+    @Override
+    public String getDictionaryResPath(TblColRef col) {
+        if (seg == null)
+            return null;
+        else
+            return seg.getDictResPath(cubeDesc.getDictionaryReuseColumn(col));
+    }
+
 }
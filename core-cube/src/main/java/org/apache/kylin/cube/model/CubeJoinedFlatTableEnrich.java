@@ -19,6 +19,7 @@
 package org.apache.kylin.cube.model;
 
 import java.util.List;
+import java.util.Set;
 
 import org.apache.kylin.common.util.BytesSplitter;
 import org.apache.kylin.cube.cuboid.Cuboid;
@@ -29,6 +30,8 @@ import org.apache.kylin.metadata.model.ISegment;
 import org.apache.kylin.metadata.model.MeasureDesc;
 import org.apache.kylin.metadata.model.TblColRef;
 
+import com.google.common.collect.Sets;
+
 /**
  * An enrich of IJoinedFlatTableDesc for cubes
  */
@@ -103,6 +106,26 @@ public class CubeJoinedFlatTableEnrich implements IJoinedFlatTableDesc {
         return measureColumnIndexes;
     }
 
+    /**
+     * @return the flat table columns the base cuboid is built from, i.e. the row key and measure columns
+     */
+    public Set<Integer> getBaseCuboidColumnIndexes() {
+        Set<Integer> result = Sets.newTreeSet();
+        for (int index : rowKeyColumnIndexes) {
+            result.add(index);
+        }
+        for (int[] indexes : measureColumnIndexes) {
+            if (indexes != null) {
+                for (int index : indexes) {
+                    if (index >= 0) {
+                        result.add(index);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
     @Override
     public String getTableName() {
         return flatDesc.getTableName();
@@ -61,6 +61,7 @@ public class GTAggregateScanner implements IGTScanner {
     final ImmutableBitSet metrics;
     final String[] metricsAggrFuncs;
     final IGTScanner inputScanner;
+    final IGTBatchScanner inputBatchScanner;
     final AggregationCache aggrCache;
     final long spillThreshold;
     final int storagePushDownLimit;//default to be Int.MAX
@@ -71,15 +72,25 @@ public class GTAggregateScanner implements IGTScanner {
     private boolean[] aggrMask;
 
     public GTAggregateScanner(IGTScanner inputScanner, GTScanRequest req, long deadline) {
+        this(inputScanner, null, req, deadline);
+    }
+
+    /** aggregate the selected rows of batches, straight from the column vectors */
+    public GTAggregateScanner(IGTBatchScanner inputBatchScanner, GTScanRequest req, long deadline) {
+        this(null, inputBatchScanner, req, deadline);
+    }
+
+    private GTAggregateScanner(IGTScanner inputScanner, IGTBatchScanner inputBatchScanner, GTScanRequest req, long deadline) {
         if (!req.hasAggregation())
             throw new IllegalStateException();
 
-        this.info = inputScanner.getInfo();
+        this.info = inputScanner != null ? inputScanner.getInfo() : inputBatchScanner.getInfo();
         this.dimensions = req.getDimensions();
         this.groupBy = req.getAggrGroupBy();
         this.metrics = req.getAggrMetrics();
         this.metricsAggrFuncs = req.getAggrMetricsFuncs();
         this.inputScanner = inputScanner;
+        this.inputBatchScanner = inputBatchScanner;
         this.aggrCache = new AggregationCache();
         this.spillThreshold = (long) (req.getAggCacheMemThreshold() * MemoryBudgetController.ONE_GB);
         this.aggrMask = new boolean[metricsAggrFuncs.length];
@@ -124,17 +135,25 @@ public class GTAggregateScanner implements IGTScanner {
 
     @Override
     public long getScannedRowCount() {
-        return inputScanner.getScannedRowCount();
+        return inputScanner != null ? inputScanner.getScannedRowCount() : inputBatchScanner.getScannedRowCount();
     }
 
     @Override
     public void close() throws IOException {
-        inputScanner.close();
+        if (inputScanner != null) {
+            inputScanner.close();
+        } else {
+            inputBatchScanner.close();
+        }
         aggrCache.close();
     }
 
     @Override
     public Iterator<GTRecord> iterator() {
+        if (inputBatchScanner != null) {
+            return aggregateBatches();
+        }
+
         long count = 0;
         for (GTRecord r : inputScanner) {
 
@@ -161,6 +180,30 @@ public class GTAggregateScanner implements IGTScanner {
         return aggrCache.iterator();
     }
 
+    private Iterator<GTRecord> aggregateBatches() {
+        long count = 0;
+        outer: for (GTRecordBatch batch : inputBatchScanner) {
+
+            //check deadline, once a batch
+            if (System.currentTimeMillis() > deadline) {
+                throw new GTScanTimeoutException("Timeout in GTAggregateScanner with scanned count " + count);
+            }
+
+            int[] selection = batch.getSelection();
+            for (int i = 0; i < batch.getSelectedCount(); i++) {
+                // same as above, the limit only helps before any spill
+                int stopForLimit = getNumOfSpills() == 0 ? storagePushDownLimit : Integer.MAX_VALUE;
+                if (!aggrCache.aggregate(batch, selection[i], stopForLimit)) {
+                    logger.info("abort reading inputScanner because storage push down limit is hit");
+                    break outer;
+                }
+                count++;
+            }
+        }
+        logger.info("GTAggregateScanner input rows: " + count);
+        return aggrCache.iterator();
+    }
+
     public int getNumOfSpills() {
         return aggrCache.dumps.size();
     }
@@ -262,7 +305,52 @@ public class GTAggregateScanner implements IGTScanner {
             return result;
         }
 
+        private byte[] createKey(GTRecordBatch batch, int row) {
+            byte[] result = new byte[keyLength];
+            int offset = 0;
+            for (int i = 0; i < dimensions.trueBitCount(); i++) {
+                int c = dimensions.trueBitAt(i);
+                final GTRecordBatch.ColumnVector vector = batch.getColumn(c);
+                final int columnLength = info.codeSystem.maxCodeLength(c);
+                System.arraycopy(vector.array(), vector.offset(row), result, offset, vector.length(row));
+                offset += columnLength;
+            }
+            assert offset == result.length;
+            return result;
+        }
+
         boolean aggregate(GTRecord r, int stopForLimit) {
+            MeasureAggregator[] aggrs = getAggregators(r, null, 0, stopForLimit);
+            if (aggrs == null)
+                return false;
+
+            for (int i = 0; i < aggrs.length; i++) {
+                if (aggrMask[i]) {
+                    int col = metrics.trueBitAt(i);
+                    Object metrics = info.codeSystem.decodeColumnValue(col, r.cols[col].asBuffer());
+                    aggrs[i].aggregate(metrics);
+                }
+            }
+            return true;
+        }
+
+        boolean aggregate(GTRecordBatch batch, int row, int stopForLimit) {
+            MeasureAggregator[] aggrs = getAggregators(null, batch, row, stopForLimit);
+            if (aggrs == null)
+                return false;
+
+            for (int i = 0; i < aggrs.length; i++) {
+                if (aggrMask[i]) {
+                    int col = metrics.trueBitAt(i);
+                    Object metrics = info.codeSystem.decodeColumnValue(col, batch.getColumn(col).asBuffer(row));
+                    aggrs[i].aggregate(metrics);
+                }
+            }
+            return true;
+        }
+
+        /** @return the aggregators of the row, either a record or a row of a batch; null if the limit is hit */
+        private MeasureAggregator[] getAggregators(GTRecord r, GTRecordBatch batch, int row, int stopForLimit) {
             if (++aggregatedRowCount % 100000 == 0) {
                 if (memTracker != null) {
                     memTracker.markHigh();
@@ -275,26 +363,19 @@ public class GTAggregateScanner implements IGTScanner {
                 }
             }
 
-            final byte[] key = createKey(r);
+            final byte[] key = r != null ? createKey(r) : createKey(batch, row);
             MeasureAggregator[] aggrs = aggBufMap.get(key);
             if (aggrs == null) {
 
                 //for storage push down limit
                 if (aggBufMap.size() >= stopForLimit) {
-                    return false;
+                    return null;
                 }
 
                 aggrs = newAggregators();
                 aggBufMap.put(key, aggrs);
             }
-            for (int i = 0; i < aggrs.length; i++) {
-                if (aggrMask[i]) {
-                    int col = metrics.trueBitAt(i);
-                    Object metrics = info.codeSystem.decodeColumnValue(col, r.cols[col].asBuffer());
-                    aggrs[i].aggregate(metrics);
-                }
-            }
-            return true;
+            return aggrs;
         }
 
         private void spillBuffMap() throws RuntimeException {
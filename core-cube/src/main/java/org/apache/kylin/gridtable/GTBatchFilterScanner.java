@@ -0,0 +1,406 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.metadata.filter.ColumnTupleFilter;
+import org.apache.kylin.metadata.filter.CompareTupleFilter;
+import org.apache.kylin.metadata.filter.ConstantTupleFilter;
+import org.apache.kylin.metadata.filter.IFilterCodeSystem;
+import org.apache.kylin.metadata.filter.LogicalTupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter.FilterOperatorEnum;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.apache.kylin.metadata.tuple.IEvaluatableTuple;
+
+import com.google.common.collect.Lists;
+
+/**
+ * The batch counterpart of {@link GTFilterScanner}, narrowing the selection vector of each batch.
+ *
+ * The filter is compiled into a tree of evaluators, each going through a whole selection before the next. Column
+ * compares and AND/OR/NOT work on the column vectors directly; any other filter is evaluated row by row, in the
+ * same way as GTFilterScanner does.
+ */
+public class GTBatchFilterScanner implements IGTBatchScanner {
+
+    final private IGTBatchScanner inputScanner;
+    final private TupleFilter filter;
+
+    public GTBatchFilterScanner(IGTBatchScanner inputScanner, GTScanRequest req) throws IOException {
+        this.inputScanner = inputScanner;
+        this.filter = req.getFilterPushDown();
+
+        if (TupleFilter.isEvaluableRecursively(filter) == false)
+            throw new IllegalArgumentException();
+    }
+
+    @Override
+    public GTInfo getInfo() {
+        return inputScanner.getInfo();
+    }
+
+    @Override
+    public long getScannedRowCount() {
+        return inputScanner.getScannedRowCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputScanner.close();
+    }
+
+    @Override
+    public Iterator<GTRecordBatch> iterator() {
+        return new Iterator<GTRecordBatch>() {
+
+            private Iterator<GTRecordBatch> inputIterator = inputScanner.iterator();
+            private BatchEvaluator evaluator = compile(filter, getInfo());
+            private GTRecordBatch next = null;
+
+            @Override
+            public boolean hasNext() {
+                if (next != null)
+                    return true;
+
+                while (inputIterator.hasNext()) {
+                    GTRecordBatch batch = inputIterator.next();
+                    int[] selection = batch.getSelection();
+                    batch.setSelectedCount(evaluator.filter(batch, selection, batch.getSelectedCount(), selection));
+                    if (batch.getSelectedCount() > 0) {
+                        next = batch;
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public GTRecordBatch next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                GTRecordBatch result = next;
+                next = null;
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    static BatchEvaluator compile(TupleFilter filter, GTInfo info) {
+        if (filter == null)
+            return new ConstantEvaluator(true);
+
+        if (filter instanceof ConstantTupleFilter)
+            return new ConstantEvaluator(filter.evaluate(null, null));
+
+        if (filter instanceof LogicalTupleFilter) {
+            List<BatchEvaluator> children = Lists.newArrayList();
+            for (TupleFilter child : filter.getChildren()) {
+                children.add(compile(child, info));
+            }
+            switch (filter.getOperator()) {
+            case AND:
+                return new AndEvaluator(children);
+            case OR:
+                return new OrEvaluator(children);
+            case NOT:
+                return new NotEvaluator(children.get(0));
+            default:
+                break;
+            }
+        }
+
+        if (filter instanceof CompareTupleFilter && CompareEvaluator.isSupported((CompareTupleFilter) filter, info))
+            return new CompareEvaluator((CompareTupleFilter) filter, info);
+
+        return new RowEvaluator(filter, info);
+    }
+
+    /**
+     * Narrows a selection of rows to those passing a filter.
+     */
+    static abstract class BatchEvaluator {
+
+        /**
+         * @param sel the positions of the n candidate rows, in ascending order
+         * @param out receives the positions of the passing rows in the same order, may be the same array as sel
+         * @return the number of passing rows
+         */
+        abstract int filter(GTRecordBatch batch, int[] sel, int n, int[] out);
+    }
+
+    static class ConstantEvaluator extends BatchEvaluator {
+        final boolean value;
+
+        ConstantEvaluator(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        int filter(GTRecordBatch batch, int[] sel, int n, int[] out) {
+            if (!value)
+                return 0;
+            if (out != sel)
+                System.arraycopy(sel, 0, out, 0, n);
+            return n;
+        }
+    }
+
+    static class AndEvaluator extends BatchEvaluator {
+        final List<BatchEvaluator> children;
+
+        AndEvaluator(List<BatchEvaluator> children) {
+            this.children = children;
+        }
+
+        @Override
+        int filter(GTRecordBatch batch, int[] sel, int n, int[] out) {
+            int[] in = sel;
+            for (BatchEvaluator child : children) {
+                n = child.filter(batch, in, n, out);
+                in = out;
+                if (n == 0)
+                    break;
+            }
+            if (in != out)
+                System.arraycopy(in, 0, out, 0, n);
+            return n;
+        }
+    }
+
+    static class OrEvaluator extends BatchEvaluator {
+        final List<BatchEvaluator> children;
+        boolean[] matched = new boolean[0];
+        int[] remaining = new int[0];
+        int[] passed = new int[0];
+
+        OrEvaluator(List<BatchEvaluator> children) {
+            this.children = children;
+        }
+
+        @Override
+        int filter(GTRecordBatch batch, int[] sel, int n, int[] out) {
+            if (matched.length < batch.getCapacity()) {
+                matched = new boolean[batch.getCapacity()];
+                remaining = new int[batch.getCapacity()];
+                passed = new int[batch.getCapacity()];
+            }
+
+            // each child only looks at the rows not matched by the previous ones
+            System.arraycopy(sel, 0, remaining, 0, n);
+            int remainingCount = n;
+            for (BatchEvaluator child : children) {
+                if (remainingCount == 0)
+                    break;
+                int passedCount = child.filter(batch, remaining, remainingCount, passed);
+                for (int i = 0; i < passedCount; i++) {
+                    matched[passed[i]] = true;
+                }
+                int k = 0;
+                for (int i = 0; i < remainingCount; i++) {
+                    if (!matched[remaining[i]])
+                        remaining[k++] = remaining[i];
+                }
+                remainingCount = k;
+            }
+
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                int row = sel[i];
+                if (matched[row]) {
+                    out[k++] = row;
+                    matched[row] = false;
+                }
+            }
+            return k;
+        }
+    }
+
+    static class NotEvaluator extends BatchEvaluator {
+        final BatchEvaluator child;
+        int[] candidates = new int[0];
+        int[] passed = new int[0];
+
+        NotEvaluator(BatchEvaluator child) {
+            this.child = child;
+        }
+
+        @Override
+        int filter(GTRecordBatch batch, int[] sel, int n, int[] out) {
+            if (passed.length < batch.getCapacity()) {
+                candidates = new int[batch.getCapacity()];
+                passed = new int[batch.getCapacity()];
+            }
+
+            System.arraycopy(sel, 0, candidates, 0, n);
+            int passedCount = child.filter(batch, candidates, n, passed);
+
+            // both are in ascending order
+            int k = 0;
+            int p = 0;
+            for (int i = 0; i < n; i++) {
+                int row = sel[i];
+                if (p < passedCount && passed[p] == row) {
+                    p++;
+                } else {
+                    out[k++] = row;
+                }
+            }
+            return k;
+        }
+    }
+
+    /**
+     * A column compared to constants, evaluated on the column vector like {@link CompareTupleFilter#evaluate}.
+     */
+    static class CompareEvaluator extends BatchEvaluator {
+        final int col;
+        final FilterOperatorEnum op;
+        final ByteArray firstValue;
+        final Set<?> values;
+        final IGTComparator comparator;
+        final ByteArray cursor = new ByteArray();
+
+        static boolean isSupported(CompareTupleFilter compare, GTInfo info) {
+            if (compare.getFunction() != null || compare.getColumn() == null)
+                return false;
+            for (TupleFilter child : compare.getChildren()) {
+                if (!(child instanceof ColumnTupleFilter) && !(child instanceof ConstantTupleFilter))
+                    return false;
+            }
+
+            switch (compare.getOperator()) {
+            case EQ:
+            case NEQ:
+            case LT:
+            case LTE:
+            case GT:
+            case GTE:
+            case IN:
+            case NOTIN:
+                break;
+            default:
+                return false;
+            }
+
+            Object first = compare.getFirstValue();
+            return first instanceof ByteArray && !info.codeSystem.getComparator().isNull((ByteArray) first);
+        }
+
+        CompareEvaluator(CompareTupleFilter compare, GTInfo info) {
+            this.col = compare.getColumn().getColumnDesc().getZeroBasedIndex();
+            this.op = compare.getOperator();
+            this.firstValue = (ByteArray) compare.getFirstValue();
+            this.values = compare.getValues();
+            this.comparator = info.codeSystem.getComparator();
+        }
+
+        @Override
+        int filter(GTRecordBatch batch, int[] sel, int n, int[] out) {
+            GTRecordBatch.ColumnVector vector = batch.getColumn(col);
+            byte[] data = vector.array();
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                int row = sel[i];
+                cursor.set(data, vector.offset(row), vector.length(row));
+                if (comparator.isNull(cursor))
+                    continue;
+
+                boolean pass;
+                switch (op) {
+                case EQ:
+                    pass = comparator.compare(cursor, firstValue) == 0;
+                    break;
+                case NEQ:
+                    pass = comparator.compare(cursor, firstValue) != 0;
+                    break;
+                case LT:
+                    pass = comparator.compare(cursor, firstValue) < 0;
+                    break;
+                case LTE:
+                    pass = comparator.compare(cursor, firstValue) <= 0;
+                    break;
+                case GT:
+                    pass = comparator.compare(cursor, firstValue) > 0;
+                    break;
+                case GTE:
+                    pass = comparator.compare(cursor, firstValue) >= 0;
+                    break;
+                case IN:
+                    pass = values.contains(cursor);
+                    break;
+                case NOTIN:
+                    pass = !values.contains(cursor);
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected operator " + op);
+                }
+                if (pass)
+                    out[k++] = row;
+            }
+            return k;
+        }
+    }
+
+    /**
+     * Any other filter, evaluated on a record pointing to each row in turn.
+     */
+    static class RowEvaluator extends BatchEvaluator {
+        final TupleFilter filter;
+        final IFilterCodeSystem<ByteArray> filterCodeSystem;
+        final GTRecord record;
+        final IEvaluatableTuple oneTuple; // avoid instance creation
+
+        RowEvaluator(TupleFilter filter, GTInfo info) {
+            this.filter = filter;
+            this.filterCodeSystem = GTUtil.wrap(info.codeSystem.getComparator());
+            this.record = new GTRecord(info);
+            this.oneTuple = new IEvaluatableTuple() {
+                @Override
+                public Object getValue(TblColRef col) {
+                    return record.get(col.getColumnDesc().getZeroBasedIndex());
+                }
+            };
+        }
+
+        @Override
+        int filter(GTRecordBatch batch, int[] sel, int n, int[] out) {
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                int row = sel[i];
+                batch.loadRecord(row, record);
+                if (filter.evaluate(oneTuple, filterCodeSystem))
+                    out[k++] = row;
+            }
+            return k;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates the selected rows of batches as records, the exit of a batch pipeline to any {@link IGTScanner} consumer.
+ *
+ * The returned record points to the column vectors of the current batch, so it is only valid until the iterator
+ * is called again.
+ */
+public class GTBatchRecordScanner implements IGTScanner {
+
+    final private IGTBatchScanner inputScanner;
+
+    public GTBatchRecordScanner(IGTBatchScanner inputScanner) {
+        this.inputScanner = inputScanner;
+    }
+
+    @Override
+    public GTInfo getInfo() {
+        return inputScanner.getInfo();
+    }
+
+    @Override
+    public long getScannedRowCount() {
+        return inputScanner.getScannedRowCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputScanner.close();
+    }
+
+    @Override
+    public Iterator<GTRecord> iterator() {
+        return new Iterator<GTRecord>() {
+
+            private Iterator<GTRecordBatch> inputIterator = inputScanner.iterator();
+            private GTRecord record = new GTRecord(getInfo());
+            private GTRecordBatch batch = null;
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (batch == null || index >= batch.getSelectedCount()) {
+                    if (!inputIterator.hasNext())
+                        return false;
+                    batch = inputIterator.next();
+                    index = 0;
+                }
+                return true;
+            }
+
+            @Override
+            public GTRecord next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                batch.loadRecord(batch.getSelection()[index++], record);
+                return record;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.kylin.common.util.ImmutableBitSet;
+
+/**
+ * Collects the records of a scanner into batches, the entry of a batch pipeline on top of any {@link IGTScanner}.
+ */
+public class GTBatchingScanner implements IGTBatchScanner {
+
+    final private IGTScanner inputScanner;
+    final private ImmutableBitSet columns;
+    final private int batchSize;
+
+    public GTBatchingScanner(IGTScanner inputScanner, ImmutableBitSet columns, int batchSize) {
+        this.inputScanner = inputScanner;
+        this.columns = columns;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public GTInfo getInfo() {
+        return inputScanner.getInfo();
+    }
+
+    @Override
+    public long getScannedRowCount() {
+        return inputScanner.getScannedRowCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputScanner.close();
+    }
+
+    @Override
+    public Iterator<GTRecordBatch> iterator() {
+        return new Iterator<GTRecordBatch>() {
+
+            private Iterator<GTRecord> inputIterator = inputScanner.iterator();
+            private GTRecordBatch batch = new GTRecordBatch(getInfo(), columns, batchSize);
+            private boolean fetched = false;
+
+            @Override
+            public boolean hasNext() {
+                if (fetched)
+                    return batch.getRowCount() > 0;
+
+                batch.clear();
+                while (!batch.isFull() && inputIterator.hasNext()) {
+                    batch.append(inputIterator.next());
+                }
+                fetched = true;
+                return batch.getRowCount() > 0;
+            }
+
+            @Override
+            public GTRecordBatch next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                fetched = false;
+                return batch;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.ImmutableBitSet;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A batch of grid table rows kept by column. Each selected column is one vector of encoded values, and the rows
+ * passing the filters so far are given by a selection vector.
+ *
+ * Batches are reused by the scanners producing them, so a batch is only valid until the next one is fetched.
+ */
+public class GTRecordBatch {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    final GTInfo info;
+    final ImmutableBitSet columns;
+    final int capacity;
+    final ColumnVector[] vectors;
+    final int[] selection;
+
+    private int rowCount;
+    private int selectedCount;
+
+    public GTRecordBatch(GTInfo info, ImmutableBitSet columns, int capacity) {
+        this.info = info;
+        this.columns = columns;
+        this.capacity = capacity;
+        this.vectors = new ColumnVector[info.getColumnCount()];
+        for (int i = 0; i < columns.trueBitCount(); i++) {
+            int c = columns.trueBitAt(i);
+            vectors[c] = new ColumnVector(info.codeSystem.maxCodeLength(c), capacity);
+        }
+        this.selection = new int[capacity];
+    }
+
+    public GTInfo getInfo() {
+        return info;
+    }
+
+    public ImmutableBitSet getColumns() {
+        return columns;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** @return the number of rows in the batch, selected or not */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public boolean isFull() {
+        return rowCount == capacity;
+    }
+
+    public ColumnVector getColumn(int c) {
+        return vectors[c];
+    }
+
+    /** @return the positions of the selected rows in ascending order, the first getSelectedCount() are valid */
+    public int[] getSelection() {
+        return selection;
+    }
+
+    public int getSelectedCount() {
+        return selectedCount;
+    }
+
+    /** keep the first count positions of the selection vector, which has been updated in place */
+    public void setSelectedCount(int count) {
+        Preconditions.checkArgument(count >= 0 && count <= rowCount);
+        this.selectedCount = count;
+    }
+
+    public void clear() {
+        rowCount = 0;
+        selectedCount = 0;
+        for (ColumnVector vector : vectors) {
+            if (vector != null) {
+                vector.clear();
+            }
+        }
+    }
+
+    /** copy the batch columns of a record as a new selected row */
+    public void append(GTRecord record) {
+        Preconditions.checkState(rowCount < capacity, "Batch is full");
+        for (int i = 0; i < columns.trueBitCount(); i++) {
+            int c = columns.trueBitAt(i);
+            ByteArray value = record.cols[c];
+            Preconditions.checkNotNull(value.array());
+            vectors[c].append(value.array(), value.offset(), value.length());
+        }
+        selection[selectedCount++] = rowCount++;
+    }
+
+    /** point the batch columns of the record to a row of the batch, no copy */
+    public void loadRecord(int row, GTRecord record) {
+        for (int i = 0; i < columns.trueBitCount(); i++) {
+            int c = columns.trueBitAt(i);
+            vectors[c].load(row, record.cols[c]);
+        }
+    }
+
+    /** @return the total size of the given columns of the selected rows */
+    public int sizeOf(ImmutableBitSet selectedCols) {
+        int size = 0;
+        for (int i = 0; i < selectedCols.trueBitCount(); i++) {
+            ColumnVector vector = vectors[selectedCols.trueBitAt(i)];
+            for (int j = 0; j < selectedCount; j++) {
+                size += vector.length(selection[j]);
+            }
+        }
+        return size;
+    }
+
+    /** write the selected rows to given buffer one after another, each like {@link GTRecord#exportColumns(ImmutableBitSet, ByteBuffer)} */
+    public void exportColumns(ImmutableBitSet selectedCols, ByteBuffer buf) {
+        ColumnVector[] selectedVectors = new ColumnVector[selectedCols.trueBitCount()];
+        for (int i = 0; i < selectedVectors.length; i++) {
+            selectedVectors[i] = vectors[selectedCols.trueBitAt(i)];
+        }
+        for (int j = 0; j < selectedCount; j++) {
+            int row = selection[j];
+            for (ColumnVector vector : selectedVectors) {
+                buf.put(vector.data, vector.offset(row), vector.length(row));
+            }
+        }
+    }
+
+    /**
+     * Encoded values of one column, one after another in a byte array. Values of a dimension are usually of the same
+     * width, which is tracked to allow whole vector operations.
+     */
+    public static class ColumnVector {
+        byte[] data;
+        final int[] offsets;
+        final int[] lengths;
+        int used; // bytes
+        int rows;
+        int width; // -1 if values differ in length
+
+        ColumnVector(int maxCodeLength, int capacity) {
+            // grows on demand for big measures like HLLC
+            this.data = new byte[Math.min(Math.max(maxCodeLength, 1), 64) * capacity];
+            this.offsets = new int[capacity];
+            this.lengths = new int[capacity];
+        }
+
+        /** @return whether all values in the batch are of the same width */
+        public boolean isFixedWidth() {
+            return width >= 0;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public byte[] array() {
+            return data;
+        }
+
+        public int offset(int row) {
+            return offsets[row];
+        }
+
+        public int length(int row) {
+            return lengths[row];
+        }
+
+        /** point the given byte array to the value of a row, no copy */
+        public void load(int row, ByteArray value) {
+            value.set(data, offsets[row], lengths[row]);
+        }
+
+        /** @return a buffer over the value of a row, no copy */
+        public ByteBuffer asBuffer(int row) {
+            return ByteBuffer.wrap(data, offsets[row], lengths[row]);
+        }
+
+        void append(byte[] src, int offset, int length) {
+            if (rows == 0) {
+                width = length;
+            } else if (width != length) {
+                width = -1;
+            }
+            if (used + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, used + length));
+            }
+            System.arraycopy(src, offset, data, used, length);
+            offsets[rows] = used;
+            lengths[rows] = length;
+            used += length;
+            rows++;
+        }
+
+        void clear() {
+            used = 0;
+            rows = 0;
+            width = 0;
+        }
+    }
+}
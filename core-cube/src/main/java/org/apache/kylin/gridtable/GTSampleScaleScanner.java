@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Iterator;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.metadata.datatype.DoubleMutable;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.apache.kylin.metadata.model.FunctionDesc;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+
+/**
+ * Scales up the additive measures (SUM and COUNT) of sampled records to estimate the values of all records.
+ *
+ * Other measures are returned as they are, e.g. MIN/MAX are the values within the sample.
+ */
+public class GTSampleScaleScanner implements IGTScanner {
+
+    final private IGTScanner inputScanner;
+    final private double scale;
+    final private ImmutableBitSet scaledCols;
+    final private Object[] values;
+    final private ByteArray space;
+
+    public GTSampleScaleScanner(IGTScanner inputScanner, GTScanRequest req, double scale) {
+        this.inputScanner = inputScanner;
+        this.scale = scale;
+
+        ImmutableBitSet cols = ImmutableBitSet.EMPTY;
+        ImmutableBitSet metrics = req.getAggrMetrics();
+        String[] funcs = req.getAggrMetricsFuncs();
+        for (int i = 0; i < metrics.trueBitCount(); i++) {
+            if (FunctionDesc.FUNC_SUM.equals(funcs[i]) || FunctionDesc.FUNC_COUNT.equals(funcs[i])) {
+                cols = cols.set(metrics.trueBitAt(i));
+            }
+        }
+        this.scaledCols = cols;
+        this.values = new Object[scaledCols.trueBitCount()];
+        this.space = new ByteArray(getInfo().getMaxColumnLength(scaledCols) * Math.max(1, scaledCols.trueBitCount()));
+    }
+
+    public static boolean isApplicable(GTScanRequest req) {
+        return req.isSampling() && req.hasAggregation();
+    }
+
+    @Override
+    public GTInfo getInfo() {
+        return inputScanner.getInfo();
+    }
+
+    @Override
+    public long getScannedRowCount() {
+        return inputScanner.getScannedRowCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputScanner.close();
+    }
+
+    @Override
+    public Iterator<GTRecord> iterator() {
+        if (scaledCols.isEmpty()) {
+            return inputScanner.iterator();
+        }
+
+        return Iterators.transform(inputScanner.iterator(), new Function<GTRecord, GTRecord>() {
+            @Override
+            public GTRecord apply(GTRecord input) {
+                input.getValues(scaledCols, values);
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = scaleValue(values[i]);
+                }
+                // the scaled values are encoded into a separate space, valid until the next record
+                return input.setValues(scaledCols, space, values);
+            }
+        });
+    }
+
+    private Object scaleValue(Object value) {
+        if (value instanceof LongMutable) {
+            LongMutable v = (LongMutable) value;
+            v.set(Math.round(v.get() * scale));
+        } else if (value instanceof DoubleMutable) {
+            DoubleMutable v = (DoubleMutable) value;
+            v.set(v.get() * scale);
+        } else if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).multiply(BigDecimal.valueOf(scale)).setScale(((BigDecimal) value).scale(), BigDecimal.ROUND_HALF_UP);
+        } else if (value instanceof Long) {
+            return Math.round((Long) value * scale);
+        } else if (value instanceof Double) {
+            return (Double) value * scale;
+        }
+        return value;
+    }
+}
@@ -68,13 +68,18 @@ public class GTScanRequest {
     private double aggCacheMemThreshold;
     private int storageScanRowNumThreshold;
     private int storagePushDownLimit;
+    private int samplingPercentage;
+    private int storageTopN;
+    private int[] storageTopNColumns;
+    private boolean[] storageTopNDescending;
 
     // runtime computed fields
     private transient boolean doingStorageAggregation = false;
 
     GTScanRequest(GTInfo info, List<GTScanRange> ranges, ImmutableBitSet dimensions, ImmutableBitSet aggrGroupBy, //
             ImmutableBitSet aggrMetrics, String[] aggrMetricsFuncs, TupleFilter filterPushDown, boolean allowStorageAggregation, //
-            double aggCacheMemThreshold, int storageScanRowNumThreshold, int storagePushDownLimit, String storageBehavior, long startTime, long timeout) {
+            double aggCacheMemThreshold, int storageScanRowNumThreshold, int storagePushDownLimit, String storageBehavior, long startTime, long timeout, int samplingPercentage, //
+            int storageTopN, int[] storageTopNColumns, boolean[] storageTopNDescending) {
         this.info = info;
         if (ranges == null) {
             this.ranges = Lists.newArrayList(new GTScanRange(new GTRecord(info), new GTRecord(info)));
@@ -95,6 +100,10 @@ public class GTScanRequest {
         this.aggCacheMemThreshold = aggCacheMemThreshold;
         this.storageScanRowNumThreshold = storageScanRowNumThreshold;
         this.storagePushDownLimit = storagePushDownLimit;
+        this.samplingPercentage = samplingPercentage;
+        this.storageTopN = storageTopN;
+        this.storageTopNColumns = storageTopNColumns;
+        this.storageTopNDescending = storageTopNDescending;
 
         validate(info);
     }
@@ -121,6 +130,15 @@ public class GTScanRequest {
         if (hasFilterPushDown()) {
             validateFilterPushDown(info);
         }
+
+        if (hasStorageTopN()) {
+            if (storageTopNColumns.length != storageTopNDescending.length)
+                throw new IllegalStateException();
+            for (int c : storageTopNColumns) {
+                if (!columns.get(c))
+                    throw new IllegalStateException("top-N column " + c + " is not selected by " + columns);
+            }
+        }
     }
 
     public void setTimeout(long timeout) {
@@ -191,11 +209,42 @@ public class GTScanRequest {
             } else {
                 logger.info("has no aggregation, skip it");
             }
+
+            if (this.hasStorageTopN()) {
+                logger.info("keeping only the top " + storageTopN + " records");
+                result = new GTTopNScanner(result, this);
+            }
             return result;
         }
 
     }
 
+    /**
+     * Like decorateScanner(), but the filter and the aggregation process columnar batches of batchSize rows, see
+     * {@link IGTBatchScanner}. Returns records only after the aggregation, or as views of the filtered batches.
+     */
+    public IGTScanner decorateScannerInBatches(IGTScanner scanner, int batchSize, long deadline) throws IOException {
+        IGTBatchScanner batches = new GTBatchingScanner(scanner, this.getColumns(), batchSize);
+
+        if (this.hasFilterPushDown()) {
+            batches = new GTBatchFilterScanner(batches, this);
+        }
+
+        IGTScanner result;
+        if (this.isAllowStorageAggregation() && this.hasAggregation()) {
+            logger.info("pre aggregating results in batches before returning");
+            this.doingStorageAggregation = true;
+            result = new GTAggregateScanner(batches, this, deadline);
+        } else {
+            result = new GTBatchRecordScanner(batches);
+        }
+
+        if (this.hasStorageTopN()) {
+            result = new GTTopNScanner(result, this);
+        }
+        return result;
+    }
+
     public boolean isDoingStorageAggregation() {
         return doingStorageAggregation;
     }
@@ -292,10 +341,40 @@ public class GTScanRequest {
         return this.storagePushDownLimit;
     }
 
+    /**
+     * storage keeps only the first N records in the order of the top-N columns, descending or not, see {@link GTTopNScanner}
+     */
+    public boolean hasStorageTopN() {
+        return storageTopN != Integer.MAX_VALUE && storageTopNColumns != null && storageTopNColumns.length > 0;
+    }
+
+    public int getStorageTopN() {
+        return storageTopN;
+    }
+
+    public int[] getStorageTopNColumns() {
+        return storageTopNColumns;
+    }
+
+    public boolean[] getStorageTopNDescending() {
+        return storageTopNDescending;
+    }
+
     public String getStorageBehavior() {
         return storageBehavior;
     }
 
+    /**
+     * percentage of blocks to scan, 100 means exact query, otherwise additive measures are scaled up accordingly
+     */
+    public int getSamplingPercentage() {
+        return samplingPercentage;
+    }
+
+    public boolean isSampling() {
+        return samplingPercentage > 0 && samplingPercentage < 100;
+    }
+
     public long getStartTime() {
         return startTime;
     }
@@ -347,6 +426,10 @@ public class GTScanRequest {
             BytesUtil.writeVLong(value.startTime, out);
             BytesUtil.writeVLong(value.timeout, out);
             BytesUtil.writeUTFString(value.storageBehavior, out);
+            BytesUtil.writeVInt(value.samplingPercentage, out);
+            BytesUtil.writeVInt(value.storageTopN, out);
+            BytesUtil.writeIntArray(value.storageTopNColumns, out);
+            BytesUtil.writeBooleanArray(value.storageTopNDescending, out);
         }
 
         @Override
@@ -380,12 +463,22 @@ public class GTScanRequest {
             long startTime = BytesUtil.readVLong(in);
             long timeout = BytesUtil.readVLong(in);
             String storageBehavior = BytesUtil.readUTFString(in);
+            int samplingPercentage = in.hasRemaining() ? BytesUtil.readVInt(in) : 100;
+            int storageTopN = Integer.MAX_VALUE;
+            int[] storageTopNColumns = null;
+            boolean[] storageTopNDescending = null;
+            if (in.hasRemaining()) {
+                storageTopN = BytesUtil.readVInt(in);
+                storageTopNColumns = BytesUtil.readIntArray(in);
+                storageTopNDescending = BytesUtil.readBooleanArray(in);
+            }
 
             return new GTScanRequestBuilder().setInfo(sInfo).setRanges(sRanges).setDimensions(sColumns).//
             setAggrGroupBy(sAggGroupBy).setAggrMetrics(sAggrMetrics).setAggrMetricsFuncs(sAggrMetricFuncs).//
             setFilterPushDown(sGTFilter).setAllowStorageAggregation(sAllowPreAggr).setAggCacheMemThreshold(sAggrCacheGB).//
             setStorageScanRowNumThreshold(storageScanRowNumThreshold).setStoragePushDownLimit(storagePushDownLimit).//
-            setStartTime(startTime).setTimeout(timeout).setStorageBehavior(storageBehavior).createGTScanRequest();
+            setStartTime(startTime).setTimeout(timeout).setStorageBehavior(storageBehavior).setSamplingPercentage(samplingPercentage).//
+            setStorageTopN(storageTopN, storageTopNColumns, storageTopNDescending).createGTScanRequest();
         }
 
         private void serializeGTRecord(GTRecord gtRecord, ByteBuffer out) {
@@ -40,6 +40,10 @@ public class GTScanRequestBuilder {
     private long startTime = -1;
     private long timeout = -1;
     private String storageBehavior = null;
+    private int samplingPercentage = -1;
+    private int storageTopN = Integer.MAX_VALUE;// storage can return only the first $storageTopN records in the order of the top-N columns
+    private int[] storageTopNColumns = null;
+    private boolean[] storageTopNDescending = null;
 
     public GTScanRequestBuilder setInfo(GTInfo info) {
         this.info = info;
@@ -111,6 +115,18 @@ public class GTScanRequestBuilder {
         return this;
     }
 
+    public GTScanRequestBuilder setSamplingPercentage(int samplingPercentage) {
+        this.samplingPercentage = samplingPercentage;
+        return this;
+    }
+
+    public GTScanRequestBuilder setStorageTopN(int storageTopN, int[] storageTopNColumns, boolean[] storageTopNDescending) {
+        this.storageTopN = storageTopN;
+        this.storageTopNColumns = storageTopNColumns;
+        this.storageTopNDescending = storageTopNDescending;
+        return this;
+    }
+
     public GTScanRequest createGTScanRequest() {
         if (aggrGroupBy == null) {
             aggrGroupBy = new ImmutableBitSet(new BitSet());
@@ -128,9 +144,14 @@ public class GTScanRequestBuilder {
             storageBehavior = BackdoorToggles.getCoprocessorBehavior() == null ? StorageSideBehavior.SCAN_FILTER_AGGR_CHECKMEM.toString() : BackdoorToggles.getCoprocessorBehavior();
         }
 
+        if (samplingPercentage == -1) {
+            samplingPercentage = 100;
+        }
+
         this.startTime = startTime == -1 ? System.currentTimeMillis() : startTime;
         this.timeout = timeout == -1 ? 300000 : timeout;
 
-        return new GTScanRequest(info, ranges, dimensions, aggrGroupBy, aggrMetrics, aggrMetricsFuncs, filterPushDown, allowStorageAggregation, aggCacheMemThreshold, storageScanRowNumThreshold, storagePushDownLimit, storageBehavior, startTime, timeout);
+        return new GTScanRequest(info, ranges, dimensions, aggrGroupBy, aggrMetrics, aggrMetricsFuncs, filterPushDown, allowStorageAggregation, aggCacheMemThreshold, storageScanRowNumThreshold, storagePushDownLimit, storageBehavior, startTime, timeout, samplingPercentage, //
+                storageTopN, storageTopNColumns, storageTopNDescending);
     }
 }
\ No newline at end of file
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.kylin.common.util.ImmutableBitSet;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+
+/**
+ * Keeps only the first N records in the order of the top-N columns of the request, by a bounded heap.
+ *
+ * The result is exact only if no group of the query spans more than one scanner, as records from
+ * different scanners are never aggregated together before the cut.
+ */
+public class GTTopNScanner implements IGTScanner {
+
+    private final IGTScanner inputScanner;
+    private final ImmutableBitSet columns;
+    private final int topN;
+    private final int[] sortColumns;
+    private final boolean[] descending;
+
+    public GTTopNScanner(IGTScanner inputScanner, GTScanRequest req) {
+        this.inputScanner = inputScanner;
+        this.columns = req.getColumns();
+        this.topN = req.getStorageTopN();
+        this.sortColumns = req.getStorageTopNColumns();
+        this.descending = req.getStorageTopNDescending();
+    }
+
+    @Override
+    public GTInfo getInfo() {
+        return inputScanner.getInfo();
+    }
+
+    @Override
+    public long getScannedRowCount() {
+        return inputScanner.getScannedRowCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputScanner.close();
+    }
+
+    @Override
+    public Iterator<GTRecord> iterator() {
+        final Comparator<Candidate> order = new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate o1, Candidate o2) {
+                return compareValues(o1.values, o2.values);
+            }
+        };
+
+        // the head is the last of the top N so far, to be replaced by any record before it
+        PriorityQueue<Candidate> heap = new PriorityQueue<Candidate>(Math.min(topN, 1024) + 1, Collections.reverseOrder(order));
+        Object[] values = new Object[sortColumns.length];
+        for (GTRecord r : inputScanner) {
+            r.getValues(sortColumns, values);
+            if (heap.size() < topN) {
+                heap.offer(new Candidate(values.clone(), r.copy(columns)));
+            } else if (!heap.isEmpty() && compareValues(values, heap.peek().values) < 0) {
+                heap.poll();
+                heap.offer(new Candidate(values.clone(), r.copy(columns)));
+            }
+        }
+
+        List<Candidate> result = Lists.newArrayList(heap);
+        Collections.sort(result, order);
+        return Iterators.transform(result.iterator(), new Function<Candidate, GTRecord>() {
+            @Override
+            public GTRecord apply(Candidate input) {
+                return input.record;
+            }
+        });
+    }
+
+    private int compareValues(Object[] values1, Object[] values2) {
+        for (int i = 0; i < values1.length; i++) {
+            int c = compareValue(values1[i], values2[i]);
+            if (c != 0)
+                return descending[i] ? -c : c;
+        }
+        return 0;
+    }
+
+    // null is larger than any value, the same as the default null direction of the query engine
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static int compareValue(Object v1, Object v2) {
+        if (v1 == null)
+            return v2 == null ? 0 : 1;
+        if (v2 == null)
+            return -1;
+        return ((Comparable) v1).compareTo(v2);
+    }
+
+    private static class Candidate {
+        final Object[] values;
+        final GTRecord record;
+
+        Candidate(Object[] values, GTRecord record) {
+            this.values = values;
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable.benchmark;
+
+import java.io.IOException;
+
+import org.apache.kylin.gridtable.GTRecordBatch;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.IGTScanner;
+
+/**
+ * The same as GTScannerBenchmark2, except for filtering and aggregating in columnar batches.
+ */
+public class GTBatchScannerBenchmark2 extends GTScannerBenchmark2 {
+
+    final int batchSize;
+
+    public GTBatchScannerBenchmark2(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    protected IGTScanner decorate(GTScanRequest req, IGTScanner input) throws IOException {
+        return req.decorateScannerInBatches(input, batchSize, Long.MAX_VALUE);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int batchSize = args.length > 0 ? Integer.parseInt(args[0]) : GTRecordBatch.DEFAULT_CAPACITY;
+        GTBatchScannerBenchmark2 benchmark = new GTBatchScannerBenchmark2(batchSize);
+
+        benchmark.testFilter1();
+        benchmark.testFilter2();
+        benchmark.testFilter3();
+
+        benchmark.testAggregate2();
+        benchmark.testAggregate2_();
+        benchmark.testAggregate4();
+    }
+}
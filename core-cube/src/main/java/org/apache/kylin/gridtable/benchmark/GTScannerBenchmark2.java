@@ -134,7 +134,7 @@ public class GTScannerBenchmark2 {
     private void testAggregate(ImmutableBitSet groupBy) throws IOException {
         long t = System.currentTimeMillis();
         GTScanRequest req = new GTScanRequestBuilder().setInfo(info).setRanges(null).setDimensions(dimensions).setAggrGroupBy(groupBy).setAggrMetrics(metrics).setAggrMetricsFuncs(aggrFuncs).setFilterPushDown(null).createGTScanRequest();
-        IGTScanner scanner = req.decorateScanner(gen.generate(N));
+        IGTScanner scanner = decorate(req, gen.generate(N));
 
         long count = 0;
         for (GTRecord rec : scanner) {
@@ -145,6 +145,11 @@ public class GTScannerBenchmark2 {
         System.out.println(N + " records aggregated to " + count + ", " + calcSpeed(t) + "K rec/sec");
     }
 
+    /** the scanner pipeline under test */
+    protected IGTScanner decorate(GTScanRequest req, IGTScanner input) throws IOException {
+        return req.decorateScanner(input);
+    }
+
     private int calcSpeed(long t) {
         double sec = (double) (t - genTime) / 1000;
         return (int) (N / sec / 1000);
@@ -178,7 +183,7 @@ public class GTScannerBenchmark2 {
     private void testFilter(TupleFilter filter) throws IOException {
         long t = System.currentTimeMillis();
         GTScanRequest req = new GTScanRequestBuilder().setInfo(info).setRanges(null).setDimensions(info.getAllColumns()).setFilterPushDown(filter).createGTScanRequest();
-        IGTScanner scanner = req.decorateScanner(gen.generate(N));
+        IGTScanner scanner = decorate(req, gen.generate(N));
 
         long count = 0;
         for (GTRecord rec : scanner) {
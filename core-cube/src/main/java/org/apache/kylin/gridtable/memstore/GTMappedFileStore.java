@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable.memstore;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.IGTStore;
+import org.apache.kylin.gridtable.IGTWriter;
+
+/**
+ * Keeps the rows in a local file, each as its length followed by all its columns, and scans them through a read-only
+ * memory mapping of the file, so the rows live in the page cache instead of the heap. Rows written are visible to
+ * scans once the writer is closed. Scans may run concurrently, also with drop(), which leaves running scans on the
+ * old mapping.
+ */
+public class GTMappedFileStore implements IGTStore {
+
+    final protected GTInfo info;
+    final protected File file;
+
+    private volatile MappedByteBuffer mapped;
+    private volatile long rowCount;
+
+    public GTMappedFileStore(GTInfo info, File file) {
+        this.info = info;
+        this.file = file;
+    }
+
+    @Override
+    public GTInfo getInfo() {
+        return info;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getFileSize() {
+        return file.length();
+    }
+
+    @Override
+    public IGTWriter rebuild() throws IOException {
+        mapped = null;
+        rowCount = 0;
+        return new Writer(false);
+    }
+
+    @Override
+    public IGTWriter append() throws IOException {
+        return new Writer(true);
+    }
+
+    private class Writer implements IGTWriter {
+        final DataOutputStream out;
+        long written;
+
+        Writer(boolean append) throws IOException {
+            file.getParentFile().mkdirs();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append)));
+        }
+
+        @Override
+        public void write(GTRecord r) throws IOException {
+            ByteArray byteArray = r.exportColumns(info.getAllColumns());
+            out.writeInt(byteArray.length());
+            out.write(byteArray.array(), byteArray.offset(), byteArray.length());
+            written++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+            map();
+            rowCount += written;
+        }
+    }
+
+    private void map() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long size = raf.length();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("File " + file + " of " + size + " bytes is too large to map");
+            // the mapping stays valid after the channel is closed
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * The records are made of the info of the request, which may be another GTInfo instance of the same layout.
+     */
+    @Override
+    public IGTScanner scan(GTScanRequest scanRequest) {
+        final GTInfo recordInfo = scanRequest == null ? info : scanRequest.getInfo();
+        final MappedByteBuffer snapshot = mapped;
+
+        return new IGTScanner() {
+            long count;
+
+            @Override
+            public GTInfo getInfo() {
+                return recordInfo;
+            }
+
+            @Override
+            public long getScannedRowCount() {
+                return count;
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+
+            @Override
+            public Iterator<GTRecord> iterator() {
+                count = 0;
+                return new Iterator<GTRecord>() {
+                    ByteBuffer buf = snapshot == null ? null : snapshot.duplicate();
+                    GTRecord oneRecord = new GTRecord(recordInfo);
+
+                    @Override
+                    public boolean hasNext() {
+                        return buf != null && buf.hasRemaining();
+                    }
+
+                    @Override
+                    public GTRecord next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+
+                        // records point into heap bytes, and a new array per row keeps previous records intact
+                        byte[] bytes = new byte[buf.getInt()];
+                        buf.get(bytes);
+                        oneRecord.loadColumns(info.getAllColumns(), ByteBuffer.wrap(bytes));
+                        count++;
+                        return oneRecord;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    public void drop() throws IOException {
+        mapped = null;
+        rowCount = 0;
+        if (file.exists() && !file.delete())
+            throw new IOException("Failed to delete " + file);
+    }
+
+}
@@ -38,7 +38,10 @@ public class GTSimpleMemStore implements IGTStore {
     final protected GTInfo info;
     final protected List<byte[]> rowList;
 
-    protected GTSimpleMemStore(GTInfo info, List<byte[]> rowList) {
+    /**
+     * @param rowList the rows, each encoded as all columns of info; shared, not copied
+     */
+    public GTSimpleMemStore(GTInfo info, List<byte[]> rowList) {
         this.info = info;
         this.rowList = rowList;
     }
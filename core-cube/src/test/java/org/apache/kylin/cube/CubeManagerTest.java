@@ -21,6 +21,7 @@ package org.apache.kylin.cube;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.List;
 import java.util.NavigableSet;
@@ -123,6 +124,29 @@ public class CubeManagerTest extends LocalFileMetadataTestCase {
 
     }
 
+    @Test
+    public void testMergeSegmentWithoutCuboidFiles() throws Exception {
+        CubeManager mgr = CubeManager.getInstance(getTestConfig());
+        CubeInstance cube = mgr.getCube("test_kylin_cube_with_slr_empty");
+
+        CubeSegment seg1 = mgr.appendSegment(cube, 0, 1000, 0, 0);
+        seg1.setStatus(SegmentStatusEnum.READY);
+
+        CubeSegment seg2 = mgr.appendSegment(cube, 0, 2000, 0, 0);
+        seg2.setStatus(SegmentStatusEnum.READY);
+        seg2.getAdditionalInfo().put(CubeSegment.INFO_NO_CUBOID_FILES, "true");
+
+        mgr.updateCube(new CubeUpdate(cube));
+
+        try {
+            mgr.mergeSegments(cube, 0, 2000, 0, 0, true);
+            fail("segment without cuboid files should not be merged");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains(seg2.getName()));
+        }
+        assertEquals(2, cube.getSegments().size());
+    }
+
     @Test
     public void testGetAllCubes() throws Exception {
         final ResourceStore store = ResourceStore.getStore(getTestConfig());
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.cube.inmemcubing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.persistence.ResourceStore;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.CubeSegment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class InMemSegmentRegistryTest extends LocalFileMetadataTestCase {
+
+    private KylinConfig config;
+    private CubeInstance cube;
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+        config = KylinConfig.getInstanceFromEnv();
+        cube = CubeManager.getInstance(config).getCube("test_streaming_table_cube");
+    }
+
+    @After
+    public void after() throws Exception {
+        InMemSegmentRegistry.clearCache();
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testPublishToOtherProcess() throws Exception {
+        InMemSegment seg1 = InMemSegmentSerializerTest.mockupSegment(cube, 1000L, 2000L);
+        InMemSegment seg2 = InMemSegmentSerializerTest.mockupSegment(cube, 2000L, 3000L);
+        new InMemSegmentRegistry(config).publish(cube, Lists.newArrayList(seg1, seg2));
+
+        // a new registry loads the manifest on the first get, as a query server does
+        List<InMemSegment> segments = new InMemSegmentRegistry(config).get(cube, Collections.<CubeSegment> emptyList());
+        assertEquals(2, segments.size());
+        assertEquals(seg1.getUuid(), segments.get(0).getUuid());
+        assertEquals(seg2.getUuid(), segments.get(1).getUuid());
+        assertEquals(seg1.getRowCount(), segments.get(0).getRowCount());
+
+        // seg1 is merged into a bigger segment and dropped
+        InMemSegment merged = InMemSegmentSerializerTest.mockupSegment(cube, 1000L, 3000L);
+        new InMemSegmentRegistry(config).publish(cube, Lists.newArrayList(merged, seg2));
+        segments = new InMemSegmentRegistry(config).get(cube, Collections.<CubeSegment> emptyList());
+        assertEquals(2, segments.size());
+        assertEquals(merged.getUuid(), segments.get(0).getUuid());
+        assertEquals(2, listSavedSegments().size());
+    }
+
+    @Test
+    public void testSkipOverlappingReadySegment() throws Exception {
+        InMemSegmentRegistry registry = new InMemSegmentRegistry(config);
+        InMemSegment seg1 = InMemSegmentSerializerTest.mockupSegment(cube, 1000L, 2000L);
+        InMemSegment seg2 = InMemSegmentSerializerTest.mockupSegment(cube, 2000L, 3000L);
+        registry.publish(cube, Lists.newArrayList(seg1, seg2));
+
+        // the window up to 2000 has just been built
+        CubeSegment ready = new CubeSegment();
+        ready.setDateRangeStart(0L);
+        ready.setDateRangeEnd(2000L);
+        List<InMemSegment> segments = registry.get(cube, Lists.newArrayList(ready));
+        assertEquals(1, segments.size());
+        assertEquals(seg2.getUuid(), segments.get(0).getUuid());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        new InMemSegmentRegistry(config).publish(cube, Lists.newArrayList(InMemSegmentSerializerTest.mockupSegment(cube, 1000L, 2000L)));
+        new InMemSegmentRegistry(config).clear(cube);
+
+        assertTrue(new InMemSegmentRegistry(config).get(cube, Collections.<CubeSegment> emptyList()).isEmpty());
+        assertTrue(listSavedSegments().isEmpty());
+    }
+
+    private Set<String> listSavedSegments() throws IOException {
+        Set<String> paths = ResourceStore.getStore(config).listResources(InMemSegmentRegistry.RESOURCE_ROOT + "/" + cube.getName());
+        return paths == null ? Collections.<String> emptySet() : paths;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.cube.inmemcubing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.dict.StringBytesConverter;
+import org.apache.kylin.dict.TrieDictionaryBuilder;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class InMemSegmentSerializerTest extends LocalFileMetadataTestCase {
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+    }
+
+    @After
+    public void after() throws Exception {
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        CubeInstance cube = CubeManager.getInstance(KylinConfig.getInstanceFromEnv()).getCube("test_streaming_table_cube");
+        InMemSegment segment = mockupSegment(cube, 1000L, 2000L);
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        InMemSegmentSerializer.serialize(segment, buf);
+        InMemSegment copy = InMemSegmentSerializer.deserialize(cube, new ByteArrayInputStream(buf.toByteArray()));
+
+        assertEquals(segment.getUuid(), copy.getUuid());
+        assertEquals(segment.getName(), copy.getName());
+        assertEquals(1000L, copy.getDateRangeStart());
+        assertEquals(2000L, copy.getDateRangeEnd());
+        assertEquals(segment.getInputRecords(), copy.getInputRecords());
+        assertEquals(segment.getRowCount(), copy.getRowCount());
+
+        TblColRef col = cube.getDescriptor().listDimensionColumnsExcludingDerived(true).get(0);
+        Dictionary<String> dict = copy.getDictionary(col);
+        assertEquals(3, dict.getSize());
+        for (String value : new String[] { "a", "b", "c" }) {
+            assertEquals(segment.getDictionary(col).getIdFromValue(value), dict.getIdFromValue(value));
+        }
+
+        assertEquals(segment.getAllCuboidRows().keySet(), copy.getAllCuboidRows().keySet());
+        for (Map.Entry<Long, List<byte[]>> entry : segment.getAllCuboidRows().entrySet()) {
+            List<byte[]> rows = copy.getCuboidRows(entry.getKey());
+            assertEquals(entry.getValue().size(), rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                assertArrayEquals(entry.getValue().get(i), rows.get(i));
+            }
+        }
+    }
+
+    static InMemSegment mockupSegment(CubeInstance cube, long start, long end) {
+        TrieDictionaryBuilder<String> builder = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        builder.addValue("a");
+        builder.addValue("b");
+        builder.addValue("c");
+        Map<TblColRef, Dictionary<String>> dictionaryMap = Maps.newHashMap();
+        dictionaryMap.put(cube.getDescriptor().listDimensionColumnsExcludingDerived(true).get(0), builder.build(0));
+
+        Map<Long, List<byte[]>> cuboidRows = Maps.newHashMap();
+        cuboidRows.put(1L, Lists.newArrayList(Bytes.toBytes("row1"), Bytes.toBytes("row2")));
+        cuboidRows.put(3L, Lists.<byte[]> newArrayList(Bytes.toBytes("row3")));
+
+        InMemSegment segment = new InMemSegment(cube, UUID.randomUUID().toString(), start, end, dictionaryMap, cuboidRows);
+        segment.setInputRecords(10);
+        return segment;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.metadata.filter.ColumnTupleFilter;
+import org.apache.kylin.metadata.filter.CompareTupleFilter;
+import org.apache.kylin.metadata.filter.ConstantTupleFilter;
+import org.apache.kylin.metadata.filter.LogicalTupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter.FilterOperatorEnum;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class GTBatchScannerTest extends LocalFileMetadataTestCase {
+
+    static GTInfo INFO;
+    static List<GTRecord> DATA;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        staticCreateTestMetadata();
+        INFO = UnitTestSupport.advancedInfo();
+        DATA = UnitTestSupport.mockupData(INFO, 1000);
+    }
+
+    @AfterClass
+    public static void after() throws Exception {
+        cleanAfterClass();
+    }
+
+    @Test
+    public void testFilter() throws IOException {
+        // c2 = 'Food' AND (c1 IN ('Yang', 'Xu') OR NOT c0 < '2015-02-01')
+        TupleFilter filter = and(compare(2, FilterOperatorEnum.EQ, "Food"), //
+                or(compare(1, FilterOperatorEnum.IN, "Yang", "Xu"), not(compare(0, FilterOperatorEnum.LT, "2015-02-01"))));
+        GTScanRequest req = new GTScanRequestBuilder().setInfo(INFO).setRanges(null).setDimensions(null).setFilterPushDown(filter).createGTScanRequest();
+
+        List<String> expected = scan(req.decorateScanner(input()));
+        List<String> actual = scan(req.decorateScannerInBatches(input(), 64, Long.MAX_VALUE));
+        assertTrue(expected.size() > 0 && expected.size() < DATA.size());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testFilterAndAggregate() throws IOException {
+        TupleFilter filter = compare(1, FilterOperatorEnum.NOTIN, "Luke", "Dong");
+        GTScanRequest req = new GTScanRequestBuilder().setInfo(INFO).setRanges(null).setDimensions(null).setAggrGroupBy(ImmutableBitSet.valueOf(0, 2)).setAggrMetrics(ImmutableBitSet.valueOf(3, 4)).setAggrMetricsFuncs(new String[] { "count", "sum" }).setFilterPushDown(filter).createGTScanRequest();
+
+        List<String> expected = scan(req.decorateScanner(input()));
+        List<String> actual = scan(req.decorateScannerInBatches(input(), 64, Long.MAX_VALUE));
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, actual);
+    }
+
+    private List<String> scan(IGTScanner scanner) throws IOException {
+        List<String> result = Lists.newArrayList();
+        for (GTRecord r : scanner) {
+            result.add(r.toString());
+        }
+        scanner.close();
+        return result;
+    }
+
+    private IGTScanner input() {
+        return new IGTScanner() {
+            @Override
+            public GTInfo getInfo() {
+                return INFO;
+            }
+
+            @Override
+            public long getScannedRowCount() {
+                return DATA.size();
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+
+            @Override
+            public Iterator<GTRecord> iterator() {
+                return DATA.iterator();
+            }
+        };
+    }
+
+    private CompareTupleFilter compare(int col, FilterOperatorEnum op, Object... values) {
+        CompareTupleFilter r = new CompareTupleFilter(op);
+        r.addChild(new ColumnTupleFilter(INFO.colRef(col)));
+        List<ByteArray> codes = Lists.newArrayList();
+        for (Object v : values) {
+            GTRecord rec = new GTRecord(INFO).setValues(ImmutableBitSet.valueOf(col), new ByteArray(256), v);
+            codes.add(rec.get(col));
+        }
+        r.addChild(new ConstantTupleFilter(codes));
+        return r;
+    }
+
+    private LogicalTupleFilter and(TupleFilter... filters) {
+        return logical(FilterOperatorEnum.AND, filters);
+    }
+
+    private LogicalTupleFilter or(TupleFilter... filters) {
+        return logical(FilterOperatorEnum.OR, filters);
+    }
+
+    private LogicalTupleFilter not(TupleFilter filter) {
+        return logical(FilterOperatorEnum.NOT, new TupleFilter[] { filter });
+    }
+
+    private LogicalTupleFilter logical(FilterOperatorEnum op, TupleFilter[] filters) {
+        LogicalTupleFilter r = new LogicalTupleFilter(op);
+        for (TupleFilter f : filters)
+            r.addChild(f);
+        return r;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.gridtable.memstore.GTMappedFileStore;
+import org.apache.kylin.gridtable.memstore.GTSimpleMemStore;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class GTMappedFileStoreTest extends LocalFileMetadataTestCase {
+
+    private File file;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        staticCreateTestMetadata();
+    }
+
+    @AfterClass
+    public static void after() throws Exception {
+        cleanAfterClass();
+    }
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("GTMappedFileStoreTest", ".gt");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void testScan() throws IOException {
+        GTInfo info = UnitTestSupport.advancedInfo();
+        GTMappedFileStore store = new GTMappedFileStore(info, file);
+        GridTable table = new GridTable(info, store);
+
+        GTBuilder builder = SimpleGridTableTest.rebuild(table);
+        assertEquals(builder.getWrittenRowCount(), store.getRowCount());
+
+        List<GTRecord> expected = UnitTestSupport.mockupData(info, 10);
+        List<GTRecord> actual = scan(table, null);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i).getValues(), actual.get(i).getValues());
+        }
+    }
+
+    @Test
+    public void testAppend() throws IOException {
+        GTInfo info = UnitTestSupport.advancedInfo();
+        GTMappedFileStore store = new GTMappedFileStore(info, file);
+        GridTable table = new GridTable(info, store);
+
+        SimpleGridTableTest.rebuildViaAppend(table);
+        assertEquals(10, store.getRowCount());
+        assertEquals(10, scan(table, null).size());
+    }
+
+    @Test
+    public void testAggregateSameAsMemStore() throws IOException {
+        GTInfo info = UnitTestSupport.advancedInfo();
+        GridTable mapped = new GridTable(info, new GTMappedFileStore(info, file));
+        GridTable mem = new GridTable(info, new GTSimpleMemStore(info));
+        SimpleGridTableTest.rebuild(mapped);
+        SimpleGridTableTest.rebuild(mem);
+
+        GTScanRequest req = new GTScanRequestBuilder().setInfo(info).setRanges(null).setDimensions(null).setAggrGroupBy(setOf(0, 2)).setAggrMetrics(setOf(3, 4)).setAggrMetricsFuncs(new String[] { "count", "sum" }).setFilterPushDown(null).createGTScanRequest();
+        List<GTRecord> expected = scan(mem, req);
+        List<GTRecord> actual = scan(mapped, req);
+        assertEquals(4, actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i).getValues(), actual.get(i).getValues());
+        }
+    }
+
+    @Test
+    public void testDrop() throws IOException {
+        GTInfo info = UnitTestSupport.advancedInfo();
+        GTMappedFileStore store = new GTMappedFileStore(info, file);
+        GridTable table = new GridTable(info, store);
+        SimpleGridTableTest.rebuild(table);
+
+        // a scan started before the drop keeps its rows
+        IGTScanner running = store.scan(new GTScanRequestBuilder().setInfo(info).setRanges(null).setDimensions(null).setFilterPushDown(null).createGTScanRequest());
+        store.drop();
+        assertFalse(file.exists());
+        assertEquals(0, store.getRowCount());
+
+        int count = 0;
+        for (GTRecord r : running) {
+            count++;
+        }
+        assertEquals(10, count);
+        assertEquals(0, scan(table, null).size());
+    }
+
+    private List<GTRecord> scan(GridTable table, GTScanRequest req) throws IOException {
+        if (req == null) {
+            req = new GTScanRequestBuilder().setInfo(table.getInfo()).setRanges(null).setDimensions(null).setFilterPushDown(null).createGTScanRequest();
+        }
+        List<GTRecord> result = Lists.newArrayList();
+        IGTScanner scanner = table.scan(req);
+        for (GTRecord r : scanner) {
+            result.add(r.copy());
+        }
+        scanner.close();
+        return result;
+    }
+
+    private static ImmutableBitSet setOf(int... values) {
+        return ImmutableBitSet.valueOf(values);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class GTSampleScaleScannerTest extends LocalFileMetadataTestCase {
+
+    static GTInfo INFO;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        staticCreateTestMetadata();
+        INFO = UnitTestSupport.basicInfo();
+    }
+
+    @AfterClass
+    public static void after() throws Exception {
+        cleanAfterClass();
+    }
+
+    @Test
+    public void testScaleSumAndCount() throws IOException {
+        GTScanRequest req = newRequest(new String[] { "SUM", "COUNT" }).setSamplingPercentage(40).createGTScanRequest();
+
+        int count = 0;
+        for (GTRecord rec : new GTSampleScaleScanner(input(), req, 2.5)) {
+            assertEquals(25, ((LongMutable) rec.getValues()[3]).get());
+            assertEquals(0, new BigDecimal("26.25").compareTo((BigDecimal) rec.getValues()[4]));
+            count++;
+        }
+        assertEquals(10, count);
+    }
+
+    @Test
+    public void testOtherMeasuresUnscaled() throws IOException {
+        GTScanRequest req = newRequest(new String[] { "MIN", "MAX" }).setSamplingPercentage(40).createGTScanRequest();
+
+        for (GTRecord rec : new GTSampleScaleScanner(input(), req, 2.5)) {
+            assertEquals(10, ((LongMutable) rec.getValues()[3]).get());
+            assertEquals(0, new BigDecimal("10.5").compareTo((BigDecimal) rec.getValues()[4]));
+        }
+    }
+
+    @Test
+    public void testIsApplicable() {
+        assertTrue(GTSampleScaleScanner.isApplicable(newRequest(new String[] { "SUM", "SUM" }).setSamplingPercentage(40).createGTScanRequest()));
+
+        // not sampling unless asked, whatever the debug toggles of the thread
+        assertFalse(GTSampleScaleScanner.isApplicable(newRequest(new String[] { "SUM", "SUM" }).createGTScanRequest()));
+        assertFalse(GTSampleScaleScanner.isApplicable(newRequest(new String[] { "SUM", "SUM" }).setSamplingPercentage(100).createGTScanRequest()));
+
+        GTScanRequest noAggr = new GTScanRequestBuilder().setInfo(INFO).setRanges(null).setDimensions(null).setFilterPushDown(null).setSamplingPercentage(40).createGTScanRequest();
+        assertFalse(GTSampleScaleScanner.isApplicable(noAggr));
+    }
+
+    private GTScanRequestBuilder newRequest(String[] funcs) {
+        return new GTScanRequestBuilder().setInfo(INFO).setRanges(null).setDimensions(new ImmutableBitSet(0, 3)).setAggrGroupBy(new ImmutableBitSet(0, 3)).setAggrMetrics(new ImmutableBitSet(3, 5)).setAggrMetricsFuncs(funcs).setFilterPushDown(null);
+    }
+
+    // fresh records each time, the scanner scales the values in place
+    private IGTScanner input() {
+        final List<GTRecord> data = UnitTestSupport.mockupData(INFO, 10);
+        return new IGTScanner() {
+            @Override
+            public GTInfo getInfo() {
+                return INFO;
+            }
+
+            @Override
+            public long getScannedRowCount() {
+                return data.size();
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+
+            @Override
+            public Iterator<GTRecord> iterator() {
+                return data.iterator();
+            }
+        };
+    }
+}
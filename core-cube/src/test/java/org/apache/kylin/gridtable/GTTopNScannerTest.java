@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.gridtable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.kylin.common.util.BytesSerializer;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class GTTopNScannerTest extends LocalFileMetadataTestCase {
+
+    static GTInfo INFO;
+    static List<GTRecord> DATA;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        staticCreateTestMetadata();
+        INFO = UnitTestSupport.advancedInfo();
+        DATA = UnitTestSupport.mockupData(INFO, 1000);
+    }
+
+    @AfterClass
+    public static void after() throws Exception {
+        cleanAfterClass();
+    }
+
+    @Test
+    public void testTopNAfterAggregate() throws IOException {
+        GTScanRequest all = newRequest().createGTScanRequest();
+        GTScanRequest top = newRequest().setStorageTopN(3, new int[] { 4 }, new boolean[] { true }).createGTScanRequest();
+
+        List<GTRecord> expected = scan(all.decorateScanner(input()));
+        Collections.sort(expected, new Comparator<GTRecord>() {
+            @Override
+            public int compare(GTRecord o1, GTRecord o2) {
+                return sumOf(o2).compareTo(sumOf(o1));
+            }
+        });
+        expected = expected.subList(0, 3);
+
+        List<GTRecord> actual = scan(top.decorateScanner(input()));
+        assertEquals(3, actual.size());
+        for (int i = 0; i < actual.size(); i++) {
+            assertEquals(sumOf(expected.get(i)), sumOf(actual.get(i)));
+        }
+
+        List<GTRecord> batched = scan(top.decorateScannerInBatches(input(), 64, Long.MAX_VALUE));
+        assertEquals(actual.toString(), batched.toString());
+    }
+
+    @Test
+    public void testSerialize() {
+        GTScanRequest req = newRequest().setStorageTopN(10, new int[] { 3, 4 }, new boolean[] { false, true }).createGTScanRequest();
+        assertTrue(req.hasStorageTopN());
+
+        ByteBuffer buffer = ByteBuffer.allocate(BytesSerializer.SERIALIZE_BUFFER_SIZE);
+        GTScanRequest.serializer.serialize(req, buffer);
+        buffer.flip();
+        GTScanRequest sReq = GTScanRequest.serializer.deserialize(buffer);
+
+        assertEquals(10, sReq.getStorageTopN());
+        assertArrayEquals(new int[] { 3, 4 }, sReq.getStorageTopNColumns());
+        assertTrue(sReq.getStorageTopNDescending()[1]);
+    }
+
+    private GTScanRequestBuilder newRequest() {
+        return new GTScanRequestBuilder().setInfo(INFO).setRanges(null).setDimensions(null).setAggrGroupBy(ImmutableBitSet.valueOf(0, 2)).setAggrMetrics(ImmutableBitSet.valueOf(3, 4)).setAggrMetricsFuncs(new String[] { "count", "sum" });
+    }
+
+    private static BigDecimal sumOf(GTRecord r) {
+        return (BigDecimal) r.getValues(new int[] { 4 }, new Object[1])[0];
+    }
+
+    private List<GTRecord> scan(IGTScanner scanner) throws IOException {
+        List<GTRecord> result = Lists.newArrayList();
+        for (GTRecord r : scanner) {
+            result.add(r.copy());
+        }
+        scanner.close();
+        return result;
+    }
+
+    private IGTScanner input() {
+        return new IGTScanner() {
+            @Override
+            public GTInfo getInfo() {
+                return INFO;
+            }
+
+            @Override
+            public long getScannedRowCount() {
+                return DATA.size();
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+
+            @Override
+            public Iterator<GTRecord> iterator() {
+                return DATA.iterator();
+            }
+        };
+    }
+}
@@ -30,11 +30,17 @@ import java.io.UnsupportedEncodingException;
 import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
@@ -52,6 +58,9 @@ import org.apache.kylin.common.util.Dictionary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+import com.google.common.primitives.UnsignedBytes;
+
 /**
  * A dictionary based on Trie data structure that maps enumerations of byte[] to
  * int IDs, used for global dictionary.
@@ -63,7 +72,9 @@ import org.slf4j.LoggerFactory;
  * roughly 10 times slower, so there's a cache layer overlays on top of Trie and
  * gracefully fall back to Trie using a weak reference.
  * 
- * The implementation is NOT thread-safe for now.
+ * The implementation is NOT thread-safe for now, except that {@link Builder#addValues(List)} inserts into different
+ * slices in parallel. The slices are versioned, a built dictionary keeps reading the slices of its own index while
+ * a later builder appends.
  *
  * TODO making it thread-safe
  * 
@@ -794,7 +805,7 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
             MAX_ENTRY_IN_SLICE = KylinConfig.getInstanceFromEnv().getAppendDictEntrySize();
             int cacheSize = KylinConfig.getInstanceFromEnv().getAppendDictCacheSize();
             // create a new cached map with baseDir
-            mutableDictSliceMap = CachedTreeMap.CachedTreeMapBuilder.newBuilder().maxSize(cacheSize).baseDir(baseDir).keyClazz(DictSliceKey.class).valueClazz(DictNode.class).persistent(true).immutable(false).build();
+            mutableDictSliceMap = CachedTreeMap.CachedTreeMapBuilder.newBuilder().maxSize(cacheSize).baseDir(baseDir).keyClazz(DictSliceKey.class).valueClazz(DictNode.class).persistent(true).immutable(false).versioned(true).build();
             if (dictMapBytes != null) {
                 ((Writable) mutableDictSliceMap).readFields(new DataInputStream(new ByteArrayInputStream(dictMapBytes)));
             }
@@ -819,14 +830,145 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
                 sliceKey = mutableDictSliceMap.firstKey();
             }
             DictNode root = mutableDictSliceMap.get(sliceKey);
+            int nValuesBefore = nValues;
             addValueR(root, value, 0);
+            if (nValues != nValuesBefore) {
+                // put again to mark the slice changed, only changed slices are written
+                mutableDictSliceMap.put(sliceKey, root);
+                splitIfNeeded(sliceKey, root);
+            }
+        }
+
+        /**
+         * Add a batch of values in bulk. The values are sorted and partitioned by slice, each slice is probed for
+         * values already in the dictionary being appended, then only the new values are inserted, into different
+         * slices in parallel. Slices without a new value are neither loaded nor written.
+         */
+        public void addValues(List<byte[]> values) {
+            if (values.isEmpty()) {
+                return;
+            }
+            processedCount += values.size();
+            List<byte[]> sorted = Lists.newArrayList(values);
+            Collections.sort(sorted, UnsignedBytes.lexicographicalComparator());
+            for (byte[] value : sorted) {
+                maxValueLength = Math.max(maxValueLength, value.length);
+            }
+            if (mutableDictSliceMap.isEmpty()) {
+                DictNode root = new DictNode(new byte[0], false);
+                mutableDictSliceMap.put(DictSliceKey.wrap(new byte[0]), root);
+            }
+
+            // partition the sorted values by the slices they fall into
+            final List<DictSliceKey> sliceKeys = Lists.newArrayList();
+            final List<List<byte[]>> sliceValues = Lists.newArrayList();
+            int i = 0;
+            while (i < sorted.size()) {
+                DictSliceKey sliceKey = mutableDictSliceMap.floorKey(DictSliceKey.wrap(sorted.get(i)));
+                if (sliceKey == null) {
+                    sliceKey = mutableDictSliceMap.firstKey();
+                }
+                DictSliceKey nextKey = mutableDictSliceMap.higherKey(sliceKey);
+                int j = i + 1;
+                while (j < sorted.size() && (nextKey == null || DictSliceKey.wrap(sorted.get(j)).compareTo(nextKey) < 0)) {
+                    j++;
+                }
+                sliceKeys.add(sliceKey);
+                sliceValues.add(sorted.subList(i, j));
+                i = j;
+            }
+
+            int threads = Math.max(1, KylinConfig.getInstanceFromEnv().getAppendDictThreads());
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                // probe, drop duplicates and the values the appended dictionary already has
+                List<Future<List<byte[]>>> probes = Lists.newArrayList();
+                for (final List<byte[]> group : sliceValues) {
+                    probes.add(pool.submit(new Callable<List<byte[]>>() {
+                        @Override
+                        public List<byte[]> call() throws Exception {
+                            List<byte[]> newValues = Lists.newArrayList();
+                            byte[] last = null;
+                            for (byte[] value : group) {
+                                if (last != null && Arrays.equals(last, value)) {
+                                    continue;
+                                }
+                                last = value;
+                                if (dict == null || !dict.containsValue(value)) {
+                                    newValues.add(value);
+                                }
+                            }
+                            return newValues;
+                        }
+                    }));
+                }
+                List<Integer> changed = Lists.newArrayList();
+                for (int k = 0; k < probes.size(); k++) {
+                    List<byte[]> newValues = waitFor(probes.get(k));
+                    if (!newValues.isEmpty()) {
+                        sliceValues.set(k, newValues);
+                        changed.add(k);
+                    }
+                }
+                logger.debug("add {} values, {} slices probed, {} slices changed", values.size(), sliceKeys.size(), changed.size());
+
+                // insert in waves of slices, the slice map itself is only accessed by this thread
+                int waveSize = Math.max(1, Math.min(threads, KylinConfig.getInstanceFromEnv().getAppendDictCacheSize()));
+                for (int w = 0; w < changed.size(); w += waveSize) {
+                    List<Integer> wave = changed.subList(w, Math.min(w + waveSize, changed.size()));
+                    List<DictNode> roots = Lists.newArrayList();
+                    List<Future<?>> inserts = Lists.newArrayList();
+                    for (final int k : wave) {
+                        final DictNode root = mutableDictSliceMap.get(sliceKeys.get(k));
+                        roots.add(root);
+                        inserts.add(pool.submit(new Callable<Void>() {
+                            @Override
+                            public Void call() throws Exception {
+                                for (byte[] value : sliceValues.get(k)) {
+                                    addValueR(root, value, 0);
+                                }
+                                return null;
+                            }
+                        }));
+                    }
+                    for (Future<?> insert : inserts) {
+                        waitFor(insert);
+                    }
+                    for (int k = 0; k < wave.size(); k++) {
+                        DictSliceKey sliceKey = sliceKeys.get(wave.get(k));
+                        mutableDictSliceMap.put(sliceKey, roots.get(k));
+                        splitIfNeeded(sliceKey, roots.get(k));
+                    }
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        private <V> V waitFor(Future<V> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while appending dictionary", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Failed to append dictionary", e.getCause());
+            }
+        }
+
+        private void splitIfNeeded(DictSliceKey sliceKey, DictNode root) {
             if (root.childrenCount > MAX_ENTRY_IN_SLICE * MAX_ENTRY_OVERHEAD_FACTOR) {
                 mutableDictSliceMap.remove(sliceKey);
                 DictNode newRoot = splitNodeTree(root);
                 DictNode.mergeSingleByteNode(root, 1);
                 DictNode.mergeSingleByteNode(newRoot, 0);
-                mutableDictSliceMap.put(DictSliceKey.wrap(root.firstValue()), root);
-                mutableDictSliceMap.put(DictSliceKey.wrap(newRoot.firstValue()), newRoot);
+                DictSliceKey key = DictSliceKey.wrap(root.firstValue());
+                DictSliceKey newKey = DictSliceKey.wrap(newRoot.firstValue());
+                mutableDictSliceMap.put(key, root);
+                mutableDictSliceMap.put(newKey, newRoot);
+                // a bulk append may grow a slice beyond twice the limit
+                splitIfNeeded(key, root);
+                splitIfNeeded(newKey, newRoot);
             }
         }
 
@@ -857,7 +999,7 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
             return DictNode.splitNodeTree(splitNode);
         }
 
-        private int createNextId() {
+        private synchronized int createNextId() {
             int id = ++maxId;
             if (maxId < 0) {
                 throw new IllegalArgumentException("AppendTrieDictionary Id overflow Integer.MAX_VALUE");
@@ -952,6 +1094,8 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
             }
             dict.update(baseDir, baseId, maxId, maxValueLength, nValues, bytesConverter, (CachedTreeMap)mutableDictSliceMap);
             dict.flushIndex((CachedTreeMap) mutableDictSliceMap);
+            // changed slices got their new versions when the index was flushed
+            ((CachedTreeMap) dict.dictSliceMap).loadEntry((CachedTreeMap) mutableDictSliceMap);
 
             return dict;
         }
@@ -975,6 +1119,19 @@ public class AppendTrieDictionary<T> extends Dictionary<T> {
         return id;
     }
 
+    // lookup without logging a missing value, safe to call from several threads as the slice map is immutable
+    private boolean containsValue(byte[] value) {
+        if (dictSliceMap.isEmpty()) {
+            return false;
+        }
+        DictSliceKey sliceKey = dictSliceMap.floorKey(DictSliceKey.wrap(value));
+        if (sliceKey == null) {
+            sliceKey = dictSliceMap.firstKey();
+        }
+        DictSlice slice = dictSliceMap.get(sliceKey);
+        return slice.getIdFromValueBytesImpl(value, 0, value.length, 0) >= 0;
+    }
+
     @Override
     public int getMinId() {
         return baseId;
@@ -19,10 +19,18 @@
 package org.apache.kylin.dict;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.ListIterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.LoggableCachedThreadPool;
 import org.apache.kylin.dimension.IDimensionEncodingMap;
+import org.apache.kylin.metadata.filter.BitmapInTupleFilter;
 import org.apache.kylin.metadata.filter.BuiltInFunctionTupleFilter;
 import org.apache.kylin.metadata.filter.ColumnTupleFilter;
 import org.apache.kylin.metadata.filter.CompareTupleFilter;
@@ -31,23 +39,53 @@ import org.apache.kylin.metadata.filter.ITupleFilterTransformer;
 import org.apache.kylin.metadata.filter.LogicalTupleFilter;
 import org.apache.kylin.metadata.filter.TupleFilter;
 import org.apache.kylin.metadata.filter.TupleFilter.FilterOperatorEnum;
+import org.apache.kylin.metadata.filter.function.BuiltInMethod;
 import org.apache.kylin.metadata.model.TblColRef;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Primitives;
 
 /**
  * only take effect when the compare filter has function
+ *
+ * The dictionary is scanned for the ids whose values match the function, in parallel for a big dictionary. The
+ * matched ids are cached per dictionary and function filter, and translated into either an IN filter of the matched
+ * values, or a {@link BitmapInTupleFilter} of the ids for a filter evaluated on encoded records.
  */
 public class BuiltInFunctionTransformer implements ITupleFilterTransformer {
     public static final Logger logger = LoggerFactory.getLogger(BuiltInFunctionTransformer.class);
 
+    // a smaller dictionary is scanned by the calling thread
+    private static final int PARALLEL_SCAN_MIN_IDS = 100000;
+
+    private static final ExecutorService scanPool = new LoggableCachedThreadPool();
+
+    // weak keys, released together with the dictionary
+    private static final Cache<Dictionary<?>, Cache<String, ImmutableRoaringBitmap>> matchedIdsCache = CacheBuilder.newBuilder().weakKeys().build();
+
     private IDimensionEncodingMap dimEncMap;
+    private boolean toBitmapFilter;
 
     public BuiltInFunctionTransformer(IDimensionEncodingMap dimEncMap) {
+        this(dimEncMap, false);
+    }
+
+    /**
+     * @param toBitmapFilter translate into a {@link BitmapInTupleFilter} instead of an IN clause, only when the
+     *                       filter is evaluated on records encoded by the dictionaries, like grid table records
+     */
+    public BuiltInFunctionTransformer(IDimensionEncodingMap dimEncMap, boolean toBitmapFilter) {
         this.dimEncMap = dimEncMap;
+        this.toBitmapFilter = toBitmapFilter;
     }
 
     @Override
@@ -80,7 +118,7 @@ public class BuiltInFunctionTransformer implements ITupleFilterTransformer {
         return translated == null ? tupleFilter : translated;
     }
 
-    private TupleFilter translateFunctionTupleFilter(BuiltInFunctionTupleFilter builtInFunctionTupleFilter) {
+    private TupleFilter translateFunctionTupleFilter(final BuiltInFunctionTupleFilter builtInFunctionTupleFilter) {
         if (!builtInFunctionTupleFilter.isValid())
             return null;
 
@@ -89,25 +127,39 @@ public class BuiltInFunctionTransformer implements ITupleFilterTransformer {
         if (dict == null)
             return null;
 
-        CompareTupleFilter translated = new CompareTupleFilter(FilterOperatorEnum.IN);
-        translated.addChild(new ColumnTupleFilter(columnRef));
-
         try {
-            for (int i = dict.getMinId(); i <= dict.getMaxId(); i++) {
-                Object dictVal = dict.getValueFromId(i);
-                if ((Boolean) builtInFunctionTupleFilter.invokeFunction(dictVal)) {
-                    translated.addChild(new ConstantTupleFilter(dictVal));
-                }
+            final Function<Object, Object> function = builtInFunctionTupleFilter.compileFunction();
+            Predicate<Object> predicate;
+            if (function != null) {
+                predicate = new Predicate<Object>() {
+                    @Override
+                    public boolean apply(Object dictVal) {
+                        return (Boolean) function.apply(dictVal);
+                    }
+                };
+            } else {
+                predicate = new Predicate<Object>() {
+                    @Override
+                    public boolean apply(Object dictVal) {
+                        try {
+                            return (Boolean) builtInFunctionTupleFilter.invokeFunction(dictVal);
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                };
             }
+            // invokeFunction() is not thread safe
+            ImmutableRoaringBitmap ids = getMatchedIds(dict, builtInFunctionTupleFilter.toString(), predicate, function != null);
+            return toFilter(columnRef, dict, ids);
         } catch (Exception e) {
             logger.debug(e.getMessage());
             return null;
         }
-        return translated;
     }
 
     @SuppressWarnings({ "unchecked", "rawtypes" })
-    private TupleFilter translateCompareTupleFilter(CompareTupleFilter compTupleFilter) {
+    private TupleFilter translateCompareTupleFilter(final CompareTupleFilter compTupleFilter) {
         if (compTupleFilter.getFunction() == null || (!(compTupleFilter.getFunction() instanceof BuiltInFunctionTupleFilter)))
             return null;
 
@@ -121,58 +173,135 @@ public class BuiltInFunctionTransformer implements ITupleFilterTransformer {
         if (dict == null)
             return null;
 
-        CompareTupleFilter translated = new CompareTupleFilter(FilterOperatorEnum.IN);
-        translated.addChild(new ColumnTupleFilter(columnRef));
+        final Function<Object, Object> function = builtInFunctionTupleFilter.compileFunction();
+        if (function == null)
+            return null;
 
         try {
-            Collection<Object> inValues = Lists.newArrayList();
-            for (int i = dict.getMinId(); i <= dict.getMaxId(); i++) {
-                Object dictVal = dict.getValueFromId(i);
-                Object computedVal = builtInFunctionTupleFilter.invokeFunction(dictVal);
-                Class clazz = Primitives.wrap(computedVal.getClass());
-                Object targetVal = compTupleFilter.getFirstValue();
-                if (Primitives.isWrapperType(clazz))
-                    targetVal = clazz.cast(clazz.getDeclaredMethod("valueOf", String.class).invoke(null, compTupleFilter.getFirstValue()));
-
-                int comp = ((Comparable) computedVal).compareTo(targetVal);
-                boolean compResult = false;
-                switch (compTupleFilter.getOperator()) {
-                case EQ:
-                    compResult = comp == 0;
-                    break;
-                case NEQ:
-                    compResult = comp != 0;
-                    break;
-                case LT:
-                    compResult = comp < 0;
-                    break;
-                case LTE:
-                    compResult = comp <= 0;
-                    break;
-                case GT:
-                    compResult = comp > 0;
-                    break;
-                case GTE:
-                    compResult = comp >= 0;
-                    break;
-                case IN:
-                    compResult = compTupleFilter.getValues().contains(computedVal.toString());
-                    break;
-                case NOTIN:
-                    compResult = !compTupleFilter.getValues().contains(computedVal.toString());
-                    break;
-                default:
-                    break;
-                }
-                if (compResult) {
-                    inValues.add(dictVal);
+            // convert the constant once to the type the function returns
+            Class clazz = Primitives.wrap(BuiltInMethod.valueOf(builtInFunctionTupleFilter.getName()).method.getReturnType());
+            Object targetVal = compTupleFilter.getFirstValue();
+            if (Primitives.isWrapperType(clazz))
+                targetVal = clazz.cast(clazz.getDeclaredMethod("valueOf", String.class).invoke(null, compTupleFilter.getFirstValue()));
+            final Comparable target = (Comparable) targetVal;
+            final FilterOperatorEnum operator = compTupleFilter.getOperator();
+            final Collection<?> values = compTupleFilter.getValues();
+
+            Predicate<Object> predicate = new Predicate<Object>() {
+                @Override
+                public boolean apply(Object dictVal) {
+                    Object computedVal = function.apply(dictVal);
+                    if (computedVal == null)
+                        return false;
+
+                    switch (operator) {
+                    case EQ:
+                        return ((Comparable) computedVal).compareTo(target) == 0;
+                    case NEQ:
+                        return ((Comparable) computedVal).compareTo(target) != 0;
+                    case LT:
+                        return ((Comparable) computedVal).compareTo(target) < 0;
+                    case LTE:
+                        return ((Comparable) computedVal).compareTo(target) <= 0;
+                    case GT:
+                        return ((Comparable) computedVal).compareTo(target) > 0;
+                    case GTE:
+                        return ((Comparable) computedVal).compareTo(target) >= 0;
+                    case IN:
+                        return values.contains(computedVal.toString());
+                    case NOTIN:
+                        return !values.contains(computedVal.toString());
+                    default:
+                        return false;
+                    }
                 }
-            }
-            translated.addChild(new ConstantTupleFilter(inValues));
+            };
+            ImmutableRoaringBitmap ids = getMatchedIds(dict, compTupleFilter.toString(), predicate, true);
+            return toFilter(columnRef, dict, ids);
         } catch (Exception e) {
             logger.debug(e.getMessage());
             return null;
         }
+    }
+
+    private TupleFilter toFilter(TblColRef columnRef, Dictionary<?> dict, ImmutableRoaringBitmap ids) {
+        if (ids.getCardinality() == 0) {
+            return ConstantTupleFilter.FALSE;
+        }
+        if (toBitmapFilter) {
+            return new BitmapInTupleFilter(columnRef, ids, dict.getSizeOfId());
+        }
+
+        List<Object> inValues = Lists.newArrayListWithCapacity(ids.getCardinality());
+        IntIterator iterator = ids.getIntIterator();
+        while (iterator.hasNext()) {
+            inValues.add(dict.getValueFromId(iterator.next()));
+        }
+        CompareTupleFilter translated = new CompareTupleFilter(FilterOperatorEnum.IN);
+        translated.addChild(new ColumnTupleFilter(columnRef));
+        translated.addChild(new ConstantTupleFilter(inValues));
         return translated;
     }
-}
\ No newline at end of file
+
+    private ImmutableRoaringBitmap getMatchedIds(Dictionary<?> dict, String filterKey, Predicate<Object> predicate, boolean parallel) throws ExecutionException, InterruptedException {
+        Cache<String, ImmutableRoaringBitmap> cache = matchedIdsCache.get(dict, new Callable<Cache<String, ImmutableRoaringBitmap>>() {
+            @Override
+            public Cache<String, ImmutableRoaringBitmap> call() throws Exception {
+                return CacheBuilder.newBuilder().maximumSize(KylinConfig.getInstanceFromEnv().getQueryDictFilterCacheSize()).<String, ImmutableRoaringBitmap> build();
+            }
+        });
+        ImmutableRoaringBitmap ids = cache.getIfPresent(filterKey);
+        if (ids == null) {
+            long start = System.currentTimeMillis();
+            ids = scanDictionary(dict, predicate, parallel);
+            cache.put(filterKey, ids);
+            logger.info("Scanned " + (dict.getMaxId() - dict.getMinId() + 1) + " ids of dictionary for {" + filterKey + "}, " + ids.getCardinality() + " matched, took " + (System.currentTimeMillis() - start) + " ms");
+        }
+        return ids;
+    }
+
+    private MutableRoaringBitmap scanDictionary(final Dictionary<?> dict, final Predicate<Object> predicate, boolean parallel) throws ExecutionException, InterruptedException {
+        int minId = dict.getMinId();
+        int maxId = dict.getMaxId();
+        int threads = KylinConfig.getInstanceFromEnv().getQueryDictFilterThreads();
+        if (!parallel || threads <= 1 || maxId - minId + 1 < PARALLEL_SCAN_MIN_IDS) {
+            return scanDictionary(dict, predicate, minId, maxId);
+        }
+
+        int chunk = (maxId - minId + threads) / threads;
+        List<Future<MutableRoaringBitmap>> futures = Lists.newArrayList();
+        try {
+            for (int from = minId; from <= maxId; from += chunk) {
+                final int start = from;
+                final int end = Math.min(maxId, from + chunk - 1);
+                futures.add(scanPool.submit(new Callable<MutableRoaringBitmap>() {
+                    @Override
+                    public MutableRoaringBitmap call() throws Exception {
+                        return scanDictionary(dict, predicate, start, end);
+                    }
+                }));
+            }
+            MutableRoaringBitmap ids = new MutableRoaringBitmap();
+            for (Future<MutableRoaringBitmap> future : futures) {
+                ids.or(future.get());
+            }
+            ids.runOptimize();
+            return ids;
+        } finally {
+            for (Future<MutableRoaringBitmap> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static MutableRoaringBitmap scanDictionary(Dictionary<?> dict, Predicate<Object> predicate, int minId, int maxId) {
+        MutableRoaringBitmap ids = new MutableRoaringBitmap();
+        for (int i = minId; i <= maxId; i++) {
+            if (predicate.apply(dict.getValueFromId(i))) {
+                ids.add(i);
+            }
+        }
+        ids.runOptimize();
+        return ids;
+    }
+}
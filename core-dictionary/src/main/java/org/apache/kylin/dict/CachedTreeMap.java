@@ -23,7 +23,10 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.util.AbstractCollection;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
@@ -31,8 +34,11 @@ import java.util.concurrent.ExecutionException;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileContext;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Options;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
@@ -48,6 +54,11 @@ import com.google.common.cache.RemovalNotification;
 /**
  * Created by sunyerui on 16/5/2.
  * TODO Depends on HDFS for now, ideally just depends on storage interface
+ *
+ * A versioned mutable map never overwrites the value files of the committed index. Changed values are written
+ * into new files of the current version under baseDir, only the index is staged in tmpDir and moved into baseDir
+ * on commit. So readers of the previous index keep a consistent snapshot, and unchanged values are not copied.
+ * Files of the previous index are kept on commit, older ones are deleted.
  */
 public class CachedTreeMap<K extends WritableComparable, V extends Writable> extends TreeMap<K, V> implements Writable {
     private static final Logger logger = LoggerFactory.getLogger(CachedTreeMap.class);
@@ -63,10 +74,20 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
     private final FileSystem fs;
     private final boolean persistent;
     private final boolean immutable;
+    private final boolean versioned;
+    // version of the value file of each key, no entry or 0 for the unversioned file
+    private final TreeMap<K, Long> versions = new TreeMap<>();
+    // versions of the last committed index, whose files must be kept for its readers
+    private final TreeMap<K, Long> committedVersions = new TreeMap<>();
+    // keys whose values changed since the last commit, only for a versioned map
+    private final TreeSet<K> dirtyKeys = new TreeSet<>();
+    private long currentVersion;
     private long writeValueTime = 0;
     private long readValueTime = 0;
 
     private static final int BUFFER_SIZE = 8 * 1024 * 1024;
+    // written instead of the size ahead of an index with versions, an old index starts with the size
+    private static final int VERSIONED_FORMAT = -1;
 
     public static class CachedTreeMapBuilder<K, V> {
         private Class<K> keyClazz;
@@ -75,6 +96,7 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
         private String baseDir;
         private boolean persistent;
         private boolean immutable;
+        private boolean versioned;
 
         public static CachedTreeMapBuilder newBuilder() {
             return new CachedTreeMapBuilder();
@@ -113,6 +135,11 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
             return this;
         }
 
+        public CachedTreeMapBuilder<K, V> versioned(boolean versioned) {
+            this.versioned = versioned;
+            return this;
+        }
+
         public CachedTreeMap build() throws IOException {
             if (baseDir == null) {
                 throw new RuntimeException("CachedTreeMap need a baseDir to cache data");
@@ -120,12 +147,12 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
             if (keyClazz == null || valueClazz == null) {
                 throw new RuntimeException("CachedTreeMap need key and value clazz to serialize data");
             }
-            CachedTreeMap map = new CachedTreeMap(maxCount, keyClazz, valueClazz, baseDir, persistent, immutable);
+            CachedTreeMap map = new CachedTreeMap(maxCount, keyClazz, valueClazz, baseDir, persistent, immutable, versioned);
             return map;
         }
     }
 
-    private CachedTreeMap(int maxCount, Class<K> keyClazz, Class<V> valueClazz, String baseDir, boolean persistent, boolean immutable) throws IOException {
+    private CachedTreeMap(int maxCount, Class<K> keyClazz, Class<V> valueClazz, String baseDir, boolean persistent, boolean immutable, boolean versioned) throws IOException {
         super();
         this.keyClazz = keyClazz;
         this.valueClazz = valueClazz;
@@ -140,17 +167,24 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
         this.fs = FileSystem.get(new Path(baseDir).toUri(), conf);
         this.persistent = persistent;
         this.immutable = immutable;
+        this.versioned = versioned && !immutable;
+        this.currentVersion = System.currentTimeMillis();
         CacheBuilder builder = CacheBuilder.newBuilder().removalListener(new RemovalListener<K, V>() {
             @Override
             public void onRemoval(RemovalNotification<K, V> notification) {
                 logger.info(String.format("Evict cache key %s(%d) with value %s caused by %s, size %d/%d ", notification.getKey(), notification.getKey().hashCode(), notification.getValue(), notification.getCause(), size(), valueCache.size()));
                 switch (notification.getCause()) {
                 case SIZE:
-                    writeValue(notification.getKey(), notification.getValue());
+                    if (!CachedTreeMap.this.versioned || dirtyKeys.remove(notification.getKey())) {
+                        writeValue(notification.getKey(), notification.getValue());
+                    }
                     break;
                 case EXPLICIT:
                     deleteValue(notification.getKey());
                     break;
+                case REPLACED:
+                    // put again, will be written when evicted or serialized
+                    break;
                 default:
                     throw new RuntimeException("unexpected evict reason " + notification.getCause());
                 }
@@ -159,6 +193,13 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
         // For immutable values, load all values as much as possible, and evict by soft reference to free memory when gc
         if (this.immutable) {
             builder.softValues();
+        } else if (this.versioned) {
+            builder.maximumSize(maxCount);
+            // values are written into new files of baseDir, only the index is staged in tmp
+            if (fs.exists(new Path(tmpDir))) {
+                fs.delete(new Path(tmpDir), true);
+            }
+            fs.mkdirs(new Path(this.baseDir));
         } else {
             builder.maximumSize(maxCount);
             // For mutable map, copy all data into tmp and modify on tmp data, avoiding suddenly server crash made data corrupt
@@ -182,8 +223,13 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
     }
 
     private String generateFileName(K key) {
-        String file = (immutable ? baseDir : tmpDir) + "/cached_" + key.toString();
-        return file;
+        Long version = versions.get(key);
+        return generateFileName(key, version == null ? 0 : version);
+    }
+
+    private String generateFileName(K key, long version) {
+        String file = (immutable || versioned ? baseDir : tmpDir) + "/cached_" + key.toString();
+        return version == 0 ? file : file + "_v" + version;
     }
 
     public String getCurrentDir() {
@@ -192,6 +238,10 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
 
     public void commit(boolean stillMutable) throws IOException {
         assert !immutable : "Only support commit method with immutable false";
+        if (versioned) {
+            commitVersion();
+            return;
+        }
 
         Path basePath = new Path(baseDir);
         Path backupPath = new Path(baseDir+".bak");
@@ -217,16 +267,57 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
         }
     }
 
+    /**
+     * Move the staged index files into baseDir, each replaced atomically, then delete the value files referenced by
+     * neither this index nor the previous one. The map stays mutable, following changes go to a new version.
+     */
+    private void commitVersion() throws IOException {
+        Path basePath = new Path(baseDir);
+        Path tmpPath = new Path(tmpDir);
+        FileContext fc = FileContext.getFileContext(fs.getUri(), conf);
+        if (fs.exists(tmpPath)) {
+            for (FileStatus stat : fs.listStatus(tmpPath)) {
+                fc.rename(stat.getPath(), new Path(basePath, stat.getPath().getName()), Options.Rename.OVERWRITE);
+            }
+            fs.delete(tmpPath, true);
+        }
+
+        Set<String> liveFiles = new HashSet<>();
+        for (Map.Entry<K, Long> entry : versions.entrySet()) {
+            liveFiles.add(new Path(generateFileName(entry.getKey(), entry.getValue())).getName());
+        }
+        for (Map.Entry<K, Long> entry : committedVersions.entrySet()) {
+            liveFiles.add(new Path(generateFileName(entry.getKey(), entry.getValue())).getName());
+        }
+        int deleted = 0;
+        for (FileStatus stat : fs.listStatus(basePath)) {
+            String name = stat.getPath().getName();
+            if (name.startsWith("cached_") && !liveFiles.contains(name)) {
+                fs.delete(stat.getPath(), true);
+                deleted++;
+            }
+        }
+        logger.info("CachedTreeMap {} committed version {}, {} outdated files deleted", baseDir, currentVersion, deleted);
+
+        committedVersions.clear();
+        committedVersions.putAll(versions);
+        currentVersion = Math.max(System.currentTimeMillis(), currentVersion + 1);
+    }
+
     public void loadEntry(CachedTreeMap other) {
         for (Object key : other.keySet()) {
             super.put((K)key, null);
         }
+        versions.putAll(other.versions);
     }
 
     private void writeValue(K key, V value) {
         if (immutable) {
             return;
         }
+        if (versioned) {
+            versions.put(key, currentVersion);
+        }
         long t0 = System.currentTimeMillis();
         String fileName = generateFileName(key);
         Path filePath = new Path(fileName);
@@ -261,7 +352,8 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
     }
 
     private void deleteValue(K key) {
-        if (persistent && immutable) {
+        // a versioned map keeps the file for readers of the committed index, deletes it on commit
+        if ((persistent && immutable) || versioned) {
             return;
         }
         String fileName = generateFileName(key);
@@ -281,6 +373,9 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
     public V put(K key, V value) {
         assert !immutable : "Only support put method with immutable false";
         super.put(key, null);
+        if (versioned) {
+            dirtyKeys.add(key);
+        }
         valueCache.put(key, value);
         return null;
     }
@@ -303,6 +398,10 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
     public V remove(Object key) {
         assert !immutable : "Only support remove method with immutable false";
         super.remove(key);
+        if (versioned) {
+            dirtyKeys.remove(key);
+            versions.remove(key);
+        }
         valueCache.invalidate(key);
         return null;
     }
@@ -310,6 +409,8 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
     @Override
     public void clear() {
         super.clear();
+        dirtyKeys.clear();
+        versions.clear();
         values = null;
         valueCache.invalidateAll();
     }
@@ -359,6 +460,10 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
         public void remove() {
             assert !immutable : "Only support remove method with immutable false";
             keyIterator.remove();
+            if (versioned) {
+                dirtyKeys.remove(currentKey);
+                versions.remove(currentKey);
+            }
             valueCache.invalidate(currentKey);
         }
     }
@@ -366,13 +471,22 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
     @Override
     public void write(DataOutput out) throws IOException {
         assert persistent : "Only support serialize with persistent true";
+        boolean withVersions = versioned || !versions.isEmpty();
+        if (withVersions) {
+            out.writeInt(VERSIONED_FORMAT);
+        }
         out.writeInt(size());
         for (K key : keySet()) {
-            key.write(out);
             V value = valueCache.getIfPresent(key);
-            if (null != value) {
+            // a versioned map only writes changed values, into files of a new version
+            if (null != value && (!versioned || dirtyKeys.remove(key))) {
                 writeValue(key, value);
             }
+            key.write(out);
+            if (withVersions) {
+                Long version = versions.get(key);
+                out.writeLong(version == null ? 0 : version);
+            }
         }
     }
 
@@ -380,15 +494,27 @@ public class CachedTreeMap<K extends WritableComparable, V extends Writable> ext
     public void readFields(DataInput in) throws IOException {
         assert persistent : "Only support deserialize with persistent true";
         int size = in.readInt();
+        boolean withVersions = size == VERSIONED_FORMAT;
+        if (withVersions) {
+            size = in.readInt();
+        }
         try {
             for (int i = 0; i < size; i++) {
                 K key = keyClazz.newInstance();
                 key.readFields(in);
                 super.put(key, null);
+                if (withVersions) {
+                    versions.put(key, in.readLong());
+                }
             }
         } catch (Exception e) {
             throw new IOException(e);
         }
+        committedVersions.putAll(versions);
+        for (Long version : versions.values()) {
+            // never overwrite a file of the index just read
+            currentVersion = Math.max(currentVersion, version + 1);
+        }
     }
 
     // clean up all tmp files
@@ -23,10 +23,13 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.DaemonThreadFactory;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.metadata.datatype.DataType;
 import org.slf4j.Logger;
@@ -55,6 +58,13 @@ public class DictionaryGenerator {
     }
 
     public static Dictionary<String> buildDictionary(DataType dataType, IDictionaryValueEnumerator valueEnumerator) throws IOException {
+        return buildDictionary(dataType, valueEnumerator, null);
+    }
+
+    /**
+     * @param config decides whether big string dictionaries are built in parallel, null to always build serially
+     */
+    public static Dictionary<String> buildDictionary(DataType dataType, IDictionaryValueEnumerator valueEnumerator, KylinConfig config) throws IOException {
         Preconditions.checkNotNull(dataType, "dataType cannot be null");
 
         // build dict, case by data type
@@ -67,7 +77,7 @@ public class DictionaryGenerator {
         } else if (dataType.isNumberFamily()) {
             builder = new NumberDictBuilder();
         } else {
-            builder = new StringDictBuilder();
+            builder = new StringDictBuilder(config);
         }
 
         return buildDictionary(builder, null, valueEnumerator);
@@ -99,7 +109,11 @@ public class DictionaryGenerator {
     }
 
     public static Dictionary mergeDictionaries(DataType dataType, List<DictionaryInfo> sourceDicts) throws IOException {
-        return buildDictionary(dataType, new MultipleDictionaryValueEnumerator(sourceDicts));
+        return mergeDictionaries(dataType, sourceDicts, null);
+    }
+
+    public static Dictionary mergeDictionaries(DataType dataType, List<DictionaryInfo> sourceDicts, KylinConfig config) throws IOException {
+        return buildDictionary(dataType, new MultipleDictionaryValueEnumerator(sourceDicts), config);
     }
 
     private static class DateDictBuilder implements IDictionaryBuilder {
@@ -149,8 +163,20 @@ public class DictionaryGenerator {
     }
 
     private static class StringDictBuilder implements IDictionaryBuilder {
+        private final int trieBuildThreads;
+        private final int trieBuildChunkSize;
+
+        StringDictBuilder(KylinConfig config) {
+            this.trieBuildThreads = config == null ? 1 : config.getDictionaryTrieBuildThreads();
+            this.trieBuildChunkSize = config == null ? 0 : config.getDictionaryTrieBuildChunkSize();
+        }
+
         @Override
         public Dictionary<String> build(DictionaryInfo dictInfo, IDictionaryValueEnumerator valueEnumerator, int baseId, int nSamples, ArrayList<String> returnSamples) throws IOException {
+            if (trieBuildThreads > 1) {
+                return buildParallel(valueEnumerator, baseId, nSamples, returnSamples);
+            }
+
             TrieDictionaryBuilder builder = new TrieDictionaryBuilder(new StringBytesConverter());
             byte[] value;
             while (valueEnumerator.moveNext()) {
@@ -164,6 +190,26 @@ public class DictionaryGenerator {
             }
             return builder.build(baseId);
         }
+
+        private Dictionary<String> buildParallel(IDictionaryValueEnumerator valueEnumerator, int baseId, int nSamples, ArrayList<String> returnSamples) throws IOException {
+            ExecutorService pool = Executors.newFixedThreadPool(trieBuildThreads, new DaemonThreadFactory());
+            try {
+                ParallelTrieDictionaryBuilder<String> builder = new ParallelTrieDictionaryBuilder<String>(new StringBytesConverter(), trieBuildChunkSize, pool, trieBuildThreads);
+                byte[] value;
+                while (valueEnumerator.moveNext()) {
+                    value = valueEnumerator.current();
+                    if (value == null)
+                        continue;
+                    String v = Bytes.toString(value);
+                    builder.addValue(v);
+                    if (returnSamples.size() < nSamples && returnSamples.contains(v) == false)
+                        returnSamples.add(v);
+                }
+                return builder.build(baseId);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
     }
 
     private static class NumberDictBuilder implements IDictionaryBuilder {
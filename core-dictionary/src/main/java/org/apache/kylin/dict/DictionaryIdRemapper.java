@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.dict;
+
+import org.apache.kylin.common.util.Dictionary;
+
+/**
+ * Translates the IDs of a source dictionary into the IDs of a target dictionary holding the same values,
+ * e.g. from the dictionary of a segment to the dictionary of the merged segment.
+ *
+ * The translation table is precomputed once, so that remapping an ID is an array lookup instead of
+ * two trie traversals. Dictionaries larger than maxTableSize fall back to the lookup by value.
+ */
+public class DictionaryIdRemapper {
+
+    private final Dictionary<?> source;
+    private final Dictionary<?> target;
+    private final boolean identity;
+    private final int minId;
+    private final int[] table;
+    private byte[] valueBuf; // for the fallback
+
+    public DictionaryIdRemapper(Dictionary<?> source, Dictionary<?> target, int maxTableSize) {
+        this.source = source;
+        this.target = target;
+        this.identity = source.getSizeOfId() == target.getSizeOfId() && source.equals(target);
+        this.minId = source.getMinId();
+
+        if (identity || source.getSize() > maxTableSize) {
+            this.table = null;
+            this.valueBuf = new byte[source.getSizeOfValue()];
+        } else {
+            this.table = buildTable();
+        }
+    }
+
+    private int[] buildTable() {
+        int[] result = new int[source.getSize()];
+        byte[] buf = new byte[source.getSizeOfValue()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = lookup(minId + i, buf);
+        }
+        return result;
+    }
+
+    private int lookup(int sourceId, byte[] buf) {
+        int size = source.getValueBytesFromId(sourceId, buf, 0);
+        return size < 0 ? target.nullId() : target.getIdFromValueBytes(buf, 0, size);
+    }
+
+    /**
+     * @return true if the two dictionaries are the same and IDs need no remapping at all
+     */
+    public boolean isIdentity() {
+        return identity;
+    }
+
+    public boolean isPrecomputed() {
+        return table != null;
+    }
+
+    public int getTargetSizeOfId() {
+        return target.getSizeOfId();
+    }
+
+    public int remap(int sourceId) {
+        if (identity) {
+            return sourceId;
+        }
+        if (source.isNullId(sourceId)) {
+            return target.nullId();
+        }
+        if (table != null) {
+            return table[sourceId - minId];
+        }
+        return lookup(sourceId, valueBuf);
+    }
+}
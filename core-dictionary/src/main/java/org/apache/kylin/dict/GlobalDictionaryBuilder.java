@@ -20,6 +20,7 @@ package org.apache.kylin.dict;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.NavigableSet;
 
 import org.apache.kylin.common.KylinConfig;
@@ -29,9 +30,12 @@ import org.apache.kylin.metadata.MetadataManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+
 /**
  * GlobalDictinary based on whole cube, to ensure one value has same dict id in different segments.
  * GlobalDictinary mainly used for count distinct measure to support rollup among segments.
+ * Values are appended in batches, see {@link AppendTrieDictionary.Builder#addValues(List)}.
  * Created by sunyerui on 16/5/24.
  */
 public class GlobalDictionaryBuilder implements IDictionaryBuilder {
@@ -60,25 +64,45 @@ public class GlobalDictionaryBuilder implements IDictionaryBuilder {
         if (appendDicts.isEmpty()) {
             logger.info("GlobalDict {} is empty, create new one", dictInfo.getResourceDir());
             builder = AppendTrieDictionary.Builder.create(dictDir);
-        } else if (appendDicts.size() == 1) {
-            logger.info("GlobalDict {} exist, append value", appendDicts.get(0));
-            AppendTrieDictionary dict = (AppendTrieDictionary) DictionaryManager.getInstance(KylinConfig.getInstanceFromEnv()).getDictionary(appendDicts.get(0));
-            builder = AppendTrieDictionary.Builder.create(dict);
         } else {
-            throw new IllegalStateException(String.format("GlobalDict %s should have 0 or 1 append dict but %d", dictInfo.getResourceDir(), appendDicts.size()));
+            // all append dicts share the same slices, the one with the largest id is the latest
+            AppendTrieDictionary dict = null;
+            String dictPath = null;
+            for (String path : appendDicts) {
+                AppendTrieDictionary d = (AppendTrieDictionary) DictionaryManager.getInstance(KylinConfig.getInstanceFromEnv()).getDictionary(path);
+                if (dict == null || d.getMaxId() > dict.getMaxId()) {
+                    dict = d;
+                    dictPath = path;
+                }
+            }
+            if (appendDicts.size() > 1) {
+                logger.warn("GlobalDict {} should have 0 or 1 append dict but {}, append to the latest {}", dictInfo.getResourceDir(), appendDicts.size(), dictPath);
+            } else {
+                logger.info("GlobalDict {} exist, append value", dictPath);
+            }
+            builder = AppendTrieDictionary.Builder.create(dict);
         }
 
+        int batchSize = KylinConfig.getInstanceFromEnv().getAppendDictBatchSize();
+        List<byte[]> batch = Lists.newArrayListWithCapacity(batchSize);
         byte[] value;
         while (valueEnumerator.moveNext()) {
             value = valueEnumerator.current();
             if (value == null) {
                 continue;
             }
-            String v = Bytes.toString(value);
-            builder.addValue(v);
-            if (returnSamples.size() < nSamples && returnSamples.contains(v) == false)
-                returnSamples.add(v);
+            batch.add(value);
+            if (batch.size() >= batchSize) {
+                builder.addValues(batch);
+                batch.clear();
+            }
+            if (returnSamples.size() < nSamples) {
+                String v = Bytes.toString(value);
+                if (returnSamples.contains(v) == false)
+                    returnSamples.add(v);
+            }
         }
+        builder.addValues(batch);
         return builder.build(baseId);
     }
 }
@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.ListIterator;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.dimension.DimensionEncoding;
+import org.apache.kylin.dimension.IDimensionEncodingMap;
+import org.apache.kylin.metadata.filter.BitmapInTupleFilter;
+import org.apache.kylin.metadata.filter.ConstantTupleFilter;
+import org.apache.kylin.metadata.filter.ITupleFilterTransformer;
+import org.apache.kylin.metadata.filter.LogicalTupleFilter;
+import org.apache.kylin.metadata.filter.SortedInTupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter;
+import org.apache.kylin.metadata.filter.UDF.MassInTupleFilter;
+import org.apache.kylin.metadata.filter.function.Functions;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Lists;
+
+/**
+ * Translates a MASSIN filter into the compact encoded set of its values, once on the query server, instead of
+ * every region server loading the filter table into a hash set.
+ *
+ * The values of a dictionary column become a {@link BitmapInTupleFilter} of ids, and the values of another fixed
+ * length encoding become a {@link SortedInTupleFilter}. The encoded sets are cached in heap buffers, bounded by their
+ * total size, and keyed by the filter table file, its modification time and the resource path of the dictionary.
+ */
+public class MassInFilterTransformer implements ITupleFilterTransformer {
+    public static final Logger logger = LoggerFactory.getLogger(MassInFilterTransformer.class);
+
+    private static final ByteBuffer EMPTY_SET = ByteBuffer.allocate(0);
+
+    private static volatile Cache<EncodedSetKey, ByteBuffer> encodedSetCache;
+
+    private IDimensionEncodingMap dimEncMap;
+
+    public MassInFilterTransformer(IDimensionEncodingMap dimEncMap) {
+        this.dimEncMap = dimEncMap;
+    }
+
+    @Override
+    public TupleFilter transform(TupleFilter tupleFilter) {
+        TupleFilter translated = null;
+        if (tupleFilter instanceof MassInTupleFilter) {
+            translated = translateMassInTupleFilter((MassInTupleFilter) tupleFilter);
+            if (translated != null) {
+                logger.info("Translated {" + tupleFilter + "} to encoded set: {" + translated + "}");
+            }
+        } else if (tupleFilter instanceof LogicalTupleFilter) {
+            @SuppressWarnings("unchecked")
+            ListIterator<TupleFilter> childIterator = (ListIterator<TupleFilter>) tupleFilter.getChildren().listIterator();
+            while (childIterator.hasNext()) {
+                childIterator.set(transform(childIterator.next()));
+            }
+        }
+        return translated == null ? tupleFilter : translated;
+    }
+
+    private TupleFilter translateMassInTupleFilter(MassInTupleFilter massInFilter) {
+        TblColRef column = massInFilter.getColumn();
+        if (column == null || massInFilter.getFilterTableType() != Functions.FilterTableType.HDFS)
+            return null;
+
+        DimensionEncoding encoding = dimEncMap.get(column);
+        Dictionary<String> dict = dimEncMap.getDictionary(column);
+        if (encoding == null && dict == null)
+            return null;
+
+        try {
+            ByteBuffer encodedSet = getEncodedSet(massInFilter.getFilterTableResourceIdentifier(), column, dict, encoding);
+            if (encodedSet.limit() == 0) {
+                return ConstantTupleFilter.FALSE;
+            }
+            if (dict != null) {
+                return new BitmapInTupleFilter(column, new ImmutableRoaringBitmap(encodedSet.duplicate()), dict.getSizeOfId());
+            }
+            return new SortedInTupleFilter(column, encodedSet.duplicate(), encoding.getLengthOfEncoding());
+        } catch (Exception e) {
+            // the region servers still evaluate the untranslated MASSIN filter
+            logger.warn("Failed to translate " + massInFilter + " to encoded set", e);
+            return null;
+        }
+    }
+
+    private ByteBuffer getEncodedSet(String filterResourceIdentifier, TblColRef column, Dictionary<String> dict, DimensionEncoding encoding) throws IOException {
+        Path path = new Path(filterResourceIdentifier);
+        FileSystem fs = FileSystem.get(path.toUri(), new Configuration());
+        long modificationTime = fs.getFileStatus(path).getModificationTime();
+
+        String encodingName;
+        if (dict != null) {
+            String dictResPath = dimEncMap.getDictionaryResPath(column);
+            // ids of a dictionary that is not stored cannot be shared with other segments or queries
+            encodingName = dictResPath == null ? null : "dict:" + dictResPath;
+        } else {
+            encodingName = encoding.getClass().getName() + "/" + encoding.getLengthOfEncoding();
+        }
+
+        EncodedSetKey key = encodingName == null ? null : new EncodedSetKey(filterResourceIdentifier, modificationTime, encodingName);
+        Cache<EncodedSetKey, ByteBuffer> cache = getEncodedSetCache();
+        ByteBuffer encodedSet = key == null ? null : cache.getIfPresent(key);
+        if (encodedSet == null) {
+            long start = System.currentTimeMillis();
+            encodedSet = dict != null ? loadIds(fs, path, dict) : loadSortedCodes(fs, path, encoding);
+            if (key != null) {
+                cache.put(key, encodedSet);
+            }
+            logger.info("Loaded MASSIN values from " + filterResourceIdentifier + " into " + encodedSet.limit() + " bytes of encoded set, took " + (System.currentTimeMillis() - start) + " ms");
+        }
+        return encodedSet;
+    }
+
+    private static ByteBuffer loadIds(FileSystem fs, Path path, Dictionary<String> dict) throws IOException {
+        MutableRoaringBitmap ids = new MutableRoaringBitmap();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(path), Charset.defaultCharset()));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (StringUtils.isEmpty(line)) {
+                    continue;
+                }
+                try {
+                    ids.add(dict.getIdFromValue(line));
+                } catch (IllegalArgumentException e) {
+                    // a value not in the dictionary matches no row
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+        if (ids.getCardinality() == 0) {
+            return EMPTY_SET;
+        }
+
+        ids.runOptimize();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        ids.serialize(dos);
+        dos.close();
+        return ByteBuffer.wrap(bos.toByteArray());
+    }
+
+    private static ByteBuffer loadSortedCodes(FileSystem fs, Path path, DimensionEncoding encoding) throws IOException {
+        int codeLength = encoding.getLengthOfEncoding();
+        List<ByteArray> codes = Lists.newArrayList();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(path), Charset.defaultCharset()));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (StringUtils.isEmpty(line)) {
+                    continue;
+                }
+                try {
+                    byte[] value = line.getBytes();
+                    ByteArray code = ByteArray.allocate(codeLength);
+                    encoding.encode(value, value.length, code.array(), 0);
+                    if (!DimensionEncoding.isNull(code.array(), 0, codeLength)) {
+                        codes.add(code);
+                    }
+                } catch (Exception e) {
+                    logger.warn("Error when encoding the filter line " + line);
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+        if (codes.isEmpty()) {
+            return EMPTY_SET;
+        }
+
+        Collections.sort(codes);
+        ByteArray last = null;
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(codes.size() * codeLength);
+        for (ByteArray code : codes) {
+            if (!code.equals(last)) {
+                bos.write(code.array(), 0, codeLength);
+                last = code;
+            }
+        }
+        return ByteBuffer.wrap(bos.toByteArray());
+    }
+
+    private static Cache<EncodedSetKey, ByteBuffer> getEncodedSetCache() {
+        if (encodedSetCache == null) {
+            synchronized (MassInFilterTransformer.class) {
+                if (encodedSetCache == null) {
+                    encodedSetCache = CacheBuilder.newBuilder().maximumWeight(KylinConfig.getInstanceFromEnv().getQueryMassInCacheMB() * 1024L * 1024L).weigher(new Weigher<EncodedSetKey, ByteBuffer>() {
+                        @Override
+                        public int weigh(EncodedSetKey key, ByteBuffer value) {
+                            return value.capacity();
+                        }
+                    }).build();
+                }
+            }
+        }
+        return encodedSetCache;
+    }
+
+    /**
+     * The filter table file and its version, and the encoding of the column: the resource path of a dictionary, or
+     * the name of a dictionary-less encoding.
+     */
+    private static class EncodedSetKey {
+        private final String path;
+        private final long modificationTime;
+        private final String encodingName;
+
+        EncodedSetKey(String path, long modificationTime, String encodingName) {
+            this.path = path;
+            this.modificationTime = modificationTime;
+            this.encodingName = encodingName;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = path.hashCode();
+            result = 31 * result + (int) (modificationTime ^ (modificationTime >>> 32));
+            result = 31 * result + encodingName.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof EncodedSetKey))
+                return false;
+            EncodedSetKey other = (EncodedSetKey) obj;
+            return path.equals(other.path) && modificationTime == other.modificationTime && encodingName.equals(other.encodingName);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.dict;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Builds a TrieDictionary by divide and merge. Values are cut into chunks of chunkSize in the order they are added,
+ * each chunk is built into a trie by a thread of the given pool, and the tries are merged in chunk order at last.
+ *
+ * Best for very large and sorted input, like the distinct values of a fact table column, where the chunks
+ * hold disjoint value ranges and merging them costs little.
+ */
+public class ParallelTrieDictionaryBuilder<T> {
+
+    private final BytesConverter<T> bytesConverter;
+    private final int chunkSize;
+    private final ExecutorService pool;
+    private final Semaphore pendingChunks; // bounds the values buffered in memory
+
+    private ArrayList<T> chunk;
+    private final List<Future<TrieDictionaryBuilder<T>>> futures = Lists.newArrayList();
+
+    public ParallelTrieDictionaryBuilder(BytesConverter<T> bytesConverter, int chunkSize, ExecutorService pool, int parallelism) {
+        this.bytesConverter = bytesConverter;
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+        this.pendingChunks = new Semaphore(parallelism * 2);
+        this.chunk = new ArrayList<T>(chunkSize);
+    }
+
+    public void addValue(T value) {
+        chunk.add(value);
+        if (chunk.size() >= chunkSize) {
+            submitChunk();
+        }
+    }
+
+    private void submitChunk() {
+        final ArrayList<T> values = chunk;
+        chunk = new ArrayList<T>(chunkSize);
+
+        try {
+            pendingChunks.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while building dictionary", e);
+        }
+        futures.add(pool.submit(new Callable<TrieDictionaryBuilder<T>>() {
+            @Override
+            public TrieDictionaryBuilder<T> call() throws Exception {
+                try {
+                    return buildTrie(values);
+                } finally {
+                    pendingChunks.release();
+                }
+            }
+        }));
+    }
+
+    private TrieDictionaryBuilder<T> buildTrie(List<T> values) {
+        TrieDictionaryBuilder<T> builder = new TrieDictionaryBuilder<T>(bytesConverter);
+        for (T v : values) {
+            builder.addValue(v);
+        }
+        return builder;
+    }
+
+    public TrieDictionaryBuilder<T> merge() {
+        // not worth the threads if everything fits in one chunk
+        if (futures.isEmpty()) {
+            return buildTrie(chunk);
+        }
+
+        if (!chunk.isEmpty()) {
+            submitChunk();
+        }
+
+        TrieDictionaryBuilder<T> result = null;
+        try {
+            for (Future<TrieDictionaryBuilder<T>> future : futures) {
+                TrieDictionaryBuilder<T> trie = future.get();
+                if (result == null)
+                    result = trie;
+                else
+                    result.merge(trie);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while building dictionary", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to build dictionary", e.getCause());
+        } finally {
+            for (Future<TrieDictionaryBuilder<T>> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return result;
+    }
+
+    public TrieDictionary<T> build(int baseId) {
+        return merge().build(baseId);
+    }
+}
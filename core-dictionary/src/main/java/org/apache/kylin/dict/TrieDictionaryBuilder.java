@@ -156,6 +156,96 @@ public class TrieDictionaryBuilder<T> {
         }
     }
 
+    /**
+     * Merges all values of another builder into this one, by grafting its nodes into this trie.
+     * The other builder shares nodes with this one afterwards and must not be used anymore.
+     *
+     * Cheap when the two tries hold disjoint ranges of sorted values, as then only the nodes
+     * along the boundary are visited, and the sub-tries beneath are moved as they are.
+     */
+    public void merge(TrieDictionaryBuilder<T> other) {
+        mergeR(root, other.root, other.root.part, 0);
+    }
+
+    // same as addValueR(), except the value ends with the flag and children of the node being merged
+    private void mergeR(Node node, Node other, byte[] value, int start) {
+        // match the value part of current node
+        int i = 0, j = start;
+        int n = node.part.length, nn = value.length;
+        int comp = 0;
+        for (; i < n && j < nn; i++, j++) {
+            comp = BytesUtil.compareByteUnsigned(node.part[i], value[j]);
+            if (comp != 0)
+                break;
+        }
+
+        if (j == nn) {
+            // if value fully matched within the current node
+            if (i == n) {
+                // if equals to current node, merge the children
+                node.isEndOfValue |= other.isEndOfValue;
+            } else {
+                // otherwise, split the current node into two
+                Node c = new Node(BytesUtil.subarray(node.part, i, n), node.isEndOfValue, node.children);
+                node.reset(BytesUtil.subarray(node.part, 0, i), other.isEndOfValue);
+                node.children.add(c);
+            }
+            for (Node otherChild : other.children) {
+                mergeChild(node, otherChild);
+            }
+            return;
+        }
+
+        // if partially matched the current, split the current node, graft the other, make a 3-way
+        if (i < n) {
+            Node c1 = new Node(BytesUtil.subarray(node.part, i, n), node.isEndOfValue, node.children);
+            Node c2 = new Node(BytesUtil.subarray(value, j, nn), other.isEndOfValue, other.children);
+            node.reset(BytesUtil.subarray(node.part, 0, i), false);
+            if (comp < 0) {
+                node.children.add(c1);
+                node.children.add(c2);
+            } else {
+                node.children.add(c2);
+                node.children.add(c1);
+            }
+            return;
+        }
+
+        // out matched the current, continue in a child node
+        int mid = findChild(node, value[j]);
+        if (mid >= 0) {
+            mergeR(node.children.get(mid), other, value, j);
+        } else {
+            node.children.add(-mid - 1, new Node(BytesUtil.subarray(value, j, nn), other.isEndOfValue, other.children));
+        }
+    }
+
+    private void mergeChild(Node node, Node otherChild) {
+        int mid = findChild(node, otherChild.part[0]);
+        if (mid >= 0) {
+            mergeR(node.children.get(mid), otherChild, otherChild.part, 0);
+        } else {
+            node.children.add(-mid - 1, otherChild);
+        }
+    }
+
+    /** binary search the child starting with given byte, return (-(insertion point) - 1) if not found */
+    private int findChild(Node node, byte lookfor) {
+        int lo = 0;
+        int hi = node.children.size() - 1;
+        while (lo <= hi) {
+            int mid = lo + (hi - lo) / 2;
+            int comp = BytesUtil.compareByteUnsigned(lookfor, node.children.get(mid).part[0]);
+            if (comp < 0)
+                hi = mid - 1;
+            else if (comp > 0)
+                lo = mid + 1;
+            else
+                return mid;
+        }
+        return -(lo + 1);
+    }
+
     public void traverse(Visitor visitor) {
         traverseR(root, visitor, 0);
     }
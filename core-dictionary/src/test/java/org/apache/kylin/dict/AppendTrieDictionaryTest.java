@@ -111,6 +111,58 @@ public class AppendTrieDictionaryTest {
         testStringDictAppend(str, null, true);
     }
 
+    @Test
+    public void testAddValuesInBulk() throws Exception {
+        InputStream is = new FileInputStream("src/test/resources/dict/english-words.80 (scowl-2015.05.18).txt");
+        ArrayList<String> str = loadStrings(is);
+        Collections.shuffle(str, new Random(0));
+        BytesConverter converter = new StringBytesConverter();
+        int half = str.size() / 2;
+
+        AppendTrieDictionary.Builder<String> b = AppendTrieDictionary.Builder.create(BASE_DIR);
+        ArrayList<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < half; i++) {
+            values.add(converter.convertToBytes(str.get(i)));
+        }
+        b.addValues(values);
+        AppendTrieDictionary<String> dict = b.build(0);
+        TreeMap<Integer, String> checkMap = new TreeMap<>();
+        for (int i = 0; i < half; i++) {
+            byte[] bytes = converter.convertToBytes(str.get(i));
+            int id = dict.getIdFromValueBytesImpl(bytes, 0, bytes.length, 0);
+            assertFalse(String.format("Id %d for %s should be empty, but is %s", id, str.get(i), checkMap.get(id)), checkMap.containsKey(id) && !str.get(i).equals(checkMap.get(id)));
+            checkMap.put(id, str.get(i));
+        }
+        int maxId = dict.getMaxId();
+
+        // append all values again, only the second half is new
+        b = AppendTrieDictionary.Builder.create(dict);
+        values.clear();
+        for (String s : str) {
+            values.add(converter.convertToBytes(s));
+        }
+        b.addValues(values);
+        dict = b.build(0);
+        for (int i = 0; i < str.size(); i++) {
+            byte[] bytes = converter.convertToBytes(str.get(i));
+            int id = dict.getIdFromValueBytesImpl(bytes, 0, bytes.length, 0);
+            if (i < half) {
+                assertEquals("Except id " + id + " for " + str.get(i) + " but " + checkMap.get(id), str.get(i), checkMap.get(id));
+            } else {
+                assertFalse(String.format("Id %d for %s should be empty, but is %s", id, str.get(i), checkMap.get(id)), checkMap.containsKey(id));
+                checkMap.put(id, str.get(i));
+            }
+        }
+        assertEquals(maxId + str.size() - half, dict.getMaxId());
+
+        dict = testSerialize(dict, converter);
+        for (String s : str) {
+            byte[] bytes = converter.convertToBytes(s);
+            int id = dict.getIdFromValueBytesImpl(bytes, 0, bytes.length, 0);
+            assertEquals("Except id " + id + " for " + s + " but " + checkMap.get(id), s, checkMap.get(id));
+        }
+    }
+
     private static ArrayList<String> loadStrings(InputStream is) throws Exception {
         ArrayList<String> r = new ArrayList<String>();
         BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.dimension.DimensionEncoding;
+import org.apache.kylin.dimension.IDimensionEncodingMap;
+import org.apache.kylin.metadata.filter.BitmapInTupleFilter;
+import org.apache.kylin.metadata.filter.BuiltInFunctionTupleFilter;
+import org.apache.kylin.metadata.filter.ColumnTupleFilter;
+import org.apache.kylin.metadata.filter.CompareTupleFilter;
+import org.apache.kylin.metadata.filter.ConstantTupleFilter;
+import org.apache.kylin.metadata.filter.IFilterCodeSystem;
+import org.apache.kylin.metadata.filter.LogicalTupleFilter;
+import org.apache.kylin.metadata.filter.StringCodeSystem;
+import org.apache.kylin.metadata.filter.TupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter.FilterOperatorEnum;
+import org.apache.kylin.metadata.filter.TupleFilterSerializer;
+import org.apache.kylin.metadata.model.ColumnDesc;
+import org.apache.kylin.metadata.model.TableDesc;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.apache.kylin.metadata.tuple.IEvaluatableTuple;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import com.google.common.collect.Sets;
+
+public class BuiltInFunctionTransformerTest extends LocalFileMetadataTestCase {
+
+    // big enough to be scanned in parallel
+    static final int N = 150000;
+
+    TblColRef col = ColumnDesc.mockup(TableDesc.mockup("T"), 1, "NAME", "varchar(256)").getRef();
+    TrieDictionary<String> dict;
+    IDimensionEncodingMap dimEncMap;
+
+    @Before
+    public void setup() throws Exception {
+        createTestMetadata();
+
+        TrieDictionaryBuilder<String> b = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        for (int i = 0; i < N; i++) {
+            b.addValue("name_" + i);
+        }
+        dict = b.build(0);
+        dimEncMap = new IDimensionEncodingMap() {
+            @Override
+            public DimensionEncoding get(TblColRef col) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Dictionary<String> getDictionary(TblColRef col) {
+                return dict;
+            }
+
+            @Override
+            public String getDictionaryResPath(TblColRef col) {
+                return null;
+            }
+        };
+    }
+
+    @After
+    public void after() throws Exception {
+        cleanupTestMetadata();
+    }
+
+    @Test
+    public void testLikeToBitmap() {
+        TupleFilter translated = new BuiltInFunctionTransformer(dimEncMap, true).transform(like("name_99%"));
+        assertTrue(translated instanceof BitmapInTupleFilter);
+        BitmapInTupleFilter bitmapFilter = (BitmapInTupleFilter) translated;
+        assertEquals(col, bitmapFilter.getColumn());
+        assertArrayEquals(expectedIds(Pattern.compile("name.99.*")).toArray(), bitmapFilter.getIds().toArray());
+
+        // survives serialization, as sent to the storage
+        byte[] bytes = TupleFilterSerializer.serialize(translated, StringCodeSystem.INSTANCE);
+        BitmapInTupleFilter deserialized = (BitmapInTupleFilter) TupleFilterSerializer.deserialize(bytes, StringCodeSystem.INSTANCE);
+        assertArrayEquals(bitmapFilter.getIds().toArray(), deserialized.getIds().toArray());
+        assertEquals(bitmapFilter.getMinCode(), deserialized.getMinCode());
+        assertEquals(bitmapFilter.getMaxCode(), deserialized.getMaxCode());
+    }
+
+    @Test
+    public void testLikeToIn() {
+        TupleFilter translated = new BuiltInFunctionTransformer(dimEncMap).transform(like("%123%"));
+        assertEquals(FilterOperatorEnum.IN, translated.getOperator());
+
+        Set<String> expected = Sets.newHashSet();
+        for (int i = 0; i < N; i++) {
+            if (("name_" + i).contains("123"))
+                expected.add("name_" + i);
+        }
+        assertEquals(expected, Sets.newHashSet(((CompareTupleFilter) translated).getValues()));
+    }
+
+    @Test
+    public void testCompareFunction() {
+        BuiltInFunctionTupleFilter upper = new BuiltInFunctionTupleFilter("UPPER");
+        upper.addChild(new ColumnTupleFilter(col));
+        CompareTupleFilter compare = new CompareTupleFilter(FilterOperatorEnum.EQ);
+        compare.addChild(upper);
+        compare.addChild(new ConstantTupleFilter("NAME_42"));
+
+        BitmapInTupleFilter translated = (BitmapInTupleFilter) new BuiltInFunctionTransformer(dimEncMap, true).transform(compare);
+        assertEquals(1, translated.getIds().getCardinality());
+        assertTrue(translated.getIds().contains(dict.getIdFromValue("name_42")));
+
+        // nothing matched
+        BuiltInFunctionTupleFilter like = like("nothing%");
+        assertEquals(ConstantTupleFilter.FALSE, new BuiltInFunctionTransformer(dimEncMap, true).transform(like));
+    }
+
+    @Test
+    public void testNotLikeToNegatedBitmap() {
+        LogicalTupleFilter not = new LogicalTupleFilter(FilterOperatorEnum.NOT);
+        not.addChild(like("name_99%"));
+        TupleFilter translated = new BuiltInFunctionTransformer(dimEncMap, true).transform(not);
+
+        // flattened as the scan range planner does
+        TupleFilter flat = translated.flatFilter();
+        assertEquals(FilterOperatorEnum.AND, flat.getOperator());
+        assertEquals(1, flat.getChildren().size());
+        BitmapInTupleFilter notIn = (BitmapInTupleFilter) flat.getChildren().get(0);
+        assertTrue(notIn.isNegated());
+        assertArrayEquals(expectedIds(Pattern.compile("name.99.*")).toArray(), notIn.getIds().toArray());
+
+        byte[] bytes = TupleFilterSerializer.serialize(notIn, StringCodeSystem.INSTANCE);
+        BitmapInTupleFilter deserialized = (BitmapInTupleFilter) TupleFilterSerializer.deserialize(bytes, StringCodeSystem.INSTANCE);
+        assertTrue(deserialized.isNegated());
+
+        assertFalse(deserialized.evaluate(encodedTuple(dict.getIdFromValue("name_990")), ENCODED_CS));
+        assertTrue(deserialized.evaluate(encodedTuple(dict.getIdFromValue("name_42")), ENCODED_CS));
+        // null matches neither LIKE nor NOT LIKE
+        assertFalse(deserialized.evaluate(encodedTuple(-1), ENCODED_CS));
+
+        // NOT NOT LIKE is LIKE again
+        assertFalse(((BitmapInTupleFilter) notIn.reverse()).isNegated());
+    }
+
+    private IEvaluatableTuple encodedTuple(final int id) {
+        return new IEvaluatableTuple() {
+            @Override
+            public Object getValue(TblColRef col) {
+                ByteArray code = new ByteArray(dict.getSizeOfId());
+                if (id < 0) {
+                    Arrays.fill(code.array(), DimensionEncoding.NULL);
+                } else {
+                    BytesUtil.writeUnsigned(id, code.array(), 0, code.length());
+                }
+                return code;
+            }
+        };
+    }
+
+    // the code system of encoded records, only null checks are needed
+    private static final IFilterCodeSystem<ByteArray> ENCODED_CS = new IFilterCodeSystem<ByteArray>() {
+        @Override
+        public boolean isNull(ByteArray code) {
+            return DimensionEncoding.isNull(code.array(), code.offset(), code.length());
+        }
+
+        @Override
+        public int compare(ByteArray o1, ByteArray o2) {
+            return o1.compareTo(o2);
+        }
+
+        @Override
+        public void serialize(ByteArray code, ByteBuffer buf) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ByteArray deserialize(ByteBuffer buf) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    private BuiltInFunctionTupleFilter like(String pattern) {
+        BuiltInFunctionTupleFilter like = new BuiltInFunctionTupleFilter("LIKE");
+        like.addChild(new ColumnTupleFilter(col));
+        like.addChild(new ConstantTupleFilter(pattern));
+        return like;
+    }
+
+    private MutableRoaringBitmap expectedIds(Pattern pattern) {
+        MutableRoaringBitmap ids = new MutableRoaringBitmap();
+        for (int i = 0; i < N; i++) {
+            String v = "name_" + i;
+            if (pattern.matcher(v).matches())
+                ids.add(dict.getIdFromValue(v));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.dict;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DictionaryIdRemapperTest {
+
+    private static TrieDictionary<String> dict(String... values) {
+        TrieDictionaryBuilder<String> b = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        for (String v : values)
+            b.addValue(v);
+        return b.build(0);
+    }
+
+    @Test
+    public void testRemap() {
+        TrieDictionary<String> source = dict("b", "d", "f");
+        TrieDictionary<String> merged = dict("a", "b", "c", "d", "e", "f");
+
+        for (int maxTableSize : new int[] { 100, 1 }) {
+            DictionaryIdRemapper remapper = new DictionaryIdRemapper(source, merged, maxTableSize);
+            assertFalse(remapper.isIdentity());
+            assertEquals(maxTableSize > 1, remapper.isPrecomputed());
+            for (String v : new String[] { "b", "d", "f" }) {
+                assertEquals(merged.getIdFromValue(v), remapper.remap(source.getIdFromValue(v)));
+            }
+            assertEquals(merged.nullId(), remapper.remap(source.nullId()));
+        }
+    }
+
+    @Test
+    public void testIdentity() {
+        DictionaryIdRemapper remapper = new DictionaryIdRemapper(dict("x", "y"), dict("x", "y"), 100);
+        assertTrue(remapper.isIdentity());
+        assertFalse(remapper.isPrecomputed());
+        assertEquals(1, remapper.remap(1));
+    }
+}
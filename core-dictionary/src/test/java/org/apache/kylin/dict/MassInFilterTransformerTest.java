@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.dict;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.dimension.DimensionEncoding;
+import org.apache.kylin.dimension.FixedLenDimEnc;
+import org.apache.kylin.dimension.IDimensionEncodingMap;
+import org.apache.kylin.metadata.filter.BitmapInTupleFilter;
+import org.apache.kylin.metadata.filter.ColumnTupleFilter;
+import org.apache.kylin.metadata.filter.ConstantTupleFilter;
+import org.apache.kylin.metadata.filter.LogicalTupleFilter;
+import org.apache.kylin.metadata.filter.SortedInTupleFilter;
+import org.apache.kylin.metadata.filter.StringCodeSystem;
+import org.apache.kylin.metadata.filter.TupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter.FilterOperatorEnum;
+import org.apache.kylin.metadata.filter.TupleFilterSerializer;
+import org.apache.kylin.metadata.filter.UDF.MassInTupleFilter;
+import org.apache.kylin.metadata.filter.function.Functions;
+import org.apache.kylin.metadata.model.ColumnDesc;
+import org.apache.kylin.metadata.model.TableDesc;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MassInFilterTransformerTest extends LocalFileMetadataTestCase {
+
+    TblColRef col = ColumnDesc.mockup(TableDesc.mockup("T"), 1, "NAME", "varchar(256)").getRef();
+    File filterTable;
+
+    @Before
+    public void setup() throws Exception {
+        createTestMetadata();
+        filterTable = File.createTempFile("massin", ".txt");
+        FileUtils.writeLines(filterTable, Arrays.asList("c", "a", "", "x", "a"));
+    }
+
+    @After
+    public void after() throws Exception {
+        FileUtils.deleteQuietly(filterTable);
+        cleanupTestMetadata();
+    }
+
+    @Test
+    public void testDictionaryToBitmap() {
+        TrieDictionaryBuilder<String> b = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        for (String v : new String[] { "a", "b", "c", "d" }) {
+            b.addValue(v);
+        }
+        final TrieDictionary<String> dict = b.build(0);
+
+        TupleFilter translated = new MassInFilterTransformer(dimEncMap(dict, null, null)).transform(massIn());
+        assertTrue(translated instanceof BitmapInTupleFilter);
+        BitmapInTupleFilter bitmapFilter = (BitmapInTupleFilter) translated;
+        // "x" is not in the dictionary
+        assertArrayEquals(new int[] { dict.getIdFromValue("a"), dict.getIdFromValue("c") }, bitmapFilter.getIds().toArray());
+    }
+
+    @Test
+    public void testFixedLengthToSortedArray() {
+        TupleFilter translated = new MassInFilterTransformer(dimEncMap(null, new FixedLenDimEnc(2), null)).transform(massIn());
+        assertTrue(translated instanceof SortedInTupleFilter);
+        SortedInTupleFilter sortedFilter = (SortedInTupleFilter) translated;
+        assertEquals(3, sortedFilter.size());
+
+        // survives serialization, as sent to the storage
+        byte[] bytes = TupleFilterSerializer.serialize(translated, StringCodeSystem.INSTANCE);
+        SortedInTupleFilter deserialized = (SortedInTupleFilter) TupleFilterSerializer.deserialize(bytes, StringCodeSystem.INSTANCE);
+        List<ByteArray> codes = deserialized.getCodes();
+        assertEquals(sortedFilter.getCodes(), codes);
+        assertEquals(codes.get(0), deserialized.getMinCode());
+        assertEquals(codes.get(2), deserialized.getMaxCode());
+        assertTrue(codes.get(0).compareTo(codes.get(1)) < 0 && codes.get(1).compareTo(codes.get(2)) < 0);
+    }
+
+    @Test
+    public void testNotMassInToNegatedSortedArray() {
+        LogicalTupleFilter not = new LogicalTupleFilter(FilterOperatorEnum.NOT);
+        not.addChild(massIn());
+        TupleFilter translated = new MassInFilterTransformer(dimEncMap(null, new FixedLenDimEnc(2), null)).transform(not);
+
+        // NOT is pushed down into the set filter
+        TupleFilter flat = translated.flatFilter();
+        assertEquals(FilterOperatorEnum.AND, flat.getOperator());
+        assertEquals(1, flat.getChildren().size());
+        SortedInTupleFilter negated = (SortedInTupleFilter) flat.getChildren().get(0);
+        assertTrue(negated.isNegated());
+        assertEquals(3, negated.size());
+        assertFalse(((SortedInTupleFilter) negated.reverse()).isNegated());
+
+        byte[] bytes = TupleFilterSerializer.serialize(flat, StringCodeSystem.INSTANCE);
+        TupleFilter deserialized = TupleFilterSerializer.deserialize(bytes, StringCodeSystem.INSTANCE);
+        SortedInTupleFilter deserializedSet = (SortedInTupleFilter) deserialized.getChildren().get(0);
+        assertTrue(deserializedSet.isNegated());
+        assertEquals(negated.getCodes(), deserializedSet.getCodes());
+    }
+
+    @Test
+    public void testNothingMatched() throws Exception {
+        FileUtils.writeLines(filterTable, Arrays.asList("y", "z"));
+        TrieDictionaryBuilder<String> b = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        b.addValue("a");
+        assertEquals(ConstantTupleFilter.FALSE, new MassInFilterTransformer(dimEncMap(b.build(0), null, null)).transform(massIn()));
+    }
+
+    @Test
+    public void testCacheKeyedByDictionaryPath() {
+        TrieDictionaryBuilder<String> b = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        for (String v : new String[] { "a", "b", "c", "d" }) {
+            b.addValue(v);
+        }
+        TrieDictionary<String> dict = b.build(0);
+        b = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        for (String v : new String[] { "0", "a", "c" }) {
+            b.addValue(v);
+        }
+        TrieDictionary<String> otherDict = b.build(0);
+        int[] ids = new int[] { dict.getIdFromValue("a"), dict.getIdFromValue("c") };
+        int[] otherIds = new int[] { otherDict.getIdFromValue("a"), otherDict.getIdFromValue("c") };
+        assertFalse(Arrays.equals(ids, otherIds));
+
+        BitmapInTupleFilter first = (BitmapInTupleFilter) new MassInFilterTransformer(dimEncMap(dict, null, "/dict/T/NAME/1.dict")).transform(massIn());
+        assertArrayEquals(ids, first.getIds().toArray());
+
+        // the same dictionary path hits the cache, whatever the dictionary instance
+        BitmapInTupleFilter cached = (BitmapInTupleFilter) new MassInFilterTransformer(dimEncMap(otherDict, null, "/dict/T/NAME/1.dict")).transform(massIn());
+        assertArrayEquals(ids, cached.getIds().toArray());
+
+        // another dictionary path loads the ids of its own dictionary
+        BitmapInTupleFilter other = (BitmapInTupleFilter) new MassInFilterTransformer(dimEncMap(otherDict, null, "/dict/T/NAME/2.dict")).transform(massIn());
+        assertArrayEquals(otherIds, other.getIds().toArray());
+    }
+
+    private MassInTupleFilter massIn() {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        BytesUtil.writeUTFString("filter_table", buffer);
+        BytesUtil.writeUTFString(filterTable.toURI().toString(), buffer);
+        BytesUtil.writeUTFString(Functions.FilterTableType.HDFS.toString(), buffer);
+        buffer.flip();
+
+        MassInTupleFilter massIn = new MassInTupleFilter();
+        massIn.deserialize(StringCodeSystem.INSTANCE, buffer);
+        massIn.addChild(new ColumnTupleFilter(col));
+        return massIn;
+    }
+
+    private IDimensionEncodingMap dimEncMap(final Dictionary<String> dict, final DimensionEncoding encoding, final String dictResPath) {
+        return new IDimensionEncodingMap() {
+            @Override
+            public DimensionEncoding get(TblColRef col) {
+                return encoding;
+            }
+
+            @Override
+            public Dictionary<String> getDictionary(TblColRef col) {
+                return dict;
+            }
+
+            @Override
+            public String getDictionaryResPath(TblColRef col) {
+                return dictResPath;
+            }
+        };
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.dict;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class ParallelTrieDictionaryBuilderTest {
+
+    /** benchmark of building a dictionary of a generated high cardinality column, one thread versus divide and merge */
+    public static void main(String[] args) throws Exception {
+        List<String> values = generateSorted(5000000, 20, new Random(1000));
+        for (int round = 0; round < 3; round++) {
+            long t = System.currentTimeMillis();
+            TrieDictionaryBuilder<String> b = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+            for (String v : values)
+                b.addValue(v);
+            b.build(0);
+            System.out.println("1 thread: " + (System.currentTimeMillis() - t) + " ms");
+
+            for (int threads : new int[] { 2, 4, 8 }) {
+                ExecutorService pool = Executors.newFixedThreadPool(threads);
+                t = System.currentTimeMillis();
+                ParallelTrieDictionaryBuilder<String> pb = new ParallelTrieDictionaryBuilder<String>(new StringBytesConverter(), 500000, pool, threads);
+                for (String v : values)
+                    pb.addValue(v);
+                pb.build(0);
+                System.out.println(threads + " threads: " + (System.currentTimeMillis() - t) + " ms");
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static List<String> generateSorted(int count, int maxLength, Random rand) {
+        TreeSet<String> set = new TreeSet<String>();
+        while (set.size() < count) {
+            int len = 1 + rand.nextInt(maxLength);
+            StringBuilder buf = new StringBuilder(len);
+            for (int i = 0; i < len; i++) {
+                buf.append((char) ('a' + rand.nextInt(26)));
+            }
+            set.add(buf.toString());
+        }
+        return new ArrayList<String>(set);
+    }
+
+    @Test
+    public void testMergeSorted() throws IOException {
+        List<String> values = generateSorted(20000, 8, new Random(1));
+        values.add(0, "");
+        verifyParallelBuild(values, 1000);
+    }
+
+    @Test
+    public void testMergeUnsorted() throws IOException {
+        List<String> values = generateSorted(20000, 8, new Random(2));
+        Collections.shuffle(values, new Random(3));
+        // duplicated values across chunks
+        values.addAll(values.subList(0, 3000));
+        verifyParallelBuild(values, 777);
+    }
+
+    @Test
+    public void testMergeOverlappingPrefix() {
+        TrieDictionaryBuilder<String> a = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        a.addValue("part");
+        a.addValue("partition");
+        TrieDictionaryBuilder<String> b = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        b.addValue("par");
+        b.addValue("parts");
+        b.addValue("pa");
+        a.merge(b);
+
+        TrieDictionary<String> dict = a.build(0);
+        assertEquals(5, dict.getSize());
+        assertEquals(0, dict.getIdFromValue("pa"));
+        assertEquals(1, dict.getIdFromValue("par"));
+        assertEquals(2, dict.getIdFromValue("part"));
+        assertEquals(3, dict.getIdFromValue("partition"));
+        assertEquals(4, dict.getIdFromValue("parts"));
+    }
+
+    private void verifyParallelBuild(List<String> values, int chunkSize) throws IOException {
+        TrieDictionaryBuilder<String> b = new TrieDictionaryBuilder<String>(new StringBytesConverter());
+        for (String v : values)
+            b.addValue(v);
+        TrieDictionary<String> expected = b.build(0);
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            ParallelTrieDictionaryBuilder<String> pb = new ParallelTrieDictionaryBuilder<String>(new StringBytesConverter(), chunkSize, pool, 4);
+            for (String v : values)
+                pb.addValue(v);
+            TrieDictionary<String> actual = pb.build(0);
+
+            assertEquals(expected.getSize(), actual.getSize());
+            assertArrayEquals(toBytes(expected), toBytes(actual));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static byte[] toBytes(TrieDictionary<String> dict) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+        dict.write(out);
+        out.close();
+        return buf.toByteArray();
+    }
+}
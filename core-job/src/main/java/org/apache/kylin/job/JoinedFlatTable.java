@@ -79,6 +79,10 @@ public class JoinedFlatTable {
     }
 
     public static String generateCreateTableStatement(IJoinedFlatTableDesc flatDesc, String storageDfsDir) {
+        return generateCreateTableStatement(flatDesc, storageDfsDir, "SEQUENCEFILE");
+    }
+
+    public static String generateCreateTableStatement(IJoinedFlatTableDesc flatDesc, String storageDfsDir, String storageFormat) {
         StringBuilder ddl = new StringBuilder();
 
         ddl.append("CREATE EXTERNAL TABLE IF NOT EXISTS " + flatDesc.getTableName() + "\n");
@@ -93,8 +97,12 @@ public class JoinedFlatTable {
         }
         ddl.append(")" + "\n");
 
-        ddl.append("ROW FORMAT DELIMITED FIELDS TERMINATED BY '\\177'" + "\n");
-        ddl.append("STORED AS SEQUENCEFILE" + "\n");
+        if ("ORC".equals(storageFormat)) {
+            ddl.append("STORED AS ORC" + "\n");
+        } else {
+            ddl.append("ROW FORMAT DELIMITED FIELDS TERMINATED BY '\\177'" + "\n");
+            ddl.append("STORED AS SEQUENCEFILE" + "\n");
+        }
         ddl.append("LOCATION '" + getTableDir(flatDesc, storageDfsDir) + "';").append("\n");
         // ddl.append("TBLPROPERTIES ('serialization.null.format'='\\\\N')" +
         // ";\n");
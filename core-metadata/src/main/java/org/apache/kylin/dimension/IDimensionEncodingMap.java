@@ -38,4 +38,7 @@ public interface IDimensionEncodingMap {
     /** Get dictionary of a column if its encoding is dictionary based */
     Dictionary<String> getDictionary(TblColRef col);
 
+    /** Get the resource path of the dictionary of a column, null if it has none or the dictionary is not stored */
+    String getDictionaryResPath(TblColRef col);
+
 }
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.metadata.filter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Column IN a bitmap of dictionary ids, evaluated on the encoded column value as a bitmap probe.
+ *
+ * Translated from a function filter like LIKE, or a MASSIN filter, on a dictionary column, instead of an IN filter
+ * holding every matched value. So it is only evaluable on a grid table record, where the column is encoded by the
+ * dictionary.
+ */
+public class BitmapInTupleFilter extends EncodedSetTupleFilter {
+
+    private ImmutableRoaringBitmap ids;
+    private int sizeOfId;
+
+    public BitmapInTupleFilter() {
+        super(FilterOperatorEnum.BITMAP_IN);
+    }
+
+    public BitmapInTupleFilter(TblColRef column, ImmutableRoaringBitmap ids, int sizeOfId) {
+        this();
+        this.ids = ids;
+        this.sizeOfId = sizeOfId;
+        addChild(new ColumnTupleFilter(column));
+    }
+
+    public ImmutableRoaringBitmap getIds() {
+        return ids;
+    }
+
+    @Override
+    public int size() {
+        return ids.getCardinality();
+    }
+
+    @Override
+    public ByteArray getMinCode() {
+        return encodeId(ids.getIntIterator().next());
+    }
+
+    @Override
+    public ByteArray getMaxCode() {
+        return encodeId(ids.getReverseIntIterator().next());
+    }
+
+    @Override
+    public List<ByteArray> getCodes() {
+        List<ByteArray> codes = Lists.newArrayListWithCapacity(size());
+        IntIterator iterator = ids.getIntIterator();
+        while (iterator.hasNext()) {
+            codes.add(encodeId(iterator.next()));
+        }
+        return codes;
+    }
+
+    // dictionary ids are encoded as fixed length unsigned integers
+    private ByteArray encodeId(int id) {
+        ByteArray code = new ByteArray(sizeOfId);
+        BytesUtil.writeUnsigned(id, code.array(), 0, sizeOfId);
+        return code;
+    }
+
+    @Override
+    protected boolean containsCode(ByteArray code) {
+        return ids.contains(BytesUtil.readUnsigned(code.array(), code.offset(), code.length()));
+    }
+
+    @Override
+    public TupleFilter copy() {
+        BitmapInTupleFilter copy = new BitmapInTupleFilter(column, ids, sizeOfId);
+        copy.negated = negated;
+        return copy;
+    }
+
+    @Override
+    protected void serializeSet(ByteBuffer buffer) {
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(bos);
+            ids.serialize(dos);
+            dos.close();
+            BytesUtil.writeVInt(sizeOfId, buffer);
+            BytesUtil.writeByteArray(bos.toByteArray(), buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    protected void deserializeSet(ByteBuffer buffer) {
+        sizeOfId = BytesUtil.readVInt(buffer);
+        // probed in place, not copied into a mutable bitmap
+        ids = new ImmutableRoaringBitmap(readByteArrayView(buffer));
+    }
+
+    @Override
+    public String toString() {
+        return column + (negated ? " NOT IN BITMAP(" : " IN BITMAP(") + ids.getCardinality() + " ids)";
+    }
+}
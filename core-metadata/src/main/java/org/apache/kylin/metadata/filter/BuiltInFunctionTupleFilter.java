@@ -24,6 +24,7 @@ import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import org.apache.kylin.common.util.BytesUtil;
 import org.apache.kylin.metadata.filter.function.BuiltInMethod;
@@ -32,6 +33,7 @@ import org.apache.kylin.metadata.tuple.IEvaluatableTuple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Primitives;
 
@@ -94,6 +96,92 @@ public class BuiltInFunctionTupleFilter extends FunctionTupleFilter {
         return method.invoke(null, (Object[]) (methodParams.toArray()));
     }
 
+    /**
+     * Same as {@link #invokeFunction(Object)} but without reflection, the constants like a LIKE pattern are compiled
+     * only once. The returned function keeps no state and can be shared among threads.
+     *
+     * @return null if the function can only be invoked by reflection
+     */
+    public Function<Object, Object> compileFunction() {
+        if (!isValid() || colPosition != 0) {
+            return null;
+        }
+
+        final Function<Object, Object> input;
+        if (columnContainerFilter instanceof ColumnTupleFilter) {
+            input = new Function<Object, Object>() {
+                @Override
+                public Object apply(Object value) {
+                    return value;
+                }
+            };
+        } else if (columnContainerFilter instanceof BuiltInFunctionTupleFilter) {
+            input = ((BuiltInFunctionTupleFilter) columnContainerFilter).compileFunction();
+            if (input == null) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+
+        switch (BuiltInMethod.valueOf(name)) {
+        case UPPER:
+            return new Function<Object, Object>() {
+                @Override
+                public Object apply(Object value) {
+                    return BuiltInMethod.upper((String) input.apply(value));
+                }
+            };
+        case LOWER:
+            return new Function<Object, Object>() {
+                @Override
+                public Object apply(Object value) {
+                    return BuiltInMethod.lower((String) input.apply(value));
+                }
+            };
+        case INITCAP:
+            return new Function<Object, Object>() {
+                @Override
+                public Object apply(Object value) {
+                    return BuiltInMethod.initcap((String) input.apply(value));
+                }
+            };
+        case CHAR_LENGTH:
+            return new Function<Object, Object>() {
+                @Override
+                public Object apply(Object value) {
+                    return BuiltInMethod.charLength((String) input.apply(value));
+                }
+            };
+        case SUBSTRING:
+            if (methodParams.size() != 3) {
+                return null;
+            }
+            final int from = (Integer) methodParams.get(1);
+            final int for_ = (Integer) methodParams.get(2);
+            return new Function<Object, Object>() {
+                @Override
+                public Object apply(Object value) {
+                    return BuiltInMethod.substring((String) input.apply(value), from, for_);
+                }
+            };
+        case LIKE:
+            if (methodParams.size() != 2) {
+                return null;
+            }
+            final Pattern pattern = BuiltInMethod.compileLike((String) methodParams.get(1));
+            return new Function<Object, Object>() {
+                @Override
+                public Object apply(Object value) {
+                    String s = (String) input.apply(value);
+                    return s != null && pattern.matcher(s).matches();
+                }
+            };
+        default:
+            return null;
+        }
+    }
+
     public boolean isValid() {
         return isValidFunc && method != null && methodParams.size() == children.size();
     }
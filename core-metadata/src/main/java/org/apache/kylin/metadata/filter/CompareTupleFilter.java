@@ -126,6 +126,26 @@ public class CompareTupleFilter extends TupleFilter {
         this.firstCondValue = this.conditionValues.iterator().next();
     }
 
+    /**
+     * Drops the values bound to the dynamic variables by a previous execution of the same plan, keeping the
+     * values of the constant children only.
+     */
+    public void unbindVariables() {
+        if (this.dynamicVariables.isEmpty())
+            return;
+
+        for (Map.Entry<String, Object> entry : this.dynamicVariables.entrySet()) {
+            entry.setValue(null);
+        }
+        this.conditionValues.clear();
+        for (TupleFilter child : this.children) {
+            if (child instanceof ConstantTupleFilter) {
+                this.conditionValues.addAll(child.getValues());
+            }
+        }
+        this.firstCondValue = this.conditionValues.isEmpty() ? null : this.conditionValues.iterator().next();
+    }
+
     @Override
     public TupleFilter copy() {
         return new CompareTupleFilter(this);
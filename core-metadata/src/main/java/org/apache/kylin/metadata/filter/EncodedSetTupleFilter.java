@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.metadata.filter;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.apache.kylin.metadata.tuple.IEvaluatableTuple;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Column IN a set of encoded values, evaluated on the encoded column value of a grid table record.
+ *
+ * The set is kept in a compact sorted form, so its smallest and largest codes prune the scan range, and a small
+ * set gives the codes to build fuzzy keys. The reverse of the filter, e.g. of NOT LIKE, is the negated filter of
+ * the same set, which matches the non null values out of the set and does not prune the scan range.
+ */
+public abstract class EncodedSetTupleFilter extends TupleFilter {
+
+    protected TblColRef column;
+    protected boolean negated;
+
+    protected EncodedSetTupleFilter(FilterOperatorEnum op) {
+        super(Lists.<TupleFilter> newArrayList(), op);
+    }
+
+    public TblColRef getColumn() {
+        return column;
+    }
+
+    /**
+     * @return true if the column is NOT IN the set
+     */
+    public boolean isNegated() {
+        return negated;
+    }
+
+    /**
+     * @return the number of encoded values in the set, which is never empty
+     */
+    public abstract int size();
+
+    /**
+     * @return the smallest encoded value, to prune the scan range
+     */
+    public abstract ByteArray getMinCode();
+
+    /**
+     * @return the largest encoded value, to prune the scan range
+     */
+    public abstract ByteArray getMaxCode();
+
+    /**
+     * @return all encoded values in order, only meant for a small set
+     */
+    public abstract List<ByteArray> getCodes();
+
+    protected abstract boolean containsCode(ByteArray code);
+
+    protected abstract void serializeSet(ByteBuffer buffer);
+
+    protected abstract void deserializeSet(ByteBuffer buffer);
+
+    @Override
+    public TupleFilter reverse() {
+        EncodedSetTupleFilter reverse = (EncodedSetTupleFilter) copy();
+        reverse.negated = !negated;
+        return reverse;
+    }
+
+    @Override
+    public void addChild(TupleFilter child) {
+        if (!(child instanceof ColumnTupleFilter) || column != null) {
+            throw new IllegalStateException(getClass().getSimpleName() + " only has one ColumnTupleFilter child, but added " + child);
+        }
+        column = ((ColumnTupleFilter) child).getColumn();
+        super.addChild(child);
+    }
+
+    @Override
+    public boolean isEvaluable() {
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean evaluate(IEvaluatableTuple tuple, IFilterCodeSystem<?> cs) {
+        Object value = tuple.getValue(column);
+        if (!(value instanceof ByteArray)) {
+            throw new IllegalStateException(getClass().getSimpleName() + " evaluates encoded values only, but got " + value);
+        }
+        ByteArray code = (ByteArray) value;
+        if (((IFilterCodeSystem<ByteArray>) cs).isNull(code)) {
+            return false;
+        }
+        return containsCode(code) != negated;
+    }
+
+    @Override
+    public Collection<?> getValues() {
+        return null;
+    }
+
+    @Override
+    public void serialize(IFilterCodeSystem<?> cs, ByteBuffer buffer) {
+        BytesUtil.writeVInt(negated ? 1 : 0, buffer);
+        serializeSet(buffer);
+    }
+
+    @Override
+    public void deserialize(IFilterCodeSystem<?> cs, ByteBuffer buffer) {
+        negated = BytesUtil.readVInt(buffer) != 0;
+        deserializeSet(buffer);
+    }
+
+    /**
+     * Reads a byte array written by {@link BytesUtil#writeByteArray(byte[], ByteBuffer)} as a view of the buffer, so
+     * a big set is probed in place instead of being copied once more.
+     */
+    protected static ByteBuffer readByteArrayView(ByteBuffer buffer) {
+        int len = BytesUtil.readVInt(buffer);
+        ByteBuffer view = buffer.slice();
+        view.limit(len);
+        buffer.position(buffer.position() + len);
+        return view;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.metadata.filter;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.metadata.model.TblColRef;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Column IN a sorted array of fixed length encoded values, evaluated on the encoded column value by binary search.
+ *
+ * The counterpart of {@link BitmapInTupleFilter} for a column not encoded by a dictionary. All the values are
+ * held in one buffer, which is serialized as is and probed in place after deserialization.
+ */
+public class SortedInTupleFilter extends EncodedSetTupleFilter {
+
+    private ByteBuffer codes;
+    private int codeLength;
+    private int count;
+
+    public SortedInTupleFilter() {
+        super(FilterOperatorEnum.SORTED_IN);
+    }
+
+    /**
+     * @param sortedCodes distinct codes of codeLength bytes each, from position 0 to the limit of the buffer, in the
+     *                    order of unsigned byte comparison; the buffer is shared, not copied
+     */
+    public SortedInTupleFilter(TblColRef column, ByteBuffer sortedCodes, int codeLength) {
+        this();
+        this.codes = sortedCodes;
+        this.codeLength = codeLength;
+        this.count = sortedCodes.limit() / codeLength;
+        addChild(new ColumnTupleFilter(column));
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public ByteArray getMinCode() {
+        return codeAt(0);
+    }
+
+    @Override
+    public ByteArray getMaxCode() {
+        return codeAt(count - 1);
+    }
+
+    @Override
+    public List<ByteArray> getCodes() {
+        List<ByteArray> result = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            result.add(codeAt(i));
+        }
+        return result;
+    }
+
+    private ByteArray codeAt(int i) {
+        ByteArray code = new ByteArray(codeLength);
+        for (int j = 0; j < codeLength; j++) {
+            code.array()[j] = codes.get(i * codeLength + j);
+        }
+        return code;
+    }
+
+    @Override
+    protected boolean containsCode(ByteArray code) {
+        if (code.length() != codeLength) {
+            return false;
+        }
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comp = compareCodeAt(mid, code.array(), code.offset());
+            if (comp < 0) {
+                low = mid + 1;
+            } else if (comp > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int compareCodeAt(int i, byte[] bytes, int offset) {
+        int base = i * codeLength;
+        for (int j = 0; j < codeLength; j++) {
+            int comp = (codes.get(base + j) & 0xff) - (bytes[offset + j] & 0xff);
+            if (comp != 0) {
+                return comp;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public TupleFilter copy() {
+        SortedInTupleFilter copy = new SortedInTupleFilter(column, codes, codeLength);
+        copy.negated = negated;
+        return copy;
+    }
+
+    @Override
+    protected void serializeSet(ByteBuffer buffer) {
+        BytesUtil.writeVInt(codeLength, buffer);
+        BytesUtil.writeVInt(count * codeLength, buffer);
+        ByteBuffer all = codes.duplicate();
+        all.clear().limit(count * codeLength);
+        buffer.put(all);
+    }
+
+    @Override
+    protected void deserializeSet(ByteBuffer buffer) {
+        codeLength = BytesUtil.readVInt(buffer);
+        codes = readByteArrayView(buffer);
+        count = codes.limit() / codeLength;
+    }
+
+    @Override
+    public String toString() {
+        return column + (negated ? " NOT IN SORTED(" : " IN SORTED(") + count + " values)";
+    }
+}
@@ -197,6 +197,12 @@ public class TupleFilterSerializer {
         case MASSIN:
             filter = new MassInTupleFilter();
             break;
+        case BITMAP_IN:
+            filter = new BitmapInTupleFilter();
+            break;
+        case SORTED_IN:
+            filter = new SortedInTupleFilter();
+            break;
         default:
             throw new IllegalStateException("Error FilterOperatorEnum: " + op.getValue());
         }
@@ -69,6 +69,18 @@ public class MassInTupleFilter extends FunctionTupleFilter {
         return ret;
     }
 
+    public TblColRef getColumn() {
+        return column;
+    }
+
+    public Functions.FilterTableType getFilterTableType() {
+        return filterTableType;
+    }
+
+    public String getFilterTableResourceIdentifier() {
+        return filterTableResourceIdentifier;
+    }
+
     @Override
     public Collection<?> getValues() {
         return null;
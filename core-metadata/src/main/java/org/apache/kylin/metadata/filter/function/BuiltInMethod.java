@@ -50,8 +50,12 @@ public enum BuiltInMethod {
         if (s == null)
             return false;
         
-        final String regex = Like.sqlToRegexLike(pattern, null);
-        return Pattern.matches(regex, s);
+        return compileLike(pattern).matcher(s).matches();
+    }
+
+    /** The regex of a SQL {@code LIKE} pattern, to match many strings against the same pattern. */
+    public static Pattern compileLike(String pattern) {
+        return Pattern.compile(Like.sqlToRegexLike(pattern, null));
     }
 
     /** SQL INITCAP(string) function. */
@@ -18,10 +18,12 @@
 
 package org.apache.kylin.storage;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.metadata.model.FunctionDesc;
 import org.apache.kylin.metadata.realization.IRealization;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +44,7 @@ public class StorageContext {
     private int offset;
     private int finalPushDownLimit;
     private boolean hasSort;
+    private boolean sortNotPushable;
     private boolean acceptPartialResult;
 
     private boolean exactAggregation;
@@ -55,6 +58,13 @@ public class StorageContext {
 
     private Range<Long> reusedPeriod;
 
+    private int samplingPercentage;
+    private double samplingApproxRelativeError;
+
+    private int storageTopN;
+    private List<FunctionDesc> storageTopNMeasures;
+    private boolean[] storageTopNDescending;
+
     public StorageContext() {
         this.threshold = DEFAULT_THRESHOLD;
         this.limit = DEFAULT_THRESHOLD;
@@ -69,6 +79,32 @@ public class StorageContext {
         this.acceptPartialResult = false;
         this.partialResultReturned = false;
         this.finalPushDownLimit = Integer.MAX_VALUE;
+        this.samplingPercentage = 100;
+        this.storageTopN = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Clears what the last storage search left in this context, keeping only what the query plan set,
+     * so that a cached plan can search again.
+     */
+    public void resetRuntimeState() {
+        this.threshold = DEFAULT_THRESHOLD;
+        this.totalScanCount = new AtomicLong();
+        this.cuboid = null;
+
+        this.exactAggregation = false;
+        this.needStorageAggregation = false;
+        this.enableLimit = false;
+        this.enableCoprocessor = false;
+
+        this.partialResultReturned = false;
+        this.reusedPeriod = null;
+        this.finalPushDownLimit = Integer.MAX_VALUE;
+        this.samplingPercentage = 100;
+        this.samplingApproxRelativeError = 0;
+        this.storageTopN = Integer.MAX_VALUE;
+        this.storageTopNMeasures = null;
+        this.storageTopNDescending = null;
     }
 
     public String getConnUrl() {
@@ -146,6 +182,18 @@ public class StorageContext {
         return this.hasSort;
     }
 
+    /**
+     * storage cannot compute the order of the query, like one by a dimension or an expression, or one
+     * over several realizations
+     */
+    public void markSortNotPushable() {
+        this.sortNotPushable = true;
+    }
+
+    public boolean isSortPushable() {
+        return this.hasSort && !this.sortNotPushable;
+    }
+
     public void setCuboid(Cuboid c) {
         cuboid = c;
     }
@@ -209,4 +257,53 @@ public class StorageContext {
     public void setReusedPeriod(Range<Long> reusedPeriod) {
         this.reusedPeriod = reusedPeriod;
     }
+
+    public boolean isSampling() {
+        return samplingPercentage < 100;
+    }
+
+    public int getSamplingPercentage() {
+        return samplingPercentage;
+    }
+
+    public void setSamplingPercentage(int samplingPercentage) {
+        this.samplingPercentage = samplingPercentage;
+    }
+
+    /**
+     * an approximate relative error (95% confidence) of the scaled up SUM/COUNT of an approximate query, taking the
+     * sampled rows as independent; rows are sampled by block, so the real error is larger when blocks are clustered
+     */
+    public double getSamplingApproxRelativeError() {
+        return samplingApproxRelativeError;
+    }
+
+    public void setSamplingApproxRelativeError(double samplingApproxRelativeError) {
+        this.samplingApproxRelativeError = samplingApproxRelativeError;
+    }
+
+    /**
+     * storage returns only the first topN groups of each region, in the order of the measures, descending or not
+     */
+    public void enableStorageTopN(int topN, List<FunctionDesc> measures, boolean[] descending) {
+        this.storageTopN = topN;
+        this.storageTopNMeasures = measures;
+        this.storageTopNDescending = descending;
+    }
+
+    public boolean isStorageTopNEnabled() {
+        return storageTopN != Integer.MAX_VALUE;
+    }
+
+    public int getStorageTopN() {
+        return storageTopN;
+    }
+
+    public List<FunctionDesc> getStorageTopNMeasures() {
+        return storageTopNMeasures;
+    }
+
+    public boolean[] getStorageTopNDescending() {
+        return storageTopNDescending;
+    }
 }
@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.gtrecord;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.common.util.MemoryBudgetController;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.gridtable.GTAggregateScanner;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.measure.MeasureType;
+import org.apache.kylin.metadata.model.FunctionDesc;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+
+/**
+ * Aggregates GTRecords of the same group across all segments before they are converted into tuples,
+ * with GTAggregateScanner (and its spill to disk) on the query server.
+ *
+ * Only applicable when the records of every segment are encoded the same way, i.e. the dimensions
+ * are not dictionary encoded or their segments share the same dictionaries, like reused or merged ones,
+ * see isApplicable(). Dictionaries are compared by resource path or by content, never id by id.
+ */
+public class CrossSegmentAggregateScanner implements IGTScanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrossSegmentAggregateScanner.class);
+
+    // whether two dictionary resources hold the same dictionary, by "path|path"
+    private static final Cache<String, Boolean> sameEncodingCache = CacheBuilder.newBuilder().maximumSize(10000).build();
+
+    private final List<? extends IGTScanner> scanners;
+    private final CubeSegmentScanner representativeScanner;
+    private final GTAggregateScanner aggrScanner;
+
+    public CrossSegmentAggregateScanner(List<CubeSegmentScanner> scanners) {
+        this(scanners, findRepresentativeScanner(scanners), createAggrRequest(scanners));
+    }
+
+    CrossSegmentAggregateScanner(List<? extends IGTScanner> scanners, CubeSegmentScanner representativeScanner, GTScanRequest aggrRequest) {
+        this.scanners = scanners;
+        this.representativeScanner = representativeScanner;
+        this.aggrScanner = new GTAggregateScanner(new ConcatScanner(aggrRequest.getInfo()), aggrRequest, Long.MAX_VALUE);
+    }
+
+    private static GTScanRequest createAggrRequest(List<CubeSegmentScanner> scanners) {
+        // spill to disk once the aggregation cache exceeds the query memory budget
+        double memBudgetGB = (double) KylinConfig.getInstanceFromEnv().getQueryMemBudget() / MemoryBudgetController.ONE_GB;
+
+        GTScanRequest first = firstScanRequest(scanners);
+        ImmutableBitSet groupBy = first.getAggrGroupBy();
+        for (CubeSegmentScanner scanner : scanners) {
+            if (scanner.scanRequest != null) {
+                // un-evaluatable filter columns may be added to group by of some segments
+                groupBy = groupBy.or(scanner.scanRequest.getAggrGroupBy());
+            }
+        }
+
+        return new GTScanRequestBuilder().setInfo(first.getInfo()).setRanges(null)//
+                .setDimensions(first.getDimensions()).setAggrGroupBy(groupBy).setAggrMetrics(first.getAggrMetrics())//
+                .setAggrMetricsFuncs(first.getAggrMetricsFuncs()).setAggCacheMemThreshold(memBudgetGB).createGTScanRequest();
+    }
+
+    public static boolean isApplicable(List<CubeSegmentScanner> scanners, Cuboid cuboid, Collection<FunctionDesc> metrics) {
+        if (!KylinConfig.getInstanceFromEnv().isQueryCrossSegmentAggregationEnabled()) {
+            return false;
+        }
+
+        int segmentCount = 0;
+        for (CubeSegmentScanner scanner : scanners) {
+            if (scanner.scanRequest != null)
+                segmentCount++;
+        }
+        if (segmentCount < 2) {
+            return false;
+        }
+
+        GTScanRequest first = firstScanRequest(scanners);
+        if (!first.hasAggregation() || first.getAggrMetrics().isEmpty()) {
+            return false;
+        }
+
+        for (FunctionDesc metric : metrics) {
+            MeasureType<?> measureType = metric.getMeasureType();
+            if (measureType.needAdvancedTupleFilling() || !measureType.getColumnsNeedDictionary(metric).isEmpty()) {
+                logger.info("Cross segment aggregation is not applicable because {} depends on segment dictionary", metric);
+                return false;
+            }
+        }
+
+        // dictionary ids are only comparable across segments when the dictionaries decode them to the same values
+        CubeDesc cubeDesc = cuboid.getCubeDesc();
+        for (TblColRef col : cuboid.getColumns()) {
+            if (!cubeDesc.getRowkey().isUseDictionary(col)) {
+                continue;
+            }
+            TblColRef dictCol = cubeDesc.getDictionaryReuseColumn(col);
+            CubeSegment firstSeg = null;
+            String firstPath = null;
+            for (CubeSegmentScanner scanner : scanners) {
+                if (scanner.scanRequest == null)
+                    continue;
+                CubeSegment seg = scanner.getSegment();
+                String path = seg.getDictResPath(dictCol);
+                if (path == null) {
+                    logger.info("Cross segment aggregation is not applicable because segment {} has no dictionary on {}", seg, col);
+                    return false;
+                }
+                if (firstPath == null) {
+                    firstSeg = seg;
+                    firstPath = path;
+                } else if (!isSameEncoding(firstPath, path, firstSeg, seg, col)) {
+                    logger.info("Cross segment aggregation is not applicable because segments have different dictionaries on {}", col);
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSameEncoding(String path1, String path2, final CubeSegment seg1, final CubeSegment seg2, final TblColRef col) {
+        if (StringUtils.equals(path1, path2)) {
+            return true;
+        }
+        try {
+            // dictionary resources are immutable, the comparison is done once per pair, the dictionaries
+            // are cached by the DictionaryManager and loaded anyway to scan the segments
+            return sameEncodingCache.get(path1 + "|" + path2, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return isSameEncoding(seg1.getDictionary(col), seg2.getDictionary(col));
+                }
+            });
+        } catch (ExecutionException e) {
+            logger.warn("Failed to compare the dictionaries of " + col + " in segments " + seg1 + " and " + seg2, e.getCause());
+            return false;
+        }
+    }
+
+    /**
+     * @return whether both dictionaries are the same, so that records encoded by either are comparable; compares
+     * the content (e.g. the trie bytes of TrieDictionary, which include the base id) without decoding any id
+     */
+    static boolean isSameEncoding(Dictionary<?> dict1, Dictionary<?> dict2) {
+        if (dict1 == null || dict2 == null) {
+            return false;
+        }
+        return dict1.getSizeOfId() == dict2.getSizeOfId() && dict1.equals(dict2);
+    }
+
+    private static GTScanRequest firstScanRequest(List<CubeSegmentScanner> scanners) {
+        for (CubeSegmentScanner scanner : scanners) {
+            if (scanner.scanRequest != null)
+                return scanner.scanRequest;
+        }
+        return null;
+    }
+
+    private static CubeSegmentScanner findRepresentativeScanner(List<CubeSegmentScanner> scanners) {
+        for (CubeSegmentScanner scanner : scanners) {
+            if (scanner.scanRequest != null)
+                return scanner;
+        }
+        return scanners.get(0);
+    }
+
+    /**
+     * the segment whose tuple converter can convert the aggregated records
+     */
+    public CubeSegmentScanner getRepresentativeScanner() {
+        return representativeScanner;
+    }
+
+    int getNumOfSpills() {
+        return aggrScanner.getNumOfSpills();
+    }
+
+    @Override
+    public Iterator<GTRecord> iterator() {
+        Iterator<GTRecord> result = aggrScanner.iterator();
+        logger.info("Aggregated records of {} segments, {} spills", scanners.size(), aggrScanner.getNumOfSpills());
+        return result;
+    }
+
+    @Override
+    public GTInfo getInfo() {
+        return aggrScanner.getInfo();
+    }
+
+    @Override
+    public long getScannedRowCount() {
+        return aggrScanner.getScannedRowCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        aggrScanner.close();
+    }
+
+    private class ConcatScanner implements IGTScanner {
+        final GTInfo info;
+
+        ConcatScanner(GTInfo info) {
+            this.info = info;
+        }
+
+        @Override
+        public Iterator<GTRecord> iterator() {
+            return Iterators.concat(Iterators.transform(scanners.iterator(), new Function<IGTScanner, Iterator<GTRecord>>() {
+                @Override
+                public Iterator<GTRecord> apply(IGTScanner input) {
+                    return input.iterator();
+                }
+            }));
+        }
+
+        @Override
+        public GTInfo getInfo() {
+            return info;
+        }
+
+        @Override
+        public long getScannedRowCount() {
+            long count = 0;
+            for (IGTScanner scanner : scanners) {
+                count += scanner.getScannedRowCount();
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            List<IOException> errors = Lists.newArrayList();
+            for (IGTScanner scanner : scanners) {
+                try {
+                    scanner.close();
+                } catch (IOException e) {
+                    errors.add(e);
+                }
+            }
+            if (!errors.isEmpty()) {
+                throw errors.get(0);
+            }
+        }
+    }
+}
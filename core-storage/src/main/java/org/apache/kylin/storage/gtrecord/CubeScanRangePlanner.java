@@ -62,7 +62,6 @@ public class CubeScanRangePlanner extends ScanRangePlannerBase {
     private static final Logger logger = LoggerFactory.getLogger(CubeScanRangePlanner.class);
 
     protected int maxScanRanges;
-    protected int maxFuzzyKeys;
 
     //non-GT
     protected CubeSegment cubeSegment;
@@ -150,11 +149,18 @@ public class CubeScanRangePlanner extends ScanRangePlannerBase {
             GTScanRequestBuilder builder = new GTScanRequestBuilder().setInfo(gtInfo).setRanges(scanRanges).setDimensions(gtDimensions).//
                     setAggrGroupBy(gtAggrGroups).setAggrMetrics(gtAggrMetrics).setAggrMetricsFuncs(gtAggrFuncs).setFilterPushDown(gtFilter).//
                     setAllowStorageAggregation(context.isNeedStorageAggregation()).setAggCacheMemThreshold(cubeSegment.getCubeInstance().getConfig().getQueryCoprocessorMemGB()).//
-                    setStorageScanRowNumThreshold(context.getThreshold());
+                    setStorageScanRowNumThreshold(context.getThreshold()).//
+                    setSamplingPercentage(BackdoorToggles.getSamplingPercentage());
 
             if (context.getFinalPushDownLimit() != Integer.MAX_VALUE)
                 builder.setStoragePushDownLimit(context.getFinalPushDownLimit());
 
+            if (context.isStorageTopNEnabled()) {
+                int[] topNColumns = makeTopNColumns(context.getStorageTopNMeasures());
+                if (topNColumns != null)
+                    builder.setStorageTopN(context.getStorageTopN(), topNColumns, context.getStorageTopNDescending());
+            }
+
             scanRequest = builder.createGTScanRequest();
         } else {
             scanRequest = null;
@@ -162,6 +168,19 @@ public class CubeScanRangePlanner extends ScanRangePlannerBase {
         return scanRequest;
     }
 
+    private int[] makeTopNColumns(List<FunctionDesc> measures) {
+        CuboidToGridTableMapping mapping = cuboid.getCuboidToGridTableMapping();
+        int[] columns = new int[measures.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = mapping.getIndexOf(measures.get(i));
+            if (columns[i] < 0 || !gtAggrMetrics.get(columns[i])) {
+                logger.info("Not pushing down top-N because " + measures.get(i) + " is not a metric of the scan");
+                return null;
+            }
+        }
+        return columns;
+    }
+
     /**
      * Overwrite this method to provide smarter storage visit plans
      * @return
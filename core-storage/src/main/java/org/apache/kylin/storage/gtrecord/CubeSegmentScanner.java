@@ -26,6 +26,7 @@ import java.util.Set;
 import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.cuboid.Cuboid;
 import org.apache.kylin.dict.BuiltInFunctionTransformer;
+import org.apache.kylin.dict.MassInFilterTransformer;
 import org.apache.kylin.gridtable.GTInfo;
 import org.apache.kylin.gridtable.GTRecord;
 import org.apache.kylin.gridtable.GTScanRequest;
@@ -62,10 +63,13 @@ public class CubeSegmentScanner implements IGTScanner {
         byte[] serialize = TupleFilterSerializer.serialize(originalfilter, StringCodeSystem.INSTANCE);
         TupleFilter filter = TupleFilterSerializer.deserialize(serialize, StringCodeSystem.INSTANCE);
         
-        // translate FunctionTupleFilter to IN clause
-        ITupleFilterTransformer translator = new BuiltInFunctionTransformer(cubeSeg.getDimensionEncodingMap());
+        // translate FunctionTupleFilter to a bitmap of matched dictionary ids
+        ITupleFilterTransformer translator = new BuiltInFunctionTransformer(cubeSeg.getDimensionEncodingMap(), true);
         filter = translator.transform(filter);
 
+        // translate MassInTupleFilter to the encoded set of its values
+        filter = new MassInFilterTransformer(cubeSeg.getDimensionEncodingMap()).transform(filter);
+
         CubeScanRangePlanner scanRangePlanner;
         try {
             scanRangePlanner = new CubeScanRangePlanner(cubeSeg, cuboid, filter, dimensions, groups, metrics, context);
@@ -26,12 +26,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.cube.CubeInstance;
 import org.apache.kylin.cube.CubeManager;
 import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.RawQueryLastHacker;
 import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.cube.inmemcubing.InMemSegment;
+import org.apache.kylin.cube.inmemcubing.InMemSegmentGTStorage;
+import org.apache.kylin.cube.inmemcubing.InMemSegmentRegistry;
 import org.apache.kylin.cube.model.CubeDesc;
 import org.apache.kylin.cube.model.CubeDesc.DeriveInfo;
 import org.apache.kylin.dict.lookup.LookupStringTable;
@@ -122,9 +126,8 @@ public abstract class GTCubeStorageQueryBase implements IStorageQuery {
         // set cautious threshold to prevent out of memory
         setThresholdIfNecessary(dimensionsD, metrics, context);
 
-        List<CubeSegmentScanner> scanners = Lists.newArrayList();
+        List<CubeSegment> segments = Lists.newArrayList();
         for (CubeSegment cubeSeg : cubeInstance.getSegments(SegmentStatusEnum.READY)) {
-            CubeSegmentScanner scanner;
             if (cubeSeg.getInputRecords() == 0) {
                 if (!skipZeroInputSegment(cubeSeg)) {
                     logger.warn("cube segment {} input record is 0, " + "it may caused by kylin failed to the job counter " + "as the hadoop history server wasn't running", cubeSeg);
@@ -133,8 +136,23 @@ public abstract class GTCubeStorageQueryBase implements IStorageQuery {
                     continue;
                 }
             }
-            scanner = new CubeSegmentScanner(cubeSeg, cuboid, dimensionsD, groupsD, metrics, filterD, context, getGTStorage());
-            scanners.add(scanner);
+            segments.add(cubeSeg);
+        }
+
+        // the latest streaming window not built into a segment yet
+        List<InMemSegment> inMemSegs = InMemSegmentRegistry.getInstance(KylinConfig.getInstanceFromEnv()).get(cubeInstance, cubeInstance.getSegments(SegmentStatusEnum.READY));
+
+        // set top-N push down, which depends on the number of segments
+        enableStorageTopNIfPossible(groups, derivedPostAggregation, filter, sqlDigest, segments.size() + inMemSegs.size(), context);
+
+        List<CubeSegmentScanner> scanners = Lists.newArrayList();
+        for (CubeSegment cubeSeg : segments) {
+            scanners.add(new CubeSegmentScanner(cubeSeg, cuboid, dimensionsD, groupsD, metrics, filterD, context, getGTStorage()));
+        }
+
+        for (InMemSegment inMemSeg : inMemSegs) {
+            logger.info("Scanning in-memory segment {}", inMemSeg);
+            scanners.add(new CubeSegmentScanner(inMemSeg, cuboid, dimensionsD, groupsD, metrics, filterD, context, InMemSegmentGTStorage.class.getName()));
         }
 
         if (scanners.isEmpty())
@@ -443,6 +461,64 @@ public abstract class GTCubeStorageQueryBase implements IStorageQuery {
         }
     }
 
+    /**
+     * Storage keeps only the top N groups of each region for ORDER BY measures LIMIT N. That is exact only when
+     * every group is complete in one region, i.e. a single cuboid row of a single segment, which needs neither
+     * storage aggregation nor post aggregation.
+     */
+    private void enableStorageTopNIfPossible(Collection<TblColRef> groups, Set<TblColRef> derivedPostAggregation, TupleFilter filter, SQLDigest sqlDigest, int segmentCount, StorageContext context) {
+        if (!context.hasSort() || sqlDigest.sortMeasures.isEmpty() || context.isLimitEnabled())
+            return;
+
+        long topN = (long) context.getOffset() + context.getLimit();
+        String impossible = null;
+        if (!context.isSortPushable()) {
+            impossible = "the order is not pushable to storage";
+        } else if (topN > cubeInstance.getConfig().getStoragePushDownLimitMax()) {
+            impossible = "the limit(including offset) " + topN + " is larger than kylin.query.pushdown.limit.max";
+        } else if (!cubeInstance.supportsLimitPushDown()) {
+            impossible = "cube storage type not supported";
+        } else if (segmentCount != 1) {
+            impossible = "groups may span " + segmentCount + " segments";
+        } else if (context.isNeedStorageAggregation()) {
+            impossible = "groups may span regions and need storage aggregation";
+        } else if (!context.isExactAggregation() || !groups.containsAll(derivedPostAggregation)) {
+            impossible = "groups need post aggregation";
+        } else if (filter != null && !TupleFilter.isEvaluableRecursively(filter)) {
+            impossible = "the filter is unevaluatable";
+        }
+
+        for (FunctionDesc func : sqlDigest.aggregations) {
+            if (impossible == null && func.isDimensionAsMetric()) {
+                impossible = func + " isDimensionAsMetric";
+            }
+        }
+
+        List<FunctionDesc> measures = Lists.newArrayList();
+        for (MeasureDesc measure : sqlDigest.sortMeasures) {
+            FunctionDesc func = measure.getFunction();
+            // the decoded values of other measures are not comparable
+            if (impossible == null && !(func.isSum() || func.isCount() || func.isMax() || func.isMin())) {
+                impossible = "the query orders by " + func;
+            }
+            measures.add(func);
+        }
+
+        if (impossible != null) {
+            logger.info("Storage top-N push down is impossible because " + impossible);
+            return;
+        }
+
+        boolean[] descending = new boolean[measures.size()];
+        int i = 0;
+        for (SQLDigest.OrderEnum order : sqlDigest.sortOrders) {
+            descending[i++] = order == SQLDigest.OrderEnum.DESCENDING;
+        }
+
+        logger.info("Enable storage top " + topN + " by " + measures);
+        context.enableStorageTopN((int) topN, measures, descending);
+    }
+
     private void notifyBeforeStorageQuery(SQLDigest sqlDigest) {
         Map<String, List<MeasureDesc>> map = Maps.newHashMap();
         for (MeasureDesc measure : cubeDesc.getMeasures()) {
@@ -26,6 +26,7 @@ import java.util.Set;
 
 import org.apache.kylin.cube.cuboid.Cuboid;
 import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.IGTScanner;
 import org.apache.kylin.measure.MeasureType.IAdvMeasureFiller;
 import org.apache.kylin.metadata.model.FunctionDesc;
 import org.apache.kylin.metadata.model.TblColRef;
@@ -44,6 +45,7 @@ public class SegmentCubeTupleIterator implements ITupleIterator {
     private static final Logger logger = LoggerFactory.getLogger(SegmentCubeTupleIterator.class);
 
     protected final CubeSegmentScanner scanner;
+    protected final IGTScanner source;
     protected final Cuboid cuboid;
     protected final Set<TblColRef> selectedDimensions;
     protected final Set<FunctionDesc> selectedMetrics;
@@ -61,21 +63,26 @@ public class SegmentCubeTupleIterator implements ITupleIterator {
 
     public SegmentCubeTupleIterator(CubeSegmentScanner scanner, Cuboid cuboid, Set<TblColRef> selectedDimensions, //
             Set<FunctionDesc> selectedMetrics, TupleInfo returnTupleInfo, StorageContext context) {
+        this(scanner, scanner, cuboid, selectedDimensions, selectedMetrics, returnTupleInfo, context);
+    }
+
+    /**
+     * @param source where the GTRecords come from, the records are converted into tuples with the segment of scanner
+     */
+    public SegmentCubeTupleIterator(CubeSegmentScanner scanner, IGTScanner source, Cuboid cuboid, Set<TblColRef> selectedDimensions, //
+            Set<FunctionDesc> selectedMetrics, TupleInfo returnTupleInfo, StorageContext context) {
         this.scanner = scanner;
+        this.source = source;
         this.cuboid = cuboid;
         this.selectedDimensions = selectedDimensions;
         this.selectedMetrics = selectedMetrics;
         this.tupleInfo = returnTupleInfo;
         this.tuple = new Tuple(returnTupleInfo);
         this.context = context;
-        this.gtItr = getGTItr(scanner);
+        this.gtItr = source.iterator();
         this.cubeTupleConverter = new CubeTupleConverter(scanner.cubeSeg, cuboid, selectedDimensions, selectedMetrics, tupleInfo);
     }
 
-    private Iterator<GTRecord> getGTItr(CubeSegmentScanner scanner) {
-        return scanner.iterator();
-    }
-
     @Override
     public boolean hasNext() {
         if (next != null)
@@ -145,10 +152,10 @@ public class SegmentCubeTupleIterator implements ITupleIterator {
 
     @Override
     public void close() {
-        close(scanner);
+        close(source);
     }
 
-    protected void close(CubeSegmentScanner scanner) {
+    protected void close(IGTScanner scanner) {
         try {
             scanner.close();
         } catch (IOException e) {
@@ -57,12 +57,19 @@ public class SequentialCubeTupleIterator implements ITupleIterator {
         this.context = context;
         this.scanners = scanners;
 
+        this.storagePushDownLimit = context.getFinalPushDownLimit();
+
         segmentCubeTupleIterators = Lists.newArrayList();
-        for (CubeSegmentScanner scanner : scanners) {
-            segmentCubeTupleIterators.add(new SegmentCubeTupleIterator(scanner, cuboid, selectedDimensions, selectedMetrics, returnTupleInfo, context));
+        if (storagePushDownLimit == Integer.MAX_VALUE && CrossSegmentAggregateScanner.isApplicable(scanners, cuboid, selectedMetrics)) {
+            // merge the same group from all segments before converting to tuples
+            CrossSegmentAggregateScanner aggrScanner = new CrossSegmentAggregateScanner(scanners);
+            segmentCubeTupleIterators.add(new SegmentCubeTupleIterator(aggrScanner.getRepresentativeScanner(), aggrScanner, cuboid, selectedDimensions, selectedMetrics, returnTupleInfo, context));
+        } else {
+            for (CubeSegmentScanner scanner : scanners) {
+                segmentCubeTupleIterators.add(new SegmentCubeTupleIterator(scanner, cuboid, selectedDimensions, selectedMetrics, returnTupleInfo, context));
+            }
         }
 
-        this.storagePushDownLimit = context.getFinalPushDownLimit();
         if (storagePushDownLimit == Integer.MAX_VALUE) {
             //normal case
             tupleIterator = Iterators.concat(segmentCubeTupleIterators.iterator());
@@ -107,6 +114,30 @@ public class SequentialCubeTupleIterator implements ITupleIterator {
         for (SegmentCubeTupleIterator iterator : segmentCubeTupleIterators) {
             iterator.close();
         }
+
+        estimateSamplingError();
+    }
+
+    private void estimateSamplingError() {
+        int samplingPercentage = 100;
+        long sampledRows = 0;
+        for (CubeSegmentScanner scanner : scanners) {
+            if (scanner.scanRequest != null && scanner.scanRequest.isSampling()) {
+                samplingPercentage = Math.min(samplingPercentage, scanner.scanRequest.getSamplingPercentage());
+                sampledRows += scanner.getScannedRowCount();
+            }
+        }
+        if (samplingPercentage == 100) {
+            return;
+        }
+
+        // approximate: treats the sampled rows as a simple random sample, relative error of the scaled up total at 95% confidence.
+        // the storage samples whole blocks and reports no per block counts, so this understates the error of clustered data
+        double fraction = samplingPercentage / 100.0;
+        double relativeError = sampledRows == 0 ? 1.0 : Math.min(1.0, 1.96 * Math.sqrt((1 - fraction) / sampledRows));
+        context.setSamplingPercentage(samplingPercentage);
+        context.setSamplingApproxRelativeError(Math.max(context.getSamplingApproxRelativeError(), relativeError));
+        logger.info("Approximate query on {} percent of data, {} rows sampled, approximate relative error {}", samplingPercentage, sampledRows, relativeError);
     }
 
     protected void close(CubeSegmentScanner scanner) {
@@ -21,6 +21,7 @@ package org.apache.kylin.storage.gtrecord;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
 
@@ -44,10 +45,17 @@ public class StorageResponseGTScatter implements IGTScanner {
     private GTInfo info;
     private Iterator<byte[]> blocks;
     private ImmutableBitSet columns;
-    private long totalScannedCount;
+    private AtomicLong totalScannedCount;
     private int storagePushDownLimit = -1;
 
     public StorageResponseGTScatter(GTInfo info, Iterator<byte[]> blocks, ImmutableBitSet columns, long totalScannedCount, int storagePushDownLimit) {
+        this(info, blocks, columns, new AtomicLong(totalScannedCount), storagePushDownLimit);
+    }
+
+    /**
+     * @param totalScannedCount updated by the storage as the responses come back
+     */
+    public StorageResponseGTScatter(GTInfo info, Iterator<byte[]> blocks, ImmutableBitSet columns, AtomicLong totalScannedCount, int storagePushDownLimit) {
         this.info = info;
         this.blocks = blocks;
         this.columns = columns;
@@ -62,7 +70,7 @@ public class StorageResponseGTScatter implements IGTScanner {
 
     @Override
     public long getScannedRowCount() {
-        return totalScannedCount;
+        return totalScannedCount.get();
     }
 
     @Override
@@ -47,6 +47,11 @@ public class HybridStorageQuery implements IStorageQuery {
 
     @Override
     public ITupleIterator search(final StorageContext context, final SQLDigest sqlDigest, final TupleInfo returnTupleInfo) {
+        // a group may span several realizations
+        if (realizations.length > 1) {
+            context.markSortNotPushable();
+        }
+
         List<ITupleIterator> tupleIterators = Lists.newArrayList();
         for (int i = 0; i < realizations.length; i++) {
             if (realizations[i].isReady() && realizations[i].isCapable(sqlDigest).capable) {
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.gtrecord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.dict.StringBytesConverter;
+import org.apache.kylin.dict.TrieDictionaryBuilder;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.UnitTestSupport;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class CrossSegmentAggregateScannerTest extends LocalFileMetadataTestCase {
+
+    private static final int DATA_CARDINALITY = 40000;
+
+    private static GTInfo INFO;
+    private static List<GTRecord> SEGMENT_DATA;
+
+    @BeforeClass
+    public static void beforeClass() {
+        staticCreateTestMetadata();
+        INFO = UnitTestSupport.hllInfo();
+        SEGMENT_DATA = UnitTestSupport.mockupHllData(INFO, DATA_CARDINALITY);
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        cleanAfterClass();
+    }
+
+    @Test
+    public void testAggregateInMem() throws IOException {
+        CrossSegmentAggregateScanner scanner = newScanner(new ImmutableBitSet(1, 3), 0.5);
+
+        int count = 0;
+        for (GTRecord record : scanner) {
+            assertNotNull(record);
+            Object[] values = record.getValues();
+            assertEquals(80000, ((LongMutable) values[3]).get());
+            assertEquals(84000, ((BigDecimal) values[4]).longValue());
+            count++;
+        }
+        assertEquals(10, count);
+        assertEquals(0, scanner.getNumOfSpills());
+        scanner.close();
+    }
+
+    @Test
+    public void testAggregateWithSpill() throws IOException {
+        // every group is in both segments, the hll counters do not fit in the memory threshold
+        CrossSegmentAggregateScanner scanner = newScanner(new ImmutableBitSet(0, 3), 0.1);
+
+        int count = 0;
+        for (GTRecord record : scanner) {
+            assertNotNull(record);
+            Object[] values = record.getValues();
+            assertEquals(20, ((LongMutable) values[3]).get());
+            assertEquals(21, ((BigDecimal) values[4]).longValue());
+            count++;
+        }
+        assertEquals(DATA_CARDINALITY, count);
+        assertTrue(scanner.getNumOfSpills() > 0);
+        scanner.close();
+    }
+
+    @Test
+    public void testSameEncoding() {
+        String[] values = { "Dong", "George", "Jason", "Kejia", "Luke" };
+        Dictionary<String> dict = newDictionary(0, values);
+
+        assertTrue(CrossSegmentAggregateScanner.isSameEncoding(dict, newDictionary(0, values)));
+        // same values, different ids
+        assertFalse(CrossSegmentAggregateScanner.isSameEncoding(dict, newDictionary(1, values)));
+        // same ids, a different value
+        assertFalse(CrossSegmentAggregateScanner.isSameEncoding(dict, newDictionary(0, "Dong", "George", "Jason", "Kejia", "Mahone")));
+        // a value more
+        assertFalse(CrossSegmentAggregateScanner.isSameEncoding(dict, newDictionary(0, "Dong", "George", "Jason", "Kejia", "Luke", "Mahone")));
+        assertFalse(CrossSegmentAggregateScanner.isSameEncoding(dict, null));
+    }
+
+    private static Dictionary<String> newDictionary(int baseId, String... values) {
+        TrieDictionaryBuilder<String> builder = new TrieDictionaryBuilder<>(new StringBytesConverter());
+        for (String value : values) {
+            builder.addValue(value);
+        }
+        return builder.build(baseId);
+    }
+
+    private static CrossSegmentAggregateScanner newScanner(ImmutableBitSet groupBy, double memThresholdGB) {
+        GTScanRequest aggrRequest = new GTScanRequestBuilder().setInfo(INFO).setRanges(null).setDimensions(new ImmutableBitSet(0, 3)).setAggrGroupBy(groupBy) //
+                .setAggrMetrics(new ImmutableBitSet(3, 6)).setAggrMetricsFuncs(new String[] { "SUM", "SUM", "COUNT_DISTINCT" }).setFilterPushDown(null) //
+                .setAggCacheMemThreshold(memThresholdGB).createGTScanRequest();
+        List<IGTScanner> segments = Lists.newArrayList(newSegment(), newSegment());
+        return new CrossSegmentAggregateScanner(segments, null, aggrRequest);
+    }
+
+    private static IGTScanner newSegment() {
+        return new IGTScanner() {
+            @Override
+            public GTInfo getInfo() {
+                return INFO;
+            }
+
+            @Override
+            public long getScannedRowCount() {
+                return SEGMENT_DATA.size();
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+
+            @Override
+            public Iterator<GTRecord> iterator() {
+                return SEGMENT_DATA.iterator();
+            }
+        };
+    }
+}
@@ -58,6 +58,7 @@ import org.apache.kylin.metadata.filter.CompareTupleFilter;
 import org.apache.kylin.metadata.filter.ConstantTupleFilter;
 import org.apache.kylin.metadata.filter.ExtractTupleFilter;
 import org.apache.kylin.metadata.filter.LogicalTupleFilter;
+import org.apache.kylin.metadata.filter.SortedInTupleFilter;
 import org.apache.kylin.metadata.filter.TupleFilter;
 import org.apache.kylin.metadata.filter.TupleFilter.FilterOperatorEnum;
 import org.apache.kylin.metadata.model.ColumnDesc;
@@ -190,6 +191,26 @@ public class DictGridTableTest extends LocalFileMetadataTestCase {
         }
     }
 
+    @Test
+    public void verifyNegatedSetFilter() {
+        ByteArray segmentStart = enc(info, 0, "2015-01-14");
+        ByteArray segmentEnd = enc(info, 0, "2015-01-15");
+        ByteArray code10 = enc(info, 1, "10");
+        ByteArray code20 = enc(info, 1, "20");
+        ByteBuffer codes = ByteBuffer.allocate(code10.length() + code20.length());
+        codes.put(code10.array(), code10.offset(), code10.length());
+        codes.put(code20.array(), code20.offset(), code20.length());
+        codes.flip();
+
+        // values out of the set are not bounded by its smallest and largest value
+        LogicalTupleFilter filter = not(new SortedInTupleFilter(info.colRef(1), codes, code10.length()));
+        CubeScanRangePlanner planner = new CubeScanRangePlanner(info, Pair.newPair(segmentStart, segmentEnd), info.colRef(0), filter);
+        List<GTScanRange> r = planner.planScanRanges();
+        assertEquals(1, r.size());
+        assertEquals("[null, null]-[null, null]", r.get(0).toString());
+        assertEquals(0, r.get(0).fuzzyKeys.size());
+    }
+
     @Test
     public void verifySegmentSkipping2() {
         ByteArray segmentEnd = enc(info, 0, "2015-01-15");
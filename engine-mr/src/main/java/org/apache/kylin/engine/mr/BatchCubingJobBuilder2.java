@@ -22,6 +22,7 @@ import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.model.RowKeyDesc;
 import org.apache.kylin.engine.mr.IMRInput.IMRBatchCubingInputSide;
 import org.apache.kylin.engine.mr.IMROutput2.IMRBatchCubingOutputSide2;
+import org.apache.kylin.engine.mr.IMROutput2.IMRInMemCubingOutputSide2;
 import org.apache.kylin.engine.mr.common.AbstractHadoopJob;
 import org.apache.kylin.engine.mr.common.BatchConstants;
 import org.apache.kylin.engine.mr.common.MapReduceExecutable;
@@ -122,6 +123,11 @@ public class BatchCubingJobBuilder2 extends JobBuilderSupport {
     }
 
     protected Class<? extends AbstractHadoopJob> getInMemCuboidJob() {
+        if (outputSide instanceof IMRInMemCubingOutputSide2) {
+            Class<? extends AbstractHadoopJob> jobClass = ((IMRInMemCubingOutputSide2) outputSide).getInMemCuboidJob();
+            if (jobClass != null)
+                return jobClass;
+        }
         return InMemCuboidJob.class;
     }
 
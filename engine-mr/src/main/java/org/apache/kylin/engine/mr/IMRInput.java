@@ -18,6 +18,8 @@
 
 package org.apache.kylin.engine.mr;
 
+import java.util.Collection;
+
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.kylin.job.execution.DefaultChainedExecutable;
 import org.apache.kylin.metadata.model.IJoinedFlatTableDesc;
@@ -50,6 +52,25 @@ public interface IMRInput {
         public String[] parseMapperInput(Object mapperInput);
     }
 
+    /**
+     * Optionally implemented by a table InputFormat that reads columnar files, to skip the columns not needed by a job.
+     */
+    public interface IMRProjectableTableInputFormat extends IMRTableInputFormat {
+
+        /** Read only the given columns, the others are null in the parsed column values. */
+        public void setProjection(Job job, Collection<Integer> columnIndexes);
+    }
+
+    /**
+     * Optionally implemented by a table InputFormat whose mapper input holds typed column values, e.g. a row of a
+     * columnar batch, to give the values as bytes without creating a String for each of them.
+     */
+    public interface IMRBytesTableInputFormat extends IMRTableInputFormat {
+
+        /** The UTF-8 bytes of the values given by parseMapperInput(), null for a null value. */
+        public byte[][] parseMapperInputAsBytes(Object mapperInput);
+    }
+
     /**
      * Participate the batch cubing flow as the input side. Responsible for creating
      * intermediate flat table (Phase 1) and clean up any leftover (Phase 4).
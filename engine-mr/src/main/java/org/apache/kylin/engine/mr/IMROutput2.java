@@ -19,6 +19,7 @@
 package org.apache.kylin.engine.mr;
 
 import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.engine.mr.common.AbstractHadoopJob;
 import org.apache.kylin.job.execution.DefaultChainedExecutable;
 
 import java.util.List;
@@ -55,6 +56,16 @@ public interface IMROutput2 {
         public void addStepPhase4_Cleanup(DefaultChainedExecutable jobFlow);
     }
 
+    /**
+     * Optionally implemented by the cubing output side, when the storage can take the output of
+     * in-mem cubing directly without the intermediate cuboid files.
+     */
+    public interface IMRInMemCubingOutputSide2 {
+
+        /** Return the job class of the in-mem cubing step, or null for the default that writes cuboid files. */
+        public Class<? extends AbstractHadoopJob> getInMemCuboidJob();
+    }
+
     /** Return a helper to participate in batch merge job flow. */
     public IMRBatchMergeOutputSide2 getBatchMergeOutputSide(CubeSegment seg);
 
@@ -18,13 +18,17 @@
 
 package org.apache.kylin.engine.mr;
 
+import java.util.Collection;
+
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.util.GenericOptionsParser;
 import org.apache.hadoop.util.Tool;
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.engine.EngineFactory;
 import org.apache.kylin.engine.mr.IMRInput.IMRBatchCubingInputSide;
+import org.apache.kylin.engine.mr.IMRInput.IMRProjectableTableInputFormat;
 import org.apache.kylin.engine.mr.IMRInput.IMRTableInputFormat;
 import org.apache.kylin.engine.mr.IMROutput.IMRBatchCubingOutputSide;
 import org.apache.kylin.engine.mr.IMROutput.IMRBatchMergeOutputSide;
@@ -43,6 +47,17 @@ public class MRUtil {
         return SourceFactory.createEngineAdapter(seg, IMRInput.class).getBatchCubingInputSide(flatDesc);
     }
 
+    /**
+     * Configures the job to read the flat table of the segment, only the given columns if the input format supports it.
+     */
+    public static void configureFlatTableInput(Job job, CubeSegment seg, Collection<Integer> columnIndexes) {
+        IMRTableInputFormat flatTableInputFormat = getBatchCubingInputSide(seg).getFlatTableInputFormat();
+        flatTableInputFormat.configureJob(job);
+        if (flatTableInputFormat instanceof IMRProjectableTableInputFormat) {
+            ((IMRProjectableTableInputFormat) flatTableInputFormat).setProjection(job, columnIndexes);
+        }
+    }
+
     public static IMRTableInputFormat getTableInputFormat(String tableName) {
         return getTableInputFormat(getTableDesc(tableName));
     }
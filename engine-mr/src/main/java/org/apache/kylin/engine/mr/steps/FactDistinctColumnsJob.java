@@ -20,6 +20,7 @@ package org.apache.kylin.engine.mr.steps;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.cli.Options;
 import org.apache.hadoop.fs.Path;
@@ -33,7 +34,9 @@ import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.cube.CubeInstance;
 import org.apache.kylin.cube.CubeManager;
 import org.apache.kylin.cube.CubeSegment;
-import org.apache.kylin.engine.mr.IMRInput.IMRTableInputFormat;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.cube.model.CubeJoinedFlatTableEnrich;
+import org.apache.kylin.engine.EngineFactory;
 import org.apache.kylin.engine.mr.MRUtil;
 import org.apache.kylin.engine.mr.common.AbstractHadoopJob;
 import org.apache.kylin.engine.mr.common.BatchConstants;
@@ -41,6 +44,8 @@ import org.apache.kylin.metadata.model.TblColRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Sets;
+
 /**
  */
 public class FactDistinctColumnsJob extends AbstractHadoopJob {
@@ -115,8 +120,7 @@ public class FactDistinctColumnsJob extends AbstractHadoopJob {
     }
 
     private void setupMapper(CubeSegment cubeSeg) throws IOException {
-        IMRTableInputFormat flatTableInputFormat = MRUtil.getBatchCubingInputSide(cubeSeg).getFlatTableInputFormat();
-        flatTableInputFormat.configureJob(job);
+        MRUtil.configureFlatTableInput(job, cubeSeg, getColumnsToRead(cubeSeg));
 
         job.setMapperClass(FactDistinctHiveColumnsMapper.class);
         job.setCombinerClass(FactDistinctColumnsCombiner.class);
@@ -124,6 +128,26 @@ public class FactDistinctColumnsJob extends AbstractHadoopJob {
         job.setMapOutputValueClass(Text.class);
     }
 
+    /**
+     * the flat table columns read by FactDistinctHiveColumnsMapper: the dictionary columns, and the row key and partition columns for statistics
+     */
+    private Set<Integer> getColumnsToRead(CubeSegment cubeSeg) throws IOException {
+        CubeDesc cubeDesc = cubeSeg.getCubeDesc();
+        CubeJoinedFlatTableEnrich flatDesc = new CubeJoinedFlatTableEnrich(EngineFactory.getJoinedFlatTableDesc(cubeSeg), cubeDesc);
+        Set<Integer> columns = Sets.newTreeSet();
+        for (TblColRef col : CubeManager.getInstance(cubeSeg.getConfig()).getAllDictColumnsOnFact(cubeDesc)) {
+            columns.add(flatDesc.getColumnIndex(col));
+        }
+        for (int index : flatDesc.getRowKeyColumnIndexes()) {
+            columns.add(index);
+        }
+        TblColRef partitionCol = cubeDesc.getModel().getPartitionDesc().getPartitionDateColumnRef();
+        if (partitionCol != null && flatDesc.getColumnIndex(partitionCol) >= 0) {
+            columns.add(flatDesc.getColumnIndex(partitionCol));
+        }
+        return columns;
+    }
+
     private void setupReducer(Path output, int numberOfReducers) throws IOException {
         job.setReducerClass(FactDistinctColumnsReducer.class);
         job.setOutputFormatClass(SequenceFileOutputFormat.class);
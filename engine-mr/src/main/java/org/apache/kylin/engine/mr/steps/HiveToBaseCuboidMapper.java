@@ -20,6 +20,7 @@ package org.apache.kylin.engine.mr.steps;
 
 import java.io.IOException;
 
+import org.apache.kylin.engine.mr.IMRInput.IMRBytesTableInputFormat;
 import org.apache.kylin.engine.mr.IMRInput.IMRTableInputFormat;
 import org.apache.kylin.engine.mr.MRUtil;
 import org.apache.kylin.engine.mr.common.BatchConstants;
@@ -46,8 +47,7 @@ public class HiveToBaseCuboidMapper<KEYIN> extends BaseCuboidMapperBase<KEYIN, O
 
         try {
             //put a record into the shared bytesSplitter
-            String[] row = flatTableInputFormat.parseMapperInput(value);
-            bytesSplitter.setBuffers(convertUTF8Bytes(row));
+            bytesSplitter.setBuffers(parseMapperInputAsBytes(value));
             //take care of the data in bytesSplitter
             outputKV(context);
 
@@ -56,4 +56,19 @@ public class HiveToBaseCuboidMapper<KEYIN> extends BaseCuboidMapperBase<KEYIN, O
         }
     }
 
+    private byte[][] parseMapperInputAsBytes(Object value) throws IOException {
+        if (!(flatTableInputFormat instanceof IMRBytesTableInputFormat)) {
+            return convertUTF8Bytes(flatTableInputFormat.parseMapperInput(value));
+        }
+
+        // e.g. the values of an ORC batch, string columns are copied without decoding
+        byte[][] row = ((IMRBytesTableInputFormat) flatTableInputFormat).parseMapperInputAsBytes(value);
+        for (int i = 0; i < row.length; i++) {
+            if (row[i] == null) {
+                row[i] = HIVE_NULL;
+            }
+        }
+        return row;
+    }
+
 }
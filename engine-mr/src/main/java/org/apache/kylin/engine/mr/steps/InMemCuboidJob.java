@@ -32,15 +32,17 @@ import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.cube.CubeInstance;
 import org.apache.kylin.cube.CubeManager;
 import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.model.CubeJoinedFlatTableEnrich;
+import org.apache.kylin.engine.EngineFactory;
 import org.apache.kylin.engine.mr.ByteArrayWritable;
 import org.apache.kylin.engine.mr.CubingJob;
 import org.apache.kylin.engine.mr.HadoopUtil;
-import org.apache.kylin.engine.mr.IMRInput.IMRTableInputFormat;
 import org.apache.kylin.engine.mr.MRUtil;
 import org.apache.kylin.engine.mr.common.AbstractHadoopJob;
 import org.apache.kylin.engine.mr.common.BatchConstants;
 import org.apache.kylin.engine.mr.common.CubeStatsReader;
 import org.apache.kylin.job.manager.ExecutableManager;
+import org.apache.kylin.metadata.model.IJoinedFlatTableDesc;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -107,8 +109,9 @@ public class InMemCuboidJob extends AbstractHadoopJob {
             job.getConfiguration().set(BatchConstants.CFG_CUBE_SEGMENT_ID, segmentID);
 
             // set input
-            IMRTableInputFormat flatTableInputFormat = MRUtil.getBatchCubingInputSide(cubeSeg).getFlatTableInputFormat();
-            flatTableInputFormat.configureJob(job);
+            // only the columns the base cuboid is built from
+            IJoinedFlatTableDesc flatDesc = EngineFactory.getJoinedFlatTableDesc(cubeSeg);
+            MRUtil.configureFlatTableInput(job, cubeSeg, new CubeJoinedFlatTableEnrich(flatDesc, cubeSeg.getCubeDesc()).getBaseCuboidColumnIndexes());
 
             // set mapper
             job.setMapperClass(InMemCuboidMapper.class);
@@ -116,18 +119,7 @@ public class InMemCuboidJob extends AbstractHadoopJob {
             job.setMapOutputValueClass(ByteArrayWritable.class);
 
             // set output
-            job.setReducerClass(InMemCuboidReducer.class);
-            job.setNumReduceTasks(calculateReducerNum(cubeSeg));
-
-            // the cuboid file and KV class must be compatible with 0.7 version for smooth upgrade
-            job.setOutputFormatClass(SequenceFileOutputFormat.class);
-            job.setOutputKeyClass(Text.class);
-            job.setOutputValueClass(Text.class);
-
-            Path outputPath = new Path(output);
-            FileOutputFormat.setOutputPath(job, outputPath);
-
-            HadoopUtil.deletePath(job.getConfiguration(), outputPath);
+            setupReducerAndOutput(cubeSeg, cubingJobId, output);
 
             return waitForCompletion(job);
         } finally {
@@ -136,6 +128,24 @@ public class InMemCuboidJob extends AbstractHadoopJob {
         }
     }
 
+    /**
+     * Set the reducer and output of the job, by default the cuboids are written as sequence files under given output path.
+     */
+    protected void setupReducerAndOutput(CubeSegment cubeSeg, String cubingJobId, String output) throws IOException {
+        job.setReducerClass(InMemCuboidReducer.class);
+        job.setNumReduceTasks(calculateReducerNum(cubeSeg));
+
+        // the cuboid file and KV class must be compatible with 0.7 version for smooth upgrade
+        job.setOutputFormatClass(SequenceFileOutputFormat.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+
+        Path outputPath = new Path(output);
+        FileOutputFormat.setOutputPath(job, outputPath);
+
+        HadoopUtil.deletePath(job.getConfiguration(), outputPath);
+    }
+
     private int calculateReducerNum(CubeSegment cubeSeg) throws IOException {
         KylinConfig kylinConfig = cubeSeg.getConfig();
 
@@ -43,6 +43,7 @@ public class InMemCuboidReducer extends KylinReducer<ByteArrayWritable, ByteArra
 
     private static final Logger logger = LoggerFactory.getLogger(InMemCuboidReducer.class);
 
+    protected CubeDesc cubeDesc;
     private BufferedMeasureCodec codec;
     private MeasureAggregators aggs;
 
@@ -60,7 +61,7 @@ public class InMemCuboidReducer extends KylinReducer<ByteArrayWritable, ByteArra
 
         String cubeName = context.getConfiguration().get(BatchConstants.CFG_CUBE_NAME).toUpperCase();
         CubeInstance cube = CubeManager.getInstance(config).getCube(cubeName);
-        CubeDesc cubeDesc = cube.getDescriptor();
+        cubeDesc = cube.getDescriptor();
 
         List<MeasureDesc> measuresDescs = cubeDesc.getMeasures();
         codec = new BufferedMeasureCodec(measuresDescs);
@@ -83,14 +84,7 @@ public class InMemCuboidReducer extends KylinReducer<ByteArrayWritable, ByteArra
         }
         aggs.collectStates(result);
 
-        // output key
-        outputKey.set(key.array(), key.offset(), key.length());
-
-        // output value
-        ByteBuffer valueBuf = codec.encode(result);
-        outputValue.set(valueBuf.array(), 0, valueBuf.position());
-
-        context.write(outputKey, outputValue);
+        writeResult(key, result, codec.encode(result), context);
 
         counter++;
         if (counter % BatchConstants.NORMAL_RECORD_LOG_THRESHOLD == 0) {
@@ -98,4 +92,13 @@ public class InMemCuboidReducer extends KylinReducer<ByteArrayWritable, ByteArra
         }
     }
 
+    /**
+     * Write the aggregated measures of a row, valueBuf holds the encoded measures up to its position.
+     */
+    protected void writeResult(ByteArrayWritable key, Object[] measures, ByteBuffer valueBuf, Context context) throws IOException, InterruptedException {
+        outputKey.set(key.array(), key.offset(), key.length());
+        outputValue.set(valueBuf.array(), 0, valueBuf.position());
+        context.write(outputKey, outputValue);
+    }
+
 }
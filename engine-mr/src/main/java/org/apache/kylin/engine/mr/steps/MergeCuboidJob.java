@@ -28,6 +28,7 @@ import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.cube.CubeInstance;
 import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.engine.mr.common.BatchConstants;
 
 public class MergeCuboidJob extends CuboidJob {
@@ -42,6 +43,7 @@ public class MergeCuboidJob extends CuboidJob {
             options.addOption(OPTION_SEGMENT_ID);
             options.addOption(OPTION_INPUT_PATH);
             options.addOption(OPTION_OUTPUT_PATH);
+            options.addOption(OPTION_CUBING_JOB_ID);
             parseOptions(options, args);
 
             String cubeName = getOptionValue(OPTION_CUBE_NAME).toUpperCase();
@@ -60,20 +62,12 @@ public class MergeCuboidJob extends CuboidJob {
             // set inputs
             addInputDirs(getOptionValue(OPTION_INPUT_PATH), job);
 
-            Path output = new Path(getOptionValue(OPTION_OUTPUT_PATH));
-            FileOutputFormat.setOutputPath(job, output);
-
             // Mapper
             job.setInputFormatClass(SequenceFileInputFormat.class);
             job.setMapperClass(MergeCuboidMapper.class);
             job.setMapOutputKeyClass(Text.class);
             job.setMapOutputValueClass(Text.class);
 
-            job.setReducerClass(CuboidReducer.class);
-            job.setOutputFormatClass(SequenceFileOutputFormat.class);
-            job.setOutputKeyClass(Text.class);
-            job.setOutputValueClass(Text.class);
-
             // set job configuration
             job.getConfiguration().set(BatchConstants.CFG_CUBE_NAME, cubeName);
             job.getConfiguration().set(BatchConstants.CFG_CUBE_SEGMENT_ID, segmentID);
@@ -81,9 +75,7 @@ public class MergeCuboidJob extends CuboidJob {
             // add metadata to distributed cache
             attachKylinPropsAndMetadata(cube, job.getConfiguration());
 
-            setReduceTaskNum(job, cube.getDescriptor(), 0);
-
-            this.deletePath(job.getConfiguration(), output);
+            setupReducerAndOutput(cube.getSegmentById(segmentID), getOptionValue(OPTION_CUBING_JOB_ID), new Path(getOptionValue(OPTION_OUTPUT_PATH)));
 
             return waitForCompletion(job);
         } finally {
@@ -92,4 +84,20 @@ public class MergeCuboidJob extends CuboidJob {
         }
     }
 
+    /**
+     * Set the reducer and output of the job, by default the merged cuboids are aggregated by CuboidReducer
+     * and written as sequence files under given output path.
+     */
+    protected void setupReducerAndOutput(CubeSegment mergedSeg, String cubingJobId, Path output) throws Exception {
+        job.setReducerClass(CuboidReducer.class);
+        job.setOutputFormatClass(SequenceFileOutputFormat.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+
+        setReduceTaskNum(job, mergedSeg.getCubeDesc(), 0);
+
+        FileOutputFormat.setOutputPath(job, output);
+        this.deletePath(job.getConfiguration(), output);
+    }
+
 }
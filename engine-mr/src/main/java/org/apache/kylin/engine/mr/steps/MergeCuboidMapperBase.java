@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.engine.mr.steps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.common.util.SplittedBytes;
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.common.RowKeySplitter;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.cube.kv.RowConstants;
+import org.apache.kylin.cube.kv.RowKeyEncoder;
+import org.apache.kylin.cube.kv.RowKeyEncoderProvider;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.cube.model.RowKeyColDesc;
+import org.apache.kylin.dict.DictionaryIdRemapper;
+import org.apache.kylin.dict.DictionaryManager;
+import org.apache.kylin.engine.mr.KylinMapper;
+import org.apache.kylin.engine.mr.common.AbstractHadoopJob;
+import org.apache.kylin.engine.mr.common.BatchConstants;
+import org.apache.kylin.measure.BufferedMeasureCodec;
+import org.apache.kylin.measure.MeasureIngester;
+import org.apache.kylin.measure.MeasureType;
+import org.apache.kylin.metadata.model.MeasureDesc;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Re-encodes the cuboid rows of a merging segment with the dictionaries and shards of the merged segment,
+ * subclasses decide the type of the map output.
+ *
+ * @author ysong1, honma
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public abstract class MergeCuboidMapperBase<KEYOUT, VALUEOUT> extends KylinMapper<Text, Text, KEYOUT, VALUEOUT> {
+
+    private static final Logger logger = LoggerFactory.getLogger(MergeCuboidMapperBase.class);
+
+    private KylinConfig config;
+    private String cubeName;
+    private String segmentID;
+    private CubeManager cubeManager;
+    private CubeInstance cube;
+    private CubeDesc cubeDesc;
+    private CubeSegment mergedCubeSegment;
+    private CubeSegment sourceCubeSegment; // Must be unique during a mapper's life cycle
+
+    private byte[] newKeyBodyBuf;
+    private ByteArray newKeyBuf;
+    private RowKeySplitter rowKeySplitter;
+    private RowKeyEncoderProvider rowKeyEncoderProvider;
+
+    private HashMap<TblColRef, Boolean> dimensionsNeedDict = new HashMap<TblColRef, Boolean>();
+
+    // source id to merged id of each dictionary column, precomputed at setup
+    private Map<TblColRef, DictionaryIdRemapper> dictRemappers = Maps.newHashMap();
+    // whether a cuboid has any column whose dictionary is changed by the merge
+    private Map<Long, Boolean> cuboidsNeedRemap = Maps.newHashMap();
+
+    // for re-encode measures that use dictionary
+    private List<Pair<Integer, MeasureIngester>> dictMeasures;
+    private Map<TblColRef, Dictionary<String>> oldDicts;
+    private Map<TblColRef, Dictionary<String>> newDicts;
+    private List<MeasureDesc> measureDescs;
+    private BufferedMeasureCodec codec;
+    private Object[] measureObjs;
+    private Text outputValue;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.bindCurrentConfiguration(context.getConfiguration());
+
+        cubeName = context.getConfiguration().get(BatchConstants.CFG_CUBE_NAME).toUpperCase();
+        segmentID = context.getConfiguration().get(BatchConstants.CFG_CUBE_SEGMENT_ID);
+
+        config = AbstractHadoopJob.loadKylinPropsAndMetadata();
+
+        cubeManager = CubeManager.getInstance(config);
+        cube = cubeManager.getCube(cubeName);
+        cubeDesc = cube.getDescriptor();
+        mergedCubeSegment = cube.getSegmentById(segmentID);
+
+        // int colCount = cubeDesc.getRowkey().getRowKeyColumns().length;
+        newKeyBodyBuf = new byte[RowConstants.ROWKEY_BUFFER_SIZE];// size will auto-grow
+        newKeyBuf = ByteArray.allocate(RowConstants.ROWKEY_BUFFER_SIZE);
+
+        // decide which source segment
+        FileSplit fileSplit = (FileSplit) context.getInputSplit();
+        sourceCubeSegment = findSourceSegment(fileSplit, cube);
+
+        rowKeySplitter = new RowKeySplitter(sourceCubeSegment, 65, 255);
+        rowKeyEncoderProvider = new RowKeyEncoderProvider(mergedCubeSegment);
+
+        DictionaryManager dictMgr = DictionaryManager.getInstance(config);
+        // the remap tables of all columns share one budget, columns beyond it look up by value
+        int remapTableBudget = config.getMergeDictRemapTablesMaxSize();
+        for (RowKeyColDesc rowKeyCol : cubeDesc.getRowkey().getRowKeyColumns()) {
+            TblColRef col = rowKeyCol.getColRef();
+            if (checkNeedMerging(col)) {
+                Dictionary<?> sourceDict = dictMgr.getDictionary(sourceCubeSegment.getDictResPath(col));
+                Dictionary<?> mergedDict = dictMgr.getDictionary(mergedCubeSegment.getDictResPath(col));
+                DictionaryIdRemapper remapper = new DictionaryIdRemapper(sourceDict, mergedDict, remapTableBudget);
+                if (remapper.isPrecomputed()) {
+                    remapTableBudget -= sourceDict.getSize();
+                }
+                dictRemappers.put(col, remapper);
+                logger.info("Dictionary of " + col + " identical: " + remapper.isIdentity() + ", remap table precomputed: " + remapper.isPrecomputed());
+            }
+        }
+
+        measureDescs = cubeDesc.getMeasures();
+        codec = new BufferedMeasureCodec(measureDescs);
+        measureObjs = new Object[measureDescs.size()];
+        outputValue = new Text();
+
+        dictMeasures = Lists.newArrayList();
+        oldDicts = Maps.newHashMap();
+        newDicts = Maps.newHashMap();
+        for (int i = 0; i < measureDescs.size(); i++) {
+            MeasureDesc measureDesc = measureDescs.get(i);
+            MeasureType measureType = measureDesc.getFunction().getMeasureType();
+            List<TblColRef> columns = measureType.getColumnsNeedDictionary(measureDesc.getFunction());
+            boolean needReEncode = false;
+            for (TblColRef col : columns) {
+                if (!sourceCubeSegment.getDictionary(col).equals(mergedCubeSegment.getDictionary(col))) {
+                    oldDicts.put(col, sourceCubeSegment.getDictionary(col));
+                    newDicts.put(col, mergedCubeSegment.getDictionary(col));
+                    needReEncode = true;
+                }
+            }
+            if (needReEncode) {
+                dictMeasures.add(Pair.newPair(i, measureType.newIngester()));
+            }
+        }
+    }
+
+    private static final Pattern JOB_NAME_PATTERN = Pattern.compile("kylin-([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})");
+
+    public CubeSegment findSourceSegment(FileSplit fileSplit, CubeInstance cube) {
+        String filePath = fileSplit.getPath().toString();
+        String jobID = extractJobIDFromPath(filePath);
+        return findSegmentWithUuid(jobID, cube);
+    }
+
+    private static String extractJobIDFromPath(String path) {
+        Matcher matcher = JOB_NAME_PATTERN.matcher(path);
+        // check the first occurrence
+        if (matcher.find()) {
+            return matcher.group(1);
+        } else {
+            throw new IllegalStateException("Can not extract job ID from file path : " + path);
+        }
+    }
+
+    private static CubeSegment findSegmentWithUuid(String jobID, CubeInstance cubeInstance) {
+        for (CubeSegment segment : cubeInstance.getSegments()) {
+            String lastBuildJobID = segment.getLastBuildJobID();
+            if (lastBuildJobID != null && lastBuildJobID.equalsIgnoreCase(jobID)) {
+                return segment;
+            }
+        }
+        throw new IllegalStateException("No merging segment's last build job ID equals " + jobID);
+    }
+
+    @Override
+    public void map(Text key, Text value, Context context) throws IOException, InterruptedException {
+        long cuboidID = rowKeySplitter.split(key.getBytes());
+        Cuboid cuboid = Cuboid.findById(cubeDesc, cuboidID);
+        RowKeyEncoder rowkeyEncoder = rowKeyEncoderProvider.getRowkeyEncoder(cuboid);
+
+        ByteArray newKeyBody;
+        if (checkNeedRemap(cuboid)) {
+            newKeyBody = remapKeyBody(cuboid);
+        } else {
+            // all dictionaries are the same, only the header (shard) needs rewrite
+            int bodyOffset = rowKeySplitter.getSplitOffsets()[0];
+            newKeyBody = new ByteArray(key.getBytes(), bodyOffset, key.getLength() - bodyOffset);
+        }
+
+        int fullKeySize = rowkeyEncoder.getBytesLength();
+        while (newKeyBuf.array().length < fullKeySize) {
+            newKeyBuf.set(new byte[newKeyBuf.length() * 2]);
+        }
+        newKeyBuf.set(0, fullKeySize);
+
+        rowkeyEncoder.encode(newKeyBody, newKeyBuf);
+
+        // re-encode measures if dictionary is used
+        if (dictMeasures.size() > 0) {
+            codec.decode(ByteBuffer.wrap(value.getBytes(), 0, value.getLength()), measureObjs);
+            for (Pair<Integer, MeasureIngester> pair : dictMeasures) {
+                int i = pair.getFirst();
+                MeasureIngester ingester = pair.getSecond();
+                measureObjs[i] = ingester.reEncodeDictionary(measureObjs[i], measureDescs.get(i), oldDicts, newDicts);
+            }
+            ByteBuffer valueBuf = codec.encode(measureObjs);
+            outputValue.set(valueBuf.array(), 0, valueBuf.position());
+            value = outputValue;
+        }
+
+        outputKV(newKeyBuf.array(), fullKeySize, value, context);
+    }
+
+    /**
+     * Writes a re-encoded row, the key is only valid until the next row.
+     */
+    protected abstract void outputKV(byte[] key, int keyLength, Text value, Context context) throws IOException, InterruptedException;
+
+    private ByteArray remapKeyBody(Cuboid cuboid) {
+        SplittedBytes[] splittedByteses = rowKeySplitter.getSplitBuffers();
+        int bufOffset = 0;
+        int bodySplitOffset = rowKeySplitter.getBodySplitOffset();
+
+        for (int i = 0; i < cuboid.getColumns().size(); ++i) {
+            int useSplit = i + bodySplitOffset;
+            TblColRef col = cuboid.getColumns().get(i);
+            DictionaryIdRemapper remapper = dictRemappers.get(col);
+
+            if (remapper != null && !remapper.isIdentity()) {
+                // if dictionary on fact table column, needs rewrite
+                while (remapper.getTargetSizeOfId() > newKeyBodyBuf.length - bufOffset) {
+                    byte[] oldBuf = newKeyBodyBuf;
+                    newKeyBodyBuf = new byte[2 * newKeyBodyBuf.length];
+                    System.arraycopy(oldBuf, 0, newKeyBodyBuf, 0, oldBuf.length);
+                }
+
+                int idInSourceDict = BytesUtil.readUnsigned(splittedByteses[useSplit].value, 0, splittedByteses[useSplit].length);
+                int idInMergedDict = remapper.remap(idInSourceDict);
+
+                BytesUtil.writeUnsigned(idInMergedDict, newKeyBodyBuf, bufOffset, remapper.getTargetSizeOfId());
+                bufOffset += remapper.getTargetSizeOfId();
+            } else {
+                // keep as it is
+                while (splittedByteses[useSplit].length > newKeyBodyBuf.length - bufOffset) {
+                    byte[] oldBuf = newKeyBodyBuf;
+                    newKeyBodyBuf = new byte[2 * newKeyBodyBuf.length];
+                    System.arraycopy(oldBuf, 0, newKeyBodyBuf, 0, oldBuf.length);
+                }
+
+                System.arraycopy(splittedByteses[useSplit].value, 0, newKeyBodyBuf, bufOffset, splittedByteses[useSplit].length);
+                bufOffset += splittedByteses[useSplit].length;
+            }
+        }
+        return new ByteArray(newKeyBodyBuf, 0, bufOffset);
+    }
+
+    private boolean checkNeedRemap(Cuboid cuboid) {
+        Boolean ret = cuboidsNeedRemap.get(cuboid.getId());
+        if (ret != null)
+            return ret;
+
+        ret = false;
+        for (TblColRef col : cuboid.getColumns()) {
+            DictionaryIdRemapper remapper = dictRemappers.get(col);
+            if (remapper != null && !remapper.isIdentity()) {
+                ret = true;
+                break;
+            }
+        }
+        cuboidsNeedRemap.put(cuboid.getId(), ret);
+        return ret;
+    }
+
+    private Boolean checkNeedMerging(TblColRef col) throws IOException {
+        Boolean ret = dimensionsNeedDict.get(col);
+        if (ret != null)
+            return ret;
+        else {
+            ret = cubeDesc.getRowkey().isUseDictionary(col);
+            if (ret) {
+                String dictTable = DictionaryManager.getInstance(config).decideSourceData(cubeDesc.getModel(), col).getTable();
+                ret = cubeDesc.getFactTable().equalsIgnoreCase(dictTable);
+            }
+            dimensionsNeedDict.put(col, ret);
+            return ret;
+        }
+    }
+}
@@ -57,6 +57,12 @@ public class UpdateCubeInfoAfterBuildStep extends AbstractExecutable {
         segment.setSizeKB(cubeSizeBytes / 1024);
         segment.setInputRecords(sourceCount);
         segment.setInputRecordsSize(sourceSizeBytes);
+        if (cubingJob.isInMemCubing() && segment.getConfig().isHBaseHFileDirectOutputEnabled()) {
+            segment.getAdditionalInfo().put(CubeSegment.INFO_NO_CUBOID_FILES, "true");
+        } else {
+            // a refresh copies the info of the old segment
+            segment.getAdditionalInfo().remove(CubeSegment.INFO_NO_CUBOID_FILES);
+        }
 
         try {
             cubeManager.promoteNewlyBuiltSegments(cube, segment);
@@ -27,14 +27,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import javax.annotation.Nullable;
 
@@ -56,6 +52,7 @@ import org.apache.hadoop.util.ToolRunner;
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.AbstractApplication;
 import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.Bytes;
 import org.apache.kylin.common.util.ClassUtil;
 import org.apache.kylin.common.util.Dictionary;
 import org.apache.kylin.common.util.OptionsHelper;
@@ -65,12 +62,8 @@ import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.CubeUpdate;
 import org.apache.kylin.cube.cuboid.Cuboid;
 import org.apache.kylin.cube.cuboid.CuboidScheduler;
-import org.apache.kylin.cube.inmemcubing.AbstractInMemCubeBuilder;
-import org.apache.kylin.cube.inmemcubing.DoggedCubeBuilder;
-import org.apache.kylin.cube.kv.CubeDimEncMap;
 import org.apache.kylin.cube.model.CubeDesc;
 import org.apache.kylin.cube.model.CubeJoinedFlatTableEnrich;
-import org.apache.kylin.cube.model.DimensionDesc;
 import org.apache.kylin.cube.model.RowKeyDesc;
 import org.apache.kylin.cube.util.CubingUtils;
 import org.apache.kylin.dict.DictionaryGenerator;
@@ -78,14 +71,17 @@ import org.apache.kylin.dict.IterableDictionaryValueEnumerator;
 import org.apache.kylin.engine.EngineFactory;
 import org.apache.kylin.engine.mr.common.BatchConstants;
 import org.apache.kylin.engine.mr.common.CubeStatsReader;
-import org.apache.kylin.engine.spark.cube.BufferedCuboidWriter;
-import org.apache.kylin.engine.spark.cube.DefaultTupleConverter;
-import org.apache.kylin.engine.spark.util.IteratorUtils;
+import org.apache.kylin.engine.spark.cube.BaseCuboidEncoder;
+import org.apache.kylin.engine.spark.cube.ChildCuboidKeyBuilder;
 import org.apache.kylin.measure.BufferedMeasureCodec;
+import org.apache.kylin.measure.MeasureAggregator;
 import org.apache.kylin.measure.MeasureAggregators;
+import org.apache.kylin.measure.bitmap.BitmapCounter;
 import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
-import org.apache.kylin.metadata.model.FunctionDesc;
-import org.apache.kylin.metadata.model.IJoinedFlatTableDesc;
+import org.apache.kylin.measure.topn.Counter;
+import org.apache.kylin.measure.topn.DoublyLinkedList;
+import org.apache.kylin.measure.topn.ListNode2;
+import org.apache.kylin.measure.topn.TopNCounter;
 import org.apache.kylin.metadata.model.MeasureDesc;
 import org.apache.kylin.metadata.model.SegmentStatusEnum;
 import org.apache.kylin.metadata.model.TblColRef;
@@ -93,34 +89,35 @@ import org.apache.kylin.metadata.realization.RealizationStatusEnum;
 import org.apache.kylin.storage.hbase.HBaseConnection;
 import org.apache.kylin.storage.hbase.steps.CreateHTableJob;
 import org.apache.kylin.storage.hbase.steps.CubeHTableUtil;
+import org.apache.kylin.storage.hbase.steps.RowKeyValueBuilder;
 import org.apache.spark.Partitioner;
 import org.apache.spark.SparkConf;
 import org.apache.spark.SparkFiles;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
-import org.apache.spark.api.java.function.FlatMapFunction;
-import org.apache.spark.api.java.function.Function;
 import org.apache.spark.api.java.function.Function2;
 import org.apache.spark.api.java.function.PairFlatMapFunction;
-import org.apache.spark.api.java.function.PairFunction;
 import org.apache.spark.sql.DataFrame;
 import org.apache.spark.sql.Row;
 import org.apache.spark.sql.hive.HiveContext;
+import org.apache.spark.storage.StorageLevel;
 import org.reflections.Reflections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
-import com.google.common.primitives.UnsignedBytes;
 
 import scala.Tuple2;
 
@@ -199,34 +196,18 @@ public class SparkCubing extends AbstractApplication {
             final TblColRef tblColRef = entry.getValue();
             final DataFrame frame = intermediateTable.select(column).distinct();
 
-            final Row[] rows = frame.collect();
+            // distinct values are computed distributedly and streamed to the driver one partition at a time
+            final JavaRDD<Row> distinctRows = frame.javaRDD();
             dictionaryMap.put(tblColRef, DictionaryGenerator.buildDictionary(tblColRef.getType(), new IterableDictionaryValueEnumerator(new Iterable<byte[]>() {
                 @Override
                 public Iterator<byte[]> iterator() {
-                    return new Iterator<byte[]>() {
-                        int i = 0;
-
-                        @Override
-                        public boolean hasNext() {
-                            return i < rows.length;
-                        }
-
-                        @Override
-                        public byte[] next() {
-                            if (hasNext()) {
-                                final Row row = rows[i++];
-                                final Object o = row.get(0);
-                                return o != null ? o.toString().getBytes() : null;
-                            } else {
-                                throw new NoSuchElementException();
-                            }
-                        }
-
+                    return Iterators.transform(distinctRows.toLocalIterator(), new Function<Row, byte[]>() {
                         @Override
-                        public void remove() {
-                            throw new UnsupportedOperationException();
+                        public byte[] apply(Row row) {
+                            final Object o = row.get(0);
+                            return o != null ? o.toString().getBytes() : null;
                         }
-                    };
+                    });
                 }
             })));
         }
@@ -322,144 +303,290 @@ public class SparkCubing extends AbstractApplication {
         return samplingResult;
     }
 
-    /** return hfile location */
-    private String build(JavaRDD<List<String>> javaRDD, final String cubeName, final String segmentId, final byte[][] splitKeys) throws Exception {
+    /**
+     * Build the cube layer by layer, each layer by combineByKey over the rowkeys of its cuboids, and write HFiles
+     * of all layers partitioned by the region splits. Measures stay decoded in all layers and are only encoded
+     * when written to HFiles.
+     *
+     * @return hfile location
+     */
+    private String build(JavaRDD<List<String>> javaRDD, final String cubeName, final String segmentId, final byte[][] splitKeys, final Map<Long, Double> cubeSizeMap) throws Exception {
         CubeInstance cubeInstance = CubeManager.getInstance(KylinConfig.getInstanceFromEnv()).getCube(cubeName);
         CubeDesc cubeDesc = cubeInstance.getDescriptor();
         final CubeSegment cubeSegment = cubeInstance.getSegmentById(segmentId);
-        List<TblColRef> baseCuboidColumn = Cuboid.findById(cubeDesc, Cuboid.getBaseCuboidId(cubeDesc)).getColumns();
-        final Map<TblColRef, Integer> columnLengthMap = Maps.newHashMap();
-        final CubeDimEncMap dimEncMap = cubeSegment.getDimensionEncodingMap();
-        for (TblColRef tblColRef : baseCuboidColumn) {
-            columnLengthMap.put(tblColRef, dimEncMap.get(tblColRef).getLengthOfEncoding());
-        }
-        final Map<TblColRef, Dictionary<String>> dictionaryMap = Maps.newHashMap();
-        for (DimensionDesc dim : cubeDesc.getDimensions()) {
-            // dictionary
-            for (TblColRef col : dim.getColumnRefs()) {
-                if (cubeDesc.getRowkey().isUseDictionary(col)) {
-                    Dictionary<String> dict = cubeSegment.getDictionary(col);
-                    if (dict == null) {
-                        System.err.println("Dictionary for " + col + " was not found.");
-                    }
-                    dictionaryMap.put(col, dict);
-                    System.out.println("col:" + col + " dictionary size:" + dict.getSize());
-                }
-            }
+        final List<List<Long>> layers = getCuboidLayers(cubeDesc);
+        final StorageLevel storageLevel = StorageLevel.MEMORY_AND_DISK_SER();
+
+        long t = System.currentTimeMillis();
+        final List<JavaPairRDD<ByteArray, Object[]>> layerRDDs = Lists.newArrayList();
+        JavaPairRDD<ByteArray, Object[]> layerRDD = aggregateMeasures(javaRDD.mapPartitionsToPair(new EncodeBaseCuboid(cubeName, segmentId)), //
+                cubeName, cubeDesc, estimatePartitions(cubeDesc, layers.get(0), cubeSizeMap)).persist(storageLevel);
+        layerRDDs.add(layerRDD);
+        for (int level = 1; level < layers.size(); level++) {
+            layerRDD = aggregateMeasures(layerRDD.mapPartitionsToPair(new SpanChildCuboids(cubeName, segmentId)), //
+                    cubeName, cubeDesc, estimatePartitions(cubeDesc, layers.get(level), cubeSizeMap)).persist(storageLevel);
+            layerRDDs.add(layerRDD);
         }
+        System.out.println("cube of " + layers.size() + " layers planned in " + (System.currentTimeMillis() - t) + "ms");
 
-        for (MeasureDesc measureDesc : cubeDesc.getMeasures()) {
-            FunctionDesc func = measureDesc.getFunction();
-            List<TblColRef> colRefs = func.getMeasureType().getColumnsNeedDictionary(func);
-            for (TblColRef col : colRefs) {
-                dictionaryMap.put(col, cubeSegment.getDictionary(col));
-            }
+        JavaPairRDD<ByteArray, Object[]> allCuboids = layerRDDs.get(0);
+        for (int i = 1; i < layerRDDs.size(); i++) {
+            allCuboids = allCuboids.union(layerRDDs.get(i));
         }
 
-        final JavaPairRDD<byte[], byte[]> javaPairRDD = javaRDD.glom().mapPartitionsToPair(new PairFlatMapFunction<Iterator<List<List<String>>>, byte[], byte[]>() {
-
-            @Override
-            public Iterable<Tuple2<byte[], byte[]>> call(Iterator<List<List<String>>> listIterator) throws Exception {
-                long t = System.currentTimeMillis();
-                prepare();
-
-                final CubeInstance cubeInstance = CubeManager.getInstance(KylinConfig.getInstanceFromEnv()).getCube(cubeName);
-
-                LinkedBlockingQueue<List<String>> blockingQueue = new LinkedBlockingQueue();
-                System.out.println("load properties finished");
-                IJoinedFlatTableDesc flatDesc = EngineFactory.getJoinedFlatTableDesc(cubeSegment);
-                AbstractInMemCubeBuilder inMemCubeBuilder = new DoggedCubeBuilder(cubeInstance.getDescriptor(), flatDesc, dictionaryMap);
-                final SparkCuboidWriter sparkCuboidWriter = new BufferedCuboidWriter(new DefaultTupleConverter(cubeInstance.getSegmentById(segmentId), columnLengthMap));
-                Executors.newCachedThreadPool().submit(inMemCubeBuilder.buildAsRunnable(blockingQueue, sparkCuboidWriter));
-                try {
-                    while (listIterator.hasNext()) {
-                        for (List<String> row : listIterator.next()) {
-                            blockingQueue.put(row);
-                        }
-                    }
-                    blockingQueue.put(Collections.<String> emptyList());
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-                System.out.println("build partition cost: " + (System.currentTimeMillis() - t) + "ms");
-                return sparkCuboidWriter.getResult();
-            }
-        });
-
         KylinConfig kylinConfig = KylinConfig.getInstanceFromEnv();
         Configuration conf = getConfigurationForHFile(cubeSegment.getStorageLocationIdentifier());
         Path path = new Path(kylinConfig.getHdfsWorkingDirectory(), "hfile_" + UUID.randomUUID().toString());
         Preconditions.checkArgument(!FileSystem.get(conf).exists(path));
         String url = conf.get("fs.defaultFS") + path.toString();
         System.out.println("use " + url + " as hfile");
-        List<MeasureDesc> measuresDescs = cubeDesc.getMeasures();
-        final int measureSize = measuresDescs.size();
-        final String[] dataTypes = new String[measureSize];
-        for (int i = 0; i < dataTypes.length; i++) {
-            dataTypes[i] = measuresDescs.get(i).getFunction().getReturnType();
+
+        // rowkeys are unique across layers, no more aggregation needed after sorting
+        allCuboids.repartitionAndSortWithinPartitions(new RegionPartitioner(splitKeys), Ordering.<ByteArray> natural()) //
+                .mapPartitionsToPair(new CreateKeyValues(cubeName), true) //
+                .saveAsNewAPIHadoopFile(url, ImmutableBytesWritable.class, KeyValue.class, HFileOutputFormat.class, conf);
+
+        for (JavaPairRDD<ByteArray, Object[]> rdd : layerRDDs) {
+            rdd.unpersist();
         }
-        final MeasureAggregators aggs = new MeasureAggregators(measuresDescs);
-        writeToHFile2(javaPairRDD, dataTypes, measureSize, aggs, splitKeys, conf, url);
         return url;
     }
 
-    private void writeToHFile2(final JavaPairRDD<byte[], byte[]> javaPairRDD, final String[] dataTypes, final int measureSize, final MeasureAggregators aggs, final byte[][] splitKeys, final Configuration conf, final String hFileLocation) {
-        javaPairRDD.repartitionAndSortWithinPartitions(new Partitioner() {
-            @Override
-            public int numPartitions() {
-                return splitKeys.length + 1;
+    /**
+     * Aggregates the measures of the rows of the same rowkey into a MeasureAggregators per rowkey, so that measures
+     * are neither decoded nor encoded again for each pair of rows merged.
+     */
+    private static JavaPairRDD<ByteArray, Object[]> aggregateMeasures(JavaPairRDD<ByteArray, Object[]> rows, String cubeName, CubeDesc cubeDesc, int partitions) {
+        int measureCount = cubeDesc.getMeasures().size();
+        return rows.combineByKey(new CreateAggregators(cubeName), new MergeMeasures(), new MergeAggregators(measureCount), partitions) //
+                .mapValues(new CollectStates(measureCount));
+    }
+
+    /**
+     * @return cuboid ids of each layer, starting from the base cuboid, a cuboid is built from its parent in the previous layer
+     */
+    static List<List<Long>> getCuboidLayers(CubeDesc cubeDesc) {
+        CuboidScheduler cuboidScheduler = new CuboidScheduler(cubeDesc);
+        List<List<Long>> layers = Lists.newArrayList();
+        List<Long> layer = Collections.singletonList(Cuboid.getBaseCuboidId(cubeDesc));
+        while (!layer.isEmpty()) {
+            layers.add(layer);
+            List<Long> next = Lists.newArrayList();
+            for (Long parent : layer) {
+                next.addAll(cuboidScheduler.getSpanningCuboid(parent));
             }
+            layer = next;
+        }
+        return layers;
+    }
 
-            @Override
-            public int getPartition(Object key) {
-                Preconditions.checkArgument(key instanceof byte[]);
-                for (int i = 0, n = splitKeys.length; i < n; ++i) {
-                    if (UnsignedBytes.lexicographicalComparator().compare((byte[]) key, splitKeys[i]) < 0) {
-                        return i;
-                    }
+    private int estimatePartitions(CubeDesc cubeDesc, List<Long> layer, Map<Long, Double> cubeSizeMap) {
+        double layerSizeMB = 0;
+        for (Long cuboidId : layer) {
+            Double size = cubeSizeMap.get(cuboidId);
+            layerSizeMB += size == null ? 0 : size;
+        }
+        KylinConfig config = cubeDesc.getConfig();
+        int partitions = (int) Math.ceil(layerSizeMB / config.getSparkRDDPartitionCutMB());
+        partitions = Math.max(1, Math.min(partitions, config.getSparkMaxPartitions()));
+        System.out.println("layer of " + layer.size() + " cuboids, estimated " + layerSizeMB + " MB, " + partitions + " partitions");
+        return partitions;
+    }
+
+    private static CubeSegment loadSegment(String cubeName, String segmentId) throws Exception {
+        prepare();
+        return CubeManager.getInstance(KylinConfig.getInstanceFromEnv()).getCube(cubeName).getSegmentById(segmentId);
+    }
+
+    /** encodes flat table rows into base cuboid rows, streaming a partition through */
+    private static class EncodeBaseCuboid implements PairFlatMapFunction<Iterator<List<String>>, ByteArray, Object[]> {
+        private final String cubeName;
+        private final String segmentId;
+
+        EncodeBaseCuboid(String cubeName, String segmentId) {
+            this.cubeName = cubeName;
+            this.segmentId = segmentId;
+        }
+
+        @Override
+        public Iterable<Tuple2<ByteArray, Object[]>> call(final Iterator<List<String>> rows) throws Exception {
+            final BaseCuboidEncoder encoder = new BaseCuboidEncoder(loadSegment(cubeName, segmentId));
+            return new Iterable<Tuple2<ByteArray, Object[]>>() {
+                @Override
+                public Iterator<Tuple2<ByteArray, Object[]>> iterator() {
+                    return Iterators.transform(rows, new Function<List<String>, Tuple2<ByteArray, Object[]>>() {
+                        @Override
+                        public Tuple2<ByteArray, Object[]> apply(List<String> row) {
+                            return new Tuple2<>(encoder.encodeKey(row), encoder.buildMeasures(row));
+                        }
+                    });
                 }
-                return splitKeys.length;
-            }
-        }, UnsignedBytes.lexicographicalComparator()).mapPartitions(new FlatMapFunction<Iterator<Tuple2<byte[], byte[]>>, Tuple2<byte[], byte[]>>() {
-            @Override
-            public Iterable<Tuple2<byte[], byte[]>> call(final Iterator<Tuple2<byte[], byte[]>> tuple2Iterator) throws Exception {
-                return new Iterable<Tuple2<byte[], byte[]>>() {
-                    final BufferedMeasureCodec codec = new BufferedMeasureCodec(dataTypes);
-                    final Object[] input = new Object[measureSize];
-                    final Object[] result = new Object[measureSize];
-
-                    @Override
-                    public Iterator<Tuple2<byte[], byte[]>> iterator() {
-                        return IteratorUtils.merge(tuple2Iterator, UnsignedBytes.lexicographicalComparator(), new Function<Iterable<byte[]>, byte[]>() {
-                            @Override
-                            public byte[] call(Iterable<byte[]> v1) throws Exception {
-                                final LinkedList<byte[]> list = Lists.newLinkedList(v1);
-                                if (list.size() == 1) {
-                                    return list.get(0);
-                                }
-                                aggs.reset();
-                                for (byte[] v : list) {
-                                    codec.decode(ByteBuffer.wrap(v), input);
-                                    aggs.aggregate(input);
-                                }
-                                aggs.collectStates(result);
-                                ByteBuffer buffer = codec.encode(result);
-                                byte[] bytes = new byte[buffer.position()];
-                                System.arraycopy(buffer.array(), buffer.arrayOffset(), bytes, 0, buffer.position());
-                                return bytes;
+            };
+        }
+    }
+
+    /** emits the rows of a layer as rows of their spanning child cuboids, to be aggregated into the next layer */
+    private static class SpanChildCuboids implements PairFlatMapFunction<Iterator<Tuple2<ByteArray, Object[]>>, ByteArray, Object[]> {
+        private final String cubeName;
+        private final String segmentId;
+
+        SpanChildCuboids(String cubeName, String segmentId) {
+            this.cubeName = cubeName;
+            this.segmentId = segmentId;
+        }
+
+        @Override
+        public Iterable<Tuple2<ByteArray, Object[]>> call(final Iterator<Tuple2<ByteArray, Object[]>> parents) throws Exception {
+            final ChildCuboidKeyBuilder keyBuilder = new ChildCuboidKeyBuilder(loadSegment(cubeName, segmentId));
+            return new Iterable<Tuple2<ByteArray, Object[]>>() {
+                @Override
+                public Iterator<Tuple2<ByteArray, Object[]>> iterator() {
+                    return Iterators.concat(Iterators.transform(parents, new Function<Tuple2<ByteArray, Object[]>, Iterator<Tuple2<ByteArray, Object[]>>>() {
+                        @Override
+                        public Iterator<Tuple2<ByteArray, Object[]>> apply(Tuple2<ByteArray, Object[]> parent) {
+                            // the children share the measures of the parent, aggregators never modify their input
+                            List<Tuple2<ByteArray, Object[]>> children = Lists.newArrayList();
+                            for (ByteArray childKey : keyBuilder.buildChildKeys(parent._1())) {
+                                children.add(new Tuple2<>(childKey, parent._2()));
                             }
-                        });
-                    }
-                };
+                            return children.iterator();
+                        }
+                    }));
+                }
+            };
+        }
+    }
+
+    /** starts the aggregation of a rowkey with its first measures */
+    private static class CreateAggregators implements org.apache.spark.api.java.function.Function<Object[], MeasureAggregators> {
+        private final String cubeName;
+        private transient List<MeasureDesc> measures;
+
+        CreateAggregators(String cubeName) {
+            this.cubeName = cubeName;
+        }
+
+        @Override
+        public MeasureAggregators call(Object[] values) throws Exception {
+            if (measures == null) {
+                prepare();
+                measures = CubeManager.getInstance(KylinConfig.getInstanceFromEnv()).getCube(cubeName).getDescriptor().getMeasures();
             }
-        }, true).mapToPair(new PairFunction<Tuple2<byte[], byte[]>, ImmutableBytesWritable, KeyValue>() {
-            @Override
-            public Tuple2<ImmutableBytesWritable, KeyValue> call(Tuple2<byte[], byte[]> tuple2) throws Exception {
-                ImmutableBytesWritable key = new ImmutableBytesWritable(tuple2._1());
-                KeyValue value = new KeyValue(tuple2._1(), "F1".getBytes(), "M".getBytes(), tuple2._2());
-                return new Tuple2(key, value);
+            MeasureAggregators aggs = new MeasureAggregators(measures);
+            aggs.aggregate(values);
+            return aggs;
+        }
+    }
+
+    /** aggregates the measures of another row of the rowkey */
+    private static class MergeMeasures implements Function2<MeasureAggregators, Object[], MeasureAggregators> {
+        @Override
+        public MeasureAggregators call(MeasureAggregators aggs, Object[] values) throws Exception {
+            aggs.aggregate(values);
+            return aggs;
+        }
+    }
+
+    /** merges the partial aggregations of a rowkey from different partitions */
+    private static class MergeAggregators implements Function2<MeasureAggregators, MeasureAggregators, MeasureAggregators> {
+        private final int measureCount;
+
+        MergeAggregators(int measureCount) {
+            this.measureCount = measureCount;
+        }
+
+        @Override
+        public MeasureAggregators call(MeasureAggregators aggs1, MeasureAggregators aggs2) throws Exception {
+            Object[] states = new Object[measureCount];
+            aggs2.collectStates(states);
+            aggs1.aggregate(states);
+            return aggs1;
+        }
+    }
+
+    /** collects the aggregated measures of a rowkey */
+    private static class CollectStates implements org.apache.spark.api.java.function.Function<MeasureAggregators, Object[]> {
+        private final int measureCount;
+
+        CollectStates(int measureCount) {
+            this.measureCount = measureCount;
+        }
+
+        @Override
+        public Object[] call(MeasureAggregators aggs) throws Exception {
+            Object[] states = new Object[measureCount];
+            aggs.collectStates(states);
+            return states;
+        }
+    }
+
+    /** converts sorted cube rows into HBase KeyValues of all column families */
+    private static class CreateKeyValues implements PairFlatMapFunction<Iterator<Tuple2<ByteArray, Object[]>>, ImmutableBytesWritable, KeyValue> {
+        private final String cubeName;
+
+        CreateKeyValues(String cubeName) {
+            this.cubeName = cubeName;
+        }
+
+        @Override
+        public Iterable<Tuple2<ImmutableBytesWritable, KeyValue>> call(final Iterator<Tuple2<ByteArray, Object[]>> rows) throws Exception {
+            prepare();
+            CubeDesc cubeDesc = CubeManager.getInstance(KylinConfig.getInstanceFromEnv()).getCube(cubeName).getDescriptor();
+            final BufferedMeasureCodec codec = new BufferedMeasureCodec(cubeDesc.getMeasures());
+            final RowKeyValueBuilder keyValueBuilder = new RowKeyValueBuilder(cubeDesc);
+            return new Iterable<Tuple2<ImmutableBytesWritable, KeyValue>>() {
+                @Override
+                public Iterator<Tuple2<ImmutableBytesWritable, KeyValue>> iterator() {
+                    return Iterators.concat(Iterators.transform(rows, new Function<Tuple2<ByteArray, Object[]>, Iterator<Tuple2<ImmutableBytesWritable, KeyValue>>>() {
+                        @Override
+                        public Iterator<Tuple2<ImmutableBytesWritable, KeyValue>> apply(Tuple2<ByteArray, Object[]> row) {
+                            ByteArray key = row._1();
+                            Object[] measures = row._2();
+                            // measures are encoded once, here, for the full copy shortcut of RowKeyValueBuilder
+                            ByteBuffer valueBuf = codec.encode(measures);
+
+                            ImmutableBytesWritable outputKey = new ImmutableBytesWritable(key.array(), key.offset(), key.length());
+                            List<Tuple2<ImmutableBytesWritable, KeyValue>> result = Lists.newArrayList();
+                            for (KeyValue kv : keyValueBuilder.build(key.array(), key.offset(), key.length(), measures, valueBuf)) {
+                                result.add(new Tuple2<>(outputKey, kv));
+                            }
+                            return result.iterator();
+                        }
+                    }));
+                }
+            };
+        }
+    }
+
+    /** partitions rowkeys by the region split keys, one partition per region */
+    private static class RegionPartitioner extends Partitioner {
+        private final byte[][] splitKeys;
+
+        RegionPartitioner(byte[][] splitKeys) {
+            this.splitKeys = splitKeys;
+        }
+
+        @Override
+        public int numPartitions() {
+            return splitKeys.length + 1;
+        }
+
+        @Override
+        public int getPartition(Object key) {
+            ByteArray rowKey = (ByteArray) key;
+            // find the first split key greater than the rowkey
+            int low = 0;
+            int high = splitKeys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (Bytes.compareTo(rowKey.array(), rowKey.offset(), rowKey.length(), splitKeys[mid], 0, splitKeys[mid].length) < 0) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
             }
-        }).saveAsNewAPIHadoopFile(hFileLocation, ImmutableBytesWritable.class, KeyValue.class, HFileOutputFormat.class, conf);
+            return low;
+        }
     }
 
     private static void prepare() throws Exception {
@@ -470,13 +597,18 @@ public class SparkCubing extends AbstractApplication {
         ClassUtil.addClasspath(confPath);
     }
 
-    private byte[][] createHTable(String cubeName, String segmentId, Map<Long, HyperLogLogPlusCounter> samplingResult) throws Exception {
-        final KylinConfig kylinConfig = KylinConfig.getInstanceFromEnv();
-        final CubeInstance cubeInstance = CubeManager.getInstance(kylinConfig).getCube(cubeName);
-        final CubeSegment cubeSegment = cubeInstance.getSegmentById(segmentId);
+    private Map<Long, Double> estimateCuboidSizes(String cubeName, String segmentId, Map<Long, HyperLogLogPlusCounter> samplingResult) {
+        final CubeSegment cubeSegment = CubeManager.getInstance(KylinConfig.getInstanceFromEnv()).getCube(cubeName).getSegmentById(segmentId);
         final Map<Long, Long> rowCountMap = CubeStatsReader.getCuboidRowCountMapFromSampling(samplingResult, 100);
         final Map<Long, Double> cubeSizeMap = CubeStatsReader.getCuboidSizeMapFromRowCount(cubeSegment, rowCountMap);
         System.out.println("cube size estimation:" + cubeSizeMap);
+        return cubeSizeMap;
+    }
+
+    private byte[][] createHTable(String cubeName, String segmentId, Map<Long, Double> cubeSizeMap) throws Exception {
+        final KylinConfig kylinConfig = KylinConfig.getInstanceFromEnv();
+        final CubeInstance cubeInstance = CubeManager.getInstance(kylinConfig).getCube(cubeName);
+        final CubeSegment cubeSegment = cubeInstance.getSegmentById(segmentId);
         final byte[][] splitKeys = CreateHTableJob.getRegionSplitsFromCuboidStatistics(cubeSizeMap, kylinConfig, cubeSegment, null); //FIXME: passing non-null value for 'hfileSplitsOutputFolder'
         CubeHTableUtil.createHTable(cubeSegment, splitKeys);
         System.out.println(cubeSegment.getStorageLocationIdentifier() + " table created");
@@ -532,6 +664,14 @@ public class SparkCubing extends AbstractApplication {
         kyroClasses.addAll(new Reflections("org.apache.kylin.cube.model").getSubTypesOf(Object.class));
         kyroClasses.addAll(new Reflections("org.apache.kylin.metadata.model").getSubTypesOf(Object.class));
         kyroClasses.addAll(new Reflections("org.apache.kylin.metadata.measure").getSubTypesOf(Object.class));
+        // decoded measures and their aggregators are shuffled and persisted between layers
+        kyroClasses.addAll(new Reflections("org.roaringbitmap").getSubTypesOf(Serializable.class));
+        kyroClasses.add(MeasureAggregator[].class);
+        kyroClasses.add(BitmapCounter.class);
+        kyroClasses.add(TopNCounter.class);
+        kyroClasses.add(Counter.class);
+        kyroClasses.add(DoublyLinkedList.class);
+        kyroClasses.add(ListNode2.class);
         kyroClasses.add(HashMap.class);
         kyroClasses.add(org.apache.spark.sql.Row[].class);
         kyroClasses.add(org.apache.spark.sql.Row.class);
@@ -595,7 +735,7 @@ public class SparkCubing extends AbstractApplication {
         kylinConfig.overrideCoprocessorLocalJar(coprocessor);
 
         setupClasspath(sc, confPath);
-        intermediateTable.cache();
+        intermediateTable.persist(StorageLevel.MEMORY_AND_DISK_SER());
         writeDictionary(intermediateTable, cubeName, segmentId);
         final JavaRDD<List<String>> rowJavaRDD = intermediateTable.javaRDD().map(new org.apache.spark.api.java.function.Function<Row, List<String>>() {
             @Override
@@ -615,9 +755,10 @@ public class SparkCubing extends AbstractApplication {
         });
 
         final Map<Long, HyperLogLogPlusCounter> samplingResult = sampling(rowJavaRDD, cubeName, segmentId);
-        final byte[][] splitKeys = createHTable(cubeName, segmentId, samplingResult);
+        final Map<Long, Double> cubeSizeMap = estimateCuboidSizes(cubeName, segmentId, samplingResult);
+        final byte[][] splitKeys = createHTable(cubeName, segmentId, cubeSizeMap);
 
-        final String hfile = build(rowJavaRDD, cubeName, segmentId, splitKeys);
+        final String hfile = build(rowJavaRDD, cubeName, segmentId, splitKeys, cubeSizeMap);
         bulkLoadHFile(cubeName, segmentId, hfile);
     }
 
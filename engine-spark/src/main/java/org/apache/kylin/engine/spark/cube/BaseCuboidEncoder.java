@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.engine.spark.cube;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.cube.kv.AbstractRowKeyEncoder;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.cube.model.CubeJoinedFlatTableEnrich;
+import org.apache.kylin.engine.EngineFactory;
+import org.apache.kylin.measure.MeasureIngester;
+import org.apache.kylin.metadata.model.FunctionDesc;
+import org.apache.kylin.metadata.model.MeasureDesc;
+import org.apache.kylin.metadata.model.ParameterDesc;
+import org.apache.kylin.metadata.model.TblColRef;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Encodes a row of the flat table into the rowkey and measures of the base cuboid, like BaseCuboidMapperBase does.
+ */
+public class BaseCuboidEncoder {
+
+    private final CubeDesc cubeDesc;
+    private final CubeJoinedFlatTableEnrich flatDesc;
+    private final AbstractRowKeyEncoder rowKeyEncoder;
+    private final MeasureIngester<?>[] aggrIngesters;
+    private final Map<TblColRef, Dictionary<String>> dictionaryMap;
+    private final Set<String> nullStrings = Sets.newHashSet("\\N");
+
+    private final byte[][] keyBytesBuf;
+
+    public BaseCuboidEncoder(CubeSegment cubeSegment) {
+        this.cubeDesc = cubeSegment.getCubeDesc();
+        this.flatDesc = new CubeJoinedFlatTableEnrich(EngineFactory.getJoinedFlatTableDesc(cubeSegment), cubeDesc);
+        this.rowKeyEncoder = AbstractRowKeyEncoder.createInstance(cubeSegment, Cuboid.findById(cubeDesc, Cuboid.getBaseCuboidId(cubeDesc)));
+        this.aggrIngesters = MeasureIngester.create(cubeDesc.getMeasures());
+        this.dictionaryMap = cubeSegment.buildDictionaryMap();
+        this.keyBytesBuf = new byte[cubeDesc.getRowkey().getRowKeyColumns().length][];
+
+        if (cubeDesc.getNullStrings() != null) {
+            for (String s : cubeDesc.getNullStrings()) {
+                nullStrings.add(s);
+            }
+        }
+    }
+
+    public ByteArray encodeKey(List<String> row) {
+        int[] rowKeyColumnIndexes = flatDesc.getRowKeyColumnIndexes();
+        for (int i = 0; i < keyBytesBuf.length; i++) {
+            String cell = getCell(row, rowKeyColumnIndexes[i]);
+            keyBytesBuf[i] = cell == null ? null : Bytes.toBytes(cell);
+        }
+        return new ByteArray(rowKeyEncoder.encode(keyBytesBuf));
+    }
+
+    /**
+     * @return the measure values of the row, not encoded, as they are aggregated decoded in all layers
+     */
+    public Object[] buildMeasures(List<String> row) {
+        Object[] measures = new Object[cubeDesc.getMeasures().size()];
+        for (int i = 0; i < measures.length; i++) {
+            measures[i] = buildValueOf(i, row);
+        }
+        return measures;
+    }
+
+    private Object buildValueOf(int idxOfMeasure, List<String> row) {
+        MeasureDesc measure = cubeDesc.getMeasures().get(idxOfMeasure);
+        FunctionDesc function = measure.getFunction();
+        int[] colIdxOnFlatTable = flatDesc.getMeasureColumnIndexes()[idxOfMeasure];
+
+        int paramCount = function.getParameterCount();
+        String[] inputToMeasure = new String[paramCount];
+
+        // pick up parameter values
+        ParameterDesc param = function.getParameter();
+        int colParamIdx = 0; // index among parameters of column type
+        for (int i = 0; i < paramCount; i++, param = param.getNextParameter()) {
+            String value;
+            if (function.isCount()) {
+                value = "1";
+            } else if (param.isColumnType()) {
+                value = getCell(row, colIdxOnFlatTable[colParamIdx++]);
+            } else {
+                value = param.getValue();
+            }
+            inputToMeasure[i] = value;
+        }
+
+        return aggrIngesters[idxOfMeasure].valueOf(inputToMeasure, measure, dictionaryMap);
+    }
+
+    private String getCell(List<String> row, int i) {
+        String cell = row.get(i);
+        return cell == null || nullStrings.contains(cell) ? null : cell;
+    }
+}
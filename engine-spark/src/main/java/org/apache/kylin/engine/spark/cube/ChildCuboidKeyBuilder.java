@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.engine.spark.cube;
+
+import java.util.List;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.SplittedBytes;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.common.RowKeySplitter;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.cube.cuboid.CuboidScheduler;
+import org.apache.kylin.cube.kv.RowConstants;
+import org.apache.kylin.cube.kv.RowKeyEncoder;
+import org.apache.kylin.cube.kv.RowKeyEncoderProvider;
+import org.apache.kylin.cube.model.CubeDesc;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Derives the rowkeys of the spanning child cuboids from a rowkey of the parent cuboid, like NDCuboidMapper does.
+ */
+public class ChildCuboidKeyBuilder {
+
+    private final CubeDesc cubeDesc;
+    private final CuboidScheduler cuboidScheduler;
+    private final RowKeySplitter rowKeySplitter;
+    private final RowKeyEncoderProvider rowKeyEncoderProvider;
+    private final byte[] newKeyBodyBuf = new byte[RowConstants.ROWKEY_BUFFER_SIZE];
+
+    public ChildCuboidKeyBuilder(CubeSegment cubeSegment) {
+        this.cubeDesc = cubeSegment.getCubeDesc();
+        this.cuboidScheduler = new CuboidScheduler(cubeDesc);
+        this.rowKeySplitter = new RowKeySplitter(cubeSegment, 65, 256);
+        this.rowKeyEncoderProvider = new RowKeyEncoderProvider(cubeSegment);
+    }
+
+    /**
+     * @return the rowkeys of all spanning children, empty if the parent cuboid has no child
+     */
+    public List<ByteArray> buildChildKeys(ByteArray parentKey) {
+        long parentCuboidId = rowKeySplitter.split(parentKey.array(), parentKey.offset(), parentKey.length());
+        List<Long> children = cuboidScheduler.getSpanningCuboid(parentCuboidId);
+        List<ByteArray> result = Lists.newArrayListWithCapacity(children.size());
+        for (Long child : children) {
+            result.add(buildKey(parentCuboidId, child, rowKeySplitter.getSplitBuffers()));
+        }
+        return result;
+    }
+
+    private ByteArray buildKey(long parentCuboidId, long childCuboidId, SplittedBytes[] splitBuffers) {
+        RowKeyEncoder rowkeyEncoder = rowKeyEncoderProvider.getRowkeyEncoder(Cuboid.findById(cubeDesc, childCuboidId));
+
+        int offset = 0;
+        long mask = Long.highestOneBit(parentCuboidId);
+        int parentCuboidIdActualLength = Long.SIZE - Long.numberOfLeadingZeros(parentCuboidId);
+        int index = rowKeySplitter.getBodySplitOffset(); // skip shard and cuboidId
+        for (int i = 0; i < parentCuboidIdActualLength; i++) {
+            if ((mask & parentCuboidId) > 0) {
+                if ((mask & childCuboidId) > 0) {
+                    System.arraycopy(splitBuffers[index].value, 0, newKeyBodyBuf, offset, splitBuffers[index].length);
+                    offset += splitBuffers[index].length;
+                }
+                index++;
+            }
+            mask = mask >> 1;
+        }
+
+        ByteArray newKey = new ByteArray(rowkeyEncoder.createBuf());
+        rowkeyEncoder.encode(new ByteArray(newKeyBodyBuf, 0, offset), newKey);
+        return newKey;
+    }
+}
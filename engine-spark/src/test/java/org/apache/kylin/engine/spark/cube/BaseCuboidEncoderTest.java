@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.engine.spark.cube;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.cube.kv.RowKeyDecoder;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.cube.model.CubeJoinedFlatTableEnrich;
+import org.apache.kylin.cube.model.RowKeyColDesc;
+import org.apache.kylin.engine.EngineFactory;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BaseCuboidEncoderTest extends LocalFileMetadataTestCase {
+
+    private CubeSegment cubeSegment;
+    private CubeDesc cubeDesc;
+    private CubeJoinedFlatTableEnrich flatDesc;
+
+    @Before
+    public void setUp() throws Exception {
+        createTestMetadata();
+        cubeSegment = CubeManager.getInstance(getTestConfig()).getCube("test_kylin_cube_with_slr_1_new_segment").getSegmentById("198va32a-a33e-4b69-83dd-0bb8b1f8c53b");
+        cubeDesc = cubeSegment.getCubeDesc();
+        flatDesc = new CubeJoinedFlatTableEnrich(EngineFactory.getJoinedFlatTableDesc(cubeSegment), cubeDesc);
+    }
+
+    @After
+    public void after() throws Exception {
+        cleanupTestMetadata();
+    }
+
+    @Test
+    public void testEncodeKey() throws Exception {
+        String[] row = newRow();
+        RowKeyColDesc[] rowKeyColumns = cubeDesc.getRowkey().getRowKeyColumns();
+        String[] expected = new String[rowKeyColumns.length];
+        for (int i = 0; i < rowKeyColumns.length; i++) {
+            TblColRef col = rowKeyColumns[i].getColRef();
+            Dictionary<String> dict = cubeSegment.getDictionary(col);
+            if (dict != null) {
+                expected[i] = dict.getValueFromId(dict.getMinId());
+            } else if ("LSTG_FORMAT_NAME".equals(col.getName())) {
+                expected[i] = null;
+            } else {
+                expected[i] = "1000" + i;
+            }
+            row[flatDesc.getRowKeyColumnIndexes()[i]] = expected[i] == null ? "\\N" : expected[i];
+        }
+
+        BaseCuboidEncoder encoder = new BaseCuboidEncoder(cubeSegment);
+        RowKeyDecoder decoder = new RowKeyDecoder(cubeSegment);
+        assertEquals(Cuboid.getBaseCuboidId(cubeDesc), decoder.decode(encoder.encodeKey(Arrays.asList(row)).array()));
+        List<String> values = decoder.getValues();
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], values.get(i));
+        }
+    }
+
+    @Test
+    public void testBuildMeasures() {
+        String[] row = newRow();
+        // GMV_SUM, GMV_MIN and GMV_MAX are on PRICE, TRANS_CNT is a count and ITEM_COUNT_SUM is on ITEM_COUNT
+        row[flatDesc.getMeasureColumnIndexes()[0][0]] = "12.5";
+        row[flatDesc.getMeasureColumnIndexes()[4][0]] = "3";
+
+        BaseCuboidEncoder encoder = new BaseCuboidEncoder(cubeSegment);
+        Object[] measures = encoder.buildMeasures(Arrays.asList(row));
+        assertEquals(5, measures.length);
+        assertEquals(0, new BigDecimal("12.5").compareTo((BigDecimal) measures[0]));
+        assertEquals(0, new BigDecimal("12.5").compareTo((BigDecimal) measures[1]));
+        assertEquals(0, new BigDecimal("12.5").compareTo((BigDecimal) measures[2]));
+        assertEquals(1, ((LongMutable) measures[3]).get());
+        assertEquals(3, ((LongMutable) measures[4]).get());
+
+        // measures of each row are new objects, as they are kept decoded by the layers
+        assertNotSame(measures, encoder.buildMeasures(Arrays.asList(row)));
+    }
+
+    private String[] newRow() {
+        String[] row = new String[flatDesc.getAllColumns().size()];
+        Arrays.fill(row, "\\N");
+        return row;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.engine.spark.cube;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.kylin.common.util.ByteArray;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.kv.RowConstants;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChildCuboidKeyBuilderTest extends LocalFileMetadataTestCase {
+
+    private CubeSegment cubeSegment;
+
+    @Before
+    public void setUp() throws Exception {
+        createTestMetadata();
+        cubeSegment = CubeManager.getInstance(getTestConfig()).getCube("test_kylin_cube_with_slr_1_new_segment").getSegmentById("198va32a-a33e-4b69-83dd-0bb8b1f8c53b");
+    }
+
+    @After
+    public void after() throws Exception {
+        cleanupTestMetadata();
+    }
+
+    @Test
+    public void testBuildChildKeys() {
+        // same rowkey as NDCuboidMapperTest, placed in the middle of a larger array
+        byte[] key = { 0, 0, 0, 0, 0, 0, 0, 0, 1, -1, 0, -104, -106, -128, 11, 54, -105, 55, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 13, 71, 114, 65, 66, 73, 78, 9, 9, 9, 9, 9, 9, 9, 9, 0, 10, 0 };
+        byte[] buf = new byte[key.length + 6];
+        Arrays.fill(buf, (byte) -1);
+        System.arraycopy(key, 0, buf, 3, key.length);
+
+        ChildCuboidKeyBuilder builder = new ChildCuboidKeyBuilder(cubeSegment);
+        List<ByteArray> children = builder.buildChildKeys(new ByteArray(buf, 3, key.length));
+
+        long[] cuboidIds = new long[children.size()];
+        for (int i = 0; i < children.size(); i++) {
+            ByteArray child = children.get(i);
+            cuboidIds[i] = Bytes.toLong(child.array(), child.offset() + RowConstants.ROWKEY_SHARDID_LEN, RowConstants.ROWKEY_CUBOIDID_LEN);
+        }
+        Arrays.sort(cuboidIds);
+        // refer to CuboidSchedulerTest.testGetSpanningCuboid()
+        assertArrayEquals(new long[] { 383, 447, 503, 504 }, cuboidIds);
+
+        byte[] childKey = { 0, 0, 0, 0, 0, 0, 0, 0, 1, 127, 0, -104, -106, -128, 55, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 13, 71, 114, 65, 66, 73, 78, 9, 9, 9, 9, 9, 9, 9, 9, 0, 10, 0 };
+        assertTrue(children.contains(new ByteArray(childKey)));
+    }
+}
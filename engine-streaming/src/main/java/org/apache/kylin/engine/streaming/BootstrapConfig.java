@@ -29,6 +29,9 @@ public class BootstrapConfig {
     private boolean fillGap;
     private long maxFillGapRange = 4 * 3600 * 1000L;
 
+    private boolean continuous;
+    private long window = 3600 * 1000L;
+
     public long getStart() {
         return start;
     }
@@ -68,4 +71,20 @@ public class BootstrapConfig {
     public void setMaxFillGapRange(long maxFillGapRange) {
         this.maxFillGapRange = maxFillGapRange;
     }
+
+    public boolean isContinuous() {
+        return continuous;
+    }
+
+    public void setContinuous(boolean continuous) {
+        this.continuous = continuous;
+    }
+
+    public long getWindow() {
+        return window;
+    }
+
+    public void setWindow(long window) {
+        this.window = window;
+    }
 }
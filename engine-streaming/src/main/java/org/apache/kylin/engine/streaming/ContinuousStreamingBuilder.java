@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.engine.streaming;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.annotation.Nullable;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.Dictionary;
+import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.common.util.StreamingBatch;
+import org.apache.kylin.common.util.StreamingMessage;
+import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.inmemcubing.InMemCubeBuilder;
+import org.apache.kylin.cube.inmemcubing.InMemSegment;
+import org.apache.kylin.cube.inmemcubing.InMemSegmentRegistry;
+import org.apache.kylin.cube.util.CubingUtils;
+import org.apache.kylin.engine.EngineFactory;
+import org.apache.kylin.engine.streaming.util.StreamingUtils;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.apache.kylin.metadata.realization.RealizationType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Keeps consuming the stream of a cube window by window. Within a window, the new messages are fetched every
+ * micro batch interval and built into an InMemSegment, merged with the last few slices of the window (see
+ * countSlicesToMerge). The in-memory segments are published through InMemSegmentRegistry, and query servers scan
+ * them along with the READY segments. When the window ends, it is built into a normal segment like
+ * OneOffStreamingBuilder does, and the in-memory segments are dropped.
+ */
+public class ContinuousStreamingBuilder implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContinuousStreamingBuilder.class);
+
+    private final IStreamingInput streamingInput;
+    private final IStreamingOutput streamingOutput;
+    private final StreamingBatchBuilder streamingBatchBuilder;
+    private final String cubeName;
+    private final long windowSize;
+    private final long microBatchInterval;
+
+    private long windowStart;
+    private volatile boolean stopped = false;
+
+    // consecutive micro batches of the current window, built into one in-memory segment
+    private static class Slice {
+        final List<StreamingMessage> messages;
+        final long start;
+        final long end;
+        final InMemSegment segment;
+
+        Slice(List<StreamingMessage> messages, long start, long end, InMemSegment segment) {
+            this.messages = messages;
+            this.start = start;
+            this.end = end;
+            this.segment = segment;
+        }
+    }
+
+    public ContinuousStreamingBuilder(String cubeName, long startTime, long windowSize) {
+        Preconditions.checkArgument(windowSize > 0);
+        this.cubeName = Preconditions.checkNotNull(cubeName);
+        this.windowStart = startTime;
+        this.windowSize = windowSize;
+        this.microBatchInterval = KylinConfig.getInstanceFromEnv().getStreamingMicroBatchIntervalSeconds() * 1000L;
+        this.streamingInput = Preconditions.checkNotNull(StreamingUtils.getStreamingInput());
+        this.streamingOutput = Preconditions.checkNotNull(StreamingUtils.getStreamingOutput());
+        this.streamingBatchBuilder = Preconditions.checkNotNull(StreamingUtils.getMicroBatchBuilder(RealizationType.CUBE, cubeName));
+    }
+
+    @Override
+    public void run() {
+        List<Slice> slices = Lists.newArrayList();
+        long fetchedUntil = windowStart;
+
+        while (!stopped) {
+            long windowEnd = windowStart + windowSize;
+            long batchStart = fetchedUntil;
+            long batchEnd = Math.min(windowEnd, System.currentTimeMillis());
+            List<StreamingMessage> newMessages = Collections.emptyList();
+            if (batchEnd > fetchedUntil) {
+                newMessages = streamingInput.getBatchWithTimeWindow(RealizationType.CUBE, cubeName, -1, fetchedUntil, batchEnd).getMessages();
+                fetchedUntil = batchEnd;
+            }
+
+            if (fetchedUntil >= windowEnd) {
+                List<StreamingMessage> windowMessages = Lists.newArrayList();
+                for (Slice slice : slices) {
+                    windowMessages.addAll(slice.messages);
+                }
+                windowMessages.addAll(newMessages);
+                logger.info("Window " + windowStart + " - " + windowEnd + " ends with " + windowMessages.size() + " messages, build it into a segment");
+                OneOffStreamingBuilder.buildBatch(new StreamingBatch(windowMessages, Pair.newPair(windowStart, windowEnd)), streamingBatchBuilder, streamingOutput);
+                if (!slices.isEmpty()) {
+                    clearInMemSegments();
+                    slices.clear();
+                }
+                windowStart = windowEnd;
+                continue;
+            }
+
+            if (!newMessages.isEmpty()) {
+                long t = System.currentTimeMillis();
+                Slice slice = addSlice(slices, newMessages, batchStart, batchEnd);
+                publishInMemSegments(slices);
+                logger.info("Built " + slice.segment + " from " + slice.messages.size() + " messages in " + (System.currentTimeMillis() - t) + " ms, window kept in " + slices.size() + " in-memory segments");
+            }
+
+            try {
+                Thread.sleep(microBatchInterval);
+            } catch (InterruptedException e) {
+                logger.warn("interrupted, stop streaming", e);
+                stopped = true;
+            }
+        }
+
+        if (!slices.isEmpty()) {
+            clearInMemSegments();
+        }
+    }
+
+    /**
+     * Builds the new messages into a slice, together with the last slices that are not much bigger, and replaces them.
+     */
+    private Slice addSlice(List<Slice> slices, List<StreamingMessage> newMessages, long batchStart, long batchEnd) {
+        List<Integer> sizes = Lists.newArrayList();
+        for (Slice slice : slices) {
+            sizes.add(slice.messages.size());
+        }
+        sizes.add(newMessages.size());
+        int nMerged = countSlicesToMerge(sizes) - 1;
+
+        List<Slice> merged = slices.subList(slices.size() - nMerged, slices.size());
+        List<StreamingMessage> messages = Lists.newArrayList();
+        for (Slice slice : merged) {
+            messages.addAll(slice.messages);
+        }
+        messages.addAll(newMessages);
+        long start = merged.isEmpty() ? batchStart : merged.get(0).start;
+
+        Slice slice;
+        try {
+            slice = new Slice(messages, start, batchEnd, buildInMemSegment(messages, start, batchEnd));
+        } catch (IOException e) {
+            throw new RuntimeException("failed to build in-memory segment", e);
+        }
+        merged.clear();
+        slices.add(slice);
+        return slice;
+    }
+
+    /**
+     * @return the number of slices at the end to build as one. The last slice is merged with the previous one while
+     * the previous is at most twice as big, so the slice sizes at least halve from the first slice to the last. Like a
+     * binary counter, a window is kept in a logarithmic number of slices and each message is rebuilt a logarithmic
+     * number of times, instead of rebuilding the whole window every micro batch.
+     */
+    static int countSlicesToMerge(List<Integer> sliceSizes) {
+        int n = sliceSizes.size();
+        if (n == 0) {
+            return 0;
+        }
+        long mergedSize = sliceSizes.get(n - 1);
+        int count = 1;
+        while (count < n && sliceSizes.get(n - 1 - count) <= 2 * mergedSize) {
+            mergedSize += sliceSizes.get(n - 1 - count);
+            count++;
+        }
+        return count;
+    }
+
+    private void publishInMemSegments(List<Slice> slices) {
+        List<InMemSegment> segments = Lists.newArrayList();
+        for (Slice slice : slices) {
+            segments.add(slice.segment);
+        }
+        try {
+            InMemSegmentRegistry.getInstance(KylinConfig.getInstanceFromEnv()).publish(getCube(), segments);
+        } catch (IOException e) {
+            // queries miss the latest messages until the next micro batch
+            logger.warn("failed to publish in-memory segments", e);
+        }
+    }
+
+    private void clearInMemSegments() {
+        try {
+            InMemSegmentRegistry.getInstance(KylinConfig.getInstanceFromEnv()).clear(getCube());
+        } catch (IOException e) {
+            logger.warn("failed to clear in-memory segments", e);
+        }
+    }
+
+    private CubeInstance getCube() {
+        return CubeManager.getInstance(KylinConfig.getInstanceFromEnv()).getCube(cubeName);
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    private InMemSegment buildInMemSegment(List<StreamingMessage> messages, long start, long end) throws IOException {
+        final CubeInstance cube = getCube();
+        List<List<String>> rows = Lists.transform(messages, new Function<StreamingMessage, List<String>>() {
+            @Nullable
+            @Override
+            public List<String> apply(@Nullable StreamingMessage input) {
+                return input.getData();
+            }
+        });
+
+        // each slice has its own dictionaries, so that a new slice does not change the ones built before
+        Map<TblColRef, Dictionary<String>> dictionaryMap = CubingUtils.buildDictionary(cube, rows);
+        InMemSegment segment = new InMemSegment(cube, start, end, dictionaryMap);
+        segment.setInputRecords(messages.size());
+
+        LinkedBlockingQueue<List<String>> queue = new LinkedBlockingQueue<List<String>>(rows);
+        queue.add(Collections.<String> emptyList());
+        InMemCubeBuilder builder = new InMemCubeBuilder(cube.getDescriptor(), EngineFactory.getJoinedFlatTableDesc(cube.getDescriptor()), dictionaryMap);
+        builder.build(queue, segment.getCuboidWriter());
+        return segment;
+    }
+}
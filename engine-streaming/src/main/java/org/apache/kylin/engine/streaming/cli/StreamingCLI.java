@@ -23,6 +23,7 @@ import java.util.List;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.engine.streaming.BootstrapConfig;
+import org.apache.kylin.engine.streaming.ContinuousStreamingBuilder;
 import org.apache.kylin.engine.streaming.OneOffStreamingBuilder;
 import org.apache.kylin.engine.streaming.monitor.StreamingMonitor;
 import org.apache.kylin.metadata.realization.RealizationType;
@@ -61,12 +62,26 @@ public class StreamingCLI {
                 case "-maxFillGapRange":
                     bootstrapConfig.setMaxFillGapRange(Long.parseLong(args[++i]));
                     break;
+                case "-continuous":
+                    bootstrapConfig.setContinuous(Boolean.parseBoolean(args[++i]));
+                    break;
+                case "-window":
+                    bootstrapConfig.setWindow(Long.parseLong(args[++i]));
+                    break;
                 default:
                     logger.warn("ignore this arg:" + argName);
                 }
                 i++;
             }
-            if (bootstrapConfig.isFillGap()) {
+            if (bootstrapConfig.isContinuous()) {
+                long start = bootstrapConfig.getStart();
+                if (start == 0) {
+                    // start from the current window
+                    start = System.currentTimeMillis() / bootstrapConfig.getWindow() * bootstrapConfig.getWindow();
+                }
+                logger.info("start continuous streaming from " + start + " with window " + bootstrapConfig.getWindow());
+                new ContinuousStreamingBuilder(bootstrapConfig.getCubeName(), start, bootstrapConfig.getWindow()).run();
+            } else if (bootstrapConfig.isFillGap()) {
                 final List<Pair<Long, Long>> gaps = StreamingMonitor.findGaps(bootstrapConfig.getCubeName());
                 logger.info("all gaps:" + StringUtils.join(gaps, ","));
                 for (Pair<Long, Long> gap : gaps) {
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.engine.streaming;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class ContinuousStreamingBuilderTest {
+
+    @Test
+    public void testCountSlicesToMerge() {
+        assertEquals(0, ContinuousStreamingBuilder.countSlicesToMerge(Collections.<Integer> emptyList()));
+        assertEquals(1, ContinuousStreamingBuilder.countSlicesToMerge(Lists.newArrayList(10)));
+        assertEquals(1, ContinuousStreamingBuilder.countSlicesToMerge(Lists.newArrayList(30, 10)));
+        assertEquals(2, ContinuousStreamingBuilder.countSlicesToMerge(Lists.newArrayList(70, 20, 10)));
+        // 20 + 10 = 30, then 60 <= 2 * 30
+        assertEquals(3, ContinuousStreamingBuilder.countSlicesToMerge(Lists.newArrayList(60, 20, 10)));
+        assertEquals(4, ContinuousStreamingBuilder.countSlicesToMerge(Lists.newArrayList(80, 40, 20, 10)));
+    }
+
+    @Test
+    public void testSlicesStayLogarithmic() {
+        // one message per micro batch, as the slices of a window are built one by one
+        List<Integer> slices = Lists.newArrayList();
+        long rebuilt = 0;
+        int nBatches = 4096;
+        for (int i = 0; i < nBatches; i++) {
+            slices.add(1);
+            int n = ContinuousStreamingBuilder.countSlicesToMerge(slices);
+            int merged = 0;
+            for (int j = 0; j < n; j++) {
+                merged += slices.remove(slices.size() - 1);
+            }
+            slices.add(merged);
+            rebuilt += merged;
+
+            assertTrue("too many slices: " + slices, slices.size() <= 2 * (32 - Integer.numberOfLeadingZeros(i + 1)));
+        }
+        // each message is rebuilt a logarithmic number of times, instead of once per micro batch
+        assertTrue("rebuilt " + rebuilt + " messages", rebuilt <= 2L * nBatches * 13);
+    }
+}
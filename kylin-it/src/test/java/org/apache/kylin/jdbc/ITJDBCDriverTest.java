@@ -233,6 +233,26 @@ public class ITJDBCDriverTest extends HBaseMetadataTestCase {
 
     }
 
+    @Test
+    public void testPreparedStatementRerun() throws Exception {
+        Connection conn = getConnection();
+
+        // the second run reuses the plan cached on the server by the first one
+        PreparedStatement statement = conn.prepareStatement("select LSTG_FORMAT_NAME, count(1) as TRANS_CNT from test_kylin_fact " + "where LSTG_FORMAT_NAME = ? group by LSTG_FORMAT_NAME");
+        for (String formatName : new String[] { "Auction", "ABIN" }) {
+            statement.setString(1, formatName);
+            ResultSet rs = statement.executeQuery();
+
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals(formatName, rs.getString(1));
+            Assert.assertFalse(rs.next());
+            rs.close();
+        }
+
+        statement.close();
+        conn.close();
+    }
+
     @Test
     public void testResultSet() throws Exception {
         String sql = "select LSTG_FORMAT_NAME, sum(price) as GMV, count(1) as TRANS_CNT from test_kylin_fact \n" + " group by LSTG_FORMAT_NAME ";
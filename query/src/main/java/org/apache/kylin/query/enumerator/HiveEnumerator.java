@@ -18,26 +18,40 @@
 
 package org.apache.kylin.query.enumerator;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.ResultSet;
+import java.math.BigDecimal;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.List;
 
 import org.apache.calcite.linq4j.Enumerator;
-import org.apache.kylin.common.util.DBUtils;
+import org.apache.calcite.rel.type.RelDataTypeField;
+import org.apache.calcite.sql.SqlNode;
+import org.apache.calcite.sql.SqlNumericLiteral;
+import org.apache.calcite.sql.SqlOrderBy;
+import org.apache.calcite.sql.SqlSelect;
+import org.apache.calcite.sql.parser.SqlParseException;
+import org.apache.calcite.sql.parser.SqlParser;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.ClassUtil;
+import org.apache.kylin.query.pushdown.IPushDownEngine;
+import org.apache.kylin.query.pushdown.IPushDownResult;
+import org.apache.kylin.query.pushdown.PushDownRequest;
 import org.apache.kylin.query.relnode.OLAPContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
 
 /**
- * Hive Query Result Enumerator
+ * Hive Query Result Enumerator, streams the rows of the query pushed down by IPushDownEngine
  */
 public class HiveEnumerator implements Enumerator<Object[]> {
 
+    private static final Logger logger = LoggerFactory.getLogger(HiveEnumerator.class);
+
     private final OLAPContext olapContext;
     private final Object[] current;
-    private ResultSet rs;
-    private Connection conn;
+    private IPushDownResult result;
 
     public HiveEnumerator(OLAPContext olapContext) {
         this.olapContext = olapContext;
@@ -51,65 +65,79 @@ public class HiveEnumerator implements Enumerator<Object[]> {
 
     @Override
     public boolean moveNext() {
-        if (rs == null) {
-            rs = executeQuery();
+        if (result == null) {
+            result = executeQuery();
+        }
+        try {
+            return result.next(current);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Can't populate result!", e);
         }
-        return populateResult();
     }
 
-    private ResultSet executeQuery() {
+    private IPushDownResult executeQuery() {
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
         String url = olapContext.olapSchema.getStarSchemaUrl();
         String user = olapContext.olapSchema.getStarSchemaUser();
         String pwd = olapContext.olapSchema.getStarSchemaPassword();
         String sql = olapContext.sql;
-        Statement stmt = null;
+
+        List<SqlTypeName> columnTypes = Lists.newArrayList();
+        for (RelDataTypeField field : olapContext.hiveRowType.getFieldList()) {
+            columnTypes.add(field.getType().getSqlTypeName());
+        }
+
+        PushDownRequest request = new PushDownRequest(url, user, pwd, sql, columnTypes);
+        request.setLimit(getOutermostLimit(sql));
+        request.setFetchSize(config.getHivePushDownFetchSize());
+        request.setTimeoutSeconds(config.getHivePushDownTimeoutSeconds());
+        request.setMaxResultBytes(config.getHivePushDownMaxResultBytes());
+
+        IPushDownEngine engine = (IPushDownEngine) ClassUtil.newInstance(config.getHivePushDownEngine());
         try {
-            conn = DriverManager.getConnection(url, user, pwd);
-            stmt = conn.createStatement();
-            return stmt.executeQuery(sql);
+            return engine.query(request);
         } catch (SQLException e) {
             throw new IllegalStateException(url + " can't execute query " + sql, e);
-        } finally {
-            DBUtils.closeQuietly(stmt);
-            DBUtils.closeQuietly(conn);
         }
     }
 
-    private boolean populateResult() {
+    /**
+     * @return the LIMIT of the whole statement, 0 if there is none. The limit of the OLAPContext may come from a
+     * sub-query, which does not bound the rows of the statement pushed down.
+     */
+    static int getOutermostLimit(String sql) {
+        SqlNode node;
         try {
-            boolean hasNext = rs.next();
-            if (hasNext) {
-                List<String> allFields = olapContext.returnTupleInfo.getAllFields();
-                for (int i = 0; i < allFields.size(); i++) {
-                    Object value = rs.getObject(allFields.get(i).toLowerCase());
-                    current[i] = value;
-                }
-            }
-            return hasNext;
-        } catch (SQLException e) {
-            throw new IllegalStateException("Can't populate result!", e);
+            node = SqlParser.create(sql).parseQuery();
+        } catch (SqlParseException e) {
+            logger.warn("Can't parse the limit of " + sql + ", push down without limit", e);
+            return 0;
+        }
+
+        SqlNode fetch = null;
+        if (node instanceof SqlOrderBy) {
+            fetch = ((SqlOrderBy) node).fetch;
+        } else if (node instanceof SqlSelect) {
+            fetch = ((SqlSelect) node).getFetch();
+        }
+        if (!(fetch instanceof SqlNumericLiteral)) {
+            return 0;
         }
+        BigDecimal limit = (BigDecimal) ((SqlNumericLiteral) fetch).getValue();
+        return limit.compareTo(BigDecimal.valueOf(Integer.MAX_VALUE)) > 0 ? 0 : limit.intValue();
     }
 
     @Override
     public void reset() {
         close();
-        rs = executeQuery();
+        result = executeQuery();
     }
 
     @Override
     public void close() {
-        try {
-            if (rs != null) {
-                rs.close();
-                rs = null;
-            }
-            if (conn != null) {
-                conn.close();
-                conn = null;
-            }
-        } catch (SQLException e) {
-            throw new IllegalStateException("Can't close ResultSet!", e);
+        if (result != null) {
+            result.close();
+            result = null;
         }
     }
 
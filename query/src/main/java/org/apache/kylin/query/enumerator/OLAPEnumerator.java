@@ -130,6 +130,8 @@ public class OLAPEnumerator implements Enumerator<Object[]> {
 
         if (filter instanceof CompareTupleFilter && optiqContext != null) {
             CompareTupleFilter compFilter = (CompareTupleFilter) filter;
+            // a cached plan runs the same filters again, with other parameter values
+            compFilter.unbindVariables();
             for (Map.Entry<String, Object> entry : compFilter.getVariables().entrySet()) {
                 String variable = entry.getKey();
                 Object value = optiqContext.get(variable);
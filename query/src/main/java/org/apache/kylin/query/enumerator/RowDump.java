@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.query.enumerator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A temp file of query rows spilled from memory, in the way of the Dump of GTAggregateScanner.
+ *
+ * Rows are written as soon as added, and each row is encoded by value. Enumerators may reuse the
+ * row array and its values, so nothing may be kept by reference between two rows.
+ */
+class RowDump implements Iterable<Object> {
+
+    private static final Logger logger = LoggerFactory.getLogger(RowDump.class);
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte INTEGER = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BIG_DECIMAL = 5;
+    private static final byte BOOLEAN = 6;
+    private static final byte HLLC = 7;
+    private static final byte SERIALIZABLE = 8;
+    private static final byte ARRAY = 9;
+
+    private File dumpedFile;
+    private DataOutputStream dos;
+    private DataInputStream dis;
+    private int count = 0;
+
+    public void add(Object row) throws IOException {
+        if (dos == null) {
+            dumpedFile = File.createTempFile("KYLIN_QUERY_SPILL_", ".tmp");
+            logger.info("Query rows will dump to file: " + dumpedFile.getAbsolutePath());
+            dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dumpedFile)));
+        }
+
+        if (row instanceof Object[]) {
+            Object[] values = (Object[]) row;
+            dos.writeByte(ARRAY);
+            dos.writeInt(values.length);
+            for (Object value : values) {
+                writeValue(value);
+            }
+        } else {
+            writeValue(row);
+        }
+        count++;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void flush() throws IOException {
+        if (dos != null) {
+            dos.close();
+            dos = null;
+        }
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        if (count == 0) {
+            return new Iterator<Object>() {
+                @Override
+                public boolean hasNext() {
+                    return false;
+                }
+
+                @Override
+                public Object next() {
+                    throw new NoSuchElementException();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        try {
+            if (dumpedFile == null || !dumpedFile.exists()) {
+                throw new RuntimeException("Dumped file cannot be found at: " + (dumpedFile == null ? "<null>" : dumpedFile.getAbsolutePath()));
+            }
+            dis = new DataInputStream(new BufferedInputStream(new FileInputStream(dumpedFile)));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read dumped file: " + e.getMessage(), e);
+        }
+
+        return new Iterator<Object>() {
+            int cursorIdx = 0;
+
+            @Override
+            public boolean hasNext() {
+                return cursorIdx < count;
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                try {
+                    cursorIdx++;
+                    return readValue();
+                } catch (Exception e) {
+                    throw new RuntimeException("Cannot read query rows from dumped file: " + e.getMessage(), e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public void terminate() {
+        IOUtils.closeQuietly(dos);
+        IOUtils.closeQuietly(dis);
+        dos = null;
+        dis = null;
+        if (dumpedFile != null && dumpedFile.exists())
+            dumpedFile.delete();
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            dos.writeByte(NULL);
+        } else if (value instanceof String) {
+            byte[] bytes = Bytes.toBytes((String) value);
+            dos.writeByte(STRING);
+            dos.writeInt(bytes.length);
+            dos.write(bytes);
+        } else if (value instanceof Long) {
+            dos.writeByte(LONG);
+            dos.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            dos.writeByte(INTEGER);
+            dos.writeInt((Integer) value);
+        } else if (value instanceof Double) {
+            dos.writeByte(DOUBLE);
+            dos.writeDouble((Double) value);
+        } else if (value instanceof BigDecimal) {
+            dos.writeByte(BIG_DECIMAL);
+            dos.writeUTF(value.toString());
+        } else if (value instanceof Boolean) {
+            dos.writeByte(BOOLEAN);
+            dos.writeBoolean((Boolean) value);
+        } else if (value instanceof HyperLogLogPlusCounter) {
+            HyperLogLogPlusCounter hllc = (HyperLogLogPlusCounter) value;
+            ByteBuffer buf = ByteBuffer.allocate(hllc.maxLength());
+            hllc.writeRegisters(buf);
+            dos.writeByte(HLLC);
+            dos.writeInt(hllc.getPrecision());
+            dos.writeInt(buf.position());
+            dos.write(buf.array(), 0, buf.position());
+        } else {
+            // a fresh stream per value, as the object may be changed in place after being added
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bytes);
+            oos.writeObject(value);
+            oos.close();
+            dos.writeByte(SERIALIZABLE);
+            dos.writeInt(bytes.size());
+            bytes.writeTo(dos);
+        }
+    }
+
+    private Object readValue() throws IOException, ClassNotFoundException {
+        byte type = dis.readByte();
+        switch (type) {
+        case NULL:
+            return null;
+        case STRING:
+            return Bytes.toString(readBytes());
+        case LONG:
+            return dis.readLong();
+        case INTEGER:
+            return dis.readInt();
+        case DOUBLE:
+            return dis.readDouble();
+        case BIG_DECIMAL:
+            return new BigDecimal(dis.readUTF());
+        case BOOLEAN:
+            return dis.readBoolean();
+        case HLLC:
+            HyperLogLogPlusCounter hllc = new HyperLogLogPlusCounter(dis.readInt());
+            hllc.readRegisters(ByteBuffer.wrap(readBytes()));
+            return hllc;
+        case SERIALIZABLE:
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(readBytes()));
+            try {
+                return ois.readObject();
+            } finally {
+                ois.close();
+            }
+        case ARRAY:
+            Object[] values = new Object[dis.readInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readValue();
+            }
+            return values;
+        default:
+            throw new IllegalStateException("Unknown value type " + type);
+        }
+    }
+
+    private byte[] readBytes() throws IOException {
+        byte[] bytes = new byte[dis.readInt()];
+        dis.readFully(bytes);
+        return bytes;
+    }
+
+    /** @return whether the row can be dumped, i.e. an array of or a single serializable value */
+    public static boolean isSpillable(Object row) {
+        if (row instanceof Object[]) {
+            for (Object value : (Object[]) row) {
+                if (value != null && !(value instanceof Serializable))
+                    return false;
+            }
+            return true;
+        }
+        return row == null || row instanceof Serializable;
+    }
+
+    /** @return a rough estimate of the heap bytes taken by a row or a value */
+    public static long estimateSize(Object value) {
+        if (value == null) {
+            return 8;
+        } else if (value instanceof Object[]) {
+            long size = 16;
+            for (Object v : (Object[]) value) {
+                size += estimateSize(v);
+            }
+            return size;
+        } else if (value instanceof String) {
+            return 48 + 2L * ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return 24 + ((byte[]) value).length;
+        } else if (value instanceof BigDecimal) {
+            return 64;
+        } else if (value instanceof Number || value instanceof Boolean) {
+            return 24;
+        } else if (value instanceof HyperLogLogPlusCounter) {
+            return 32 + ((HyperLogLogPlusCounter) value).maxLength();
+        } else {
+            return 64;
+        }
+    }
+}
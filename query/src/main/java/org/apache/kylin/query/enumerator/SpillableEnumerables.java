@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.query.enumerator;
+
+import java.util.Comparator;
+
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.function.EqualityComparer;
+import org.apache.calcite.linq4j.function.Function0;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Function2;
+
+import com.google.common.collect.Ordering;
+
+/**
+ * Spill-capable versions of Enumerable.groupBy() and Enumerable.orderBy(), called by the code
+ * generated for post-aggregation and sort on the query server. Either keeps its rows in memory up to
+ * the spill threshold in bytes, and spills to local temp files beyond it; a non-positive threshold
+ * never spills.
+ */
+public class SpillableEnumerables {
+
+    public static <TSource, TKey, TAccumulate, TResult> Enumerable<TResult> groupBy(Enumerable<TSource> source, Function1<TSource, TKey> keySelector, //
+            Function0<TAccumulate> accumulatorInitializer, Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder, //
+            Function2<TKey, TAccumulate, TResult> resultSelector, long spillThreshold) {
+        return groupBy(source, keySelector, accumulatorInitializer, accumulatorAdder, resultSelector, null, spillThreshold);
+    }
+
+    public static <TSource, TKey, TAccumulate, TResult> Enumerable<TResult> groupBy(final Enumerable<TSource> source, final Function1<TSource, TKey> keySelector, //
+            final Function0<TAccumulate> accumulatorInitializer, final Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder, //
+            final Function2<TKey, TAccumulate, TResult> resultSelector, final EqualityComparer<TKey> comparer, final long spillThreshold) {
+        return new AbstractEnumerable<TResult>() {
+            @Override
+            public Enumerator<TResult> enumerator() {
+                return new SpillingAggregation<TSource, TKey, TAccumulate, TResult>(source, keySelector, accumulatorInitializer, accumulatorAdder, resultSelector, comparer, spillThreshold);
+            }
+        };
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static <TSource, TKey extends Comparable> Enumerable<TSource> orderBy(Enumerable<TSource> source, Function1<TSource, TKey> keySelector, long spillThreshold) {
+        return orderBy(source, keySelector, (Comparator<TKey>) Ordering.natural(), spillThreshold);
+    }
+
+    public static <TSource, TKey> Enumerable<TSource> orderBy(final Enumerable<TSource> source, final Function1<TSource, TKey> keySelector, //
+            final Comparator<TKey> comparator, final long spillThreshold) {
+        return new AbstractEnumerable<TSource>() {
+            @Override
+            public Enumerator<TSource> enumerator() {
+                return new SpillingSort<TSource, TKey>(source, keySelector, comparator, spillThreshold);
+            }
+        };
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.query.enumerator;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.function.EqualityComparer;
+import org.apache.calcite.linq4j.function.Function0;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Function2;
+import org.apache.kylin.common.util.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * A hash aggregation that spills to disk, once its groups take more memory than the threshold.
+ *
+ * Accumulators are code generated and cannot be dumped, so the input rows are spilled instead (hybrid hash):
+ * rows of the groups already in memory keep being aggregated, while rows of new groups go to one of the
+ * partition dumps by the hash of their key. Groups in memory are returned at the end of the input,
+ * then each partition is aggregated the same way, with a different hash for any further spill.
+ */
+class SpillingAggregation<TSource, TKey, TAccumulate, TResult> implements Enumerator<TResult> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpillingAggregation.class);
+
+    static final int PARTITIONS = 16;
+    static final int GROUP_OVERHEAD = 64;
+
+    private final Enumerable<TSource> source;
+    private final Function1<TSource, TKey> keySelector;
+    private final Function0<TAccumulate> accumulatorInitializer;
+    private final Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder;
+    private final Function2<TKey, TAccumulate, TResult> resultSelector;
+    private final EqualityComparer<TKey> comparer;
+    private final long spillThreshold;
+
+    private final LinkedList<Pair<RowDump, Integer>> pendingDumps = Lists.newLinkedList();
+    private Map<Object, TAccumulate> groups;
+    private Iterator<Entry<Object, TAccumulate>> groupIterator;
+    private boolean sourceDone = false;
+    private TResult current;
+
+    SpillingAggregation(Enumerable<TSource> source, Function1<TSource, TKey> keySelector, Function0<TAccumulate> accumulatorInitializer, //
+            Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder, Function2<TKey, TAccumulate, TResult> resultSelector, //
+            EqualityComparer<TKey> comparer, long spillThreshold) {
+        this.source = source;
+        this.keySelector = keySelector;
+        this.accumulatorInitializer = accumulatorInitializer;
+        this.accumulatorAdder = accumulatorAdder;
+        this.resultSelector = resultSelector;
+        this.comparer = comparer;
+        this.spillThreshold = spillThreshold;
+    }
+
+    @Override
+    public TResult current() {
+        return current;
+    }
+
+    @Override
+    public boolean moveNext() {
+        while (groupIterator == null || !groupIterator.hasNext()) {
+            groups = null;
+            if (!sourceDone) {
+                Enumerator<TSource> enumerator = source.enumerator();
+                try {
+                    aggregate(Linq4j.enumeratorIterator(enumerator), 0);
+                } finally {
+                    enumerator.close();
+                    sourceDone = true;
+                }
+            } else if (!pendingDumps.isEmpty()) {
+                Pair<RowDump, Integer> dump = pendingDumps.removeFirst();
+                try {
+                    aggregate(rowsOf(dump.getFirst()), dump.getSecond() + 1);
+                } finally {
+                    dump.getFirst().terminate();
+                }
+            } else {
+                return false;
+            }
+            groupIterator = groups.entrySet().iterator();
+        }
+
+        Entry<Object, TAccumulate> entry = groupIterator.next();
+        current = resultSelector.apply(keyOf(entry.getKey()), entry.getValue());
+        return true;
+    }
+
+    private void aggregate(Iterator<TSource> rows, int level) {
+        groups = Maps.newLinkedHashMap();
+        HashFunction hash = Hashing.murmur3_32(level);
+        RowDump[] partitions = null;
+        boolean spillable = spillThreshold > 0;
+        long memEstimate = 0;
+
+        while (rows.hasNext()) {
+            TSource row = rows.next();
+            Object groupKey = groupKeyOf(row);
+            TAccumulate acc = groups.get(groupKey);
+            if (acc == null) {
+                if (partitions != null) {
+                    if (RowDump.isSpillable(row)) {
+                        int partition = (hash.hashInt(groupKey == null ? 0 : groupKey.hashCode()).asInt() & Integer.MAX_VALUE) % PARTITIONS;
+                        spill(partitions, partition, row);
+                        continue;
+                    }
+                    logger.warn("A query row cannot be spilled, keeping all groups of level " + level + " in memory");
+                    unspill(partitions);
+                    partitions = null;
+                    spillable = false;
+                }
+
+                acc = accumulatorInitializer.apply();
+                memEstimate += RowDump.estimateSize(row) + GROUP_OVERHEAD;
+                if (spillable && memEstimate > spillThreshold) {
+                    logger.info("Spill query aggregation of level " + level + ", " + (groups.size() + 1) + " groups are kept in memory, estimated size " + memEstimate);
+                    partitions = new RowDump[PARTITIONS];
+                }
+            }
+            groups.put(groupKey, accumulatorAdder.apply(acc, row));
+        }
+
+        if (partitions != null) {
+            for (RowDump dump : partitions) {
+                if (dump == null)
+                    continue;
+                try {
+                    dump.flush();
+                } catch (IOException e) {
+                    throw new RuntimeException("Query aggregation spill failed: " + e.getMessage(), e);
+                }
+                pendingDumps.add(Pair.newPair(dump, level));
+            }
+        }
+    }
+
+    private void spill(RowDump[] partitions, int partition, TSource row) {
+        if (partitions[partition] == null) {
+            partitions[partition] = new RowDump();
+        }
+        try {
+            partitions[partition].add(row);
+        } catch (IOException e) {
+            throw new RuntimeException("Query aggregation spill failed: " + e.getMessage(), e);
+        }
+    }
+
+    /** brings back the rows of this level from disk, aggregating all of them in memory */
+    private void unspill(RowDump[] partitions) {
+        for (RowDump dump : partitions) {
+            if (dump == null)
+                continue;
+            try {
+                dump.flush();
+                Iterator<TSource> it = rowsOf(dump);
+                while (it.hasNext()) {
+                    TSource row = it.next();
+                    Object groupKey = groupKeyOf(row);
+                    TAccumulate acc = groups.get(groupKey);
+                    if (acc == null) {
+                        acc = accumulatorInitializer.apply();
+                    }
+                    groups.put(groupKey, accumulatorAdder.apply(acc, row));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Query aggregation spill failed: " + e.getMessage(), e);
+            } finally {
+                dump.terminate();
+            }
+        }
+    }
+
+    private Object groupKeyOf(TSource row) {
+        TKey key = keySelector.apply(row);
+        return comparer == null ? key : new ComparerKey<TKey>(comparer, key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private TKey keyOf(Object groupKey) {
+        return comparer == null ? (TKey) groupKey : ((ComparerKey<TKey>) groupKey).key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Iterator<TSource> rowsOf(RowDump dump) {
+        return (Iterator<TSource>) dump.iterator();
+    }
+
+    @Override
+    public void reset() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        for (Pair<RowDump, Integer> dump : pendingDumps) {
+            dump.getFirst().terminate();
+        }
+        pendingDumps.clear();
+        groups = null;
+        groupIterator = null;
+    }
+
+    /** a group key compared by the equality comparer of the aggregation */
+    private static class ComparerKey<K> {
+        final EqualityComparer<K> comparer;
+        final K key;
+
+        ComparerKey(EqualityComparer<K> comparer, K key) {
+            this.comparer = comparer;
+            this.key = key;
+        }
+
+        @Override
+        public int hashCode() {
+            return comparer.hashCode(key);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ComparerKey && comparer.equal(key, ((ComparerKey<K>) obj).key);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.query.enumerator;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.function.Function1;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A stable sort that spills to disk, once the buffered rows take more memory than the threshold.
+ *
+ * Each full buffer is sorted and dumped as a run; at the end the runs and the last buffer are merged
+ * by a min heap, like the DumpMerger of GTAggregateScanner. Rows equal by key keep their input order.
+ */
+class SpillingSort<TSource, TKey> implements Enumerator<TSource> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpillingSort.class);
+
+    static final int ROW_OVERHEAD = 32;
+
+    private final Enumerable<TSource> source;
+    private final Function1<TSource, TKey> keySelector;
+    private final Comparator<TKey> comparator;
+    private final long spillThreshold;
+
+    private final List<RowDump> runs = Lists.newArrayList();
+    private PriorityQueue<Run> minHeap;
+    private TSource current;
+
+    SpillingSort(Enumerable<TSource> source, Function1<TSource, TKey> keySelector, Comparator<TKey> comparator, long spillThreshold) {
+        this.source = source;
+        this.keySelector = keySelector;
+        this.comparator = comparator;
+        this.spillThreshold = spillThreshold;
+    }
+
+    @Override
+    public TSource current() {
+        return current;
+    }
+
+    @Override
+    public boolean moveNext() {
+        if (minHeap == null) {
+            sort();
+        }
+
+        Run run = minHeap.poll();
+        if (run == null) {
+            current = null;
+            return false;
+        }
+        current = run.row;
+        enqueue(run);
+        return true;
+    }
+
+    private void sort() {
+        final Comparator<KeyedRow<TSource, TKey>> rowComparator = new Comparator<KeyedRow<TSource, TKey>>() {
+            @Override
+            public int compare(KeyedRow<TSource, TKey> o1, KeyedRow<TSource, TKey> o2) {
+                return comparator.compare(o1.key, o2.key);
+            }
+        };
+
+        List<KeyedRow<TSource, TKey>> buffer = Lists.newArrayList();
+        boolean spillable = spillThreshold > 0;
+        long memEstimate = 0;
+
+        Enumerator<TSource> enumerator = source.enumerator();
+        try {
+            while (enumerator.moveNext()) {
+                TSource row = enumerator.current();
+                buffer.add(new KeyedRow<TSource, TKey>(keySelector.apply(row), row));
+
+                if (spillable && !RowDump.isSpillable(row)) {
+                    logger.warn("A query row cannot be spilled, keeping the rest of the sort in memory");
+                    spillable = false;
+                }
+                memEstimate += RowDump.estimateSize(row) + ROW_OVERHEAD;
+                if (spillable && memEstimate > spillThreshold) {
+                    logger.info("Spill query sort run " + runs.size() + " of " + buffer.size() + " rows, estimated size " + memEstimate);
+                    Collections.sort(buffer, rowComparator);
+                    spillRun(buffer);
+                    buffer.clear();
+                    memEstimate = 0;
+                }
+            }
+        } finally {
+            enumerator.close();
+        }
+
+        Collections.sort(buffer, rowComparator);
+
+        // run index breaks ties, so that rows equal by key stay in input order
+        minHeap = new PriorityQueue<Run>(runs.size() + 1, new Comparator<Run>() {
+            @Override
+            public int compare(Run o1, Run o2) {
+                int c = comparator.compare(o1.key, o2.key);
+                return c != 0 ? c : Integer.compare(o1.index, o2.index);
+            }
+        });
+        for (int i = 0; i < runs.size(); i++) {
+            enqueue(new Run(i, runs.get(i).iterator(), false));
+        }
+        enqueue(new Run(runs.size(), buffer.iterator(), true));
+    }
+
+    private void spillRun(List<KeyedRow<TSource, TKey>> buffer) {
+        RowDump dump = new RowDump();
+        runs.add(dump);
+        try {
+            for (KeyedRow<TSource, TKey> keyedRow : buffer) {
+                dump.add(keyedRow.row);
+            }
+            dump.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Query sort spill failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void enqueue(Run run) {
+        if (run.advance()) {
+            minHeap.offer(run);
+        }
+    }
+
+    @Override
+    public void reset() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        for (RowDump dump : runs) {
+            dump.terminate();
+        }
+        runs.clear();
+        minHeap = null;
+    }
+
+    private static class KeyedRow<TSource, TKey> {
+        final TKey key;
+        final TSource row;
+
+        KeyedRow(TKey key, TSource row) {
+            this.key = key;
+            this.row = row;
+        }
+    }
+
+    /** a sorted run being merged, either dumped rows or the keyed rows left in memory */
+    private class Run {
+        final int index;
+        final Iterator<?> iterator;
+        final boolean keyed;
+        TKey key;
+        TSource row;
+
+        Run(int index, Iterator<?> iterator, boolean keyed) {
+            this.index = index;
+            this.iterator = iterator;
+            this.keyed = keyed;
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean advance() {
+            if (!iterator.hasNext())
+                return false;
+
+            if (keyed) {
+                KeyedRow<TSource, TKey> keyedRow = (KeyedRow<TSource, TKey>) iterator.next();
+                key = keyedRow.key;
+                row = keyedRow.row;
+            } else {
+                row = (TSource) iterator.next();
+                key = keySelector.apply(row);
+            }
+            return true;
+        }
+    }
+}
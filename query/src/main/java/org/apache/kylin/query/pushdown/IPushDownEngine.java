@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.query.pushdown;
+
+import java.sql.SQLException;
+
+/**
+ * Runs the queries that no realization can answer on the source, e.g. hive.
+ *
+ * Implementations must have a no-arg constructor, see KylinConfig.getHivePushDownEngine().
+ */
+public interface IPushDownEngine {
+
+    /**
+     * Starts the query, the rows are streamed by the returned result, which must be closed by the caller.
+     */
+    IPushDownResult query(PushDownRequest request) throws SQLException;
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.query.pushdown;
+
+import java.io.Closeable;
+import java.sql.SQLException;
+
+/**
+ * A streamed result of a push down query.
+ */
+public interface IPushDownResult extends Closeable {
+
+    /**
+     * Reads the next row into the given array, each value typed as the column type of the request.
+     *
+     * @return false if there is no more row
+     */
+    boolean next(Object[] row) throws SQLException;
+
+    @Override
+    void close();
+}
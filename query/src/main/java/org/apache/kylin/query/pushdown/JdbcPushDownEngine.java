@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.query.pushdown;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.kylin.common.util.DBUtils;
+import org.apache.kylin.metadata.tuple.Tuple;
+import org.apache.kylin.storage.exception.ScanOutOfLimitException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pushes queries down through JDBC, e.g. to HiveServer2.
+ *
+ * Rows are fetched fetchSize at a time and read by column position with typed getters, values are converted
+ * to what Calcite expects for the column type (e.g. epoch days for DATE), so no row is converted twice.
+ * The limit is pushed to the driver as max rows; the timeout is both the statement timeout and
+ * a deadline checked while streaming; the estimated size of all returned rows is checked against the budget.
+ */
+public class JdbcPushDownEngine implements IPushDownEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcPushDownEngine.class);
+
+    @Override
+    public IPushDownResult query(PushDownRequest request) throws SQLException {
+        logger.info("Push down " + request);
+
+        Connection conn = null;
+        Statement stmt = null;
+        try {
+            conn = DriverManager.getConnection(request.getUrl(), request.getUser(), request.getPassword());
+            stmt = conn.createStatement();
+            if (request.getFetchSize() > 0) {
+                stmt.setFetchSize(request.getFetchSize());
+            }
+            if (request.getLimit() > 0) {
+                stmt.setMaxRows(request.getLimit());
+            }
+            if (request.getTimeoutSeconds() > 0) {
+                stmt.setQueryTimeout(request.getTimeoutSeconds());
+            }
+            long startTime = System.currentTimeMillis();
+            ResultSet rs = stmt.executeQuery(request.getSql());
+            return new JdbcPushDownResult(request, conn, stmt, rs, startTime);
+        } catch (SQLException e) {
+            DBUtils.closeQuietly(stmt);
+            DBUtils.closeQuietly(conn);
+            throw e;
+        } catch (RuntimeException e) {
+            DBUtils.closeQuietly(stmt);
+            DBUtils.closeQuietly(conn);
+            throw e;
+        }
+    }
+
+    static class JdbcPushDownResult implements IPushDownResult {
+
+        private final PushDownRequest request;
+        private final Connection conn;
+        private final Statement stmt;
+        private final ResultSet rs;
+        private final SqlTypeName[] types;
+        private final long deadline;
+        private long rowCount = 0;
+        private long resultBytes = 0;
+
+        JdbcPushDownResult(PushDownRequest request, Connection conn, Statement stmt, ResultSet rs, long startTime) {
+            this.request = request;
+            this.conn = conn;
+            this.stmt = stmt;
+            this.rs = rs;
+            List<SqlTypeName> columnTypes = request.getColumnTypes();
+            this.types = columnTypes.toArray(new SqlTypeName[columnTypes.size()]);
+            this.deadline = request.getTimeoutSeconds() > 0 ? startTime + request.getTimeoutSeconds() * 1000L : Long.MAX_VALUE;
+        }
+
+        @Override
+        public boolean next(Object[] row) throws SQLException {
+            if (System.currentTimeMillis() > deadline) {
+                throw new SQLTimeoutException("Push down query timeout after " + request.getTimeoutSeconds() + " seconds and " + rowCount + " rows");
+            }
+            if (!rs.next()) {
+                return false;
+            }
+
+            for (int i = 0; i < types.length; i++) {
+                row[i] = readValue(i + 1, types[i]);
+                resultBytes += estimateSize(row[i]);
+            }
+            rowCount++;
+
+            if (request.getMaxResultBytes() > 0 && resultBytes > request.getMaxResultBytes()) {
+                throw new ScanOutOfLimitException("Push down query result exceeds " + request.getMaxResultBytes() + " bytes after " + rowCount + " rows");
+            }
+            return true;
+        }
+
+        private Object readValue(int column, SqlTypeName type) throws SQLException {
+            Object value;
+            switch (type) {
+            case BOOLEAN:
+                value = rs.getBoolean(column);
+                break;
+            case TINYINT:
+                value = rs.getByte(column);
+                break;
+            case SMALLINT:
+                value = rs.getShort(column);
+                break;
+            case INTEGER:
+                value = rs.getInt(column);
+                break;
+            case BIGINT:
+                value = rs.getLong(column);
+                break;
+            case FLOAT:
+            case REAL:
+                value = rs.getFloat(column);
+                break;
+            case DOUBLE:
+                value = rs.getDouble(column);
+                break;
+            case DECIMAL:
+                return rs.getBigDecimal(column);
+            case DATE:
+                return Tuple.convertOptiqCellValue(rs.getString(column), "date");
+            case TIMESTAMP:
+                return Tuple.convertOptiqCellValue(rs.getString(column), "timestamp");
+            default:
+                return rs.getString(column);
+            }
+            return rs.wasNull() ? null : value;
+        }
+
+        private static int estimateSize(Object value) {
+            if (value instanceof String) {
+                return 40 + 2 * ((String) value).length();
+            } else if (value instanceof BigDecimal) {
+                return 64;
+            } else {
+                return 16;
+            }
+        }
+
+        @Override
+        public void close() {
+            DBUtils.closeQuietly(rs);
+            DBUtils.closeQuietly(stmt);
+            DBUtils.closeQuietly(conn);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.query.pushdown;
+
+import java.util.List;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+
+/**
+ * A query to push down, and the limits to run it within.
+ */
+public class PushDownRequest {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final String sql;
+    private final List<SqlTypeName> columnTypes;
+
+    private int limit = 0; // 0 means no limit
+    private int fetchSize = 0; // 0 means the driver default
+    private int timeoutSeconds = 0; // 0 means no timeout
+    private long maxResultBytes = 0; // 0 means no budget
+
+    public PushDownRequest(String url, String user, String password, String sql, List<SqlTypeName> columnTypes) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.sql = sql;
+        this.columnTypes = columnTypes;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return the types of the returned columns, in the order of the select list
+     */
+    public List<SqlTypeName> getColumnTypes() {
+        return columnTypes;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public int getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    public void setTimeoutSeconds(int timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    public long getMaxResultBytes() {
+        return maxResultBytes;
+    }
+
+    public void setMaxResultBytes(long maxResultBytes) {
+        this.maxResultBytes = maxResultBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "PushDownRequest [url=" + url + ", sql=" + sql + ", limit=" + limit + ", fetchSize=" + fetchSize + ", timeoutSeconds=" + timeoutSeconds + ", maxResultBytes=" + maxResultBytes + "]";
+    }
+}
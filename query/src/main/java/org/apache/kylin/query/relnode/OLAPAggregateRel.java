@@ -25,7 +25,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import org.apache.calcite.adapter.enumerable.EnumerableAggregate;
 import org.apache.calcite.adapter.enumerable.EnumerableConvention;
 import org.apache.calcite.adapter.enumerable.EnumerableRel;
 import org.apache.calcite.plan.RelOptCluster;
@@ -409,9 +408,10 @@ public class OLAPAggregateRel extends Aggregate implements OLAPRel {
 
     @Override
     public EnumerableRel implementEnumerable(List<EnumerableRel> inputs) {
+        long spillThreshold = KylinConfig.getInstanceFromEnv().getQuerySpillThresholdMB() * 1024L * 1024L;
         try {
-            return new EnumerableAggregate(getCluster(), getCluster().traitSetOf(EnumerableConvention.INSTANCE), //
-                    sole(inputs), indicator, this.groupSet, this.groupSets, rewriteAggCalls);
+            return new SpillableEnumerableAggregate(getCluster(), getCluster().traitSetOf(EnumerableConvention.INSTANCE), //
+                    sole(inputs), indicator, this.groupSet, this.groupSets, rewriteAggCalls, spillThreshold);
         } catch (InvalidRelException e) {
             throw new IllegalStateException("Can't create EnumerableAggregate!", e);
         }
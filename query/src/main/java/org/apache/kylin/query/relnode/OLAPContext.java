@@ -49,6 +49,7 @@ public class OLAPContext {
 
     public static final String PRM_ACCEPT_PARTIAL_RESULT = "AcceptPartialResult";
     public static final String PRM_USER_AUTHEN_INFO = "UserAuthenInfo";
+    public static final String PRM_SQL = "Sql";
 
     private static final ThreadLocal<Map<String, String>> _localPrarameters = new ThreadLocal<Map<String, String>>();
 
@@ -98,6 +99,9 @@ public class OLAPContext {
             String acceptUserInfo = parameters.get(PRM_USER_AUTHEN_INFO);
             if (null != acceptUserInfo)
                 this.olapAuthen.parseUserInfo(acceptUserInfo);
+            String sql = parameters.get(PRM_SQL);
+            if (sql != null)
+                this.sql = sql;
         }
     }
 
@@ -133,6 +137,7 @@ public class OLAPContext {
 
     // hive query
     public String sql = "";
+    public RelDataType hiveRowType = null;
 
     public OLAPAuthentication olapAuthen = new OLAPAuthentication();
 
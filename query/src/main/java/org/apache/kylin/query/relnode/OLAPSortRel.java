@@ -22,7 +22,6 @@ import java.util.List;
 
 import org.apache.calcite.adapter.enumerable.EnumerableConvention;
 import org.apache.calcite.adapter.enumerable.EnumerableRel;
-import org.apache.calcite.adapter.enumerable.EnumerableSort;
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelOptCost;
 import org.apache.calcite.plan.RelOptPlanner;
@@ -34,6 +33,7 @@ import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.Sort;
 import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rex.RexNode;
+import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.metadata.model.MeasureDesc;
 import org.apache.kylin.metadata.model.TblColRef;
 import org.apache.kylin.metadata.realization.SQLDigest;
@@ -69,6 +69,11 @@ public class OLAPSortRel extends Sort implements OLAPRel {
 
         this.context = implementor.getContext();
         this.columnRowType = buildColumnRowType();
+
+        // a limit below the sort takes rows before they are ordered, so storage cannot keep the top rows instead
+        if (this.context.limit != 0) {
+            this.context.storageContext.markSortNotPushable();
+        }
     }
 
     private ColumnRowType buildColumnRowType() {
@@ -94,6 +99,8 @@ public class OLAPSortRel extends Sort implements OLAPRel {
             MeasureDesc measure = findMeasure(orderCol);
             if (measure != null) {
                 this.context.addSort(measure, order);
+            } else {
+                this.context.storageContext.markSortNotPushable();
             }
             this.context.storageContext.markSort();
         }
@@ -121,8 +128,9 @@ public class OLAPSortRel extends Sort implements OLAPRel {
 
     @Override
     public EnumerableRel implementEnumerable(List<EnumerableRel> inputs) {
-        return new EnumerableSort(getCluster(), getCluster().traitSetOf(EnumerableConvention.INSTANCE).replace(collation), //
-                sole(inputs), collation, offset, fetch);
+        long spillThreshold = KylinConfig.getInstanceFromEnv().getQuerySpillThresholdMB() * 1024L * 1024L;
+        return new SpillableEnumerableSort(getCluster(), getCluster().traitSetOf(EnumerableConvention.INSTANCE).replace(collation), //
+                sole(inputs), collation, offset, fetch, spillThreshold);
     }
 
     @Override
@@ -147,10 +147,11 @@ public class OLAPToEnumerableConverter extends ConverterImpl implements Enumerab
         RelDataType hiveRowType = getRowType();
 
         context.setReturnTupleInfo(hiveRowType, null);
+        context.hiveRowType = hiveRowType;
         PhysType physType = PhysTypeImpl.of(enumImplementor.getTypeFactory(), hiveRowType, pref.preferArray());
 
         RelOptTable factTable = context.firstTableScan.getTable();
-        Result result = enumImplementor.result(physType, Blocks.toBlock(Expressions.call(factTable.getExpression(OLAPTable.class), "executeHiveQuery", enumImplementor.getRootExpression())));
+        Result result = enumImplementor.result(physType, Blocks.toBlock(Expressions.call(factTable.getExpression(OLAPTable.class), "executeHiveQuery", enumImplementor.getRootExpression(), Expressions.constant(context.id))));
         return result;
     }
 
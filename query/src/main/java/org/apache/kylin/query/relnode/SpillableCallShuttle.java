@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.query.relnode;
+
+import java.lang.reflect.Method;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.function.EqualityComparer;
+import org.apache.calcite.linq4j.function.Function0;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Function2;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.MethodCallExpression;
+import org.apache.calcite.linq4j.tree.Shuttle;
+import org.apache.calcite.linq4j.tree.Types;
+import org.apache.kylin.query.enumerator.SpillableEnumerables;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Rewrites the Enumerable.groupBy() or Enumerable.orderBy() calls in the code generated by Calcite
+ * into the same calls of SpillableEnumerables, so that the generated key selectors, accumulators
+ * and comparators are reused as they are.
+ */
+class SpillableCallShuttle extends Shuttle {
+
+    private static final Method GROUP_BY = Types.lookupMethod(SpillableEnumerables.class, "groupBy", //
+            Enumerable.class, Function1.class, Function0.class, Function2.class, Function2.class, long.class);
+    private static final Method GROUP_BY_COMPARER = Types.lookupMethod(SpillableEnumerables.class, "groupBy", //
+            Enumerable.class, Function1.class, Function0.class, Function2.class, Function2.class, EqualityComparer.class, long.class);
+    private static final Method ORDER_BY = Types.lookupMethod(SpillableEnumerables.class, "orderBy", //
+            Enumerable.class, Function1.class, long.class);
+    private static final Method ORDER_BY_COMPARATOR = Types.lookupMethod(SpillableEnumerables.class, "orderBy", //
+            Enumerable.class, Function1.class, Comparator.class, long.class);
+
+    private final String methodName;
+    private final long spillThreshold;
+
+    private SpillableCallShuttle(String methodName, long spillThreshold) {
+        this.methodName = methodName;
+        this.spillThreshold = spillThreshold;
+    }
+
+    static SpillableCallShuttle groupBy(long spillThreshold) {
+        return new SpillableCallShuttle("groupBy", spillThreshold);
+    }
+
+    static SpillableCallShuttle orderBy(long spillThreshold) {
+        return new SpillableCallShuttle("orderBy", spillThreshold);
+    }
+
+    @Override
+    public Expression visit(MethodCallExpression methodCallExpression, Expression targetExpression, List<Expression> expressions) {
+        Method method = methodCallExpression.method;
+        if (targetExpression != null && method.getName().equals(methodName) && method.getDeclaringClass().isAssignableFrom(Enumerable.class)) {
+            Method spillable = findSpillableMethod(expressions.size());
+            if (spillable != null) {
+                List<Expression> arguments = Lists.newArrayListWithCapacity(expressions.size() + 2);
+                arguments.add(targetExpression);
+                arguments.addAll(expressions);
+                arguments.add(Expressions.constant(spillThreshold));
+                return Expressions.call(spillable, arguments);
+            }
+        }
+        return super.visit(methodCallExpression, targetExpression, expressions);
+    }
+
+    private Method findSpillableMethod(int argumentCount) {
+        if (methodName.equals("groupBy")) {
+            return argumentCount == 4 ? GROUP_BY : argumentCount == 5 ? GROUP_BY_COMPARER : null;
+        } else {
+            return argumentCount == 1 ? ORDER_BY : argumentCount == 2 ? ORDER_BY_COMPARATOR : null;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.query.relnode;
+
+import java.util.List;
+
+import org.apache.calcite.adapter.enumerable.EnumerableAggregate;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.linq4j.tree.BlockStatement;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.InvalidRelException;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.util.ImmutableBitSet;
+
+/**
+ * An EnumerableAggregate whose hash aggregation spills to disk beyond the spill threshold, in bytes,
+ * instead of holding all groups in memory.
+ */
+public class SpillableEnumerableAggregate extends EnumerableAggregate {
+
+    private final long spillThreshold;
+
+    public SpillableEnumerableAggregate(RelOptCluster cluster, RelTraitSet traitSet, RelNode child, boolean indicator, ImmutableBitSet groupSet, List<ImmutableBitSet> groupSets, List<AggregateCall> aggCalls, long spillThreshold) throws InvalidRelException {
+        super(cluster, traitSet, child, indicator, groupSet, groupSets, aggCalls);
+        this.spillThreshold = spillThreshold;
+    }
+
+    @Override
+    public EnumerableAggregate copy(RelTraitSet traitSet, RelNode input, boolean indicator, ImmutableBitSet groupSet, List<ImmutableBitSet> groupSets, List<AggregateCall> aggCalls) {
+        try {
+            return new SpillableEnumerableAggregate(getCluster(), traitSet, input, indicator, groupSet, groupSets, aggCalls, spillThreshold);
+        } catch (InvalidRelException e) {
+            throw new IllegalStateException("Can't create SpillableEnumerableAggregate!", e);
+        }
+    }
+
+    @Override
+    public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+        Result result = super.implement(implementor, pref);
+        if (spillThreshold <= 0)
+            return result;
+
+        BlockStatement block = (BlockStatement) result.block.accept(SpillableCallShuttle.groupBy(spillThreshold));
+        return implementor.result(result.physType, block);
+    }
+}
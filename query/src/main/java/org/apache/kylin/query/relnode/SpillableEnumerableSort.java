@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.query.relnode;
+
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.EnumerableSort;
+import org.apache.calcite.linq4j.tree.BlockStatement;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelCollation;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rex.RexNode;
+
+/**
+ * An EnumerableSort that merges sorted runs spilled to disk beyond the spill threshold, in bytes,
+ * instead of sorting all rows in memory.
+ */
+public class SpillableEnumerableSort extends EnumerableSort {
+
+    private final long spillThreshold;
+
+    public SpillableEnumerableSort(RelOptCluster cluster, RelTraitSet traitSet, RelNode input, RelCollation collation, RexNode offset, RexNode fetch, long spillThreshold) {
+        super(cluster, traitSet, input, collation, offset, fetch);
+        this.spillThreshold = spillThreshold;
+    }
+
+    @Override
+    public EnumerableSort copy(RelTraitSet traitSet, RelNode newInput, RelCollation newCollation, RexNode offset, RexNode fetch) {
+        return new SpillableEnumerableSort(getCluster(), traitSet, newInput, newCollation, offset, fetch, spillThreshold);
+    }
+
+    @Override
+    public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+        Result result = super.implement(implementor, pref);
+        if (spillThreshold <= 0)
+            return result;
+
+        BlockStatement block = (BlockStatement) result.block.accept(SpillableCallShuttle.orderBy(spillThreshold));
+        return implementor.result(result.physType, block);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.query.enumerator;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HiveEnumeratorTest {
+
+    @Test
+    public void testGetOutermostLimit() {
+        assertEquals(10, HiveEnumerator.getOutermostLimit("select * from test_kylin_fact limit 10"));
+        assertEquals(10, HiveEnumerator.getOutermostLimit("select lstg_format_name, sum(price) from test_kylin_fact group by lstg_format_name order by 2 desc limit 10"));
+        assertEquals(0, HiveEnumerator.getOutermostLimit("select * from test_kylin_fact"));
+
+        // the limit of a sub-query does not bound the rows of the statement
+        assertEquals(0, HiveEnumerator.getOutermostLimit("select * from (select cal_dt from test_kylin_fact limit 10) a join edw.test_cal_dt b on a.cal_dt = b.cal_dt"));
+        assertEquals(5, HiveEnumerator.getOutermostLimit("select * from (select cal_dt from test_kylin_fact limit 10) a limit 5"));
+
+        // not parsed, so not limited
+        assertEquals(0, HiveEnumerator.getOutermostLimit("select * from test_kylin_fact limit"));
+    }
+}
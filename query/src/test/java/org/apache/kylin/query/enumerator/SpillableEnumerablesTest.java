@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.query.enumerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.function.Function0;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Function2;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class SpillableEnumerablesTest {
+
+    private static final Function1<Object[], String> KEY = new Function1<Object[], String>() {
+        @Override
+        public String apply(Object[] row) {
+            return (String) row[0];
+        }
+    };
+
+    private static final Function0<long[]> INIT = new Function0<long[]>() {
+        @Override
+        public long[] apply() {
+            return new long[1];
+        }
+    };
+
+    private static final Function2<long[], Object[], long[]> ADD = new Function2<long[], Object[], long[]>() {
+        @Override
+        public long[] apply(long[] acc, Object[] row) {
+            acc[0] += (Long) row[1];
+            return acc;
+        }
+    };
+
+    private static final Function2<String, long[], Object[]> RESULT = new Function2<String, long[], Object[]>() {
+        @Override
+        public Object[] apply(String key, long[] acc) {
+            return new Object[] { key, acc[0] };
+        }
+    };
+
+    private List<Object[]> randomRows(int count, int keys) {
+        Random rand = new Random(1);
+        List<Object[]> rows = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            rows.add(new Object[] { "key" + rand.nextInt(keys), (long) i });
+        }
+        return rows;
+    }
+
+    private void checkGroupBy(List<Object[]> rows, long spillThreshold) {
+        Map<String, Long> expected = Maps.newHashMap();
+        for (Object[] row : rows) {
+            Long sum = expected.get(row[0]);
+            expected.put((String) row[0], (sum == null ? 0 : sum) + (Long) row[1]);
+        }
+
+        Enumerable<Object[]> result = SpillableEnumerables.groupBy(Linq4j.asEnumerable(rows), KEY, INIT, ADD, RESULT, spillThreshold);
+        Map<String, Long> actual = Maps.newHashMap();
+        for (Object[] row : result) {
+            Long old = actual.put((String) row[0], (Long) row[1]);
+            assertEquals("group returned twice: " + row[0], null, old);
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testGroupBy() {
+        List<Object[]> rows = randomRows(10000, 500);
+        checkGroupBy(rows, 0);
+        checkGroupBy(rows, 1000);
+        checkGroupBy(rows, 1);
+    }
+
+    @Test
+    public void testGroupByUnspillable() {
+        List<Object[]> rows = randomRows(1000, 100);
+        // the row in the middle cannot be spilled, the rows already spilled are brought back
+        Object[] row = rows.get(500);
+        rows.set(500, new Object[] { row[0], row[1], new Object() });
+        checkGroupBy(rows, 1);
+    }
+
+    @Test
+    public void testOrderBy() {
+        List<Object[]> rows = randomRows(10000, 500);
+        Comparator<String> comparator = new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return o1.compareTo(o2);
+            }
+        };
+
+        for (long spillThreshold : new long[] { 0, 1000, 1 }) {
+            List<Object[]> sorted = Lists.newArrayList(SpillableEnumerables.orderBy(Linq4j.asEnumerable(rows), KEY, comparator, spillThreshold));
+            assertEquals(rows.size(), sorted.size());
+            for (int i = 1; i < sorted.size(); i++) {
+                int c = ((String) sorted.get(i - 1)[0]).compareTo((String) sorted.get(i)[0]);
+                assertTrue(c <= 0);
+                // stable, the values are in input order
+                if (c == 0) {
+                    assertTrue((Long) sorted.get(i - 1)[1] < (Long) sorted.get(i)[1]);
+                }
+            }
+        }
+    }
+}
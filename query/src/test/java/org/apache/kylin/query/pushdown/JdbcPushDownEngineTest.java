@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.query.pushdown;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.List;
+
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.kylin.storage.exception.ScanOutOfLimitException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class JdbcPushDownEngineTest {
+
+    private static final String URL = "jdbc:h2:mem:pushdown_test";
+
+    private Connection keepAlive;
+
+    @Before
+    public void setUp() throws Exception {
+        keepAlive = DriverManager.getConnection(URL, "sa", "");
+        Statement stmt = keepAlive.createStatement();
+        stmt.execute("CREATE TABLE T (ID BIGINT, NAME VARCHAR(64), PRICE DECIMAL(10, 2), DT DATE)");
+        for (int i = 0; i < 100; i++) {
+            stmt.execute("INSERT INTO T VALUES (" + i + ", 'name" + i + "', " + i + ".5, '2016-01-01')");
+        }
+        stmt.execute("INSERT INTO T VALUES (100, NULL, NULL, NULL)");
+        stmt.close();
+    }
+
+    @After
+    public void after() throws Exception {
+        keepAlive.createStatement().execute("DROP TABLE T");
+        keepAlive.close();
+    }
+
+    private PushDownRequest newRequest(String sql) {
+        List<SqlTypeName> types = Lists.newArrayList(SqlTypeName.INTEGER, SqlTypeName.VARCHAR, SqlTypeName.DECIMAL, SqlTypeName.DATE);
+        return new PushDownRequest(URL, "sa", "", sql, types);
+    }
+
+    @Test
+    public void testTypedRows() throws Exception {
+        IPushDownResult result = new JdbcPushDownEngine().query(newRequest("SELECT ID, NAME, PRICE, DT FROM T ORDER BY ID"));
+        Object[] row = new Object[4];
+        int count = 0;
+        while (result.next(row)) {
+            if (count == 1) {
+                assertEquals(Integer.valueOf(1), row[0]);
+                assertEquals("name1", row[1]);
+                assertEquals(new BigDecimal("1.50"), row[2]);
+                assertEquals(Integer.valueOf(16801), row[3]); // 2016-01-01 in epoch days
+            }
+            count++;
+        }
+        result.close();
+        assertEquals(101, count);
+
+        // nulls of the last row
+        assertEquals(Integer.valueOf(100), row[0]);
+        assertNull(row[1]);
+        assertNull(row[2]);
+        assertNull(row[3]);
+    }
+
+    @Test
+    public void testLimit() throws Exception {
+        PushDownRequest request = newRequest("SELECT ID, NAME, PRICE, DT FROM T");
+        request.setLimit(10);
+        request.setFetchSize(3);
+        IPushDownResult result = new JdbcPushDownEngine().query(request);
+        Object[] row = new Object[4];
+        int count = 0;
+        while (result.next(row)) {
+            count++;
+        }
+        result.close();
+        assertEquals(10, count);
+    }
+
+    @Test
+    public void testMaxResultBytes() throws Exception {
+        PushDownRequest request = newRequest("SELECT ID, NAME, PRICE, DT FROM T");
+        request.setMaxResultBytes(1000);
+        IPushDownResult result = new JdbcPushDownEngine().query(request);
+        Object[] row = new Object[4];
+        int count = 0;
+        boolean exceeded = false;
+        try {
+            while (result.next(row)) {
+                count++;
+            }
+        } catch (ScanOutOfLimitException e) {
+            exceeded = true;
+        } finally {
+            result.close();
+        }
+        assertTrue(exceeded);
+        assertTrue(count > 0);
+        assertFalse(count >= 100);
+    }
+}
@@ -22,12 +22,14 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.QueryContext;
 import org.apache.kylin.common.debug.BackdoorToggles;
 import org.apache.kylin.rest.constant.Constant;
 import org.apache.kylin.rest.exception.InternalErrorException;
@@ -39,7 +41,9 @@ import org.apache.kylin.rest.request.MetaRequest;
 import org.apache.kylin.rest.request.PrepareSqlRequest;
 import org.apache.kylin.rest.request.SQLRequest;
 import org.apache.kylin.rest.request.SaveSqlRequest;
+import org.apache.kylin.rest.response.AsyncQueryResponse;
 import org.apache.kylin.rest.response.SQLResponse;
+import org.apache.kylin.rest.service.AsyncQueryService;
 import org.apache.kylin.rest.service.QueryService;
 import org.apache.kylin.rest.util.QueryUtil;
 import org.apache.kylin.storage.exception.ScanOutOfLimitException;
@@ -53,6 +57,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.supercsv.io.CsvListWriter;
 import org.supercsv.io.ICsvListWriter;
@@ -80,6 +85,9 @@ public class QueryController extends BasicController {
     @Autowired
     private QueryService queryService;
 
+    @Autowired
+    private AsyncQueryService asyncQueryService;
+
     @Autowired
     private CacheManager cacheManager;
 
@@ -101,6 +109,43 @@ public class QueryController extends BasicController {
         return doQueryWithCache(sqlRequest);
     }
 
+    /**
+     * Submits a query to run off the servlet thread; poll, fetch or cancel it by the returned query id.
+     */
+    @RequestMapping(value = "/query/async", method = RequestMethod.POST)
+    @ResponseBody
+    public AsyncQueryResponse submitAsyncQuery(@RequestBody final SQLRequest sqlRequest, @RequestParam(value = "timeoutSeconds", required = false, defaultValue = "0") int timeoutSeconds) {
+        return asyncQueryService.submit(sqlRequest, timeoutSeconds, new Callable<SQLResponse>() {
+            @Override
+            public SQLResponse call() throws Exception {
+                return doQueryWithCache(sqlRequest);
+            }
+        });
+    }
+
+    @RequestMapping(value = "/query/async/{queryId}", method = RequestMethod.GET)
+    @ResponseBody
+    public AsyncQueryResponse getAsyncQuery(@PathVariable String queryId, @RequestParam(value = "waitMillis", required = false, defaultValue = "0") long waitMillis) {
+        try {
+            // long polling, but do not hold the servlet thread for long
+            return asyncQueryService.getStatus(queryId, Math.min(waitMillis, 60000));
+        } catch (InterruptedException e) {
+            throw new InternalErrorException(e);
+        }
+    }
+
+    @RequestMapping(value = "/query/async/{queryId}/format/{format}", method = RequestMethod.GET)
+    @ResponseBody
+    public void downloadAsyncQueryResult(@PathVariable String queryId, @PathVariable String format, HttpServletResponse response) {
+        writeResult(asyncQueryService.getResult(queryId), format, response);
+    }
+
+    @RequestMapping(value = "/query/async/{queryId}", method = RequestMethod.DELETE)
+    @ResponseBody
+    public AsyncQueryResponse cancelAsyncQuery(@PathVariable String queryId) {
+        return asyncQueryService.cancel(queryId);
+    }
+
     @RequestMapping(value = "/saved_queries", method = RequestMethod.POST)
     @ResponseBody
     public void saveQuery(@RequestBody SaveSqlRequest sqlRequest) throws IOException {
@@ -128,6 +173,10 @@ public class QueryController extends BasicController {
     @ResponseBody
     public void downloadQueryResult(@PathVariable String format, SQLRequest sqlRequest, HttpServletResponse response) {
         SQLResponse result = doQueryWithCache(sqlRequest);
+        writeResult(result, format, response);
+    }
+
+    private void writeResult(SQLResponse result, String format, HttpServletResponse response) {
         response.setContentType("text/" + format + ";charset=utf-8");
         response.setHeader("Content-Disposition", "attachment; filename=\"result." + format + "\"");
         ICsvListWriter csvWriter = null;
@@ -235,6 +284,7 @@ public class QueryController extends BasicController {
 
         } finally {
             BackdoorToggles.cleanToggles();
+            QueryContext.reset();
         }
     }
 
@@ -268,6 +318,10 @@ public class QueryController extends BasicController {
         this.queryService = queryService;
     }
 
+    public void setAsyncQueryService(AsyncQueryService asyncQueryService) {
+        this.asyncQueryService = asyncQueryService;
+    }
+
     public void setCacheManager(CacheManager cacheManager) {
         this.cacheManager = cacheManager;
     }
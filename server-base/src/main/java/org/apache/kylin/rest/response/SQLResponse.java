@@ -21,6 +21,7 @@ package org.apache.kylin.rest.response;
 import java.io.Serializable;
 import java.util.List;
 
+import org.apache.kylin.common.QueryResourceUsage;
 import org.apache.kylin.rest.model.SelectedColumnMeta;
 
 public class SQLResponse implements Serializable {
@@ -59,6 +60,15 @@ public class SQLResponse implements Serializable {
 
     protected boolean storageCacheUsed = false;
 
+    // resources consumed to compute the result
+    protected QueryResourceUsage resourceUsage;
+
+    // less than 100 if it's an approximate query on sampled data
+    protected int samplingPercentage = 100;
+
+    // approximate, sampled blocks are taken as independent rows
+    protected double samplingApproxRelativeError = 0;
+
     public SQLResponse() {
     }
 
@@ -150,6 +160,14 @@ public class SQLResponse implements Serializable {
         this.totalScanCount = totalScanCount;
     }
 
+    public QueryResourceUsage getResourceUsage() {
+        return resourceUsage;
+    }
+
+    public void setResourceUsage(QueryResourceUsage resourceUsage) {
+        this.resourceUsage = resourceUsage;
+    }
+
     public boolean isHitExceptionCache() {
         return hitExceptionCache;
     }
@@ -165,4 +183,20 @@ public class SQLResponse implements Serializable {
     public void setStorageCacheUsed(boolean storageCacheUsed) {
         this.storageCacheUsed = storageCacheUsed;
     }
+
+    public int getSamplingPercentage() {
+        return samplingPercentage;
+    }
+
+    public void setSamplingPercentage(int samplingPercentage) {
+        this.samplingPercentage = samplingPercentage;
+    }
+
+    public double getSamplingApproxRelativeError() {
+        return samplingApproxRelativeError;
+    }
+
+    public void setSamplingApproxRelativeError(double samplingApproxRelativeError) {
+        this.samplingApproxRelativeError = samplingApproxRelativeError;
+    }
 }
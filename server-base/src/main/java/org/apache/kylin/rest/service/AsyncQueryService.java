@@ -0,0 +1,333 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.rest.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.QueryContext;
+import org.apache.kylin.common.util.DaemonThreadFactory;
+import org.apache.kylin.metadata.project.ProjectInstance;
+import org.apache.kylin.rest.constant.Constant;
+import org.apache.kylin.rest.exception.BadRequestException;
+import org.apache.kylin.rest.exception.ForbiddenException;
+import org.apache.kylin.rest.exception.NotFoundException;
+import org.apache.kylin.rest.request.SQLRequest;
+import org.apache.kylin.rest.response.AsyncQueryResponse;
+import org.apache.kylin.rest.response.AsyncQueryResponse.Status;
+import org.apache.kylin.rest.response.SQLResponse;
+import org.apache.kylin.rest.util.QueryUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * Runs queries off the servlet threads, on a size-limited executor with a limit of queries per project,
+ * and lets their submitter poll, fetch or cancel them.
+ *
+ * Cancelling a query cancels its {@link QueryContext}, which aborts the endpoint calls in flight, and
+ * interrupts the thread running it.
+ *
+ * A query over its scan budgets stays queued, off the worker threads, until {@link QueryAdmissionController}
+ * can admit it, for up to kylin.query.admission.wait.seconds after the submission.
+ */
+@Component("asyncQueryService")
+public class AsyncQueryService extends BasicService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncQueryService.class);
+
+    private final ThreadPoolExecutor executor;
+    private final int projectConcurrency;
+    private final ConcurrentMap<String, Semaphore> projectPermits = new ConcurrentHashMap<String, Semaphore>();
+    private final Cache<String, AsyncQuery> queries;
+    private final long admissionWaitMillis;
+    private final ScheduledExecutorService admissionScheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory());
+    private QueryAdmissionController admissionController;
+
+    public AsyncQueryService() {
+        this(KylinConfig.getInstanceFromEnv());
+    }
+
+    AsyncQueryService(KylinConfig config) {
+        int threads = config.getQueryAsyncThreads();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(Math.max(1, config.getQueryAsyncQueueSize())), new DaemonThreadFactory());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.projectConcurrency = config.getQueryAsyncProjectConcurrency();
+        this.admissionWaitMillis = config.getQueryAdmissionWaitSeconds() * 1000L;
+
+        // a query not polled for the retention time is dropped, and cancelled if still running
+        this.queries = CacheBuilder.newBuilder().expireAfterAccess(config.getQueryAsyncResultRetentionSeconds(), TimeUnit.SECONDS).removalListener(new RemovalListener<String, AsyncQuery>() {
+            @Override
+            public void onRemoval(RemovalNotification<String, AsyncQuery> notification) {
+                AsyncQuery query = notification.getValue();
+                if (!query.getStatus().isFinished()) {
+                    logger.info("Cancelling abandoned async query " + query.context.getQueryId());
+                    query.cancel();
+                }
+            }
+        }).build();
+    }
+
+    @Autowired
+    public void setQueryService(QueryService queryService) {
+        setAdmissionController(queryService.getAdmissionController());
+    }
+
+    void setAdmissionController(QueryAdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    /**
+     * @param timeoutSeconds the deadline of the query, no deadline if not positive
+     * @param query runs the request on a worker thread, with the security context of the submitter
+     */
+    public AsyncQueryResponse submit(SQLRequest sqlRequest, int timeoutSeconds, Callable<SQLResponse> query) {
+        String project = ProjectInstance.getNormalizedProjectName(sqlRequest.getProject());
+        Semaphore permits = projectPermits.get(project);
+        if (permits == null) {
+            projectPermits.putIfAbsent(project, new Semaphore(projectConcurrency));
+            permits = projectPermits.get(project);
+        }
+        if (!permits.tryAcquire()) {
+            throw new BadRequestException("Project " + project + " already has " + projectConcurrency + " async queries queued or running, try later.");
+        }
+
+        long deadline = timeoutSeconds > 0 ? System.currentTimeMillis() + timeoutSeconds * 1000L : Long.MAX_VALUE;
+        AsyncQuery asyncQuery = new AsyncQuery(project, sqlRequest.getSql(), new QueryContext(deadline), SecurityContextHolder.getContext(), permits);
+        queries.put(asyncQuery.context.getQueryId(), asyncQuery);
+        try {
+            asyncQuery.future = executor.submit(new AdmissionGate(asyncQuery, asyncQuery.newTask(query)));
+        } catch (RejectedExecutionException e) {
+            asyncQuery.finish(Status.FAILED, null, "Too many async queries");
+            queries.invalidate(asyncQuery.context.getQueryId());
+            throw new BadRequestException("Too many async queries queued, try later.");
+        }
+
+        logger.info("Submitted async query " + asyncQuery.context.getQueryId() + " of project " + project);
+        return asyncQuery.toResponse();
+    }
+
+    /**
+     * @param waitMillis how long to wait for the query to finish, at most
+     */
+    public AsyncQueryResponse getStatus(String queryId, long waitMillis) throws InterruptedException {
+        AsyncQuery query = getQuery(queryId);
+        if (waitMillis > 0) {
+            query.done.await(waitMillis, TimeUnit.MILLISECONDS);
+        }
+        return query.toResponse();
+    }
+
+    public SQLResponse getResult(String queryId) {
+        AsyncQuery query = getQuery(queryId);
+        if (query.getStatus() != Status.SUCCEEDED) {
+            throw new BadRequestException("Async query " + queryId + " is " + query.getStatus() + ", no result to fetch.");
+        }
+        return query.result;
+    }
+
+    public AsyncQueryResponse cancel(String queryId) {
+        AsyncQuery query = getQuery(queryId);
+        query.cancel();
+        return query.toResponse();
+    }
+
+    private AsyncQuery getQuery(String queryId) {
+        AsyncQuery query = queries.getIfPresent(queryId);
+        if (query == null) {
+            throw new NotFoundException("Async query " + queryId + " is not found, or its result has expired.");
+        }
+
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (!auth.getName().equals(query.user) && !isAdmin(auth)) {
+            throw new ForbiddenException("Async query " + queryId + " is not submitted by " + auth.getName());
+        }
+        return query;
+    }
+
+    private boolean isAdmin(Authentication auth) {
+        for (GrantedAuthority authority : auth.getAuthorities()) {
+            if (Constant.ROLE_ADMIN.equals(authority.getAuthority()))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Runs the query if the scan budgets can take it, otherwise schedules itself to come back to the executor
+     * once they have refilled. Past the admission wait the query runs anyway, and is rejected by the admission.
+     */
+    private class AdmissionGate implements Runnable {
+        final AsyncQuery query;
+        final Runnable task;
+
+        AdmissionGate(AsyncQuery query, Runnable task) {
+            this.query = query;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long wait = admissionController == null || query.getStatus() != Status.QUEUED ? 0 : admissionController.waitMillis(query.project, query.user, query.sql);
+            if (wait > 0 && System.currentTimeMillis() + wait <= query.submitTime + admissionWaitMillis) {
+                logger.debug("Async query " + query.context.getQueryId() + " waits " + wait + " ms for the scan budget");
+                query.future = admissionScheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        resubmit();
+                    }
+                }, wait, TimeUnit.MILLISECONDS);
+                return;
+            }
+            task.run();
+        }
+
+        private void resubmit() {
+            try {
+                query.future = executor.submit(this);
+            } catch (RejectedExecutionException e) {
+                query.finish(Status.FAILED, null, "Too many async queries");
+            }
+        }
+    }
+
+    private static class AsyncQuery {
+        final String project;
+        final String sql;
+        final String user;
+        final QueryContext context;
+        final SecurityContext securityContext;
+        final Semaphore permits;
+        final CountDownLatch done = new CountDownLatch(1);
+        final long submitTime = System.currentTimeMillis();
+
+        volatile Future<?> future;
+        volatile long startTime;
+        volatile long endTime;
+        private Status status = Status.QUEUED;
+        volatile SQLResponse result;
+        volatile String exceptionMessage;
+
+        AsyncQuery(String project, String sql, QueryContext context, SecurityContext securityContext, Semaphore permits) {
+            this.project = project;
+            this.sql = sql;
+            this.user = securityContext.getAuthentication().getName();
+            this.context = context;
+            this.securityContext = securityContext;
+            this.permits = permits;
+        }
+
+        Runnable newTask(final Callable<SQLResponse> query) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    if (!start())
+                        return;
+
+                    SecurityContextHolder.setContext(securityContext);
+                    QueryContext.set(context);
+                    try {
+                        SQLResponse response = query.call();
+                        finish(Status.SUCCEEDED, response, null);
+                    } catch (Throwable e) {
+                        if (context.isCancelled()) {
+                            finish(Status.CANCELLED, null, null);
+                        } else {
+                            logger.error("Async query " + context.getQueryId() + " failed", e);
+                            finish(Status.FAILED, null, QueryUtil.makeErrorMsgUserFriendly(e));
+                        }
+                    } finally {
+                        QueryContext.reset();
+                        SecurityContextHolder.clearContext();
+                    }
+                }
+            };
+        }
+
+        synchronized Status getStatus() {
+            return status;
+        }
+
+        private synchronized boolean start() {
+            if (status != Status.QUEUED)
+                return false;
+            status = Status.RUNNING;
+            startTime = System.currentTimeMillis();
+            return true;
+        }
+
+        synchronized void finish(Status finalStatus, SQLResponse response, String message) {
+            if (status.isFinished())
+                return;
+            status = finalStatus;
+            result = response;
+            exceptionMessage = message;
+            endTime = System.currentTimeMillis();
+            permits.release();
+            done.countDown();
+        }
+
+        void cancel() {
+            context.cancel();
+            if (future != null) {
+                future.cancel(true);
+            }
+            // a queued query never starts; a running one may finish before seeing the cancel
+            synchronized (this) {
+                if (status == Status.QUEUED)
+                    finish(Status.CANCELLED, null, null);
+            }
+        }
+
+        synchronized AsyncQueryResponse toResponse() {
+            AsyncQueryResponse response = new AsyncQueryResponse();
+            response.setQueryId(context.getQueryId());
+            response.setProject(project);
+            response.setSql(sql);
+            response.setStatus(status);
+            response.setSubmitTime(submitTime);
+            response.setStartTime(startTime);
+            response.setEndTime(endTime);
+            response.setExceptionMessage(exceptionMessage);
+            response.setResult(result);
+            return response;
+        }
+    }
+}
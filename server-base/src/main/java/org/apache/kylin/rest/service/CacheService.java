@@ -54,6 +54,8 @@ public class CacheService extends BasicService {
 
     private ConcurrentMap<String, DataSource> olapDataSources = new ConcurrentHashMap<String, DataSource>();
 
+    private QueryPlanCache queryPlanCache = createQueryPlanCache();
+
     @Autowired
     private CubeService cubeService;
 
@@ -64,23 +66,29 @@ public class CacheService extends BasicService {
         @Override
         public void onClearAll(Broadcaster broadcaster) throws IOException {
             removeAllOLAPDataSources();
+            cleanAllQueryPlans();
             cleanAllDataCache();
         }
 
         @Override
         public void onProjectSchemaChange(Broadcaster broadcaster, String project) throws IOException {
             removeOLAPDataSource(project);
+            cleanQueryPlans(project);
             cleanDataCache(project);
         }
 
         @Override
         public void onProjectDataChange(Broadcaster broadcaster, String project) throws IOException {
             removeOLAPDataSource(project); // data availability (cube enabled/disabled) affects exposed schema to SQL
+            cleanQueryPlans(project);
             cleanDataCache(project);
         }
 
         @Override
         public void onEntityChange(Broadcaster broadcaster, String entity, Event event, String cacheKey) throws IOException {
+            // the realization chosen by a cached plan depends on the cubes
+            cleanAllQueryPlans();
+
             if ("cube".equals(entity) && event == Event.UPDATE) {
                 final String cubeName = cacheKey;
                 new Thread() { // do not block the event broadcast thread
@@ -135,6 +143,32 @@ public class CacheService extends BasicService {
         }
     }
 
+    private static QueryPlanCache createQueryPlanCache() {
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        return config.isQueryPlanCacheEnabled() ? new QueryPlanCache(config.getQueryPlanCacheSize()) : null;
+    }
+
+    /**
+     * @return the cache of query plans, or null if disabled
+     */
+    public QueryPlanCache getQueryPlanCache() {
+        return queryPlanCache;
+    }
+
+    protected void cleanQueryPlans(String project) {
+        if (queryPlanCache != null) {
+            logger.info("cleaning query plans for project " + project);
+            queryPlanCache.invalidate(project);
+        }
+    }
+
+    protected void cleanAllQueryPlans() {
+        if (queryPlanCache != null) {
+            logger.info("cleaning all query plans");
+            queryPlanCache.invalidateAll();
+        }
+    }
+
     private void removeOLAPDataSource(String project) {
         logger.info("removeOLAPDataSource is called for project " + project);
         if (StringUtils.isEmpty(project))
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.rest.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.metadata.project.ProjectInstance;
+import org.apache.kylin.rest.exception.BadRequestException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Admits queries against per-project and per-user budgets of scanned rows per minute.
+ *
+ * The cost of a query is estimated by the rows it scanned the last time the same SQL ran; a query never
+ * seen before is estimated as free, but still needs the budgets not overspent. The estimate is reserved
+ * on admission and corrected by the actual scanned rows when the query ends. Admission never blocks: a query
+ * the budgets cannot take now is rejected, and async queries are kept queued until {@link #waitMillis} allows
+ * them (see {@link AsyncQueryService}). A query whose estimate exceeds a whole minute of budget is rejected at once.
+ */
+public class QueryAdmissionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryAdmissionController.class);
+
+    private final Cache<String, Long> estimates = CacheBuilder.newBuilder().maximumSize(10000).build();
+    private final ConcurrentMap<String, ScanBudget> projectBudgets = new ConcurrentHashMap<String, ScanBudget>();
+    private final ConcurrentMap<String, ScanBudget> userBudgets = new ConcurrentHashMap<String, ScanBudget>();
+
+    /**
+     * @return the admission, to be ended with {@link #end(Admission, long)} once the query finishes
+     */
+    public Admission admit(String project, String user, String sql) {
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        project = ProjectInstance.getNormalizedProjectName(project);
+        String key = QueryPlanCache.keyOf(project, sql, "");
+        long estimate = getEstimate(key);
+
+        ScanBudget projectBudget = getBudget(projectBudgets, project, config.getQueryProjectScanRowsBudget(project));
+        ScanBudget userBudget = getBudget(userBudgets, user, config.getQueryUserScanRowsBudget(user));
+        if (projectBudget == null && userBudget == null) {
+            return new Admission(key, null, null, 0);
+        }
+
+        checkCapacity(projectBudget, estimate, "project " + project);
+        checkCapacity(userBudget, estimate, "user " + user);
+
+        if (!reserve(projectBudget, userBudget, estimate, System.currentTimeMillis())) {
+            logger.info("Rejecting query of user " + user + " in project " + project + ", estimated to scan " + estimate + " rows");
+            throw new BadRequestException("The scan budget of project " + project + " or user " + user + " is used up, try later or submit the query as an async query.");
+        }
+        return new Admission(key, projectBudget, userBudget, estimate);
+    }
+
+    /**
+     * @return how long the budgets need to refill before the query can be admitted, 0 if it can be admitted
+     * (or rejected) right now
+     */
+    public long waitMillis(String project, String user, String sql) {
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        project = ProjectInstance.getNormalizedProjectName(project);
+        long estimate = getEstimate(QueryPlanCache.keyOf(project, sql, ""));
+
+        ScanBudget projectBudget = getBudget(projectBudgets, project, config.getQueryProjectScanRowsBudget(project));
+        ScanBudget userBudget = getBudget(userBudgets, user, config.getQueryUserScanRowsBudget(user));
+        if ((projectBudget != null && estimate > projectBudget.rowsPerMinute) || (userBudget != null && estimate > userBudget.rowsPerMinute)) {
+            return 0;
+        }
+
+        long now = System.currentTimeMillis();
+        return Math.max(waitMillis(projectBudget, estimate, now), waitMillis(userBudget, estimate, now));
+    }
+
+    /**
+     * Charges the budgets with the rows actually scanned, and remembers them as the estimate of the SQL.
+     */
+    public void end(Admission admission, long scannedRows) {
+        estimates.put(admission.key, scannedRows);
+        long correction = scannedRows - admission.reserved;
+        long now = System.currentTimeMillis();
+        if (admission.projectBudget != null)
+            admission.projectBudget.charge(correction, now);
+        if (admission.userBudget != null)
+            admission.userBudget.charge(correction, now);
+    }
+
+    private long getEstimate(String key) {
+        Long known = estimates.getIfPresent(key);
+        return known == null ? 0 : known;
+    }
+
+    private ScanBudget getBudget(ConcurrentMap<String, ScanBudget> budgets, String name, long rowsPerMinute) {
+        if (rowsPerMinute <= 0) {
+            budgets.remove(name);
+            return null;
+        }
+
+        ScanBudget budget = budgets.get(name);
+        if (budget == null || budget.rowsPerMinute != rowsPerMinute) { // new, or config changed
+            budget = new ScanBudget(rowsPerMinute, System.currentTimeMillis());
+            budgets.put(name, budget);
+        }
+        return budget;
+    }
+
+    private void checkCapacity(ScanBudget budget, long estimate, String owner) {
+        if (budget != null && estimate > budget.rowsPerMinute) {
+            throw new BadRequestException("The query is estimated to scan " + estimate + " rows, more than the budget of " + owner + " (" + budget.rowsPerMinute + " rows per minute).");
+        }
+    }
+
+    private boolean reserve(ScanBudget projectBudget, ScanBudget userBudget, long estimate, long now) {
+        if (projectBudget != null && !projectBudget.tryTake(estimate, now))
+            return false;
+        if (userBudget != null && !userBudget.tryTake(estimate, now)) {
+            if (projectBudget != null)
+                projectBudget.charge(-estimate, now);
+            return false;
+        }
+        return true;
+    }
+
+    private long waitMillis(ScanBudget budget, long estimate, long now) {
+        return budget == null ? 0 : budget.waitMillis(estimate, now);
+    }
+
+    public static class Admission {
+        final String key;
+        final ScanBudget projectBudget;
+        final ScanBudget userBudget;
+        final long reserved;
+
+        Admission(String key, ScanBudget projectBudget, ScanBudget userBudget, long reserved) {
+            this.key = key;
+            this.projectBudget = projectBudget;
+            this.userBudget = userBudget;
+            this.reserved = reserved;
+        }
+    }
+
+    /**
+     * Rows that may be scanned, refilled continuously up to one minute of budget. Goes negative when
+     * queries scan more than estimated.
+     */
+    static class ScanBudget {
+        final long rowsPerMinute;
+        private double available;
+        private long lastRefill;
+
+        ScanBudget(long rowsPerMinute, long now) {
+            this.rowsPerMinute = rowsPerMinute;
+            this.available = rowsPerMinute;
+            this.lastRefill = now;
+        }
+
+        private void refill(long now) {
+            if (now > lastRefill) {
+                available = Math.min(rowsPerMinute, available + (now - lastRefill) * rowsPerMinute / 60000.0);
+                lastRefill = now;
+            }
+        }
+
+        // an estimate of 0 still needs the budget not overspent
+        synchronized boolean tryTake(long rows, long now) {
+            refill(now);
+            if (available < Math.max(rows, 1))
+                return false;
+            available -= rows;
+            return true;
+        }
+
+        synchronized void charge(long rows, long now) {
+            refill(now);
+            available -= rows;
+        }
+
+        synchronized long waitMillis(long rows, long now) {
+            refill(now);
+            double missing = Math.max(rows, 1) - available;
+            return missing <= 0 ? 0 : (long) Math.ceil(missing * 60000.0 / rowsPerMinute);
+        }
+
+        synchronized double getAvailable(long now) {
+            refill(now);
+            return available;
+        }
+    }
+}
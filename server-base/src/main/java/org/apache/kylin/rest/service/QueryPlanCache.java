@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.rest.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.kylin.common.util.DBUtils;
+import org.apache.kylin.metadata.project.ProjectInstance;
+import org.apache.kylin.query.relnode.OLAPContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.Lists;
+
+/**
+ * Keeps prepared statements of the OLAP query path, keyed by project and normalized SQL, so that a query
+ * repeated with the same text (and different parameter values) skips parsing, optimization, realization
+ * selection and rewrite.
+ *
+ * A cached plan holds its own connection and the OLAP contexts built when it was prepared. It is used by
+ * one query at a time; a query finding the plan in use prepares its own statement as before.
+ */
+public class QueryPlanCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryPlanCache.class);
+
+    private final Cache<String, CachedPlan> plans;
+
+    public QueryPlanCache(int maxSize) {
+        this.plans = CacheBuilder.newBuilder().maximumSize(maxSize).removalListener(new RemovalListener<String, CachedPlan>() {
+            @Override
+            public void onRemoval(RemovalNotification<String, CachedPlan> notification) {
+                notification.getValue().evict();
+            }
+        }).build();
+    }
+
+    public static String keyOf(String project, String sql, String variant) {
+        return ProjectInstance.getNormalizedProjectName(project) + "\n" + variant + "\n" + normalizeSql(sql);
+    }
+
+    /**
+     * Collapses white spaces out of quoted literals and identifiers, and trims. A run of white spaces
+     * with a line break becomes one line break, which may end a line comment.
+     */
+    public static String normalizeSql(String sql) {
+        StringBuilder buf = new StringBuilder(sql.length());
+        char quote = 0;
+        char space = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                buf.append(c);
+                if (c == quote)
+                    quote = 0;
+            } else if (Character.isWhitespace(c)) {
+                if (space != '\n')
+                    space = (c == '\n' || c == '\r') ? '\n' : ' ';
+            } else {
+                if (space != 0 && buf.length() > 0)
+                    buf.append(space);
+                space = 0;
+                buf.append(c);
+                if (c == '\'' || c == '"')
+                    quote = c;
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * @return the plan of the key taken for exclusive use, or null if absent or in use by another query
+     */
+    public CachedPlan borrow(String key) {
+        CachedPlan plan = plans.getIfPresent(key);
+        if (plan == null || !plan.acquire())
+            return null;
+
+        plan.restoreContexts();
+        return plan;
+    }
+
+    /**
+     * Caches a statement just prepared on the calling thread, together with the OLAP contexts it built.
+     *
+     * @return the new plan, already taken for use by the caller, or null if it is not cached
+     */
+    public CachedPlan put(String key, Connection conn, PreparedStatement statement) {
+        Collection<OLAPContext> contexts = OLAPContext.getThreadLocalContexts();
+        if (contexts == null) // e.g. 'explain plan for'
+            return null;
+
+        CachedPlan plan = new CachedPlan(key, conn, statement, Lists.newArrayList(contexts));
+        plan.acquire();
+        if (plans.asMap().putIfAbsent(key, plan) != null)
+            return null;
+        return plan;
+    }
+
+    /**
+     * Gives the plan back after its query. A plan whose query failed is dropped, as its statement may be unusable.
+     */
+    public void release(CachedPlan plan, boolean failed) {
+        if (failed)
+            plans.asMap().remove(plan.key, plan);
+        plan.release();
+    }
+
+    public void invalidate(String project) {
+        String prefix = ProjectInstance.getNormalizedProjectName(project) + "\n";
+        for (String key : plans.asMap().keySet()) {
+            if (key.startsWith(prefix))
+                plans.invalidate(key);
+        }
+    }
+
+    public void invalidateAll() {
+        plans.invalidateAll();
+    }
+
+    public long size() {
+        return plans.size();
+    }
+
+    public static class CachedPlan {
+        private final String key;
+        private final Connection conn;
+        private final PreparedStatement statement;
+        private final List<OLAPContext> contexts;
+
+        private boolean inUse;
+        private boolean evicted;
+
+        CachedPlan(String key, Connection conn, PreparedStatement statement, List<OLAPContext> contexts) {
+            this.key = key;
+            this.conn = conn;
+            this.statement = statement;
+            this.contexts = contexts;
+        }
+
+        public PreparedStatement getStatement() {
+            return statement;
+        }
+
+        private synchronized boolean acquire() {
+            if (inUse || evicted)
+                return false;
+            inUse = true;
+            return true;
+        }
+
+        private synchronized void release() {
+            inUse = false;
+            if (evicted)
+                close();
+        }
+
+        // a plan removed while its query runs is closed when the query gives it back
+        private synchronized void evict() {
+            evicted = true;
+            if (!inUse)
+                close();
+        }
+
+        private void restoreContexts() {
+            OLAPContext.clearThreadLocalContexts();
+            for (OLAPContext context : contexts) {
+                context.storageContext.resetRuntimeState();
+                OLAPContext.registerContext(context);
+            }
+        }
+
+        private void close() {
+            logger.debug("Closing cached query plan");
+            DBUtils.closeQuietly(statement);
+            DBUtils.closeQuietly(conn);
+        }
+    }
+}
@@ -19,6 +19,8 @@
 package org.apache.kylin.rest.service;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
@@ -51,6 +53,8 @@ import org.apache.hadoop.hbase.client.HTableInterface;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.QueryContext;
+import org.apache.kylin.common.QueryResourceUsage;
 import org.apache.kylin.common.util.Bytes;
 import org.apache.kylin.common.util.DBUtils;
 import org.apache.kylin.cube.CubeInstance;
@@ -100,6 +104,7 @@ public class QueryService extends BasicService {
 
     private final Serializer<Query[]> querySerializer = new Serializer<Query[]>(Query[].class);
     private final BadQueryDetector badQueryDetector = new BadQueryDetector();
+    private final QueryAdmissionController admissionController = new QueryAdmissionController();
 
     private final String hbaseUrl;
     private final String tableNameBase;
@@ -116,20 +121,55 @@ public class QueryService extends BasicService {
         badQueryDetector.start();
     }
 
+    QueryAdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
     public List<TableMeta> getMetadata(String project) throws SQLException {
         return getMetadata(getCubeManager(), project, true);
     }
 
     public SQLResponse query(SQLRequest sqlRequest) throws Exception {
+        final String user = SecurityContextHolder.getContext().getAuthentication().getName();
+        QueryAdmissionController.Admission admission = admissionController.admit(sqlRequest.getProject(), user, sqlRequest.getSql());
+
+        QueryResourceUsage usage = QueryContext.current().getResourceUsage();
+        long startCpuNanos = currentThreadCpuNanos();
+        long startAllocatedBytes = currentThreadAllocatedBytes();
+        SQLResponse response = null;
         try {
-            final String user = SecurityContextHolder.getContext().getAuthentication().getName();
             badQueryDetector.queryStart(Thread.currentThread(), sqlRequest, user);
 
-            return queryWithSqlMassage(sqlRequest);
+            response = queryWithSqlMassage(sqlRequest);
+            response.setResourceUsage(usage);
+            return response;
 
         } finally {
             badQueryDetector.queryEnd(Thread.currentThread());
+
+            usage.addQueryServer(currentThreadCpuNanos() - startCpuNanos, currentThreadAllocatedBytes() - startAllocatedBytes);
+            long scannedRows = usage.getScannedRows();
+            if (response != null) {
+                // storage without endpoint stats still counts its scans in the storage context
+                scannedRows = Math.max(scannedRows, response.getTotalScanCount());
+            }
+            admissionController.end(admission, scannedRows);
+        }
+    }
+
+    private static long currentThreadCpuNanos() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        return threadMXBean.isCurrentThreadCpuTimeSupported() ? threadMXBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static long currentThreadAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (sunThreadMXBean.isThreadAllocatedMemorySupported() && sunThreadMXBean.isThreadAllocatedMemoryEnabled())
+                return sunThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
         }
+        return 0;
     }
 
     public void saveQuery(final String creator, final Query query) throws IOException {
@@ -256,6 +296,9 @@ public class QueryService extends BasicService {
         stringBuilder.append("Is Partial Result: ").append(response.isPartial()).append(newLine);
         stringBuilder.append("Hit Exception Cache: ").append(response.isHitExceptionCache()).append(newLine);
         stringBuilder.append("Storage cache used: ").append(storageCacheUsed).append(newLine);
+        if (!storageCacheUsed && response.getResourceUsage() != null) {
+            stringBuilder.append("Resource usage: ").append(response.getResourceUsage()).append(newLine);
+        }
         stringBuilder.append("Message: ").append(response.getExceptionMessage()).append(newLine);
         stringBuilder.append("==========================[QUERY]===============================").append(newLine);
 
@@ -292,13 +335,18 @@ public class QueryService extends BasicService {
         }
     }
 
-    private SQLResponse queryWithSqlMassage(SQLRequest sqlRequest) throws Exception {
+    private String getUserInfo() {
         String userInfo = SecurityContextHolder.getContext().getAuthentication().getName();
         final Collection<? extends GrantedAuthority> grantedAuthorities = SecurityContextHolder.getContext().getAuthentication().getAuthorities();
         for (GrantedAuthority grantedAuthority : grantedAuthorities) {
             userInfo += ",";
             userInfo += grantedAuthority.getAuthority();
         }
+        return userInfo;
+    }
+
+    private SQLResponse queryWithSqlMassage(SQLRequest sqlRequest) throws Exception {
+        String userInfo = getUserInfo();
 
         SQLResponse fakeResponse = QueryUtil.tableauIntercept(sqlRequest.getSql());
         if (null != fakeResponse) {
@@ -316,6 +364,7 @@ public class QueryService extends BasicService {
         Map<String, String> parameters = new HashMap<String, String>();
         parameters.put(OLAPContext.PRM_USER_AUTHEN_INFO, userInfo);
         parameters.put(OLAPContext.PRM_ACCEPT_PARTIAL_RESULT, String.valueOf(sqlRequest.isAcceptPartial()));
+        parameters.put(OLAPContext.PRM_SQL, correctedSql);
         OLAPContext.setParameters(parameters);
         // force clear the query context before a new query
         OLAPContext.clearThreadLocalContexts();
@@ -393,10 +442,48 @@ public class QueryService extends BasicService {
         List<List<String>> results = Lists.newArrayList();
         List<SelectedColumnMeta> columnMetas = Lists.newArrayList();
 
+        boolean isPartialResult = false;
+        String cube = "";
+        StringBuilder sb = new StringBuilder("Scan count for each storageContext: ");
+        long totalScanCount = 0;
+        int samplingPercentage = 100;
+        double samplingApproxRelativeError = 0;
+
+        QueryPlanCache planCache = cacheService.getQueryPlanCache();
+        QueryPlanCache.CachedPlan plan = null;
+        boolean failed = true;
+
         try {
-            conn = cacheService.getOLAPDataSource(sqlRequest.getProject()).getConnection();
+            if (planCache != null) {
+                String planKey = QueryPlanCache.keyOf(sqlRequest.getProject(), sql, getPlanVariant(sqlRequest));
+                plan = planCache.borrow(planKey);
+                if (plan == null) {
+                    conn = cacheService.getOLAPDataSource(sqlRequest.getProject()).getConnection();
+                    stat = conn.prepareStatement(sql);
+                    plan = planCache.put(planKey, conn, (PreparedStatement) stat);
+                    if (plan != null) {
+                        // the connection and statement now belong to the cached plan
+                        conn = null;
+                        stat = null;
+                    }
+                } else {
+                    logger.debug("Query plan cache hit");
+                }
+            }
+
+            if (plan != null || stat != null) {
+                PreparedStatement preparedState = plan != null ? plan.getStatement() : (PreparedStatement) stat;
+                preparedState.clearParameters();
 
-            if (sqlRequest instanceof PrepareSqlRequest) {
+                if (sqlRequest instanceof PrepareSqlRequest) {
+                    for (int i = 0; i < ((PrepareSqlRequest) sqlRequest).getParams().length; i++) {
+                        setParam(preparedState, i + 1, ((PrepareSqlRequest) sqlRequest).getParams()[i]);
+                    }
+                }
+
+                resultSet = preparedState.executeQuery();
+            } else if (sqlRequest instanceof PrepareSqlRequest) {
+                conn = cacheService.getOLAPDataSource(sqlRequest.getProject()).getConnection();
                 PreparedStatement preparedState = conn.prepareStatement(sql);
 
                 for (int i = 0; i < ((PrepareSqlRequest) sqlRequest).getParams().length; i++) {
@@ -405,6 +492,7 @@ public class QueryService extends BasicService {
 
                 resultSet = preparedState.executeQuery();
             } else {
+                conn = cacheService.getOLAPDataSource(sqlRequest.getProject()).getConnection();
                 stat = conn.createStatement();
                 resultSet = stat.executeQuery(sql);
             }
@@ -426,32 +514,49 @@ public class QueryService extends BasicService {
 
                 results.add(oneRow);
             }
-        } finally {
-            close(resultSet, stat, conn);
-        }
 
-        boolean isPartialResult = false;
-        String cube = "";
-        StringBuilder sb = new StringBuilder("Scan count for each storageContext: ");
-        long totalScanCount = 0;
-        if (OLAPContext.getThreadLocalContexts() != null) { // contexts can be null in case of 'explain plan for'
-            for (OLAPContext ctx : OLAPContext.getThreadLocalContexts()) {
-                if (ctx.realization != null) {
-                    isPartialResult |= ctx.storageContext.isPartialResultReturned();
-                    cube = ctx.realization.getName();
-                    totalScanCount += ctx.storageContext.getTotalScanCount();
-                    sb.append(ctx.storageContext.getTotalScanCount() + ",");
+            // read before the plan is given back, as its contexts are then reset by the next query
+            if (OLAPContext.getThreadLocalContexts() != null) { // contexts can be null in case of 'explain plan for'
+                for (OLAPContext ctx : OLAPContext.getThreadLocalContexts()) {
+                    if (ctx.realization != null) {
+                        isPartialResult |= ctx.storageContext.isPartialResultReturned();
+                        cube = ctx.realization.getName();
+                        totalScanCount += ctx.storageContext.getTotalScanCount();
+                        sb.append(ctx.storageContext.getTotalScanCount() + ",");
+                        samplingPercentage = Math.min(samplingPercentage, ctx.storageContext.getSamplingPercentage());
+                        samplingApproxRelativeError = Math.max(samplingApproxRelativeError, ctx.storageContext.getSamplingApproxRelativeError());
+                    }
                 }
             }
+            failed = false;
+        } finally {
+            close(resultSet, stat, conn);
+            if (plan != null) {
+                planCache.release(plan, failed);
+            }
         }
+
         logger.info(sb.toString());
 
         SQLResponse response = new SQLResponse(columnMetas, results, cube, 0, false, null, isPartialResult);
         response.setTotalScanCount(totalScanCount);
+        response.setSamplingPercentage(samplingPercentage);
+        response.setSamplingApproxRelativeError(samplingApproxRelativeError);
 
         return response;
     }
 
+    // a plan applies to other queries only if they would have built the same OLAP contexts
+    private String getPlanVariant(SQLRequest sqlRequest) {
+        String variant = String.valueOf(sqlRequest.isAcceptPartial());
+        String controllerCls = KylinConfig.getInstanceFromEnv().getQueryAccessController();
+        if (null != controllerCls && !controllerCls.isEmpty()) {
+            // cell level security is applied when planning
+            variant += "," + getUserInfo();
+        }
+        return variant;
+    }
+
     /**
      * @param preparedState
      * @param param
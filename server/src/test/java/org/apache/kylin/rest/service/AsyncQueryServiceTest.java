@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.rest.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.QueryContext;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.rest.exception.BadRequestException;
+import org.apache.kylin.rest.request.SQLRequest;
+import org.apache.kylin.rest.response.AsyncQueryResponse;
+import org.apache.kylin.rest.response.AsyncQueryResponse.Status;
+import org.apache.kylin.rest.response.SQLResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+public class AsyncQueryServiceTest extends LocalFileMetadataTestCase {
+
+    private AsyncQueryService service;
+
+    @Before
+    public void before() {
+        super.createTestMetadata();
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        config.setProperty("kylin.query.async.project.concurrency", "1");
+        service = new AsyncQueryService(config);
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("ADMIN", "ADMIN", "ROLE_ADMIN"));
+    }
+
+    @After
+    public void after() {
+        SecurityContextHolder.clearContext();
+        super.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testSucceed() throws Exception {
+        AsyncQueryResponse submitted = service.submit(newRequest(), 0, new Callable<SQLResponse>() {
+            @Override
+            public SQLResponse call() throws Exception {
+                assertEquals("ADMIN", SecurityContextHolder.getContext().getAuthentication().getName());
+                return new SQLResponse();
+            }
+        });
+
+        AsyncQueryResponse response = service.getStatus(submitted.getQueryId(), 10000);
+        assertEquals(Status.SUCCEEDED, response.getStatus());
+        assertTrue(service.getResult(submitted.getQueryId()) != null);
+    }
+
+    @Test
+    public void testCancelAndProjectLimit() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final boolean[] contextCancelled = new boolean[1];
+        AsyncQueryResponse submitted = service.submit(newRequest(), 0, new Callable<SQLResponse>() {
+            @Override
+            public SQLResponse call() throws Exception {
+                started.countDown();
+                try {
+                    Thread.sleep(60000);
+                } finally {
+                    contextCancelled[0] = QueryContext.current().isCancelled();
+                }
+                return new SQLResponse();
+            }
+        });
+        started.await();
+
+        try {
+            service.submit(newRequest(), 0, null);
+            fail("Project concurrency is 1");
+        } catch (BadRequestException e) {
+            // expected
+        }
+
+        service.cancel(submitted.getQueryId());
+        AsyncQueryResponse response = service.getStatus(submitted.getQueryId(), 10000);
+        assertEquals(Status.CANCELLED, response.getStatus());
+        assertTrue(contextCancelled[0]);
+
+        // the permit of the project is given back
+        AsyncQueryResponse next = service.submit(newRequest(), 0, new Callable<SQLResponse>() {
+            @Override
+            public SQLResponse call() throws Exception {
+                return new SQLResponse();
+            }
+        });
+        assertEquals(Status.SUCCEEDED, service.getStatus(next.getQueryId(), 10000).getStatus());
+    }
+
+    @Test
+    public void testWaitForAdmission() throws Exception {
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        config.setProperty("kylin.query.budget.user.scan.rows.per.minute.ADMIN", "600000");
+        final QueryAdmissionController controller = new QueryAdmissionController();
+        service.setAdmissionController(controller);
+        final SQLRequest request = newRequest();
+
+        // overspent by 5000 rows by another query, refilled in about half a second
+        controller.end(controller.admit(request.getProject(), "ADMIN", "select * from test_kylin_fact"), 605000);
+        assertTrue(controller.waitMillis(request.getProject(), "ADMIN", request.getSql()) > 0);
+
+        AsyncQueryResponse submitted = service.submit(request, 0, new Callable<SQLResponse>() {
+            @Override
+            public SQLResponse call() throws Exception {
+                controller.end(controller.admit(request.getProject(), "ADMIN", request.getSql()), 0);
+                return new SQLResponse();
+            }
+        });
+        assertEquals(Status.QUEUED, service.getStatus(submitted.getQueryId(), 0).getStatus());
+
+        AsyncQueryResponse response = service.getStatus(submitted.getQueryId(), 10000);
+        assertEquals(Status.SUCCEEDED, response.getStatus());
+        assertTrue(response.getStartTime() - response.getSubmitTime() >= 100);
+    }
+
+    private SQLRequest newRequest() {
+        SQLRequest request = new SQLRequest();
+        request.setProject("default");
+        request.setSql("select count(*) from test_kylin_fact");
+        return request;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.rest.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.rest.exception.BadRequestException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueryAdmissionControllerTest extends LocalFileMetadataTestCase {
+
+    @Before
+    public void before() {
+        super.createTestMetadata();
+    }
+
+    @After
+    public void after() {
+        super.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testScanBudget() {
+        QueryAdmissionController.ScanBudget budget = new QueryAdmissionController.ScanBudget(6000, 0);
+        assertTrue(budget.tryTake(5000, 0));
+        assertFalse(budget.tryTake(2000, 0));
+        assertEquals(10000, budget.waitMillis(2000, 0));
+
+        // refills 100 rows per second, up to one minute of budget
+        assertTrue(budget.tryTake(2000, 10000));
+        budget.charge(1000, 10000);
+        assertEquals(-1000, budget.getAvailable(10000), 0.001);
+        assertEquals(6000, budget.getAvailable(1000000), 0.001);
+    }
+
+    @Test
+    public void testAdmit() throws Exception {
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        config.setProperty("kylin.query.budget.project.scan.rows.per.minute", "100000");
+        config.setProperty("kylin.query.budget.user.scan.rows.per.minute.ANALYST", "1000");
+        config.setProperty("kylin.query.admission.wait.seconds", "0");
+        QueryAdmissionController controller = new QueryAdmissionController();
+        String sql = "select count(*) from test_kylin_fact";
+
+        // unknown cost is admitted, then the scanned rows become the estimate
+        controller.end(controller.admit("default", "ANALYST", sql), 800);
+        try {
+            controller.admit("default", "ANALYST", sql);
+            fail("Budget of the user is used up");
+        } catch (BadRequestException e) {
+            // expected
+        }
+
+        // no budget for this user, but more than a whole minute of the budget of the project
+        controller.end(controller.admit("default", "MODELER", sql), 200000);
+        try {
+            controller.admit("default", "MODELER", sql);
+            fail("Estimate exceeds the budget of the project");
+        } catch (BadRequestException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testWaitMillis() throws Exception {
+        KylinConfig config = KylinConfig.getInstanceFromEnv();
+        config.setProperty("kylin.query.budget.user.scan.rows.per.minute.ANALYST", "60000");
+        QueryAdmissionController controller = new QueryAdmissionController();
+        String sql = "select count(*) from test_kylin_fact";
+
+        assertEquals(0, controller.waitMillis("default", "ANALYST", sql));
+        assertEquals(0, controller.waitMillis("default", "MODELER", sql));
+
+        // overspent by 30000 rows by another query, refilled at 1000 rows per second
+        String bigSql = "select * from test_kylin_fact";
+        controller.end(controller.admit("default", "ANALYST", bigSql), 90000);
+        long wait = controller.waitMillis("default", "ANALYST", sql);
+        assertTrue(wait > 29000 && wait <= 30001);
+
+        // the estimate of the other query exceeds the budget, it is rejected right away instead of waiting
+        assertEquals(0, controller.waitMillis("default", "ANALYST", bigSql));
+        try {
+            controller.admit("default", "ANALYST", sql);
+            fail("Budget of the user is used up");
+        } catch (BadRequestException e) {
+            // expected, without waiting
+        }
+    }
+}
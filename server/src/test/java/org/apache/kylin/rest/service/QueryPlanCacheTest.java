@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.rest.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.apache.kylin.query.relnode.OLAPContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueryPlanCacheTest {
+
+    @Before
+    public void before() {
+        OLAPContext.clearThreadLocalContexts();
+        OLAPContext.registerContext(new OLAPContext(0));
+    }
+
+    @After
+    public void after() {
+        OLAPContext.clearThreadLocalContexts();
+    }
+
+    @Test
+    public void testNormalizeSql() {
+        assertEquals("select a, 'x  y' from t where b = ?", QueryPlanCache.normalizeSql("  select a,  'x  y'\tfrom t  where b = ?  "));
+        assertEquals("select a -- c\nfrom t", QueryPlanCache.normalizeSql("select a -- c\r\n  from t"));
+        assertEquals(QueryPlanCache.keyOf("default", "select 1", "true"), QueryPlanCache.keyOf("DEFAULT", " select  1", "true"));
+    }
+
+    @Test
+    public void testBorrowAndRelease() {
+        QueryPlanCache cache = new QueryPlanCache(10);
+        String key = QueryPlanCache.keyOf("default", "select count(*) from t", "false");
+
+        QueryPlanCache.CachedPlan plan = cache.put(key, null, null);
+        assertNotNull(plan);
+        // in use by the query that prepared it
+        assertNull(cache.borrow(key));
+
+        cache.release(plan, false);
+        OLAPContext.clearThreadLocalContexts();
+        assertSame(plan, cache.borrow(key));
+        assertEquals(1, OLAPContext.getThreadLocalContexts().size());
+
+        // a failed query drops the plan
+        cache.release(plan, true);
+        assertNull(cache.borrow(key));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        QueryPlanCache cache = new QueryPlanCache(10);
+        String key1 = QueryPlanCache.keyOf("p1", "select 1", "false");
+        String key2 = QueryPlanCache.keyOf("p2", "select 1", "false");
+        cache.release(cache.put(key1, null, null), false);
+        cache.release(cache.put(key2, null, null), false);
+
+        cache.invalidate("p1");
+        assertNull(cache.borrow(key1));
+        assertNotNull(cache.borrow(key2));
+    }
+}
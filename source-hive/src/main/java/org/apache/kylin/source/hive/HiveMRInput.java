@@ -20,6 +20,7 @@ package org.apache.kylin.source.hive;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
 import java.util.Set;
 
 import org.apache.commons.io.IOUtils;
@@ -27,6 +28,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hive.hcatalog.data.HCatRecord;
 import org.apache.hive.hcatalog.mapreduce.HCatInputFormat;
 import org.apache.kylin.common.KylinConfig;
@@ -38,6 +40,7 @@ import org.apache.kylin.cube.CubeManager;
 import org.apache.kylin.engine.mr.HadoopUtil;
 import org.apache.kylin.engine.mr.IMRInput;
 import org.apache.kylin.engine.mr.JobBuilderSupport;
+import org.apache.kylin.engine.mr.common.BatchConstants;
 import org.apache.kylin.engine.mr.steps.CubingExecutableUtil;
 import org.apache.kylin.job.JoinedFlatTable;
 import org.apache.kylin.job.common.ShellExecutable;
@@ -113,6 +116,47 @@ public class HiveMRInput implements IMRInput {
 
     }
 
+    /**
+     * Reads the ORC files of the intermediate flat table directly, a batch of rows at a time and only the projected columns,
+     * skipping the HCatRecord conversion of every row.
+     */
+    public static class HiveOrcTableInputFormat implements IMRProjectableTableInputFormat, IMRBytesTableInputFormat {
+        final JobEngineConfig conf;
+        final IJoinedFlatTableDesc flatDesc;
+
+        public HiveOrcTableInputFormat(JobEngineConfig conf, IJoinedFlatTableDesc flatDesc) {
+            this.conf = conf;
+            this.flatDesc = flatDesc;
+        }
+
+        @Override
+        public void configureJob(Job job) {
+            try {
+                String jobId = job.getConfiguration().get(BatchConstants.ARG_CUBING_JOB_ID);
+                String inputPath = JoinedFlatTable.getTableDir(flatDesc, JobBuilderSupport.getJobWorkingDir(conf, jobId));
+                FileInputFormat.setInputPaths(job, new Path(inputPath));
+                job.setInputFormatClass(OrcVectorizedInputFormat.class);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void setProjection(Job job, Collection<Integer> columnIndexes) {
+            OrcVectorizedInputFormat.setIncludedColumns(job.getConfiguration(), columnIndexes);
+        }
+
+        @Override
+        public String[] parseMapperInput(Object mapperInput) {
+            return ((OrcVectorizedRow) mapperInput).toStringArray();
+        }
+
+        @Override
+        public byte[][] parseMapperInputAsBytes(Object mapperInput) {
+            return ((OrcVectorizedRow) mapperInput).toBytesArray();
+        }
+    }
+
     public static class BatchCubingInputSide implements IMRBatchCubingInputSide {
 
         final JobEngineConfig conf;
@@ -228,7 +272,7 @@ public class HiveMRInput implements IMRInput {
 
             final String useDatabaseHql = "USE " + conf.getConfig().getHiveDatabaseForIntermediateTable() + ";\n";
             final String dropTableHql = JoinedFlatTable.generateDropTableStatement(flatTableDesc);
-            final String createTableHql = JoinedFlatTable.generateCreateTableStatement(flatTableDesc, JobBuilderSupport.getJobWorkingDir(conf, jobId));
+            final String createTableHql = JoinedFlatTable.generateCreateTableStatement(flatTableDesc, JobBuilderSupport.getJobWorkingDir(conf, jobId), conf.getConfig().getFlatHiveTableStorageFormat());
             String insertDataHqls = JoinedFlatTable.generateInsertDataStatement(flatTableDesc, conf, redistribute);
 
             CreateFlatHiveTableStep step = new CreateFlatHiveTableStep();
@@ -253,6 +297,9 @@ public class HiveMRInput implements IMRInput {
 
         @Override
         public IMRTableInputFormat getFlatTableInputFormat() {
+            if ("ORC".equals(conf.getConfig().getFlatHiveTableStorageFormat())) {
+                return new HiveOrcTableInputFormat(conf, flatDesc);
+            }
             return new HiveTableInputFormat(getIntermediateTableIdentity());
         }
 
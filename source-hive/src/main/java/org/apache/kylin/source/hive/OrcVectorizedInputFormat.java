@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.source.hive;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.io.orc.OrcFile;
+import org.apache.hadoop.hive.ql.io.orc.OrcProto;
+import org.apache.hadoop.hive.ql.io.orc.Reader;
+import org.apache.hadoop.hive.ql.io.orc.RecordReader;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ * Reads ORC files a VectorizedRowBatch at a time, only decoding the included columns.
+ *
+ * Each value handed to the mapper is a view of one row in the current batch, it is only valid until the next call of nextKeyValue().
+ */
+public class OrcVectorizedInputFormat extends FileInputFormat<NullWritable, OrcVectorizedRow> {
+
+    public static final String CONFIG_INCLUDED_COLUMNS = "kylin.orc.included.columns";
+
+    /**
+     * Only decode the given columns (0 based), the others are read as null; all columns are decoded if not set.
+     */
+    public static void setIncludedColumns(Configuration conf, Collection<Integer> columnIndexes) {
+        conf.set(CONFIG_INCLUDED_COLUMNS, StringUtils.join(columnIndexes, ","));
+    }
+
+    @Override
+    public org.apache.hadoop.mapreduce.RecordReader<NullWritable, OrcVectorizedRow> createRecordReader(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+        return new OrcVectorizedRecordReader();
+    }
+
+    static class OrcVectorizedRecordReader extends org.apache.hadoop.mapreduce.RecordReader<NullWritable, OrcVectorizedRow> {
+
+        private RecordReader rows;
+        private VectorizedRowBatch batch;
+        private OrcVectorizedRow value;
+        private int position; // position of the current row in the batch, or in the selected array of the batch
+
+        @Override
+        public void initialize(InputSplit inputSplit, TaskAttemptContext context) throws IOException, InterruptedException {
+            FileSplit split = (FileSplit) inputSplit;
+            Configuration conf = context.getConfiguration();
+            Reader reader = OrcFile.createReader(split.getPath(), OrcFile.readerOptions(conf));
+
+            // type 0 is the root struct, its subtypes are the columns of the table
+            List<OrcProto.Type> types = reader.getTypes();
+            OrcProto.Type root = types.get(0);
+            int columnCount = root.getSubtypesCount();
+            OrcProto.Type.Kind[] kinds = new OrcProto.Type.Kind[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                kinds[i] = types.get(root.getSubtypes(i)).getKind();
+            }
+
+            boolean[] include = new boolean[types.size()];
+            include[0] = true;
+            String included = conf.get(CONFIG_INCLUDED_COLUMNS);
+            if (StringUtils.isBlank(included)) {
+                for (int i = 0; i < columnCount; i++) {
+                    includeColumn(include, types, root.getSubtypes(i));
+                }
+            } else {
+                for (String col : StringUtils.split(included, ',')) {
+                    int i = Integer.parseInt(col.trim());
+                    if (i < columnCount) {
+                        includeColumn(include, types, root.getSubtypes(i));
+                    }
+                }
+            }
+
+            rows = reader.rowsOptions(new Reader.Options().range(split.getStart(), split.getLength()).include(include));
+            value = new OrcVectorizedRow(kinds);
+        }
+
+        private void includeColumn(boolean[] include, List<OrcProto.Type> types, int typeId) {
+            include[typeId] = true;
+            for (int subtype : types.get(typeId).getSubtypesList()) {
+                includeColumn(include, types, subtype);
+            }
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException, InterruptedException {
+            while (batch == null || position >= batch.size) {
+                if (!rows.hasNext()) {
+                    return false;
+                }
+                batch = rows.nextBatch(batch);
+                position = 0;
+            }
+            value.set(batch, batch.selectedInUse ? batch.selected[position] : position);
+            position++;
+            return true;
+        }
+
+        @Override
+        public NullWritable getCurrentKey() throws IOException, InterruptedException {
+            return NullWritable.get();
+        }
+
+        @Override
+        public OrcVectorizedRow getCurrentValue() throws IOException, InterruptedException {
+            return value;
+        }
+
+        @Override
+        public float getProgress() throws IOException, InterruptedException {
+            return rows.getProgress();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (rows != null) {
+                rows.close();
+            }
+        }
+    }
+}
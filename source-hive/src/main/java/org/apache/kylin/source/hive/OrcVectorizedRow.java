@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.source.hive;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DecimalColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.TimestampUtils;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.io.orc.OrcProto;
+import org.apache.hadoop.hive.serde2.io.DateWritable;
+import org.apache.kylin.common.util.Bytes;
+
+/**
+ * One row of a VectorizedRowBatch, values are converted to the same strings as HCatalog gives (see HiveTableReader.getRowAsStringArray).
+ *
+ * Consumers that can work on typed values read them with getLong(), getDouble() and getDecimal(), or take the whole
+ * batch with getBatch(), instead of converting each value to a string.
+ */
+public class OrcVectorizedRow {
+
+    private final OrcProto.Type.Kind[] kinds;
+    private final Timestamp timestamp = new Timestamp(0);
+    private VectorizedRowBatch batch;
+    private int row;
+
+    public OrcVectorizedRow(OrcProto.Type.Kind[] kinds) {
+        this.kinds = kinds;
+    }
+
+    void set(VectorizedRowBatch batch, int row) {
+        this.batch = batch;
+        this.row = row;
+    }
+
+    /**
+     * @return the batch the row belongs to, reused for the next batch
+     */
+    public VectorizedRowBatch getBatch() {
+        return batch;
+    }
+
+    /**
+     * @return the index of the row in the column vectors of the batch
+     */
+    public int getRowInBatch() {
+        return row;
+    }
+
+    public OrcProto.Type.Kind getKind(int column) {
+        return kinds[column];
+    }
+
+    /**
+     * @return a new array of the row, columns not read are null
+     */
+    public String[] toStringArray() {
+        String[] result = new String[kinds.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = getString(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return a new array of the UTF-8 bytes of toStringArray(), string columns are copied from the batch without decoding
+     */
+    public byte[][] toBytesArray() {
+        byte[][] result = new byte[kinds.length][];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = getBytes(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the value is null, or the column is not read
+     */
+    public boolean isNull(int column) {
+        ColumnVector vector = getVector(column);
+        return vector == null || (!vector.noNulls && vector.isNull[index(vector)]);
+    }
+
+    /**
+     * @return the value of a BOOLEAN (0 or 1), BYTE, SHORT, INT, LONG, DATE (days since epoch) or TIMESTAMP (nanoseconds since epoch) column
+     */
+    public long getLong(int column) {
+        LongColumnVector vector = (LongColumnVector) getVector(column);
+        return vector.vector[index(vector)];
+    }
+
+    /**
+     * @return the value of a FLOAT or DOUBLE column
+     */
+    public double getDouble(int column) {
+        DoubleColumnVector vector = (DoubleColumnVector) getVector(column);
+        return vector.vector[index(vector)];
+    }
+
+    public HiveDecimal getDecimal(int column) {
+        DecimalColumnVector vector = (DecimalColumnVector) getVector(column);
+        return vector.vector[index(vector)].getHiveDecimal();
+    }
+
+    public String getString(int column) {
+        if (isNull(column)) {
+            return null;
+        }
+
+        switch (kinds[column]) {
+        case BOOLEAN:
+            return getLong(column) == 0 ? "false" : "true";
+        case BYTE:
+        case SHORT:
+        case INT:
+        case LONG:
+            return String.valueOf(getLong(column));
+        case FLOAT:
+            return String.valueOf((float) getDouble(column));
+        case DOUBLE:
+            return String.valueOf(getDouble(column));
+        case STRING:
+        case VARCHAR:
+        case CHAR:
+        case BINARY:
+            BytesColumnVector bytes = (BytesColumnVector) getVector(column);
+            int r = index(bytes);
+            return Bytes.toString(bytes.vector[r], bytes.start[r], bytes.length[r]);
+        case DECIMAL:
+            return getDecimal(column).toString();
+        case DATE:
+            return new Date(DateWritable.daysToMillis((int) getLong(column))).toString();
+        case TIMESTAMP:
+            TimestampUtils.assignTimeInNanoSec(getLong(column), timestamp);
+            return timestamp.toString();
+        default:
+            throw new IllegalStateException("Unsupported ORC type " + kinds[column] + " of column " + column);
+        }
+    }
+
+    /**
+     * @return the UTF-8 bytes of getString()
+     */
+    public byte[] getBytes(int column) {
+        if (isNull(column)) {
+            return null;
+        }
+
+        switch (kinds[column]) {
+        case STRING:
+        case VARCHAR:
+        case CHAR:
+        case BINARY:
+            BytesColumnVector bytes = (BytesColumnVector) getVector(column);
+            int r = index(bytes);
+            return Arrays.copyOfRange(bytes.vector[r], bytes.start[r], bytes.start[r] + bytes.length[r]);
+        default:
+            return Bytes.toBytes(getString(column));
+        }
+    }
+
+    private ColumnVector getVector(int column) {
+        return column < batch.cols.length ? batch.cols[column] : null;
+    }
+
+    private int index(ColumnVector vector) {
+        return vector.isRepeating ? 0 : row;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.source.hive;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.common.type.HiveDecimal;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DecimalColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.TimestampUtils;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.io.orc.OrcProto.Type.Kind;
+import org.apache.hadoop.hive.serde2.io.DateWritable;
+import org.apache.hive.hcatalog.data.DefaultHCatRecord;
+import org.apache.kylin.common.util.Bytes;
+import org.junit.Test;
+
+/**
+ * The ORC path must give the same strings as the HCatalog path, which are what dictionaries and row keys are built from.
+ */
+public class OrcVectorizedRowTest {
+
+    private static final Kind[] KINDS = { Kind.DATE, Kind.TIMESTAMP, Kind.DECIMAL, Kind.STRING, Kind.INT, Kind.DOUBLE };
+
+    @Test
+    public void testSameAsHCatalog() {
+        Date date = Date.valueOf("2016-08-01");
+        Timestamp timestamp = Timestamp.valueOf("2016-08-01 12:34:56.789");
+        HiveDecimal decimal = HiveDecimal.create(new BigDecimal("12.50"));
+
+        VectorizedRowBatch batch = newBatch(2);
+        ((LongColumnVector) batch.cols[0]).vector[0] = DateWritable.dateToDays(date);
+        ((LongColumnVector) batch.cols[1]).vector[0] = TimestampUtils.getTimeNanoSec(timestamp);
+        ((DecimalColumnVector) batch.cols[2]).set(0, decimal);
+        ((BytesColumnVector) batch.cols[3]).setRef(0, Bytes.toBytes("abc"), 0, 3);
+        ((LongColumnVector) batch.cols[4]).vector[0] = 42;
+        ((DoubleColumnVector) batch.cols[5]).vector[0] = 1000.0;
+        // the second row is all null
+        for (int i = 0; i < KINDS.length; i++) {
+            batch.cols[i].noNulls = false;
+            batch.cols[i].isNull[1] = true;
+        }
+        batch.size = 2;
+
+        String[] expected = HiveTableReader.getRowAsStringArray(new DefaultHCatRecord(Arrays.<Object> asList(date, timestamp, decimal, "abc", 42, 1000.0)));
+        OrcVectorizedRow row = new OrcVectorizedRow(KINDS);
+        row.set(batch, 0);
+        assertArrayEquals(expected, row.toStringArray());
+        for (int i = 0; i < KINDS.length; i++) {
+            assertArrayEquals(Bytes.toBytes(expected[i]), row.toBytesArray()[i]);
+        }
+        assertEquals("2016-08-01", row.getString(0));
+        assertEquals("2016-08-01 12:34:56.789", row.getString(1));
+        assertEquals("12.5", row.getString(2));
+        assertEquals(decimal, row.getDecimal(2));
+
+        String[] nulls = HiveTableReader.getRowAsStringArray(new DefaultHCatRecord(Arrays.asList(new Object[KINDS.length])));
+        row.set(batch, 1);
+        assertArrayEquals(nulls, row.toStringArray());
+        assertArrayEquals(new byte[KINDS.length][], row.toBytesArray());
+    }
+
+    @Test
+    public void testRepeatingAndProjectedColumns() {
+        VectorizedRowBatch batch = newBatch(3);
+        LongColumnVector dates = (LongColumnVector) batch.cols[0];
+        dates.vector[0] = DateWritable.dateToDays(Date.valueOf("2016-08-01"));
+        dates.isRepeating = true;
+        // the other columns are not read
+        for (int i = 1; i < KINDS.length; i++) {
+            batch.cols[i] = null;
+        }
+        batch.size = 3;
+
+        OrcVectorizedRow row = new OrcVectorizedRow(KINDS);
+        row.set(batch, 2);
+        assertEquals("2016-08-01", row.getString(0));
+        for (int i = 1; i < KINDS.length; i++) {
+            assertNull(row.getString(i));
+            assertNull(row.getBytes(i));
+        }
+    }
+
+    private static VectorizedRowBatch newBatch(int size) {
+        VectorizedRowBatch batch = new VectorizedRowBatch(KINDS.length, size);
+        batch.cols[0] = new LongColumnVector(size);
+        batch.cols[1] = new LongColumnVector(size);
+        batch.cols[2] = new DecimalColumnVector(size, 10, 2);
+        batch.cols[3] = new BytesColumnVector(size);
+        batch.cols[4] = new LongColumnVector(size);
+        batch.cols[5] = new DoubleColumnVector(size);
+        return batch;
+    }
+}
@@ -29,6 +29,7 @@ import com.google.common.base.Function;
 import kafka.cluster.BrokerEndPoint;
 import org.apache.kafka.common.protocol.SecurityProtocol;
 import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.DaemonThreadFactory;
 import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.common.util.StreamingBatch;
 import org.apache.kylin.common.util.StreamingMessage;
@@ -42,6 +43,7 @@ import org.apache.kylin.metadata.model.TblColRef;
 import org.apache.kylin.metadata.realization.RealizationType;
 import org.apache.kylin.source.kafka.config.KafkaClusterConfig;
 import org.apache.kylin.source.kafka.config.KafkaConfig;
+import org.apache.kylin.source.kafka.util.KafkaFetchMetrics;
 import org.apache.kylin.source.kafka.util.KafkaRequester;
 import org.apache.kylin.source.kafka.util.KafkaUtils;
 import org.slf4j.Logger;
@@ -52,6 +54,7 @@ import com.google.common.collect.Lists;
 import kafka.cluster.Broker;
 import kafka.javaapi.FetchResponse;
 import kafka.javaapi.PartitionMetadata;
+import kafka.javaapi.message.ByteBufferMessageSet;
 import kafka.message.MessageAndOffset;
 
 import javax.annotation.Nullable;
@@ -61,6 +64,13 @@ public class KafkaStreamingInput implements IStreamingInput {
 
     private static final Logger logger = LoggerFactory.getLogger(KafkaStreamingInput.class);
 
+    // long lived, shared by all batches: the partition consumers and the fetches they prefetch run on it
+    private static final ExecutorService executorService = Executors.newCachedThreadPool(new DaemonThreadFactory());
+
+    // back off when a partition has no new message or a fetch fails, doubled each time up to the max
+    static final long MIN_BACKOFF_MS = 100;
+    static final long MAX_BACKOFF_MS = 30000;
+
     @Override
     public StreamingBatch getBatchWithTimeWindow(RealizationType realizationType, String realizationName, int id, long startTime, long endTime) {
         if (realizationType != RealizationType.CUBE) {
@@ -83,7 +93,6 @@ public class KafkaStreamingInput implements IStreamingInput {
                 List<TblColRef> columns = EngineFactory.getJoinedFlatTableDesc(cube.getDescriptor()).getAllColumns();
 
                 final StreamingParser streamingParser = StreamingParser.getStreamingParser(kafkaConfig.getParserName(), kafkaConfig.getParserProperties(), columns);
-                final ExecutorService executorService = Executors.newCachedThreadPool();
                 final List<Future<List<StreamingMessage>>> futures = Lists.newArrayList();
                 for (final KafkaClusterConfig kafkaClusterConfig : kafkaConfig.getKafkaClusterConfigs()) {
 
@@ -107,6 +116,9 @@ public class KafkaStreamingInput implements IStreamingInput {
                 }
                 final Pair<Long, Long> timeRange = Pair.newPair(startTime, endTime);
                 logger.info("finish to get streaming batch, total message count:" + messages.size());
+                for (KafkaClusterConfig kafkaClusterConfig : kafkaConfig.getKafkaClusterConfigs()) {
+                    logger.info(KafkaFetchMetrics.getInstance(kafkaClusterConfig.getTopic()).toString());
+                }
                 return new StreamingBatch(messages, timeRange);
             } catch (ReflectiveOperationException e) {
                 throw new RuntimeException("failed to create instance of StreamingParser", e);
@@ -116,6 +128,19 @@ public class KafkaStreamingInput implements IStreamingInput {
         }
     }
 
+    /**
+     * Sleeps for the given backoff.
+     * @return the backoff for the next failure in a row
+     */
+    static long backOff(long backoff) throws InterruptedException {
+        Thread.sleep(backoff);
+        return nextBackoff(backoff);
+    }
+
+    static long nextBackoff(long backoff) {
+        return Math.min(backoff * 2, MAX_BACKOFF_MS);
+    }
+
     private static class StreamingMessageProducer implements Callable<List<StreamingMessage>> {
 
         private final KafkaClusterConfig kafkaClusterConfig;
@@ -156,19 +181,35 @@ public class KafkaStreamingInput implements IStreamingInput {
             }
         }
 
+        private Callable<FetchResponse> fetch(final long offset, final Broker leadBroker) {
+            return new Callable<FetchResponse>() {
+                @Override
+                public FetchResponse call() throws Exception {
+                    return KafkaRequester.fetchResponse(kafkaClusterConfig.getTopic(), partitionId, offset, leadBroker, kafkaClusterConfig);
+                }
+            };
+        }
+
+        /**
+         * Fetches the partition from the start of the time range until a message out of the range and margin.
+         * The next fetch is submitted before parsing the messages of the current one, so that the two overlap,
+         * and at most one fetched response waits in memory for each partition.
+         */
         @Override
         public List<StreamingMessage> call() throws Exception {
             List<StreamingMessage> result = Lists.newLinkedList();
+            String topic = kafkaClusterConfig.getTopic();
+            KafkaFetchMetrics metrics = KafkaFetchMetrics.getInstance(topic);
+            Future<FetchResponse> prefetch = null;
             try {
                 long startTimestamp = timeRange.getFirst() - margin;
                 long offset = KafkaUtils.findClosestOffsetWithDataTimestamp(kafkaClusterConfig, partitionId, startTimestamp, streamingParser);
                 int fetchRound = 0;
                 int consumeMsgCount = 0;
+                long backoff = MIN_BACKOFF_MS;
                 Broker leadBroker = null;
-                String topic = kafkaClusterConfig.getTopic();
                 while (true) {
                     boolean outOfMargin = false;
-                    int consumeMsgCountAtBeginning = consumeMsgCount;
                     fetchRound++;
 
                     if (leadBroker == null) {
@@ -176,29 +217,69 @@ public class KafkaStreamingInput implements IStreamingInput {
                     }
 
                     if (leadBroker == null) {
-                        logger.warn("cannot find lead broker, wait 5s");
-                        Thread.sleep(5000);
+                        logger.warn("cannot find lead broker, wait " + backoff + "ms");
+                        backoff = backOff(backoff);
                         continue;
                     }
 
-                    logger.info("fetching topic {} partition id {} offset {} leader {}", topic, String.valueOf(partitionId), String.valueOf(offset), leadBroker.toString());
+                    logger.debug("fetching topic {} partition id {} offset {} leader {}", topic, String.valueOf(partitionId), String.valueOf(offset), leadBroker.toString());
+
+                    long fetchStart = System.currentTimeMillis();
+                    final FetchResponse fetchResponse;
+                    try {
+                        fetchResponse = prefetch != null ? prefetch.get() : fetch(offset, leadBroker).call();
+                    } catch (ExecutionException e) {
+                        logger.warn("prefetch of offset " + offset + " failed, wait " + backoff + "ms", e.getCause());
+                        // the leader may have changed
+                        leadBroker = null;
+                        backoff = backOff(backoff);
+                        continue;
+                    } finally {
+                        prefetch = null;
+                    }
+                    long fetchTime = System.currentTimeMillis() - fetchStart;
 
-                    final FetchResponse fetchResponse = KafkaRequester.fetchResponse(topic, partitionId, offset, leadBroker, kafkaClusterConfig);
                     if (fetchResponse.errorCode(topic, partitionId) != 0) {
-                        logger.warn("fetch response offset:" + offset + " errorCode:" + fetchResponse.errorCode(topic, partitionId));
-                        Thread.sleep(30000);
+                        logger.warn("fetch response offset:" + offset + " errorCode:" + fetchResponse.errorCode(topic, partitionId) + ", wait " + backoff + "ms");
+                        // the leader may have changed
+                        leadBroker = null;
+                        backoff = backOff(backoff);
+                        continue;
+                    }
+
+                    ByteBufferMessageSet messageSet = fetchResponse.messageSet(topic, partitionId);
+                    long nextOffset = offset;
+                    List<MessageAndOffset> fetched = Lists.newArrayList();
+                    for (MessageAndOffset messageAndOffset : messageSet) {
+                        // a compressed message set may start before the requested offset
+                        if (messageAndOffset.offset() >= offset) {
+                            fetched.add(messageAndOffset);
+                            nextOffset = messageAndOffset.nextOffset();
+                        }
+                    }
+                    int fetchedCount = fetched.size();
+                    metrics.recordFetch(partitionId, fetchedCount, messageSet.sizeInBytes(), fetchTime, fetchResponse.highWatermark(topic, partitionId) - nextOffset);
+
+                    if (fetchedCount == 0) {//nothing this round
+                        logger.debug("no message consumed this round, wait " + backoff + "ms");
+                        backoff = backOff(backoff);
                         continue;
                     }
+                    backoff = MIN_BACKOFF_MS;
+
+                    // fetch the next while parsing this one
+                    prefetch = executorService.submit(fetch(nextOffset, leadBroker));
 
-                    for (MessageAndOffset messageAndOffset : fetchResponse.messageSet(topic, partitionId)) {
-                        offset++;
+                    long parseStart = System.currentTimeMillis();
+                    List<StreamingMessage> parsed = Lists.newArrayListWithCapacity(fetchedCount);
+                    for (MessageAndOffset messageAndOffset : fetched) {
                         consumeMsgCount++;
                         final StreamingMessage streamingMessage = streamingParser.parse(messageAndOffset.message().payload());
                         streamingMessage.setOffset(messageAndOffset.offset());
                         if (streamingParser.filter(streamingMessage)) {
                             final long timestamp = streamingMessage.getTimestamp();
                             if (timestamp >= timeRange.getFirst() && timestamp < timeRange.getSecond()) {
-                                result.add(streamingMessage);
+                                parsed.add(streamingMessage);
                             } else if (timestamp < timeRange.getSecond() + margin) {
                                 //do nothing
                             } else {
@@ -208,17 +289,22 @@ public class KafkaStreamingInput implements IStreamingInput {
                             }
                         }
                     }
+                    // hand off the messages of a fetch at once
+                    result.addAll(parsed);
+                    metrics.recordParse(System.currentTimeMillis() - parseStart);
+                    offset = nextOffset;
+
                     logger.info("Number of messages consumed: " + consumeMsgCount + " offset is: " + offset + " total fetch round: " + fetchRound);
                     if (outOfMargin) {
                         break;
                     }
-                    if (consumeMsgCount == consumeMsgCountAtBeginning) {//nothing this round
-                        logger.info("no message consumed this round, wait 30s");
-                        Thread.sleep(30000);
-                    }
                 }
             } catch (InterruptedException e) {
                 logger.warn("this thread should not be interrupted, just stop fetching", e);
+            } finally {
+                if (prefetch != null) {
+                    prefetch.cancel(true);
+                }
             }
             return result;
         }
@@ -53,6 +53,21 @@ public abstract class StreamingParser {
      */
     abstract public StreamingMessage parse(ByteBuffer message);
 
+    /**
+     * Parses a message into the given row, which can be reused across messages by the caller.
+     * @param message the message
+     * @param row the values of all columns, must be at least as long as the columns
+     * @return the timestamp of the message
+     */
+    public long parseRow(ByteBuffer message, String[] row) {
+        StreamingMessage streamingMessage = parse(message);
+        List<String> data = streamingMessage.getData();
+        for (int i = 0; i < data.size(); i++) {
+            row[i] = data.get(i);
+        }
+        return streamingMessage.getTimestamp();
+    }
+
     abstract public boolean filter(StreamingMessage streamingMessage);
 
     public static StreamingParser getStreamingParser(String parserName, String parserProperties, List<TblColRef> columns) throws ReflectiveOperationException {
@@ -73,35 +88,48 @@ public abstract class StreamingParser {
      * @return true if the columnName is a derived time column; otherwise false;
      */
     public static final boolean populateDerivedTimeColumns(String columnName, List<String> result, long t) {
-        if (derivedTimeColumns.contains(columnName) == false)
+        String value = getDerivedTimeColumnValue(columnName, t);
+        if (value == null)
             return false;
 
+        result.add(value);
+        return true;
+    }
+
+    /**
+     * Calculate the derived time column value.
+     * @param columnName the column name, should be in lower case
+     * @param t the timestamp that to calculate the derived time
+     * @return the derived time if the columnName is a derived time column; otherwise null;
+     */
+    public static final String getDerivedTimeColumnValue(String columnName, long t) {
+        if (derivedTimeColumns.contains(columnName) == false)
+            return null;
+
         long normalized = 0;
         if (columnName.equals("minute_start")) {
             normalized = TimeUtil.getMinuteStart(t);
-            result.add(DateFormat.formatToTimeWithoutMilliStr(normalized));
+            return DateFormat.formatToTimeWithoutMilliStr(normalized);
         } else if (columnName.equals("hour_start")) {
             normalized = TimeUtil.getHourStart(t);
-            result.add(DateFormat.formatToTimeWithoutMilliStr(normalized));
+            return DateFormat.formatToTimeWithoutMilliStr(normalized);
         } else if (columnName.equals("day_start")) {
             //from day_start on, formatTs will output date format
             normalized = TimeUtil.getDayStart(t);
-            result.add(DateFormat.formatToDateStr(normalized));
+            return DateFormat.formatToDateStr(normalized);
         } else if (columnName.equals("week_start")) {
             normalized = TimeUtil.getWeekStart(t);
-            result.add(DateFormat.formatToDateStr(normalized));
+            return DateFormat.formatToDateStr(normalized);
         } else if (columnName.equals("month_start")) {
             normalized = TimeUtil.getMonthStart(t);
-            result.add(DateFormat.formatToDateStr(normalized));
+            return DateFormat.formatToDateStr(normalized);
         } else if (columnName.equals("quarter_start")) {
             normalized = TimeUtil.getQuarterStart(t);
-            result.add(DateFormat.formatToDateStr(normalized));
-        } else if (columnName.equals("year_start")) {
+            return DateFormat.formatToDateStr(normalized);
+        } else {
             normalized = TimeUtil.getYearStart(t);
-            result.add(DateFormat.formatToDateStr(normalized));
+            return DateFormat.formatToDateStr(normalized);
         }
-
-        return true;
     }
 
 }
@@ -21,28 +21,29 @@ package org.apache.kylin.source.kafka;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.kylin.common.util.StreamingMessage;
 import org.apache.kylin.metadata.model.TblColRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.type.MapType;
-import com.fasterxml.jackson.databind.type.SimpleType;
-import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * each json message with a "timestamp" field
+ *
+ * The message is read as a stream of json tokens, only the top level fields of the given columns are kept
+ * and the others are skipped without being materialized. Field names are matched case insensitively.
  */
 public final class TimedJsonStreamParser extends StreamingParser {
 
@@ -52,10 +53,20 @@ public final class TimedJsonStreamParser extends StreamingParser {
     private final ObjectMapper mapper;
     private String tsColName = "timestamp";
     private String tsParser = "org.apache.kylin.source.kafka.DefaultTimeParser";
-    private final JavaType mapType = MapType.construct(HashMap.class, SimpleType.construct(String.class), SimpleType.construct(Object.class));
 
     private AbstractTimeParser streamTimeParser;
 
+    private final JsonFactory jsonFactory;
+    // lower case field name -> index in row, of the columns read from message
+    private final Map<String, Integer> fieldIndex = Maps.newHashMap();
+    // lower case name of the derived time columns, null for the other columns
+    private final String[] derivedColumns;
+    private final String lowerTsColName;
+    // the timestamp as a json number is read directly as long
+    private final boolean isNumericTsParser;
+
+    private static final String NULL_STR = String.valueOf((Object) null);
+
     public TimedJsonStreamParser(List<TblColRef> allColumns, String propertiesStr) {
         this.allColumns = allColumns;
         String[] properties = null;
@@ -100,31 +111,111 @@ public final class TimedJsonStreamParser extends StreamingParser {
         mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
         mapper.disable(DeserializationFeature.FAIL_ON_INVALID_SUBTYPE);
         mapper.enable(DeserializationFeature.USE_JAVA_ARRAY_FOR_JSON_ARRAY);
+        jsonFactory = mapper.getFactory();
+
+        derivedColumns = new String[allColumns.size()];
+        for (int i = 0; i < allColumns.size(); i++) {
+            String columnName = allColumns.get(i).getName().toLowerCase();
+            if (derivedTimeColumns.contains(columnName)) {
+                derivedColumns[i] = columnName;
+            } else {
+                fieldIndex.put(columnName, i);
+            }
+        }
+        lowerTsColName = tsColName.toLowerCase();
+        isNumericTsParser = streamTimeParser.getClass() == DefaultTimeParser.class;
     }
 
     @Override
     public StreamingMessage parse(ByteBuffer buffer) {
+        String[] row = new String[allColumns.size()];
+        long t = parseRow(buffer, row);
+        return new StreamingMessage(Arrays.asList(row), 0, t, Collections.<String, Object> emptyMap());
+    }
+
+    @Override
+    public long parseRow(ByteBuffer buffer, String[] row) {
+        Arrays.fill(row, 0, allColumns.size(), NULL_STR);
+        long t = 0;
+        boolean tsRead = false;
+        String tsStr = NULL_STR;
+
+        JsonParser parser = null;
         try {
-            Map<String, Object> message = mapper.readValue(new ByteBufferBackedInputStream(buffer), mapType);
-            Map<String, Object> root = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-            root.putAll(message);
-            String tsStr = String.valueOf(root.get(tsColName));
-            long t = streamTimeParser.parseTime(tsStr);
-            ArrayList<String> result = Lists.newArrayList();
-
-            for (TblColRef column : allColumns) {
-                String columnName = column.getName().toLowerCase();
-
-                if (populateDerivedTimeColumns(columnName, result, t) == false) {
-                    String x = String.valueOf(root.get(columnName));
-                    result.add(x);
-                }
+            if (buffer.hasArray()) {
+                parser = jsonFactory.createParser(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            } else {
+                parser = jsonFactory.createParser(new ByteBufferBackedInputStream(buffer));
             }
 
-            return new StreamingMessage(result, 0, t, Collections.<String, Object> emptyMap());
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Json message should be an object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                // names are canonicalized by the parser, toLowerCase() returns the same instance if already lower case
+                String name = parser.getCurrentName().toLowerCase();
+                JsonToken token = parser.nextToken();
+                Integer index = fieldIndex.get(name);
+                boolean isTs = name.equals(lowerTsColName);
+
+                if (isTs && isNumericTsParser && token == JsonToken.VALUE_NUMBER_INT) {
+                    t = parser.getLongValue();
+                    tsRead = true;
+                    if (index != null) {
+                        row[index] = String.valueOf(parser.getNumberValue());
+                    }
+                } else if (index != null || isTs) {
+                    String value = readValue(parser, token);
+                    if (index != null) {
+                        row[index] = value;
+                    }
+                    if (isTs) {
+                        tsStr = value;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
         } catch (IOException e) {
             logger.error("error", e);
             throw new RuntimeException(e);
+        } finally {
+            if (parser != null) {
+                try {
+                    parser.close();
+                } catch (IOException e) {
+                    logger.warn("Failed to close json parser", e);
+                }
+            }
+        }
+
+        if (!tsRead) {
+            t = streamTimeParser.parseTime(tsStr);
+        }
+        for (int i = 0; i < derivedColumns.length; i++) {
+            if (derivedColumns[i] != null) {
+                row[i] = getDerivedTimeColumnValue(derivedColumns[i], t);
+            }
+        }
+        return t;
+    }
+
+    private String readValue(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+        case VALUE_NULL:
+            return NULL_STR;
+        case START_OBJECT:
+        case START_ARRAY:
+            // nested values are rare, bind them as before
+            return String.valueOf(parser.readValueAs(Object.class));
+        case VALUE_NUMBER_INT:
+            // rendered like the bound Integer, Long or BigInteger
+            return String.valueOf(parser.getNumberValue());
+        case VALUE_NUMBER_FLOAT:
+            // rendered like the bound Double, e.g. 12.50 is "12.5"
+            return String.valueOf(parser.getDoubleValue());
+        default:
+            return parser.getText();
         }
     }
 
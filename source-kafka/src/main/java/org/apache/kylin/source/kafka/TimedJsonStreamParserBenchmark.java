@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.source.kafka;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.metadata.model.ColumnDesc;
+import org.apache.kylin.metadata.model.TableDesc;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+
+/**
+ * Benchmark of parsing 1 million json messages like the ones of KafkaSampleProducer plus unused fields,
+ * with the previous map based parsing versus TimedJsonStreamParser.parse() and parseRow() into a reused row.
+ */
+public class TimedJsonStreamParserBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimedJsonStreamParserBenchmark.class);
+
+    final int N = 1000000; // 1M
+    final int distinctMessages = 10000;
+
+    final List<TblColRef> columns = Lists.newArrayList();
+    final List<byte[]> messages = Lists.newArrayList();
+
+    public TimedJsonStreamParserBenchmark() {
+        TableDesc table = TableDesc.mockup("KAFKA_TABLE");
+        String[] names = { "order_time", "country", "category", "device", "qty", "amount", "user_age", "day_start", "hour_start", "minute_start" };
+        String[] types = { "bigint", "varchar(256)", "varchar(256)", "varchar(256)", "int", "decimal(19,4)", "int", "date", "timestamp", "timestamp" };
+        for (int i = 0; i < names.length; i++) {
+            columns.add(ColumnDesc.mockup(table, i + 1, names[i], types[i]).getRef());
+        }
+
+        Random rand = new Random(0);
+        String[] countries = { "AUSTRALIA", "CANADA", "CHINA", "INDIA", "JAPAN", "KOREA", "US", "Other" };
+        String[] categories = { "BOOK", "TOY", "CLOTH", "ELECTRONIC", "Other" };
+        String[] devices = { "iOS", "Windows", "Andriod", "Other" };
+        long t = 1470000000000L;
+        for (int i = 0; i < distinctMessages; i++) {
+            StringBuilder buf = new StringBuilder();
+            buf.append("{\"order_time\":").append(t + i * 1000L);
+            buf.append(",\"country\":\"").append(countries[rand.nextInt(countries.length)]).append("\"");
+            buf.append(",\"category\":\"").append(categories[rand.nextInt(categories.length)]).append("\"");
+            buf.append(",\"device\":\"").append(devices[rand.nextInt(devices.length)]).append("\"");
+            buf.append(",\"qty\":").append(rand.nextInt(10));
+            buf.append(",\"amount\":").append(rand.nextInt(100000) / 100.0);
+            buf.append(",\"user\":{\"id\":\"").append(Long.toHexString(rand.nextLong())).append("\",\"age\":").append(rand.nextInt(80)).append("}");
+            buf.append(",\"USER_AGE\":").append(rand.nextInt(80));
+            // fields not in the table
+            for (int j = 0; j < 10; j++) {
+                buf.append(",\"extra_").append(j).append("\":\"").append(Long.toHexString(rand.nextLong())).append("\"");
+            }
+            buf.append(",\"tags\":[\"a\",\"b\",\"c\"]}");
+            messages.add(Bytes.toBytes(buf.toString()));
+        }
+    }
+
+    public void testMapParse(int rounds) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        DefaultTimeParser timeParser = new DefaultTimeParser(null);
+        for (int r = 0; r < rounds; r++) {
+            long t = System.currentTimeMillis();
+            long sum = 0;
+            for (int i = 0; i < N; i++) {
+                ByteBuffer buffer = ByteBuffer.wrap(messages.get(i % distinctMessages));
+                @SuppressWarnings("unchecked")
+                Map<String, Object> message = mapper.readValue(new ByteBufferBackedInputStream(buffer), HashMap.class);
+                Map<String, Object> root = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                root.putAll(message);
+                long ts = timeParser.parseTime(String.valueOf(root.get("order_time")));
+                ArrayList<String> result = Lists.newArrayList();
+                for (TblColRef column : columns) {
+                    String columnName = column.getName().toLowerCase();
+                    if (StreamingParser.populateDerivedTimeColumns(columnName, result, ts) == false) {
+                        result.add(String.valueOf(root.get(columnName)));
+                    }
+                }
+                sum += result.size();
+            }
+            t = System.currentTimeMillis() - t;
+            logger.info("map parse, " + N + " messages to " + sum + " values, " + speed(t) + "K msg/sec");
+        }
+    }
+
+    public void testParse(int rounds) {
+        TimedJsonStreamParser parser = new TimedJsonStreamParser(columns, "tsColName=order_time");
+        for (int r = 0; r < rounds; r++) {
+            long t = System.currentTimeMillis();
+            long sum = 0;
+            for (int i = 0; i < N; i++) {
+                sum += parser.parse(ByteBuffer.wrap(messages.get(i % distinctMessages))).getData().size();
+            }
+            t = System.currentTimeMillis() - t;
+            logger.info("streaming parse, " + N + " messages to " + sum + " values, " + speed(t) + "K msg/sec");
+        }
+    }
+
+    public void testParseRow(int rounds) {
+        TimedJsonStreamParser parser = new TimedJsonStreamParser(columns, "tsColName=order_time");
+        String[] row = new String[columns.size()];
+        for (int r = 0; r < rounds; r++) {
+            long t = System.currentTimeMillis();
+            long sum = 0;
+            for (int i = 0; i < N; i++) {
+                parser.parseRow(ByteBuffer.wrap(messages.get(i % distinctMessages)), row);
+                sum += row.length;
+            }
+            t = System.currentTimeMillis() - t;
+            logger.info("streaming parse into reused row, " + N + " messages to " + sum + " values, " + speed(t) + "K msg/sec");
+        }
+    }
+
+    private int speed(long t) {
+        double sec = (double) t / 1000;
+        return (int) (N / sec / 1000);
+    }
+
+    public static void main(String[] args) throws Exception {
+        TimedJsonStreamParserBenchmark benchmark = new TimedJsonStreamParserBenchmark();
+        benchmark.testMapParse(3);
+        benchmark.testParse(3);
+        benchmark.testParseRow(3);
+    }
+}
@@ -59,6 +59,7 @@ public class KafkaFlatTableJob extends AbstractHadoopJob {
     public static final String CONFIG_KAFKA_TIMEOUT = "kafka.connect.timeout";
     public static final String CONFIG_KAFKA_BUFFER_SIZE = "kafka.connect.buffer.size";
     public static final String CONFIG_KAFKA_CONSUMER_GROUP = "kafka.consumer.group";
+    public static final String CONFIG_KAFKA_PREFETCH_BATCHES = "kafka.prefetch.batches";
     public static final String CONFIG_KAFKA_INPUT_FORMAT = "input.format";
     public static final String CONFIG_KAFKA_PARSER_NAME = "kafka.parser.name";
     @Override
@@ -105,6 +106,7 @@ public class KafkaFlatTableJob extends AbstractHadoopJob {
             job.getConfiguration().set(CONFIG_KAFKA_INPUT_FORMAT, "json");
             job.getConfiguration().set(CONFIG_KAFKA_PARSER_NAME, kafkaConfig.getParserName());
             job.getConfiguration().set(CONFIG_KAFKA_CONSUMER_GROUP, cubeName); // use cubeName as consumer group name
+            job.getConfiguration().set(CONFIG_KAFKA_PREFETCH_BATCHES, String.valueOf(cube.getConfig().getKafkaPrefetchBatches()));
             setupMapper(cube.getSegmentById(segmentId));
             job.setNumReduceTasks(0);
             FileOutputFormat.setOutputPath(job, output);
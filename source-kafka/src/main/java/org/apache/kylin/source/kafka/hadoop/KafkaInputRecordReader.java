@@ -20,7 +20,13 @@ package org.apache.kylin.source.kafka.hadoop;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.BytesWritable;
@@ -32,6 +38,7 @@ import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
 import org.apache.kylin.common.util.Bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,11 +46,22 @@ import org.slf4j.LoggerFactory;
 /**
  * Convert Kafka topic to Hadoop InputFormat
  * Modified from the kafka-hadoop-loader in https://github.com/amient/kafka-hadoop-loader
+ *
+ * The partition is polled by a background thread into a bounded queue of batches, so that fetching overlaps with the mapper.
+ * The consumer is only touched by that thread until it is stopped in close().
  */
 public class KafkaInputRecordReader extends RecordReader<LongWritable, BytesWritable> {
 
     static Logger log = LoggerFactory.getLogger(KafkaInputRecordReader.class);
 
+    public static final String COUNTER_GROUP = "Kafka";
+    public static final String COUNTER_MESSAGES = "Messages";
+    public static final String COUNTER_BYTES = "Bytes";
+    public static final String COUNTER_WAIT_MS = "Fetch wait ms";
+
+    // marks the end of prefetching, either the end offset is reached or an error happens
+    private static final ConsumerRecords<String, String> END_OF_PREFETCH = new ConsumerRecords<>(Collections.<TopicPartition, List<ConsumerRecord<String, String>>> emptyMap());
+
     private Configuration conf;
 
     private KafkaInputSplit split;
@@ -56,24 +74,46 @@ public class KafkaInputRecordReader extends RecordReader<LongWritable, BytesWrit
     private long watermark;
     private long latestOffset;
 
-    private ConsumerRecords<String, String> messages;
     private Iterator<ConsumerRecord<String, String>> iterator;
+    private BlockingQueue<ConsumerRecords<String, String>> prefetched;
+    private Thread prefetchThread;
+    private volatile Exception prefetchError;
+    private volatile boolean closed = false;
+    private TaskAttemptContext context;
     private LongWritable key;
     private BytesWritable value;
 
     private long timeOut = 60000;
     private long bufferSize = 65536;
 
+    private int prefetchBatches = 4;
+
     private long numProcessedMessages = 0L;
+    private long numProcessedBytes = 0L;
+    private long waitTimeMs = 0L;
+    private long startTime;
 
     @Override
     public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+        this.context = context;
         initialize(split, context.getConfiguration());
     }
 
     public void initialize(InputSplit split, Configuration conf) throws IOException, InterruptedException {
+        if (conf.get(KafkaFlatTableJob.CONFIG_KAFKA_BUFFER_SIZE) != null) {
+            bufferSize = Long.parseLong(conf.get(KafkaFlatTableJob.CONFIG_KAFKA_BUFFER_SIZE));
+        }
+
+        String consumerGroup = conf.get(KafkaFlatTableJob.CONFIG_KAFKA_CONSUMER_GROUP);
+        Properties props = new Properties();
+        props.put("receive.buffer.bytes", String.valueOf(bufferSize));
+        initialize(split, conf, org.apache.kylin.source.kafka.util.KafkaClient.getKafkaConsumer(((KafkaInputSplit) split).getBrokers(), consumerGroup, props));
+    }
+
+    void initialize(InputSplit split, Configuration conf, Consumer consumer) throws IOException, InterruptedException {
         this.conf = conf;
         this.split = (KafkaInputSplit) split;
+        this.consumer = consumer;
         brokers = this.split.getBrokers();
         topic = this.split.getTopic();
         partition = this.split.getPartition();
@@ -82,18 +122,63 @@ public class KafkaInputRecordReader extends RecordReader<LongWritable, BytesWrit
         if (conf.get(KafkaFlatTableJob.CONFIG_KAFKA_TIMEOUT) != null) {
             timeOut = Long.parseLong(conf.get(KafkaFlatTableJob.CONFIG_KAFKA_TIMEOUT));
         }
-        if (conf.get(KafkaFlatTableJob.CONFIG_KAFKA_BUFFER_SIZE) != null) {
-            bufferSize = Long.parseLong(conf.get(KafkaFlatTableJob.CONFIG_KAFKA_BUFFER_SIZE));
+        if (conf.get(KafkaFlatTableJob.CONFIG_KAFKA_PREFETCH_BATCHES) != null) {
+            prefetchBatches = Math.max(1, Integer.parseInt(conf.get(KafkaFlatTableJob.CONFIG_KAFKA_PREFETCH_BATCHES)));
         }
 
-        String consumerGroup = conf.get(KafkaFlatTableJob.CONFIG_KAFKA_CONSUMER_GROUP);
-        consumer = org.apache.kylin.source.kafka.util.KafkaClient.getKafkaConsumer(brokers, consumerGroup, null);
-
         earliestOffset = this.split.getOffsetStart();
         latestOffset = this.split.getOffsetEnd();
         TopicPartition topicPartition = new TopicPartition(topic, partition);
         consumer.assign(Arrays.asList(topicPartition));
         log.info("Split {} Topic: {} Broker: {} Partition: {} Start: {} End: {}", new Object[] { this.split, topic, this.split.getBrokers(), partition, earliestOffset, latestOffset });
+
+        startTime = System.currentTimeMillis();
+        prefetched = new ArrayBlockingQueue<>(prefetchBatches);
+        if (watermark < latestOffset) {
+            prefetchThread = new Thread(new Prefetcher(), "kafka-prefetch-" + topic + "-" + partition);
+            prefetchThread.setDaemon(true);
+            prefetchThread.start();
+        }
+    }
+
+    private class Prefetcher implements Runnable {
+        @Override
+        public void run() {
+            TopicPartition topicPartition = new TopicPartition(topic, partition);
+            long fetchedOffset = watermark;
+            try {
+                log.info("{} fetching offset {} ", topic + ":" + split.getBrokers() + ":" + partition, fetchedOffset);
+                consumer.seek(topicPartition, fetchedOffset);
+                while (!closed && fetchedOffset < latestOffset) {
+                    ConsumerRecords<String, String> records = consumer.poll(timeOut);
+                    List<ConsumerRecord<String, String>> partitionRecords = records.records(topicPartition);
+                    if (partitionRecords.isEmpty()) {
+                        log.info("No more messages, stop");
+                        throw new IOException(String.format("Unexpected ending of stream, expected ending offset %d, but end at %d", latestOffset, fetchedOffset));
+                    }
+                    fetchedOffset = partitionRecords.get(partitionRecords.size() - 1).offset() + 1;
+                    // blocks when the mapper is behind, which bounds the buffered messages
+                    prefetched.put(records);
+                }
+            } catch (WakeupException e) {
+                // closed
+            } catch (InterruptedException e) {
+                // closed
+            } catch (Exception e) {
+                prefetchError = e;
+            }
+
+            // never blocks once closed: the queue may be full and nobody drains it any more
+            try {
+                while (!prefetched.offer(END_OF_PREFETCH, 100, TimeUnit.MILLISECONDS)) {
+                    if (closed) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // closed, nobody is waiting
+            }
+        }
     }
 
     @Override
@@ -110,16 +195,19 @@ public class KafkaInputRecordReader extends RecordReader<LongWritable, BytesWrit
             return false;
         }
 
-        if (messages == null) {
-            log.info("{} fetching offset {} ", topic + ":" + split.getBrokers() + ":" + partition, watermark);
-            TopicPartition topicPartition = new TopicPartition(topic, partition);
-            consumer.seek(topicPartition, watermark);
-            messages = consumer.poll(timeOut);
-            iterator = messages.iterator();
-            if (!iterator.hasNext()) {
-                log.info("No more messages, stop");
-                throw new IOException(String.format("Unexpected ending of stream, expected ending offset %d, but end at %d", latestOffset, watermark));
+        if (iterator == null || !iterator.hasNext()) {
+            long waitStart = System.currentTimeMillis();
+            ConsumerRecords<String, String> messages = prefetched.take();
+            waitTimeMs += System.currentTimeMillis() - waitStart;
+            if (messages == END_OF_PREFETCH) {
+                // let the following calls fail the same way
+                prefetched.put(END_OF_PREFETCH);
+                if (prefetchError instanceof IOException) {
+                    throw (IOException) prefetchError;
+                }
+                throw new IOException(String.format("Unexpected ending of stream, expected ending offset %d, but end at %d", latestOffset, watermark), prefetchError);
             }
+            iterator = messages.records(new TopicPartition(topic, partition)).iterator();
         }
 
         if (iterator.hasNext()) {
@@ -129,10 +217,7 @@ public class KafkaInputRecordReader extends RecordReader<LongWritable, BytesWrit
             value.set(valuebytes, 0, valuebytes.length);
             watermark = message.offset() + 1;
             numProcessedMessages++;
-            if (!iterator.hasNext()) {
-                messages = null;
-                iterator = null;
-            }
+            numProcessedBytes += valuebytes.length;
             return true;
         }
 
@@ -160,7 +245,27 @@ public class KafkaInputRecordReader extends RecordReader<LongWritable, BytesWrit
 
     @Override
     public void close() throws IOException {
-        log.info("{} num. processed messages {} ", topic + ":" + split.getBrokers() + ":" + partition, numProcessedMessages);
+        closed = true;
+        if (prefetchThread != null) {
+            consumer.wakeup();
+            prefetchThread.interrupt();
+            try {
+                prefetchThread.join(timeOut);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (prefetchThread.isAlive()) {
+                log.warn("Prefetch thread of {} does not stop in {} ms", topic + ":" + partition, timeOut);
+            }
+        }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        log.info("{} num. processed messages {}, bytes {}, {} msg/sec, waited {} ms for fetching", new Object[] { topic + ":" + split.getBrokers() + ":" + partition, numProcessedMessages, numProcessedBytes, numProcessedMessages * 1000 / elapsed, waitTimeMs });
+        if (context != null) {
+            context.getCounter(COUNTER_GROUP, COUNTER_MESSAGES).increment(numProcessedMessages);
+            context.getCounter(COUNTER_GROUP, COUNTER_BYTES).increment(numProcessedBytes);
+            context.getCounter(COUNTER_GROUP, COUNTER_WAIT_MS).increment(waitTimeMs);
+        }
         consumer.close();
     }
 
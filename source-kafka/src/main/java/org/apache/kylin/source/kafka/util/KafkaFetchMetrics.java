@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.source.kafka.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and consumer lag of fetching a kafka topic, accumulated since the process started.
+ *
+ * The lag of a partition is the distance from the last fetched offset to the high watermark of the partition.
+ */
+public class KafkaFetchMetrics {
+
+    private static final ConcurrentMap<String, KafkaFetchMetrics> METRICS = new ConcurrentHashMap<>();
+
+    public static KafkaFetchMetrics getInstance(String topic) {
+        KafkaFetchMetrics metrics = METRICS.get(topic);
+        if (metrics == null) {
+            METRICS.putIfAbsent(topic, new KafkaFetchMetrics(topic));
+            metrics = METRICS.get(topic);
+        }
+        return metrics;
+    }
+
+    public static Map<String, KafkaFetchMetrics> getAll() {
+        return METRICS;
+    }
+
+    // ============================================================================
+
+    private final String topic;
+    private final AtomicLong messageCount = new AtomicLong();
+    private final AtomicLong byteCount = new AtomicLong();
+    private final AtomicLong fetchCount = new AtomicLong();
+    private final AtomicLong fetchTimeMs = new AtomicLong();
+    private final AtomicLong parseTimeMs = new AtomicLong();
+    private final ConcurrentMap<Integer, Long> partitionLags = new ConcurrentHashMap<>();
+
+    private KafkaFetchMetrics(String topic) {
+        this.topic = topic;
+    }
+
+    public void recordFetch(int partition, int messages, long bytes, long timeMs, long lag) {
+        fetchCount.incrementAndGet();
+        messageCount.addAndGet(messages);
+        byteCount.addAndGet(bytes);
+        fetchTimeMs.addAndGet(timeMs);
+        partitionLags.put(partition, Math.max(0, lag));
+    }
+
+    public void recordParse(long timeMs) {
+        parseTimeMs.addAndGet(timeMs);
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public long getMessageCount() {
+        return messageCount.get();
+    }
+
+    public long getByteCount() {
+        return byteCount.get();
+    }
+
+    public long getFetchCount() {
+        return fetchCount.get();
+    }
+
+    public long getFetchTimeMs() {
+        return fetchTimeMs.get();
+    }
+
+    public long getParseTimeMs() {
+        return parseTimeMs.get();
+    }
+
+    /**
+     * @return messages fetched per second of fetch time
+     */
+    public double getFetchThroughput() {
+        long t = fetchTimeMs.get();
+        return t == 0 ? 0 : messageCount.get() * 1000.0 / t;
+    }
+
+    public Map<Integer, Long> getPartitionLags() {
+        return partitionLags;
+    }
+
+    public long getTotalLag() {
+        long lag = 0;
+        for (Long l : partitionLags.values()) {
+            lag += l;
+        }
+        return lag;
+    }
+
+    @Override
+    public String toString() {
+        return "KafkaFetchMetrics [topic=" + topic + ", messages=" + getMessageCount() + ", bytes=" + getByteCount() + ", fetches=" + getFetchCount() //
+                + ", fetchTimeMs=" + getFetchTimeMs() + ", parseTimeMs=" + getParseTimeMs() + ", fetchThroughput=" + (long) getFetchThroughput() + " msg/sec, lag=" + getTotalLag() + "]";
+    }
+}
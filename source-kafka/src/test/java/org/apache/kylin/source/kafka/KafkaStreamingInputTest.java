@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.source.kafka;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class KafkaStreamingInputTest {
+
+    @Test
+    public void testNextBackoff() {
+        long backoff = KafkaStreamingInput.MIN_BACKOFF_MS;
+        assertEquals(2 * backoff, KafkaStreamingInput.nextBackoff(backoff));
+
+        for (int i = 0; i < 20; i++) {
+            backoff = KafkaStreamingInput.nextBackoff(backoff);
+            assertTrue(backoff <= KafkaStreamingInput.MAX_BACKOFF_MS);
+        }
+        assertEquals(KafkaStreamingInput.MAX_BACKOFF_MS, backoff);
+    }
+
+    @Test
+    public void testBackOffSleeps() throws Exception {
+        long start = System.currentTimeMillis();
+        assertEquals(200, KafkaStreamingInput.backOff(100));
+        assertTrue(System.currentTimeMillis() - start >= 100);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.source.kafka;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.StreamingMessage;
+import org.apache.kylin.metadata.model.ColumnDesc;
+import org.apache.kylin.metadata.model.TableDesc;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+
+public class TimedJsonStreamParserTest {
+
+    private static List<TblColRef> columns(String... names) {
+        TableDesc table = TableDesc.mockup("KAFKA_TABLE");
+        List<TblColRef> result = Lists.newArrayList();
+        for (int i = 0; i < names.length; i++) {
+            result.add(ColumnDesc.mockup(table, i + 1, names[i], "varchar(256)").getRef());
+        }
+        return result;
+    }
+
+    @Test
+    public void testSameAsBoundMap() throws Exception {
+        List<TblColRef> columns = columns("ts", "price", "qty", "big", "ratio", "name", "flag", "missing", "user", "DAY_START");
+        String json = "{\"TS\":1470000000000,\"price\":12.50,\"qty\":7,\"big\":12345678901234567890,\"ratio\":1e3,\"name\":\"a b\",\"flag\":true,"//
+                + "\"user\":{\"id\":1},\"unused\":[1,2],\"missing2\":null}";
+
+        TimedJsonStreamParser parser = new TimedJsonStreamParser(columns, "tsColName=ts");
+        StreamingMessage message = parser.parse(ByteBuffer.wrap(Bytes.toBytes(json)));
+
+        assertEquals(1470000000000L, message.getTimestamp());
+        assertEquals(mapParse(columns, json, message.getTimestamp()), message.getData());
+        assertEquals("12.5", message.getData().get(1));
+        assertEquals("1000.0", message.getData().get(4));
+        assertEquals("null", message.getData().get(7));
+    }
+
+    @Test
+    public void testParseRowReusesRow() throws Exception {
+        List<TblColRef> columns = columns("ts", "price");
+        TimedJsonStreamParser parser = new TimedJsonStreamParser(columns, "tsColName=ts");
+
+        String[] row = new String[columns.size()];
+        parser.parseRow(ByteBuffer.wrap(Bytes.toBytes("{\"ts\":1000,\"price\":1.0}")), row);
+        assertArrayEquals(new String[] { "1000", "1.0" }, row);
+
+        // fields absent from the next message must not leak from the previous one
+        long t = parser.parseRow(ByteBuffer.wrap(Bytes.toBytes("{\"ts\":2000}")), row);
+        assertEquals(2000, t);
+        assertArrayEquals(new String[] { "2000", "null" }, row);
+    }
+
+    @Test
+    public void testDefaultParseRow() {
+        StreamingParser parser = new StreamingParser() {
+            @Override
+            public StreamingMessage parse(ByteBuffer message) {
+                return new StreamingMessage(Arrays.asList("a", "b"), 0, 42, Collections.<String, Object> emptyMap());
+            }
+
+            @Override
+            public boolean filter(StreamingMessage streamingMessage) {
+                return true;
+            }
+        };
+
+        String[] row = new String[2];
+        assertEquals(42, parser.parseRow(ByteBuffer.allocate(0), row));
+        assertArrayEquals(new String[] { "a", "b" }, row);
+    }
+
+    // how messages were parsed before, by binding them into a map
+    private static List<String> mapParse(List<TblColRef> columns, String json, long t) throws Exception {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> message = new ObjectMapper().readValue(json, HashMap.class);
+        Map<String, Object> root = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        root.putAll(message);
+        List<String> result = Lists.newArrayList();
+        for (TblColRef column : columns) {
+            String columnName = column.getName().toLowerCase();
+            if (StreamingParser.populateDerivedTimeColumns(columnName, result, t) == false) {
+                result.add(String.valueOf(root.get(columnName)));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.source.kafka.hadoop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kylin.common.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KafkaInputRecordReaderTest {
+
+    private static final String TOPIC = "test_topic";
+    private static final int PARTITION = 0;
+
+    private Configuration conf;
+    private MockConsumer<String, String> consumer;
+
+    @Before
+    public void setup() {
+        conf = new Configuration(false);
+        conf.set(KafkaFlatTableJob.CONFIG_KAFKA_TIMEOUT, "60000");
+        conf.set(KafkaFlatTableJob.CONFIG_KAFKA_PREFETCH_BATCHES, "1");
+
+        consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(Arrays.asList(new TopicPartition(TOPIC, PARTITION)));
+    }
+
+    // each poll of the consumer returns the next batch of messages
+    private void scheduleBatches(int batches, final int batchSize) {
+        for (int b = 0; b < batches; b++) {
+            final int start = b * batchSize;
+            consumer.schedulePollTask(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = start; i < start + batchSize; i++) {
+                        consumer.addRecord(new ConsumerRecord<String, String>(TOPIC, PARTITION, i, null, "msg" + i));
+                    }
+                }
+            });
+        }
+    }
+
+    private KafkaInputRecordReader newReader(long offsetStart, long offsetEnd) throws Exception {
+        KafkaInputRecordReader reader = new KafkaInputRecordReader();
+        reader.initialize(new KafkaInputSplit("localhost:9092", TOPIC, PARTITION, offsetStart, offsetEnd), conf, consumer);
+        return reader;
+    }
+
+    @Test
+    public void testReadInBatches() throws Exception {
+        scheduleBatches(4, 5);
+        KafkaInputRecordReader reader = newReader(0, 20);
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(reader.nextKeyValue());
+            assertEquals(i, reader.getCurrentKey().get());
+            assertEquals("msg" + i, Bytes.toString(reader.getCurrentValue().copyBytes()));
+        }
+        assertFalse(reader.nextKeyValue());
+        assertEquals(1.0f, reader.getProgress(), 0);
+        reader.close();
+    }
+
+    @Test
+    public void testUnexpectedEnding() throws Exception {
+        scheduleBatches(1, 5);
+        KafkaInputRecordReader reader = newReader(0, 10);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(reader.nextKeyValue());
+        }
+        // the following calls fail the same way
+        for (int i = 0; i < 2; i++) {
+            try {
+                reader.nextKeyValue();
+                fail("stream ends before the end offset");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("Unexpected ending of stream"));
+            }
+        }
+        reader.close();
+    }
+
+    @Test
+    public void testCloseWhilePrefetchQueueFull() throws Exception {
+        scheduleBatches(10, 10);
+        KafkaInputRecordReader reader = newReader(0, 100);
+
+        assertTrue(reader.nextKeyValue());
+        // let the prefetcher fill the queue and block on the next batch
+        Thread.sleep(500);
+
+        long start = System.currentTimeMillis();
+        reader.close();
+        assertTrue(System.currentTimeMillis() - start < 10000);
+    }
+}
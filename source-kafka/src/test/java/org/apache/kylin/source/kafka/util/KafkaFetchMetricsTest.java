@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.source.kafka.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class KafkaFetchMetricsTest {
+
+    @Test
+    public void testRecord() {
+        KafkaFetchMetrics metrics = KafkaFetchMetrics.getInstance("KafkaFetchMetricsTest.testRecord");
+        assertSame(metrics, KafkaFetchMetrics.getInstance("KafkaFetchMetricsTest.testRecord"));
+
+        metrics.recordFetch(0, 100, 1000, 50, 30);
+        metrics.recordFetch(1, 200, 3000, 150, 20);
+        metrics.recordFetch(0, 100, 1000, 0, 10);
+        metrics.recordParse(7);
+
+        assertEquals(400, metrics.getMessageCount());
+        assertEquals(5000, metrics.getByteCount());
+        assertEquals(3, metrics.getFetchCount());
+        assertEquals(200, metrics.getFetchTimeMs());
+        assertEquals(7, metrics.getParseTimeMs());
+        assertEquals(2000.0, metrics.getFetchThroughput(), 0.001);
+
+        // the lag of a partition is the latest one
+        assertEquals(10, (long) metrics.getPartitionLags().get(0));
+        assertEquals(30, metrics.getTotalLag());
+    }
+
+    @Test
+    public void testNegativeLag() {
+        KafkaFetchMetrics metrics = KafkaFetchMetrics.getInstance("KafkaFetchMetricsTest.testNegativeLag");
+        assertEquals(0, metrics.getFetchThroughput(), 0);
+
+        // the high watermark of the response may be behind the messages fetched
+        metrics.recordFetch(0, 10, 100, 10, -5);
+        assertEquals(0, metrics.getTotalLag());
+    }
+}
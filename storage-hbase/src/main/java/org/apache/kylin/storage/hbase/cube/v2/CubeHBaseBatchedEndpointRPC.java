@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.gridtable.EmptyGTScanner;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.metadata.model.ISegment;
+import org.apache.kylin.storage.gtrecord.StorageResponseGTScatter;
+import org.apache.kylin.storage.hbase.HBaseConnection;
+import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest;
+import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest.IntList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registers the segment visit into the current SegmentVisitBatch instead of calling the endpoint right away,
+ * so that regions of different segments on the same region server are visited by one CubeVisitService call.
+ *
+ * Falls back to CubeHBaseEndpointRPC if there's no batch bound to the current thread.
+ */
+public class CubeHBaseBatchedEndpointRPC extends CubeHBaseEndpointRPC {
+
+    private static final Logger logger = LoggerFactory.getLogger(CubeHBaseBatchedEndpointRPC.class);
+
+    public CubeHBaseBatchedEndpointRPC(ISegment segment, Cuboid cuboid, GTInfo fullGTInfo) {
+        super(segment, cuboid, fullGTInfo);
+    }
+
+    @Override
+    public IGTScanner getGTScanner(final GTScanRequest scanRequest) throws IOException {
+        SegmentVisitBatch batch = SegmentVisitBatch.current();
+        if (batch == null) {
+            return super.getGTScanner(scanRequest);
+        }
+
+        Pair<Short, Short> shardNumAndBaseShard = getShardNumAndBaseShard();
+        short shardNum = shardNumAndBaseShard.getFirst();
+        short cuboidBaseShard = shardNumAndBaseShard.getSecond();
+        int totalShards = cubeSeg.getTotalShards(cuboid.getId());
+
+        // primary key (also the 0th column block) is always selected
+        final ImmutableBitSet selectedColBlocks = scanRequest.getSelectedColBlocks().set(0);
+        List<List<Integer>> hbaseColumnsToGT = getHBaseColumnsGTMapping(selectedColBlocks);
+
+        List<RawScan> rawScans = preparedHBaseScans(scanRequest.getGTScanRanges(), selectedColBlocks);
+        scanRequest.clearScanRanges();//since raw scans are sent to coprocessor, we don't need to duplicate sending it
+
+        // globally shared connection, does not require close
+        HConnection conn = HBaseConnection.get(cubeSeg.getCubeInstance().getConfig().getStorageUrl());
+        List<HRegionLocation> regions = SegmentVisitBatch.locateRegions(conn, cubeSeg.getStorageLocationIdentifier(), getEPKeyRanges(cuboidBaseShard, shardNum, totalShards));
+        if (regions.isEmpty()) {
+            logger.info("No region to visit for segment {}", cubeSeg);
+            return new EmptyGTScanner(0);
+        }
+
+        ExpectedSizeIterator epResultItr = new ExpectedSizeIterator(regions.size());
+        scanRequest.setTimeout(epResultItr.getRpcTimeout());
+
+        CubeVisitRequest.Builder builder = CubeVisitRequest.newBuilder();
+        builder.setGtScanRequest(serializeGTScanReq(scanRequest));
+        builder.setHbaseRawScan(serializeRawScans(rawScans));
+        for (List<Integer> list : hbaseColumnsToGT) {
+            builder.addHbaseColumnsToGT(IntList.newBuilder().addAllInts(list).build());
+        }
+        builder.setRowkeyPreambleSize(cubeSeg.getRowKeyPreambleSize());
+        builder.setKylinProperties(KylinConfig.getInstanceFromEnv().getConfigAsString());
+
+        logger.info("The scan {} for segment {} is batched with {} separate raw scans on {} regions", Integer.toHexString(System.identityHashCode(scanRequest)), cubeSeg, rawScans.size(), regions.size());
+        for (RawScan rs : rawScans) {
+            logScan(rs, cubeSeg.getStorageLocationIdentifier());
+        }
+
+        batch.register(new SegmentVisitBatch.SegmentVisit(cubeSeg, regions, builder.build(), epResultItr));
+
+        return new StorageResponseGTScatter(fullGTInfo, batch.dispatchOnFirstAccess(epResultItr), scanRequest.getColumns(), 0, scanRequest.getStoragePushDownLimit());
+    }
+}
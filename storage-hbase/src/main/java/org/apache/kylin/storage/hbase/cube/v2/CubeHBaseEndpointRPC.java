@@ -21,8 +21,13 @@ package org.apache.kylin.storage.hbase.cube.v2;
 import java.io.IOException;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.DataFormatException;
 
@@ -40,7 +45,9 @@ import org.apache.kylin.common.util.ImmutableBitSet;
 import org.apache.kylin.common.util.LoggableCachedThreadPool;
 import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.metadata.model.ISegment;
+import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.engine.mr.common.CubeStatsReader;
 import org.apache.kylin.gridtable.GTInfo;
 import org.apache.kylin.gridtable.GTScanRequest;
 import org.apache.kylin.gridtable.GTScanSelfTerminatedException;
@@ -56,6 +63,8 @@ import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.Cub
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.HBaseZeroCopyByteString;
@@ -66,6 +75,31 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
 
     private static ExecutorService executorService = new LoggableCachedThreadPool();
 
+    // segment uuid + last build time => cuboid row estimates, segments are immutable once built
+    private static final Cache<String, Map<Long, Long>> cuboidRowsCache = CacheBuilder.newBuilder().maximumSize(1000).expireAfterAccess(1, TimeUnit.HOURS).build();
+
+    /**
+     * @return the estimated row count of the cuboid in the segment, or -1 if there's no statistics
+     */
+    static long estimateCuboidRows(final CubeSegment cubeSeg, long cuboidId) {
+        String key = cubeSeg.getUuid() + "_" + cubeSeg.getLastBuildTime();
+        Map<Long, Long> cuboidRows;
+        try {
+            cuboidRows = cuboidRowsCache.get(key, new Callable<Map<Long, Long>>() {
+                @Override
+                public Map<Long, Long> call() throws Exception {
+                    return new CubeStatsReader(cubeSeg, KylinConfig.getInstanceFromEnv()).getCuboidRowEstimatesHLL();
+                }
+            });
+        } catch (Exception e) {
+            logger.warn("Cannot read statistics of segment " + cubeSeg + ", will not split its scans", e);
+            cuboidRowsCache.put(key, Collections.<Long, Long> emptyMap());
+            return -1;
+        }
+        Long rows = cuboidRows.get(cuboidId);
+        return rows == null ? -1 : rows;
+    }
+
     public CubeHBaseEndpointRPC(ISegment segment, Cuboid cuboid, GTInfo fullGTInfo) {
         super(segment, cuboid, fullGTInfo);
     }
@@ -77,7 +111,7 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
     }
 
     @SuppressWarnings("unchecked")
-    private List<Pair<byte[], byte[]>> getEPKeyRanges(short baseShard, short shardNum, int totalShards) {
+    protected List<Pair<byte[], byte[]>> getEPKeyRanges(short baseShard, short shardNum, int totalShards) {
         if (shardNum == 0) {
             return Lists.newArrayList();
         }
@@ -109,7 +143,6 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
         int totalShards = cubeSeg.getTotalShards(cuboid.getId());
 
         ByteString scanRequestByteString = null;
-        ByteString rawScanByteString = null;
 
         // primary key (also the 0th column block) is always selected
         final ImmutableBitSet selectedColBlocks = scanRequest.getSelectedColBlocks().set(0);
@@ -125,14 +158,35 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
 
         //TODO: raw scan can be constructed at region side to reduce traffic
         List<RawScan> rawScans = preparedHBaseScans(scanRequest.getGTScanRanges(), selectedColBlocks);
-        rawScanByteString = serializeRawScans(rawScans);
-        
+
+        // KylinConfig: use env instance instead of CubeSegment, because KylinConfig will share among queries
+        // for different cubes until redeployment of coprocessor jar.
+        final KylinConfig kylinConfig = KylinConfig.getInstanceFromEnv();
+        final List<Pair<byte[], byte[]>> epRanges = getEPKeyRanges(cuboidBaseShard, shardNum, totalShards);
+
+        // each group of raw scans is sent as a separate endpoint call to every region
+        List<List<RawScan>> rawScanGroups = Collections.singletonList(rawScans);
+        int expectedSize = shardNum;
+        long estimatedRows = kylinConfig.isQueryScanSplitEnabled() && !rawScans.isEmpty() ? estimateCuboidRows(cubeSeg, cuboid.getId()) : -1;
+        // no region holds more rows than the whole cuboid, so regions are counted only for a cuboid that may split
+        if (estimatedRows > kylinConfig.getQueryScanSplitRows()) {
+            int regionCount = SegmentVisitBatch.locateRegions(conn, cubeSeg.getStorageLocationIdentifier(), epRanges).size();
+            int splitCount = RawScanSplitter.decideSplitCount(estimatedRows, regionCount, kylinConfig.getQueryScanSplitRows(), kylinConfig.getQueryScanSplitMax());
+            if (splitCount > 1) {
+                logger.info("Cuboid {} has about {} rows in {} regions, splitting each region into {} sub ranges", cuboid.getId(), estimatedRows, regionCount, splitCount);
+                rawScanGroups = RawScanSplitter.split(rawScans, splitCount, cubeSeg.getRowKeyPreambleSize());
+                // each group is sent to every shard, narrow ranges may give fewer groups than splitCount
+                expectedSize = rawScanGroups.size() * shardNum;
+            }
+        }
+        final Semaphore splitConcurrency = rawScanGroups.size() > 1 ? new Semaphore(Math.max(1, kylinConfig.getQueryScanSplitConcurrency())) : null;
+
         scanRequest.clearScanRanges();//since raw scans are sent to coprocessor, we don't need to duplicate sending it
-        final ExpectedSizeIterator epResultItr = new ExpectedSizeIterator(shardNum);
+        final ExpectedSizeIterator epResultItr = new ExpectedSizeIterator(expectedSize);
         scanRequest.setTimeout(epResultItr.getRpcTimeout());
         scanRequestByteString = serializeGTScanReq(scanRequest);
-        
-        logger.info("Serialized scanRequestBytes {} bytes, rawScanBytesString {} bytes", scanRequestByteString.size(), rawScanByteString.size());
+
+        logger.info("Serialized scanRequestBytes {} bytes, {} groups of raw scans", scanRequestByteString.size(), rawScanGroups.size());
 
         logger.info("The scan {} for segment {} is as below with {} separate raw scans, shard part of start/end key is set to 0", Integer.toHexString(System.identityHashCode(scanRequest)), cubeSeg, rawScans.size());
         for (RawScan rs : rawScans) {
@@ -143,90 +197,103 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
 
         final AtomicLong totalScannedCount = new AtomicLong(0);
 
-        // KylinConfig: use env instance instead of CubeSegment, because KylinConfig will share among queries
-        // for different cubes until redeployment of coprocessor jar.
-        final KylinConfig kylinConfig = KylinConfig.getInstanceFromEnv();
         final boolean compressionResult = kylinConfig.getCompressionResult();
         final CubeVisitProtos.CubeVisitRequest.Builder builder = CubeVisitProtos.CubeVisitRequest.newBuilder();
-        builder.setGtScanRequest(scanRequestByteString).setHbaseRawScan(rawScanByteString);
+        builder.setGtScanRequest(scanRequestByteString);
         for (IntList intList : hbaseColumnsToGTIntList) {
             builder.addHbaseColumnsToGT(intList);
         }
         builder.setRowkeyPreambleSize(cubeSeg.getRowKeyPreambleSize());
         builder.setKylinProperties(kylinConfig.getConfigAsString());
 
-        for (final Pair<byte[], byte[]> epRange : getEPKeyRanges(cuboidBaseShard, shardNum, totalShards)) {
-            executorService.submit(new Runnable() {
-                @Override
-                public void run() {
-
-                    final String logHeader = "<sub-thread for GTScanRequest " + Integer.toHexString(System.identityHashCode(scanRequest)) + "> ";
-                    final boolean[] abnormalFinish = new boolean[1];
-
-                    try {
-                        HTableInterface table = conn.getTable(cubeSeg.getStorageLocationIdentifier(), HBaseConnection.getCoprocessorPool());
-
-                        final CubeVisitRequest request = builder.build();
-                        final byte[] startKey = epRange.getFirst();
-                        final byte[] endKey = epRange.getSecond();
-
-                        table.coprocessorService(CubeVisitService.class, startKey, endKey, //
-                                new Batch.Call<CubeVisitService, CubeVisitResponse>() {
-                                    public CubeVisitResponse call(CubeVisitService rowsService) throws IOException {
-                                        ServerRpcController controller = new ServerRpcController();
-                                        BlockingRpcCallback<CubeVisitResponse> rpcCallback = new BlockingRpcCallback<>();
-                                        rowsService.visitCube(controller, request, rpcCallback);
-                                        CubeVisitResponse response = rpcCallback.get();
-                                        if (controller.failedOnException()) {
-                                            throw controller.getFailedOn();
-                                        }
-                                        return response;
-                                    }
-                                }, new Batch.Callback<CubeVisitResponse>() {
-                                    @Override
-                                    public void update(byte[] region, byte[] row, CubeVisitResponse result) {
-                                        if (region == null)
-                                            return;
-
-                                        totalScannedCount.addAndGet(result.getStats().getScannedRowCount());
-                                        logger.info(logHeader + getStatsString(region, result));
-
-                                        if (result.getStats().getNormalComplete() != 1) {
-                                            abnormalFinish[0] = true;
-                                            return;
+        for (List<RawScan> rawScanGroup : rawScanGroups) {
+            final CubeVisitRequest request = builder.clone().setHbaseRawScan(serializeRawScans(rawScanGroup)).build();
+            for (final Pair<byte[], byte[]> epRange : epRanges) {
+                epResultItr.addRpcFuture(executorService.submit(new Runnable() {
+                    @Override
+                    public void run() {
+
+                        final String logHeader = "<sub-thread for GTScanRequest " + Integer.toHexString(System.identityHashCode(scanRequest)) + "> ";
+                        final boolean[] abnormalFinish = new boolean[1];
+
+                        try {
+                            if (splitConcurrency != null) {
+                                splitConcurrency.acquire();
+                            }
+                        } catch (InterruptedException e) {
+                            epResultItr.notifyCoprocException(e);
+                            return;
+                        }
+
+                        try {
+                            HTableInterface table = conn.getTable(cubeSeg.getStorageLocationIdentifier(), HBaseConnection.getCoprocessorPool());
+
+                            final byte[] startKey = epRange.getFirst();
+                            final byte[] endKey = epRange.getSecond();
+
+                            table.coprocessorService(CubeVisitService.class, startKey, endKey, //
+                                    new Batch.Call<CubeVisitService, CubeVisitResponse>() {
+                                        public CubeVisitResponse call(CubeVisitService rowsService) throws IOException {
+                                            ServerRpcController controller = new ServerRpcController();
+                                            BlockingRpcCallback<CubeVisitResponse> rpcCallback = new BlockingRpcCallback<>();
+                                            rowsService.visitCube(controller, request, rpcCallback);
+                                            CubeVisitResponse response = rpcCallback.get();
+                                            if (controller.failedOnException()) {
+                                                throw controller.getFailedOn();
+                                            }
+                                            return response;
                                         }
-                                        try {
-                                            if (compressionResult) {
-                                                epResultItr.append(CompressionUtils.decompress(HBaseZeroCopyByteString.zeroCopyGetBytes(result.getCompressedRows())));
-                                            } else {
-                                                epResultItr.append(HBaseZeroCopyByteString.zeroCopyGetBytes(result.getCompressedRows()));
+                                    }, new Batch.Callback<CubeVisitResponse>() {
+                                        @Override
+                                        public void update(byte[] region, byte[] row, CubeVisitResponse result) {
+                                            if (region == null)
+                                                return;
+
+                                            totalScannedCount.addAndGet(result.getStats().getScannedRowCount());
+                                            logger.info(logHeader + getStatsString(region, result));
+                                            epResultItr.recordStats(result);
+
+                                            if (result.getStats().getNormalComplete() != 1) {
+                                                abnormalFinish[0] = true;
+                                                return;
+                                            }
+                                            try {
+                                                if (compressionResult) {
+                                                    epResultItr.append(CompressionUtils.decompress(HBaseZeroCopyByteString.zeroCopyGetBytes(result.getCompressedRows())));
+                                                } else {
+                                                    epResultItr.append(HBaseZeroCopyByteString.zeroCopyGetBytes(result.getCompressedRows()));
+                                                }
+                                            } catch (IOException | DataFormatException e) {
+                                                throw new RuntimeException(logHeader + "Error when decompressing", e);
                                             }
-                                        } catch (IOException | DataFormatException e) {
-                                            throw new RuntimeException(logHeader + "Error when decompressing", e);
                                         }
-                                    }
-                                });
-
-                    } catch (Throwable ex) {
-                        logger.error(logHeader + "Error when visiting cubes by endpoint", ex); // double log coz the query thread may already timeout
-                        epResultItr.notifyCoprocException(ex);
-                        return;
-                    }
-
-                    if (abnormalFinish[0]) {
-                        Throwable ex = new GTScanSelfTerminatedException(logHeader + "The coprocessor thread stopped itself due to scan timeout or scan threshold(check region server log), failing current query...");
-                        logger.error(logHeader + "Error when visiting cubes by endpoint", ex); // double log coz the query thread may already timeout
-                        epResultItr.notifyCoprocException(ex);
-                        return;
+                                    });
+
+                        } catch (Throwable ex) {
+                            logger.error(logHeader + "Error when visiting cubes by endpoint", ex); // double log coz the query thread may already timeout
+                            epResultItr.notifyCoprocException(ex);
+                            return;
+                        } finally {
+                            if (splitConcurrency != null) {
+                                splitConcurrency.release();
+                            }
+                        }
+
+                        if (abnormalFinish[0]) {
+                            Throwable ex = new GTScanSelfTerminatedException(logHeader + "The coprocessor thread stopped itself due to scan timeout or scan threshold(check region server log), failing current query...");
+                            logger.error(logHeader + "Error when visiting cubes by endpoint", ex); // double log coz the query thread may already timeout
+                            epResultItr.notifyCoprocException(ex);
+                            return;
+                        }
                     }
-                }
-            });
+                }));
+            }
         }
 
-        return new StorageResponseGTScatter(fullGTInfo, epResultItr, scanRequest.getColumns(), totalScannedCount.get(), scanRequest.getStoragePushDownLimit());
+        return new StorageResponseGTScatter(fullGTInfo, epResultItr, scanRequest.getColumns(), totalScannedCount, scanRequest.getStoragePushDownLimit());
     }
 
-    private ByteString serializeGTScanReq(GTScanRequest scanRequest) {
+    protected ByteString serializeGTScanReq(GTScanRequest scanRequest) {
         ByteString scanRequestByteString;
         int scanRequestBufferSize = BytesSerializer.SERIALIZE_BUFFER_SIZE;
         while (true) {
@@ -244,7 +311,7 @@ public class CubeHBaseEndpointRPC extends CubeHBaseRPC {
         return scanRequestByteString;
     }
 
-    private ByteString serializeRawScans(List<RawScan> rawScans) {
+    protected ByteString serializeRawScans(List<RawScan> rawScans) {
         ByteString rawScanByteString;
         int rawScanBufferSize = BytesSerializer.SERIALIZE_BUFFER_SIZE;
         while (true) {
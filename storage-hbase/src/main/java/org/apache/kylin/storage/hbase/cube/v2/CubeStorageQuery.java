@@ -18,9 +18,16 @@
 
 package org.apache.kylin.storage.hbase.cube.v2;
 
+import java.util.concurrent.ExecutorService;
+
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.debug.BackdoorToggles;
+import org.apache.kylin.common.util.LoggableCachedThreadPool;
 import org.apache.kylin.cube.CubeInstance;
+import org.apache.kylin.metadata.realization.SQLDigest;
+import org.apache.kylin.metadata.tuple.ITupleIterator;
+import org.apache.kylin.metadata.tuple.TupleInfo;
+import org.apache.kylin.storage.StorageContext;
 import org.apache.kylin.storage.gtrecord.GTCubeStorageQueryBase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,14 +36,45 @@ public class CubeStorageQuery extends GTCubeStorageQueryBase {
 
     private static final Logger logger = LoggerFactory.getLogger(CubeStorageQuery.class);
 
+    // runs the batched endpoint calls of all queries
+    private static final ExecutorService batchVisitExecutor = new LoggableCachedThreadPool();
+
     public CubeStorageQuery(CubeInstance cube) {
         super(cube);
     }
 
+    @Override
+    public ITupleIterator search(StorageContext context, SQLDigest sqlDigest, TupleInfo returnTupleInfo) {
+        if (!isBatchVisit()) {
+            return super.search(context, sqlDigest, returnTupleInfo);
+        }
+
+        // segment scanners created within search() register their visits to the batch
+        SegmentVisitBatch.begin(batchVisitExecutor);
+        try {
+            return super.search(context, sqlDigest, returnTupleInfo);
+        } finally {
+            SegmentVisitBatch.end();
+        }
+    }
+
+    private boolean isScanProtocol() {
+        return "scan".equalsIgnoreCase(BackdoorToggles.getHbaseCubeQueryProtocol());
+    }
+
+    private boolean isBatchVisit() {
+        return !isScanProtocol() && KylinConfig.getInstanceFromEnv().isQuerySegmentBatchVisitEnabled();
+    }
+
     @Override
     protected String getGTStorage() {
-        if ("scan".equalsIgnoreCase(BackdoorToggles.getHbaseCubeQueryProtocol())) {
+        if (isScanProtocol()) {
             return "org.apache.kylin.storage.hbase.cube.v2.CubeHBaseScanRPC";
+        } else if (KylinConfig.getInstanceFromEnv().isQueryLocalCuboidCacheEnabled()) {
+            // visits hbase, batched or not, for cuboids that are not cached
+            return "org.apache.kylin.storage.hbase.cube.v2.LocalCuboidCacheStorage";
+        } else if (isBatchVisit()) {
+            return "org.apache.kylin.storage.hbase.cube.v2.CubeHBaseBatchedEndpointRPC";
         } else {
             return KylinConfig.getInstanceFromEnv().getDefaultIGTStorage();
         }
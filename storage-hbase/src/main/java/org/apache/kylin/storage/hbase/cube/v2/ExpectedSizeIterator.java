@@ -19,22 +19,29 @@
 package org.apache.kylin.storage.hbase.cube.v2;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.NotImplementedException;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.QueryContext;
+import org.apache.kylin.common.QueryContext.QueryCancelledException;
 import org.apache.kylin.common.debug.BackdoorToggles;
 import org.apache.kylin.gridtable.GTScanRequest;
 import org.apache.kylin.gridtable.GTScanSelfTerminatedException;
 import org.apache.kylin.storage.hbase.HBaseConnection;
+import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse;
+import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Stats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-class ExpectedSizeIterator implements Iterator<byte[]> {
+class ExpectedSizeIterator implements Iterator<byte[]>, QueryContext.Cancellable {
     private static final Logger logger = LoggerFactory.getLogger(ExpectedSizeIterator.class);
 
     BlockingQueue<byte[]> queue;
@@ -46,6 +53,10 @@ class ExpectedSizeIterator implements Iterator<byte[]> {
     long timeoutTS;
     volatile Throwable coprocException;
 
+    // endpoint calls in flight, interrupted if the query is cancelled
+    final List<Future<?>> rpcFutures = new CopyOnWriteArrayList<Future<?>>();
+    final QueryContext queryContext;
+
     public ExpectedSizeIterator(int expectedSize) {
         this.expectedSize = expectedSize;
         this.queue = new ArrayBlockingQueue<byte[]>(expectedSize);
@@ -67,6 +78,14 @@ class ExpectedSizeIterator implements Iterator<byte[]> {
             logger.info("rpc timeout is overwritten to " + this.timeout);
         }
 
+        // coprocessors stop no later than the deadline of the query
+        this.queryContext = QueryContext.current();
+        if (queryContext.getRemainingMillis() < this.timeout) {
+            this.timeout = Math.max(1, queryContext.getRemainingMillis());
+            logger.info("rpc timeout is capped to " + this.timeout + " by the deadline of query " + queryContext.getQueryId());
+        }
+        queryContext.addCancellable(this);
+
         this.timeoutTS = System.currentTimeMillis() + 2 * this.timeout;//longer timeout than coprocessor so that query thread will not timeout faster than coprocessor
     }
 
@@ -88,9 +107,18 @@ class ExpectedSizeIterator implements Iterator<byte[]> {
                 ret = queue.poll(10000, TimeUnit.MILLISECONDS);
             }
 
+            if (ret == null || current >= expectedSize) {
+                queryContext.removeCancellable(this);
+            }
+
+            // endpoint calls interrupted by the cancel may report their own errors
+            queryContext.checkCancelled();
+
             if (coprocException != null) {
                 if (coprocException instanceof GTScanSelfTerminatedException)
                     throw (GTScanSelfTerminatedException) coprocException;
+                else if (coprocException instanceof QueryCancelledException)
+                    throw (QueryCancelledException) coprocException;
                 else
                     throw new RuntimeException("Error in coprocessor", coprocException);
 
@@ -101,6 +129,8 @@ class ExpectedSizeIterator implements Iterator<byte[]> {
                 return ret;
             }
         } catch (InterruptedException e) {
+            queryContext.removeCancellable(this);
+            queryContext.checkCancelled();
             throw new RuntimeException("Error when waiting queue", e);
         }
     }
@@ -125,4 +155,27 @@ class ExpectedSizeIterator implements Iterator<byte[]> {
     public void notifyCoprocException(Throwable ex) {
         coprocException = ex;
     }
+
+    /**
+     * Adds the stats of an endpoint response to the resource usage of the query.
+     */
+    public void recordStats(CubeVisitResponse response) {
+        Stats stats = response.getStats();
+        queryContext.getResourceUsage().addRpc(stats.getScannedRowCount(), stats.getScannedRowCount() - stats.getAggregatedRowCount(), response.getCompressedRows().size(), //
+                stats.getServiceEndTime() - stats.getServiceStartTime(), stats.hasCpuNanos() ? stats.getCpuNanos() : -1);
+    }
+
+    public void addRpcFuture(Future<?> future) {
+        rpcFutures.add(future);
+        if (queryContext.isCancelled())
+            future.cancel(true);
+    }
+
+    @Override
+    public void cancel() {
+        notifyCoprocException(new QueryCancelledException("Query " + queryContext.getQueryId() + " is cancelled"));
+        for (Future<?> future : rpcFutures) {
+            future.cancel(true);
+        }
+    }
 }
@@ -76,14 +76,26 @@ public class HBaseReadonlyStore implements IGTStore {
     //TODO: possible to use binary search as cells might be sorted?
     public static Cell findCell(List<Cell> cells, byte[] familyName, byte[] columnName) {
         for (Cell c : cells) {
-            if (BytesUtil.compareBytes(familyName, 0, c.getFamilyArray(), c.getFamilyOffset(), familyName.length) == 0 && //
-                    BytesUtil.compareBytes(columnName, 0, c.getQualifierArray(), c.getQualifierOffset(), columnName.length) == 0) {
+            if (isCellOf(c, familyName, columnName)) {
                 return c;
             }
         }
         return null;
     }
 
+    /** like findCell(), but tries the cell at the hinted position first, as cells of a row come in the column order */
+    public static Cell findCell(List<Cell> cells, byte[] familyName, byte[] columnName, int hint) {
+        if (hint < cells.size() && isCellOf(cells.get(hint), familyName, columnName)) {
+            return cells.get(hint);
+        }
+        return findCell(cells, familyName, columnName);
+    }
+
+    private static boolean isCellOf(Cell c, byte[] familyName, byte[] columnName) {
+        return BytesUtil.compareBytes(familyName, 0, c.getFamilyArray(), c.getFamilyOffset(), familyName.length) == 0 && //
+                BytesUtil.compareBytes(columnName, 0, c.getQualifierArray(), c.getQualifierOffset(), columnName.length) == 0;
+    }
+
     @Override
     public IGTScanner scan(GTScanRequest scanRequest) throws IOException {
         return new IGTScanner() {
@@ -97,7 +109,8 @@ public class HBaseReadonlyStore implements IGTStore {
             @Override
             public Iterator<GTRecord> iterator() {
                 return new Iterator<GTRecord>() {
-                    GTRecord oneRecord = new GTRecord(info); // avoid object creation
+                    // avoid object creation; the record points into the backing arrays of the cells, without copy
+                    GTRecord oneRecord = new GTRecord(info);
 
                     @Override
                     public boolean hasNext() {
@@ -127,7 +140,7 @@ public class HBaseReadonlyStore implements IGTStore {
                         // metrics
                         for (int i = 0; i < hbaseColumns.size(); i++) {
                             Pair<byte[], byte[]> hbaseColumn = hbaseColumns.get(i);
-                            Cell cell = findCell(oneRow, hbaseColumn.getFirst(), hbaseColumn.getSecond());
+                            Cell cell = findCell(oneRow, hbaseColumn.getFirst(), hbaseColumn.getSecond(), i);
                             Preconditions.checkNotNull(cell);
                             buf = byteBuffer(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
                             oneRecord.loadColumns(hbaseColumnsToGT.get(i), buf);
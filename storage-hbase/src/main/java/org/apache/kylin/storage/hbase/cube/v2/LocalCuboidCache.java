@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.DaemonThreadFactory;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.IGTWriter;
+import org.apache.kylin.gridtable.memstore.GTMappedFileStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+/**
+ * Copies of hot, small cuboids on the query server, each in a GTMappedFileStore. A cuboid is copied in the background
+ * on the scan that makes it hot, that is scanned the configured times within the admission window, and the least
+ * recently used copies are dropped once their total size exceeds the limit. The data of a ready segment never changes
+ * and a refreshed or merged segment has a new uuid, so copies are never invalidated, stale ones just age out.
+ *
+ * The cache directory belongs to one query server, leftover files are deleted on start.
+ */
+public class LocalCuboidCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalCuboidCache.class);
+
+    private static LocalCuboidCache instance;
+
+    public static synchronized LocalCuboidCache getInstance() {
+        if (instance == null) {
+            KylinConfig config = KylinConfig.getInstanceFromEnv();
+            instance = new LocalCuboidCache(new File(config.getQueryLocalCuboidCacheDir()), //
+                    config.getQueryLocalCuboidCacheMB() * 1024L * 1024L, config.getQueryLocalCuboidCacheMaxCuboidMB() * 1024L * 1024L, //
+                    config.getQueryLocalCuboidCacheAdmitScans(), config.getQueryLocalCuboidCacheAdmitWindowSeconds(), //
+                    Executors.newSingleThreadExecutor(new DaemonThreadFactory()));
+        }
+        return instance;
+    }
+
+    /**
+     * Scans all rows of a cuboid, with all columns, from where it is stored.
+     */
+    public interface CuboidSource {
+        IGTScanner scanAll() throws IOException;
+    }
+
+    private final File dir;
+    private final long maxCuboidBytes;
+    private final int admitScans;
+    private final Executor loader;
+
+    private final Cache<String, GTMappedFileStore> stores;
+    private final Cache<String, AtomicInteger> recentScans;
+    // cuboids found too large, not tried again within the admission window
+    private final Cache<String, Boolean> tooLarge;
+    private final Set<String> loading = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    LocalCuboidCache(File dir, long maxBytes, long maxCuboidBytes, int admitScans, int admitWindowSeconds, Executor loader) {
+        this.dir = dir;
+        this.maxCuboidBytes = Math.min(maxCuboidBytes, Integer.MAX_VALUE);
+        this.admitScans = Math.max(admitScans, 1);
+        this.loader = loader;
+
+        this.stores = CacheBuilder.newBuilder().maximumWeight(maxBytes).weigher(new Weigher<String, GTMappedFileStore>() {
+            @Override
+            public int weigh(String key, GTMappedFileStore value) {
+                return (int) Math.min(value.getFileSize(), Integer.MAX_VALUE);
+            }
+        }).removalListener(new RemovalListener<String, GTMappedFileStore>() {
+            @Override
+            public void onRemoval(RemovalNotification<String, GTMappedFileStore> notification) {
+                logger.info("Dropping local copy of cuboid " + notification.getKey() + ", " + notification.getCause());
+                dropQuietly(notification.getValue());
+            }
+        }).build();
+        this.recentScans = CacheBuilder.newBuilder().expireAfterWrite(admitWindowSeconds, TimeUnit.SECONDS).maximumSize(10000).build();
+        this.tooLarge = CacheBuilder.newBuilder().expireAfterWrite(admitWindowSeconds, TimeUnit.SECONDS).maximumSize(10000).build();
+
+        cleanDir();
+    }
+
+    public static String keyOf(CubeSegment segment, long cuboidId) {
+        return segment.getStorageLocationIdentifier() + "_" + segment.getUuid() + "_" + cuboidId;
+    }
+
+    /**
+     * @return the local copy of the cuboid, or null if it is not cached
+     */
+    public GTMappedFileStore get(String key) {
+        return stores.getIfPresent(key);
+    }
+
+    /**
+     * Counts a scan of a cuboid that is not cached, and starts copying it once it is hot.
+     */
+    public void recordScan(final String key, final GTInfo info, final CuboidSource source) {
+        if (tooLarge.getIfPresent(key) != null || loading.contains(key))
+            return;
+
+        AtomicInteger scans;
+        synchronized (recentScans) {
+            scans = recentScans.getIfPresent(key);
+            if (scans == null) {
+                scans = new AtomicInteger();
+                recentScans.put(key, scans);
+            }
+        }
+        if (scans.incrementAndGet() < admitScans || !loading.add(key))
+            return;
+
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    load(key, info, source);
+                } catch (Throwable e) {
+                    logger.error("Failed to copy cuboid " + key + " to local", e);
+                } finally {
+                    recentScans.invalidate(key);
+                    loading.remove(key);
+                }
+            }
+        });
+    }
+
+    private void load(String key, GTInfo info, CuboidSource source) throws IOException {
+        long startTime = System.currentTimeMillis();
+        dir.mkdirs();
+        GTMappedFileStore store = new GTMappedFileStore(info, File.createTempFile(key + "_", ".gt", dir));
+
+        long bytes = 0;
+        boolean complete = false;
+        IGTScanner scanner = source.scanAll();
+        try {
+            IGTWriter writer = store.rebuild();
+            try {
+                for (GTRecord record : scanner) {
+                    bytes += 4 + record.sizeOf(info.getAllColumns());
+                    if (bytes > maxCuboidBytes)
+                        break;
+                    writer.write(record);
+                }
+                complete = bytes <= maxCuboidBytes;
+            } finally {
+                writer.close();
+            }
+        } finally {
+            scanner.close();
+            if (!complete)
+                dropQuietly(store);
+        }
+
+        if (!complete) {
+            logger.info("Cuboid " + key + " is larger than " + maxCuboidBytes + " bytes, not copied to local");
+            tooLarge.put(key, Boolean.TRUE);
+            return;
+        }
+
+        stores.put(key, store);
+        logger.info("Copied cuboid " + key + " to local, " + store.getRowCount() + " rows, " + store.getFileSize() + " bytes, took " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    public long size() {
+        return stores.size();
+    }
+
+    public void invalidateAll() {
+        stores.invalidateAll();
+    }
+
+    private void cleanDir() {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+        for (File file : files) {
+            if (file.getName().endsWith(".gt") && !file.delete()) {
+                logger.warn("Failed to delete " + file);
+            }
+        }
+    }
+
+    private static void dropQuietly(GTMappedFileStore store) {
+        try {
+            store.drop();
+        } catch (IOException e) {
+            logger.warn("Failed to drop " + store.getFile(), e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.cube.cuboid.Cuboid;
+import org.apache.kylin.dimension.DimensionEncoding;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.IGTStorage;
+import org.apache.kylin.gridtable.StorageSideBehavior;
+import org.apache.kylin.gridtable.memstore.GTMappedFileStore;
+import org.apache.kylin.metadata.filter.UDF.MassInTupleFilter;
+import org.apache.kylin.metadata.model.ISegment;
+import org.apache.kylin.metadata.model.SegmentStatusEnum;
+import org.apache.kylin.metadata.model.TblColRef;
+import org.apache.kylin.storage.hbase.cube.v2.filter.MassInValueProviderFactoryImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scans the local copy of a cuboid from LocalCuboidCache if there is one, filtering and aggregating in the query thread
+ * like a coprocessor does, and otherwise visits hbase as usual and counts the scan towards copying the cuboid.
+ */
+public class LocalCuboidCacheStorage implements IGTStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalCuboidCacheStorage.class);
+
+    private final ISegment segment;
+    private final Cuboid cuboid;
+    private final GTInfo fullGTInfo;
+
+    public LocalCuboidCacheStorage(ISegment segment, Cuboid cuboid, GTInfo fullGTInfo) {
+        this.segment = segment;
+        this.cuboid = cuboid;
+        this.fullGTInfo = fullGTInfo;
+    }
+
+    @Override
+    public IGTScanner getGTScanner(GTScanRequest scanRequest) throws IOException {
+        if (!isCacheable(scanRequest)) {
+            return getHBaseStorage().getGTScanner(scanRequest);
+        }
+
+        LocalCuboidCache cache = LocalCuboidCache.getInstance();
+        String key = LocalCuboidCache.keyOf((CubeSegment) segment, cuboid.getId());
+        GTMappedFileStore store = cache.get(key);
+        if (store != null) {
+            logger.info("Scanning local copy of cuboid " + key);
+            setMassInValueProvider();
+            return scanRequest.decorateScanner(store.scan(scanRequest));
+        }
+
+        cache.recordScan(key, fullGTInfo, new LocalCuboidCache.CuboidSource() {
+            @Override
+            public IGTScanner scanAll() throws IOException {
+                GTScanRequest all = new GTScanRequestBuilder().setInfo(fullGTInfo).setRanges(null).setDimensions(null).setFilterPushDown(null).createGTScanRequest();
+                return new CubeHBaseScanRPC(segment, cuboid, fullGTInfo).getGTScanner(all);
+            }
+        });
+        return getHBaseStorage().getGTScanner(scanRequest);
+    }
+
+    // the copy holds every row, so sampling, which skips some, and profiling behaviors are left to hbase
+    private boolean isCacheable(GTScanRequest scanRequest) {
+        return segment instanceof CubeSegment && segment.getStatus() == SegmentStatusEnum.READY //
+                && !scanRequest.isSampling() && StorageSideBehavior.SCAN_FILTER_AGGR_CHECKMEM.toString().equals(scanRequest.getStorageBehavior());
+    }
+
+    private IGTStorage getHBaseStorage() {
+        if (SegmentVisitBatch.current() != null) {
+            return new CubeHBaseBatchedEndpointRPC(segment, cuboid, fullGTInfo);
+        }
+
+        String gtStorage = KylinConfig.getInstanceFromEnv().getDefaultIGTStorage();
+        if (gtStorage.equals(LocalCuboidCacheStorage.class.getName())) {
+            return new CubeHBaseEndpointRPC(segment, cuboid, fullGTInfo);
+        }
+        try {
+            return (IGTStorage) Class.forName(gtStorage).getConstructor(ISegment.class, Cuboid.class, GTInfo.class).newInstance(segment, cuboid, fullGTInfo);
+        } catch (InstantiationException | InvocationTargetException | IllegalAccessException | ClassNotFoundException | NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // MASSIN filters are evaluated here instead of in the coprocessor
+    private void setMassInValueProvider() {
+        MassInTupleFilter.VALUE_PROVIDER_FACTORY = new MassInValueProviderFactoryImpl(new MassInValueProviderFactoryImpl.DimEncAware() {
+            @Override
+            public DimensionEncoding getDimEnc(TblColRef col) {
+                return fullGTInfo.getCodeSystem().getDimEnc(col.getColumnDesc().getZeroBasedIndex());
+            }
+        });
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.ImmutableBitSet;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTInfo.Builder;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTSampleCodeSystem;
+import org.apache.kylin.gridtable.GTScanRequest;
+import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.IGTWriter;
+import org.apache.kylin.gridtable.benchmark.SortedGTRecordGenerator;
+import org.apache.kylin.gridtable.memstore.GTSimpleMemStore;
+import org.apache.kylin.metadata.datatype.DataType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Benchmark of scanning and aggregating 10 million GTRecords in an in-memory store, as one range versus
+ * sub ranges split by RawScanSplitter and scanned in parallel, like the split endpoint calls of one region.
+ */
+public class RawScanSplitBenchmark {
+
+    static final Logger logger = LoggerFactory.getLogger(RawScanSplitBenchmark.class);
+
+    final GTInfo info;
+    final GTSimpleMemStore store;
+
+    final ImmutableBitSet dimensions = ImmutableBitSet.valueOf(0, 1, 2, 3, 4);
+    final ImmutableBitSet metrics = ImmutableBitSet.valueOf(5, 6);
+    final String[] aggrFuncs = new String[] { "SUM", "SUM" };
+    final int keyLength = 20; // 5 x int4 primary key
+
+    final long N = 10000000; // 10M
+
+    public RawScanSplitBenchmark() throws IOException {
+        Builder builder = GTInfo.builder();
+        builder.setCodeSystem(new GTSampleCodeSystem());
+        DataType tint = DataType.getType("int4");
+        DataType tlong = DataType.getType("long8");
+        builder.setColumns(tint, tint, tint, tint, tint, tlong, tlong);
+        builder.setPrimaryKey(ImmutableBitSet.valueOf(0, 1, 2, 3, 4));
+        info = builder.build();
+
+        SortedGTRecordGenerator gen = new SortedGTRecordGenerator(info);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(10, 4, null);
+        gen.addDimension(100, 4, null);
+        gen.addMeasure(8);
+        gen.addMeasure(8);
+
+        store = new GTSimpleMemStore(info);
+        IGTWriter writer = store.rebuild();
+        for (GTRecord rec : gen.generate(N)) {
+            writer.write(rec);
+        }
+        writer.close();
+    }
+
+    public void testScan(int splitCount, int rounds) throws Exception {
+        List<byte[]> rows = store.getRowList();
+        byte[] start = Bytes.copy(rows.get(0), 0, keyLength);
+        byte[] end = new byte[keyLength + 1]; // exclusive end key as in RawScan
+        System.arraycopy(rows.get(rows.size() - 1), 0, end, 0, keyLength);
+
+        List<byte[]> splitKeys = RawScanSplitter.splitKeys(start, end, splitCount, 0);
+        List<Integer> bounds = Lists.newArrayList(0);
+        for (byte[] key : splitKeys) {
+            bounds.add(lowerBound(rows, key));
+        }
+        bounds.add(rows.size());
+
+        ExecutorService pool = Executors.newFixedThreadPool(bounds.size() - 1);
+        try {
+            for (int r = 0; r < rounds; r++) {
+                long t = System.currentTimeMillis();
+                List<Future<Long>> futures = Lists.newArrayList();
+                for (int i = 0; i < bounds.size() - 1; i++) {
+                    futures.add(pool.submit(aggregate(rows.subList(bounds.get(i), bounds.get(i + 1)))));
+                }
+                long count = 0;
+                for (Future<Long> f : futures) {
+                    count += f.get();
+                }
+                t = System.currentTimeMillis() - t;
+                logger.info((bounds.size() - 1) + " sub ranges, " + N + " records aggregated to " + count + ", " + speed(t) + "K rec/sec");
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Callable<Long> aggregate(final List<byte[]> subRows) {
+        return new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                GTSimpleMemStore subStore = new GTSimpleMemStore(info, subRows);
+                GTScanRequest req = new GTScanRequestBuilder().setInfo(info).setRanges(null).setDimensions(dimensions).setAggrGroupBy(ImmutableBitSet.valueOf(0, 1)).setAggrMetrics(metrics).setAggrMetricsFuncs(aggrFuncs).setFilterPushDown(null).createGTScanRequest();
+                IGTScanner scanner = req.decorateScanner(subStore.scan(req));
+                long count = 0;
+                for (@SuppressWarnings("unused")
+                GTRecord rec : scanner) {
+                    count++;
+                }
+                scanner.close();
+                return count;
+            }
+        };
+    }
+
+    private int lowerBound(List<byte[]> rows, byte[] key) {
+        int lo = 0, hi = rows.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Bytes.compareTo(rows.get(mid), 0, keyLength, key, 0, keyLength) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private int speed(long t) {
+        double sec = (double) t / 1000;
+        return (int) (N / sec / 1000);
+    }
+
+    public static void main(String[] args) throws Exception {
+        RawScanSplitBenchmark benchmark = new RawScanSplitBenchmark();
+        for (int splitCount : new int[] { 1, 2, 4, 8 }) {
+            benchmark.testScan(splitCount, 3);
+        }
+    }
+}
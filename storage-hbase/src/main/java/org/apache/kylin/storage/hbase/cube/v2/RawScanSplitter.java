@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.Pair;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Splits the raw scans of a large cuboid into sub ranges at query time, so that one region is scanned
+ * by several coprocessor calls in parallel instead of only one.
+ *
+ * The split count is decided by the estimated rows of the cuboid in each region (from the cube statistics),
+ * the split points are interpolated between the start and end key of each raw scan.
+ *
+ * Also used by the coprocessor to cut raw scans into blocks for sampling, so keep it free of client side dependencies.
+ */
+public class RawScanSplitter {
+
+    /**
+     * @return how many sub ranges each region should be scanned as, 1 means no split
+     */
+    public static int decideSplitCount(long estimatedRows, int regionCount, long rowsPerSplit, int maxSplits) {
+        if (estimatedRows <= 0 || regionCount <= 0 || rowsPerSplit <= 0) {
+            return 1;
+        }
+        long rowsPerRegion = estimatedRows / regionCount;
+        long splits = (rowsPerRegion + rowsPerSplit - 1) / rowsPerSplit;
+        return (int) Math.max(1, Math.min(maxSplits, splits));
+    }
+
+    /**
+     * @return at most splitCount groups of raw scans, the i-th group holds the i-th sub range of every raw scan
+     * that is wide enough to have one, groups left empty by narrow ranges are dropped
+     */
+    public static List<List<RawScan>> split(List<RawScan> rawScans, int splitCount, int rowkeyPreambleSize) {
+        List<List<RawScan>> groups = Lists.newArrayListWithCapacity(splitCount);
+        for (int i = 0; i < splitCount; i++) {
+            groups.add(Lists.<RawScan> newArrayList());
+        }
+
+        for (RawScan rawScan : rawScans) {
+            List<byte[]> splitKeys = splitKeys(rawScan.startKey, rawScan.endKey, splitCount, rowkeyPreambleSize);
+            byte[] start = rawScan.startKey;
+            for (int i = 0; i < splitCount; i++) {
+                // a narrow range may have fewer split keys, then the trailing groups get nothing of it
+                byte[] end = i < splitKeys.size() ? splitKeys.get(i) : rawScan.endKey;
+                if (i <= splitKeys.size()) {
+                    RawScan sub = new RawScan(rawScan);
+                    sub.startKey = start;
+                    sub.endKey = end;
+                    groups.get(i).add(sub);
+                }
+                start = end;
+            }
+        }
+
+        Iterator<List<RawScan>> iterator = groups.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isEmpty()) {
+                iterator.remove();
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Cuts each raw scan into about blocksPerScan blocks and keeps a deterministic, evenly spread percentage of all blocks.
+     *
+     * @return the raw scans of the sampled blocks, and the ratio of all blocks to the sampled ones to scale additive measures with
+     */
+    public static Pair<List<RawScan>, Double> sampleBlocks(List<RawScan> rawScans, int percentage, int blocksPerScan, int rowkeyPreambleSize) {
+        List<RawScan> blocks = Lists.newArrayList();
+        for (RawScan rawScan : rawScans) {
+            // keep the blocks in rowkey order
+            for (List<RawScan> group : split(Collections.singletonList(rawScan), blocksPerScan, rowkeyPreambleSize)) {
+                blocks.addAll(group);
+            }
+        }
+
+        List<RawScan> sampled = Lists.newArrayList();
+        for (int i = 0; i < blocks.size(); i++) {
+            // systematic sampling, take block i when the expected sampled count crosses an integer
+            if ((long) (i + 1) * percentage / 100 > (long) i * percentage / 100) {
+                sampled.add(blocks.get(i));
+            }
+        }
+        if (sampled.isEmpty() && !blocks.isEmpty()) {
+            sampled.add(blocks.get(0));
+        }
+
+        double scale = sampled.isEmpty() ? 1.0 : (double) blocks.size() / sampled.size();
+        return Pair.newPair(sampled, scale);
+    }
+
+    /**
+     * Interpolates up to (splitCount - 1) distinct keys strictly between start (inclusive) and end (exclusive).
+     * The preamble (shard and cuboid id) is kept as in the start key, as it is the same for the whole range
+     * and the shard part is rewritten by the coprocessor anyway.
+     */
+    static List<byte[]> splitKeys(byte[] start, byte[] end, int splitCount, int preambleSize) {
+        List<byte[]> ret = Lists.newArrayList();
+        int len = start.length;
+        if (splitCount <= 1 || len <= preambleSize || end.length < len) {
+            return ret;
+        }
+
+        BigInteger lower = new BigInteger(1, Bytes.copy(start, preambleSize, len - preambleSize));
+        BigInteger upper = new BigInteger(1, Bytes.copy(end, preambleSize, len - preambleSize));
+        BigInteger range = upper.subtract(lower);
+        if (range.signum() <= 0) {
+            return ret;
+        }
+
+        BigInteger last = lower;
+        for (int i = 1; i < splitCount; i++) {
+            BigInteger point = lower.add(range.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(splitCount)));
+            if (point.compareTo(last) <= 0) {
+                continue;
+            }
+            ret.add(toKey(start, preambleSize, point));
+            last = point;
+        }
+        return ret;
+    }
+
+    private static byte[] toKey(byte[] start, int preambleSize, BigInteger value) {
+        int len = start.length;
+        byte[] key = new byte[len];
+        System.arraycopy(start, 0, key, 0, preambleSize);
+        byte[] valueBytes = value.toByteArray();
+        // strip the sign byte, or left pad with zeros
+        int copy = Math.min(valueBytes.length, len - preambleSize);
+        System.arraycopy(valueBytes, valueBytes.length - copy, key, len - copy, copy);
+        return key;
+    }
+}
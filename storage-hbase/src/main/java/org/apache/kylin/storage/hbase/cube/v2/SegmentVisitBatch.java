@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.DataFormatException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.NotServingRegionException;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.ipc.CoprocessorRpcChannel;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.BytesUtil;
+import org.apache.kylin.common.util.CompressionUtils;
+import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.gridtable.GTScanSelfTerminatedException;
+import org.apache.kylin.storage.hbase.HBaseConnection;
+import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest;
+import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse;
+import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.protobuf.HBaseZeroCopyByteString;
+import com.google.protobuf.ServiceException;
+
+/**
+ * Collects the endpoint visits of all segments of one query, and sends them as one CubeVisitService
+ * call per region server (at most kylin.query.segment.batch.visit.max.regions regions per call).
+ *
+ * The first region of a call is visited as usual, the others go in CubeVisitRequest.batchedVisits and
+ * their results come back in CubeVisitResponse.batchedResponses. A coprocessor that does not know about
+ * batching returns no batched responses, then the other regions are visited one by one.
+ *
+ * The batch is bound to the query thread between begin() and end(), and dispatched lazily
+ * when the first segment result is consumed, by which time all segments have registered.
+ *
+ * Regions are located from the region cache of the connection. When a region turns out to be
+ * no longer served where it was located (moved, split or merged), the regions not yet delivered
+ * are located again from hbase:meta and visited one by one.
+ */
+public class SegmentVisitBatch {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentVisitBatch.class);
+
+    private static final ThreadLocal<SegmentVisitBatch> current = new ThreadLocal<SegmentVisitBatch>();
+
+    public static void begin(ExecutorService executorService) {
+        current.set(new SegmentVisitBatch(executorService));
+    }
+
+    public static SegmentVisitBatch current() {
+        return current.get();
+    }
+
+    public static void end() {
+        current.remove();
+    }
+
+    static class SegmentVisit {
+        final CubeSegment cubeSeg;
+        final List<HRegionLocation> regions;
+        final CubeVisitRequest request;
+        final ExpectedSizeIterator resultItr;
+
+        SegmentVisit(CubeSegment cubeSeg, List<HRegionLocation> regions, CubeVisitRequest request, ExpectedSizeIterator resultItr) {
+            this.cubeSeg = cubeSeg;
+            this.regions = regions;
+            this.request = request;
+            this.resultItr = resultItr;
+        }
+    }
+
+    private final ExecutorService executorService;
+    private final List<SegmentVisit> visits = Lists.newArrayList();
+    private final AtomicBoolean dispatched = new AtomicBoolean(false);
+    private boolean compressionResult;
+
+    SegmentVisitBatch(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    synchronized void register(SegmentVisit visit) {
+        if (dispatched.get()) {
+            throw new IllegalStateException("Cannot register segment " + visit.cubeSeg + " after the batch is dispatched");
+        }
+        visits.add(visit);
+    }
+
+    Iterator<byte[]> dispatchOnFirstAccess(final Iterator<byte[]> results) {
+        return new Iterator<byte[]>() {
+            @Override
+            public boolean hasNext() {
+                dispatch();
+                return results.hasNext();
+            }
+
+            @Override
+            public byte[] next() {
+                dispatch();
+                return results.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private synchronized void dispatch() {
+        if (!dispatched.compareAndSet(false, true)) {
+            return;
+        }
+
+        KylinConfig kylinConfig = KylinConfig.getInstanceFromEnv();
+        int maxRegionsPerCall = Math.max(1, kylinConfig.getQuerySegmentBatchVisitMaxRegions());
+        compressionResult = kylinConfig.getCompressionResult();
+
+        Map<ServerName, List<Pair<SegmentVisit, HRegionLocation>>> byServer = Maps.newLinkedHashMap();
+        for (SegmentVisit visit : visits) {
+            for (HRegionLocation location : visit.regions) {
+                List<Pair<SegmentVisit, HRegionLocation>> list = byServer.get(location.getServerName());
+                if (list == null) {
+                    list = Lists.newArrayList();
+                    byServer.put(location.getServerName(), list);
+                }
+                list.add(Pair.newPair(visit, location));
+            }
+        }
+
+        int callCount = 0;
+        for (Map.Entry<ServerName, List<Pair<SegmentVisit, HRegionLocation>>> entry : byServer.entrySet()) {
+            for (List<Pair<SegmentVisit, HRegionLocation>> group : Lists.partition(entry.getValue(), maxRegionsPerCall)) {
+                submit(entry.getKey(), group);
+                callCount++;
+            }
+        }
+        logger.info("Dispatched {} segment visits as {} batched endpoint calls to {} region servers", visits.size(), callCount, byServer.size());
+    }
+
+    private void submit(final ServerName server, final List<Pair<SegmentVisit, HRegionLocation>> group) {
+        final SegmentVisit anchor = group.get(0).getFirst();
+        final HRegionLocation anchorRegion = group.get(0).getSecond();
+
+        CubeVisitRequest.Builder builder = anchor.request.toBuilder();
+        for (Pair<SegmentVisit, HRegionLocation> pair : group.subList(1, group.size())) {
+            // kylin properties are taken from the enclosing request
+            builder.addBatchedVisits(pair.getFirst().request.toBuilder().setKylinProperties("").setEncodedRegionName(pair.getSecond().getRegionInfo().getEncodedName()));
+        }
+        final CubeVisitRequest request = builder.build();
+
+        Future<?> future = executorService.submit(new Runnable() {
+            @Override
+            public void run() {
+                final String logHeader = "<sub-thread for batched visit of " + group.size() + " regions on " + server + "> ";
+                // the regions of the group are delivered in order, this many so far
+                int delivered = 0;
+                try {
+                    try {
+                        CubeVisitResponse response = visitRegion(anchor, anchorRegion, request);
+                        int batchedCount = group.size() - 1;
+                        if (response.getBatchedResponsesCount() != batchedCount && response.getBatchedResponsesCount() != 0) {
+                            throw new IllegalStateException(logHeader + "Expect " + batchedCount + " batched responses, but got " + response.getBatchedResponsesCount());
+                        }
+                        deliver(anchor, response, logHeader);
+                        delivered++;
+
+                        if (response.getBatchedResponsesCount() == batchedCount) {
+                            for (int i = 0; i < batchedCount; i++) {
+                                deliver(group.get(i + 1).getFirst(), response.getBatchedResponses(i), logHeader);
+                                delivered++;
+                            }
+                        } else {
+                            logger.warn(logHeader + "The coprocessor does not support batched visits, visiting the other " + batchedCount + " regions one by one");
+                            for (Pair<SegmentVisit, HRegionLocation> pair : group.subList(1, group.size())) {
+                                deliver(pair.getFirst(), visitRegion(pair.getFirst(), pair.getSecond(), pair.getFirst().request), logHeader);
+                                delivered++;
+                            }
+                        }
+                    } catch (Exception ex) {
+                        if (!isRegionNotServed(ex)) {
+                            throw ex;
+                        }
+                        logger.warn(logHeader + "Regions are no longer served where they were located, locating the " + (group.size() - delivered) + " undelivered regions again", ex);
+                        visitRelocated(group.subList(delivered, group.size()), logHeader);
+                    }
+                } catch (Throwable ex) {
+                    logger.error(logHeader + "Error when visiting cubes by endpoint, first region " + BytesUtil.toHex(anchorRegion.getRegionInfo().getRegionName()), ex);
+                    notifyError(group, ex);
+                }
+            }
+        });
+        for (Pair<SegmentVisit, HRegionLocation> pair : group) {
+            pair.getFirst().resultItr.addRpcFuture(future);
+        }
+    }
+
+    /**
+     * calls the endpoint of the region, which refuses the call if it is not the very region located
+     */
+    CubeVisitResponse visitRegion(SegmentVisit visit, HRegionLocation region, CubeVisitRequest request) throws IOException, ServiceException {
+        HTableInterface table = getConnection(visit).getTable(visit.cubeSeg.getStorageLocationIdentifier(), HBaseConnection.getCoprocessorPool());
+        try {
+            CoprocessorRpcChannel channel = table.coprocessorService(region.getRegionInfo().getStartKey());
+            return CubeVisitService.newBlockingStub(channel).visitCube(null, request.toBuilder().setEncodedRegionName(region.getRegionInfo().getEncodedName()).build());
+        } finally {
+            IOUtils.closeQuietly(table);
+        }
+    }
+
+    /**
+     * visits the regions that now hold the key range of each located region, and delivers their rows as one result
+     */
+    private void visitRelocated(List<Pair<SegmentVisit, HRegionLocation>> pairs, String logHeader) throws IOException, ServiceException, DataFormatException {
+        // regions merged since located may hold the range of more than one of the pairs
+        Set<Pair<SegmentVisit, String>> visited = Sets.newHashSet();
+        for (Pair<SegmentVisit, HRegionLocation> pair : pairs) {
+            SegmentVisit visit = pair.getFirst();
+            ByteArrayOutputStream rows = new ByteArrayOutputStream();
+            for (HRegionLocation location : relocateRegion(visit, pair.getSecond().getRegionInfo())) {
+                if (visited.add(Pair.newPair(visit, location.getRegionInfo().getEncodedName()))) {
+                    rows.write(rowsOf(visit, visitRegion(visit, location, visit.request), logHeader));
+                }
+            }
+            visit.resultItr.append(rows.toByteArray());
+        }
+    }
+
+    /**
+     * @return the regions that hold the key range of a region of the visit now
+     */
+    List<HRegionLocation> relocateRegion(SegmentVisit visit, HRegionInfo region) throws IOException {
+        return relocateRegion(getConnection(visit), TableName.valueOf(visit.cubeSeg.getStorageLocationIdentifier()), region);
+    }
+
+    private static HConnection getConnection(SegmentVisit visit) throws IOException {
+        // globally shared connection, does not require close
+        return HBaseConnection.get(visit.cubeSeg.getCubeInstance().getConfig().getStorageUrl());
+    }
+
+    private void deliver(SegmentVisit visit, CubeVisitResponse response, String logHeader) throws IOException, DataFormatException {
+        visit.resultItr.append(rowsOf(visit, response, logHeader));
+    }
+
+    private byte[] rowsOf(SegmentVisit visit, CubeVisitResponse response, String logHeader) throws IOException, DataFormatException {
+        logger.info(logHeader + "Endpoint RPC returned for segment " + visit.cubeSeg + ", total scanned row: " + response.getStats().getScannedRowCount() //
+                + ", time elapsed in EP: " + (response.getStats().getServiceEndTime() - response.getStats().getServiceStartTime()) + "(ms)" //
+                + ", etc message: " + response.getStats().getEtcMsg());
+        visit.resultItr.recordStats(response);
+
+        if (response.getStats().getNormalComplete() != 1) {
+            throw new GTScanSelfTerminatedException(logHeader + "The coprocessor thread stopped itself due to scan timeout or scan threshold(check region server log), failing current query...");
+        }
+
+        byte[] rows = HBaseZeroCopyByteString.zeroCopyGetBytes(response.getCompressedRows());
+        if (compressionResult) {
+            rows = CompressionUtils.decompress(rows);
+        }
+        return rows;
+    }
+
+    private void notifyError(List<Pair<SegmentVisit, HRegionLocation>> group, Throwable ex) {
+        for (Pair<SegmentVisit, HRegionLocation> pair : group) {
+            pair.getFirst().resultItr.notifyCoprocException(ex);
+        }
+    }
+
+    /**
+     * @return whether the call failed because a region is not served where it was located, also when the
+     * exception comes back from the region server as a remote exception of another type
+     */
+    static boolean isRegionNotServed(Throwable ex) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof NotServingRegionException || (t.getMessage() != null && t.getMessage().contains(NotServingRegionException.class.getName()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the regions of the segment's htable that overlap with any of the shard ranges (both ends inclusive),
+     * looked up in the region cache of the connection, which goes to hbase:meta only for keys not cached yet
+     */
+    static List<HRegionLocation> locateRegions(HConnection conn, String htableName, List<Pair<byte[], byte[]>> shardRanges) throws IOException {
+        TableName tableName = TableName.valueOf(htableName);
+        Map<String, HRegionLocation> ret = Maps.newLinkedHashMap();
+        for (Pair<byte[], byte[]> range : shardRanges) {
+            byte[] shardEnd = range.getSecond();
+            byte[] key = range.getFirst();
+            while (true) {
+                HRegionLocation location = conn.getRegionLocation(tableName, key, false);
+                ret.put(location.getRegionInfo().getEncodedName(), location);
+                // the next region starts at the end key of this one
+                byte[] regionEnd = location.getRegionInfo().getEndKey();
+                if (regionEnd.length == 0 || Bytes.compareTo(regionEnd, 0, Math.min(regionEnd.length, shardEnd.length), shardEnd, 0, shardEnd.length) > 0) {
+                    break;
+                }
+                key = regionEnd;
+            }
+        }
+        return Lists.newArrayList(ret.values());
+    }
+
+    /**
+     * @return the regions that hold the key range of a region now, located from hbase:meta
+     */
+    static List<HRegionLocation> relocateRegion(HConnection conn, TableName tableName, HRegionInfo region) throws IOException {
+        List<HRegionLocation> ret = Lists.newArrayList();
+        byte[] key = region.getStartKey();
+        while (true) {
+            HRegionLocation location = conn.getRegionLocation(tableName, key, true);
+            ret.add(location);
+            byte[] regionEnd = location.getRegionInfo().getEndKey();
+            if (regionEnd.length == 0 || (region.getEndKey().length > 0 && Bytes.compareTo(regionEnd, region.getEndKey()) >= 0)) {
+                break;
+            }
+            key = regionEnd;
+        }
+        return ret;
+    }
+}
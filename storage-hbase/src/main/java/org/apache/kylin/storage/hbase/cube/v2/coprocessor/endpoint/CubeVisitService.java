@@ -18,16 +18,21 @@
 
 package org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.net.InetAddress;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.ArrayUtils;
@@ -35,6 +40,8 @@ import org.apache.commons.lang.mutable.MutableBoolean;
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.Coprocessor;
 import org.apache.hadoop.hbase.CoprocessorEnvironment;
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.NotServingRegionException;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.coprocessor.CoprocessorException;
 import org.apache.hadoop.hbase.coprocessor.CoprocessorService;
@@ -46,9 +53,13 @@ import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.common.util.Bytes;
 import org.apache.kylin.common.util.BytesUtil;
 import org.apache.kylin.common.util.CompressionUtils;
+import org.apache.kylin.common.util.DaemonThreadFactory;
+import org.apache.kylin.common.util.DirectBufferPool;
+import org.apache.kylin.common.util.Pair;
 import org.apache.kylin.cube.kv.RowConstants;
 import org.apache.kylin.dimension.DimensionEncoding;
 import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTSampleScaleScanner;
 import org.apache.kylin.gridtable.GTScanExceedThresholdException;
 import org.apache.kylin.gridtable.GTScanRequest;
 import org.apache.kylin.gridtable.GTScanTimeoutException;
@@ -63,6 +74,7 @@ import org.apache.kylin.storage.hbase.cube.v2.CellListIterator;
 import org.apache.kylin.storage.hbase.cube.v2.CubeHBaseRPC;
 import org.apache.kylin.storage.hbase.cube.v2.HBaseReadonlyStore;
 import org.apache.kylin.storage.hbase.cube.v2.RawScan;
+import org.apache.kylin.storage.hbase.cube.v2.RawScanSplitter;
 import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos;
 import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest.IntList;
 import org.apache.kylin.storage.hbase.cube.v2.filter.MassInValueProviderFactoryImpl;
@@ -71,6 +83,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.HBaseZeroCopyByteString;
 import com.google.protobuf.RpcCallback;
 import com.google.protobuf.RpcController;
@@ -85,6 +98,10 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
     //TODO limit memory footprint
     private static final int MEMORY_LIMIT = 500 * 1024 * 1024;
 
+    private static DirectBufferPool outputBufferPool;
+
+    private static ExecutorService batchedVisitPool;
+
     private RegionCoprocessorEnvironment env;
 
     private long serviceStartTime;
@@ -117,8 +134,10 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
             if (nextOne.size() < 1) {
                 throw new IllegalStateException();
             }
-            ret.clear();
-            ret.addAll(nextOne);
+            // swap instead of copying the cells, the returned list is valid until the next call
+            List<Cell> tmp = ret;
+            ret = nextOne;
+            nextOne = tmp;
             nextOne.clear();
             try {
                 if (hasMore) {
@@ -160,6 +179,11 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
         return ret;
     }
 
+    private static long currentThreadCpuNanos() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        return threadMXBean.isCurrentThreadCpuTimeSupported() ? threadMXBean.getCurrentThreadCpuTime() : -1;
+    }
+
     private void appendProfileInfo(StringBuilder sb, String info) {
         if (info != null) {
             sb.append(info);
@@ -168,15 +192,18 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
         sb.append(",");
     }
 
-    @SuppressWarnings("checkstyle:methodlength")
+    static class RegionVisitResult {
+        ByteString rows;
+        long scannedRowCount;
+        long finalRowCount;
+        boolean normalComplete;
+    }
+
     @Override
     public void visitCube(final RpcController controller, final CubeVisitProtos.CubeVisitRequest request, RpcCallback<CubeVisitProtos.CubeVisitResponse> done) {
-        List<RegionScanner> regionScanners = Lists.newArrayList();
         HRegion region = null;
-
-        StringBuilder sb = new StringBuilder();
-        byte[] allRows;
         String debugGitTag = "";
+        List<Future<CubeVisitProtos.CubeVisitResponse>> batchedResponses = Lists.newArrayList();
 
         try {
             this.serviceStartTime = System.currentTimeMillis();
@@ -184,24 +211,156 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
             region = env.getRegion();
             region.startRegionOperation();
 
+            // the client locates regions from its cache, which may still hold a region split or merged since
+            if (request.hasEncodedRegionName() && !request.getEncodedRegionName().equals(region.getRegionInfo().getEncodedName())) {
+                throw new NotServingRegionException("Region " + request.getEncodedRegionName() + " is not online on this region server");
+            }
+
             // if user change kylin.properties on kylin server, need to manually redeploy coprocessor jar to update KylinConfig of Env.
             String serverPropString = request.getKylinProperties();
             Properties serverProp = new Properties();
             serverProp.load(new StringReader(serverPropString));
             KylinConfig.setKylinConfigInEnvIfMissing(serverProp);
-            KylinConfig kylinConfig = KylinConfig.getInstanceFromEnv();
 
             debugGitTag = region.getTableDesc().getValue(IRealizationConstants.HTableGitTag);
 
-            final GTScanRequest scanReq = GTScanRequest.serializer.deserialize(ByteBuffer.wrap(HBaseZeroCopyByteString.zeroCopyGetBytes(request.getGtScanRequest())));
-            List<List<Integer>> hbaseColumnsToGT = Lists.newArrayList();
-            for (IntList intList : request.getHbaseColumnsToGTList()) {
-                hbaseColumnsToGT.add(intList.getIntsList());
+            // other segments' regions on this region server, visited in parallel with this one
+            for (final CubeVisitProtos.CubeVisitRequest batchedVisit : request.getBatchedVisitsList()) {
+                batchedResponses.add(getBatchedVisitPool().submit(new Callable<CubeVisitProtos.CubeVisitResponse>() {
+                    @Override
+                    public CubeVisitProtos.CubeVisitResponse call() throws Exception {
+                        return visitBatchedRegion(batchedVisit);
+                    }
+                }));
+            }
+
+            CubeVisitProtos.CubeVisitResponse.Builder responseBuilder = visitRegion(region, request);
+            for (Future<CubeVisitProtos.CubeVisitResponse> future : batchedResponses) {
+                try {
+                    responseBuilder.addBatchedResponses(future.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof NotServingRegionException) {
+                        throw (NotServingRegionException) e.getCause();
+                    }
+                    throw new IOException("Error in batched region visit", e.getCause());
+                }
             }
-            StorageSideBehavior behavior = StorageSideBehavior.valueOf(scanReq.getStorageBehavior());
-            final List<RawScan> hbaseRawScans = deserializeRawScans(ByteBuffer.wrap(HBaseZeroCopyByteString.zeroCopyGetBytes(request.getHbaseRawScan())));
+            done.run(responseBuilder.build());
+
+        } catch (NotServingRegionException e) {
+            // not retried on this region, the client locates the regions again
+            logger.warn(e.toString());
+            ResponseConverter.setControllerException(controller, new DoNotRetryIOException("Error in coprocessor " + debugGitTag, e));
+        } catch (IOException ioe) {
+            logger.error(ioe.toString(), ioe);
+            IOException wrapped = new IOException("Error in coprocessor " + debugGitTag, ioe);
+            ResponseConverter.setControllerException(controller, wrapped);
+        } catch (InterruptedException ie) {
+            logger.error(ie.toString(), ie);
+            IOException wrapped = new IOException("Interrupted in coprocessor " + debugGitTag, ie);
+            ResponseConverter.setControllerException(controller, wrapped);
+        } catch (OutOfMemoryError oom) {
+            logger.error(oom.toString(), oom);
+            IOException wrapped = new IOException("OOM in coprocessor " + debugGitTag, oom);
+            ResponseConverter.setControllerException(controller, wrapped);
+        } finally {
+            // no-op for the finished ones
+            for (Future<CubeVisitProtos.CubeVisitResponse> future : batchedResponses) {
+                future.cancel(true);
+            }
+            if (region != null) {
+                try {
+                    region.closeRegionOperation();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    private CubeVisitProtos.CubeVisitResponse visitBatchedRegion(CubeVisitProtos.CubeVisitRequest visit) throws IOException {
+        HRegion region = env.getRegionServerServices().getFromOnlineRegions(visit.getEncodedRegionName());
+        if (region == null) {
+            throw new NotServingRegionException("Region " + visit.getEncodedRegionName() + " is not online on this region server");
+        }
+        region.startRegionOperation();
+        try {
+            return visitRegion(region, visit).build();
+        } finally {
+            region.closeRegionOperation();
+        }
+    }
+
+    /**
+     * visits one region and reports the rows and stats, the caller holds the region operation
+     */
+    private CubeVisitProtos.CubeVisitResponse.Builder visitRegion(HRegion region, CubeVisitProtos.CubeVisitRequest request) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        long cpuStartNanos = currentThreadCpuNanos();
+        String debugGitTag = region.getTableDesc().getValue(IRealizationConstants.HTableGitTag);
+
+        final GTScanRequest scanReq = GTScanRequest.serializer.deserialize(ByteBuffer.wrap(HBaseZeroCopyByteString.zeroCopyGetBytes(request.getGtScanRequest())));
+        List<List<Integer>> hbaseColumnsToGT = Lists.newArrayList();
+        for (IntList intList : request.getHbaseColumnsToGTList()) {
+            hbaseColumnsToGT.add(intList.getIntsList());
+        }
+        final List<RawScan> hbaseRawScans = deserializeRawScans(ByteBuffer.wrap(HBaseZeroCopyByteString.zeroCopyGetBytes(request.getHbaseRawScan())));
 
-            appendProfileInfo(sb, "start latency: " + (this.serviceStartTime - scanReq.getStartTime()));
+        appendProfileInfo(sb, "start latency: " + (this.serviceStartTime - scanReq.getStartTime()));
+
+        RegionVisitResult result = scanRegion(region, scanReq, hbaseRawScans, hbaseColumnsToGT, request.getRowkeyPreambleSize(), sb);
+
+        OperatingSystemMXBean operatingSystemMXBean = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        double systemCpuLoad = operatingSystemMXBean.getSystemCpuLoad();
+        double freePhysicalMemorySize = operatingSystemMXBean.getFreePhysicalMemorySize();
+        double freeSwapSpaceSize = operatingSystemMXBean.getFreeSwapSpaceSize();
+
+        appendProfileInfo(sb, "server stats done");
+        sb.append(" debugGitTag:" + debugGitTag);
+
+        CubeVisitProtos.CubeVisitResponse.Stats.Builder statsBuilder = CubeVisitProtos.CubeVisitResponse.Stats.newBuilder();
+        if (cpuStartNanos >= 0) {
+            statsBuilder.setCpuNanos(currentThreadCpuNanos() - cpuStartNanos);
+        }
+
+        CubeVisitProtos.CubeVisitResponse.Builder responseBuilder = CubeVisitProtos.CubeVisitResponse.newBuilder();
+        return responseBuilder.//
+                setCompressedRows(result.rows).//
+                setStats(statsBuilder.//
+                        setAggregatedRowCount(result.scannedRowCount - result.finalRowCount).//
+                        setScannedRowCount(result.scannedRowCount).//
+                        setServiceStartTime(serviceStartTime).//
+                        setServiceEndTime(System.currentTimeMillis()).//
+                        setSystemCpuLoad(systemCpuLoad).//
+                        setFreePhysicalMemorySize(freePhysicalMemorySize).//
+                        setFreeSwapSpaceSize(freeSwapSpaceSize).//
+                        setHostname(InetAddress.getLocalHost().getHostName()).// 
+                        setEtcMsg(sb.toString()).//
+                        setNormalComplete(result.normalComplete ? 1 : 0).build());
+    }
+
+    /**
+     * scan, filter and aggregate one region according to the scan request, the deadline is shared by all regions
+     * visited in the same call
+     */
+    @SuppressWarnings("checkstyle:methodlength")
+    private RegionVisitResult scanRegion(HRegion region, final GTScanRequest scanReq, List<RawScan> hbaseRawScans, List<List<Integer>> hbaseColumnsToGT, int rowkeyPreambleSize, StringBuilder sb) throws IOException {
+        List<RegionScanner> regionScanners = Lists.newArrayList();
+        RegionVisitResult result = new RegionVisitResult();
+
+        if (hbaseRawScans.isEmpty()) {
+            // nothing of the region is queried, e.g. a sub range that the client split away
+            appendProfileInfo(sb, "no raw scans");
+            result.rows = ByteString.EMPTY;
+            result.normalComplete = true;
+            return result;
+        }
+
+        DirectBufferPool outputBufferPool = getOutputBufferPool();
+        ByteBuffer output = null;
+        try {
+            StorageSideBehavior behavior = StorageSideBehavior.valueOf(scanReq.getStorageBehavior());
 
             MassInTupleFilter.VALUE_PROVIDER_FACTORY = new MassInValueProviderFactoryImpl(new MassInValueProviderFactoryImpl.DimEncAware() {
                 @Override
@@ -213,11 +372,22 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
             final List<InnerScannerAsIterator> cellListsForeachRawScan = Lists.newArrayList();
 
             for (RawScan hbaseRawScan : hbaseRawScans) {
-                if (request.getRowkeyPreambleSize() - RowConstants.ROWKEY_CUBOIDID_LEN > 0) {
+                if (rowkeyPreambleSize - RowConstants.ROWKEY_CUBOIDID_LEN > 0) {
                     //if has shard, fill region shard to raw scan start/end
-                    updateRawScanByCurrentRegion(hbaseRawScan, region, request.getRowkeyPreambleSize() - RowConstants.ROWKEY_CUBOIDID_LEN);
+                    updateRawScanByCurrentRegion(hbaseRawScan, region, rowkeyPreambleSize - RowConstants.ROWKEY_CUBOIDID_LEN);
                 }
+            }
+
+            double sampleScale = 1.0;
+            if (scanReq.isSampling()) {
+                int blocksPerScan = KylinConfig.getInstanceFromEnv().getQuerySamplingBlocksPerScan();
+                Pair<List<RawScan>, Double> sampled = RawScanSplitter.sampleBlocks(hbaseRawScans, scanReq.getSamplingPercentage(), blocksPerScan, rowkeyPreambleSize);
+                appendProfileInfo(sb, "sampled " + sampled.getFirst().size() + " blocks of " + hbaseRawScans.size() + " raw scans");
+                hbaseRawScans = sampled.getFirst();
+                sampleScale = sampled.getSecond();
+            }
 
+            for (RawScan hbaseRawScan : hbaseRawScans) {
                 Scan scan = CubeHBaseRPC.buildScan(hbaseRawScan);
                 RegionScanner innerScanner = region.getScanner(scan);
                 regionScanners.add(innerScanner);
@@ -285,14 +455,16 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
                 }
             };
 
-            IGTStore store = new HBaseReadonlyStore(cellListIterator, scanReq, hbaseRawScans.get(0).hbaseColumns, hbaseColumnsToGT, request.getRowkeyPreambleSize(), behavior.delayToggledOn());
+            IGTStore store = new HBaseReadonlyStore(cellListIterator, scanReq, hbaseRawScans.get(0).hbaseColumns, hbaseColumnsToGT, rowkeyPreambleSize, behavior.delayToggledOn());
 
             IGTScanner rawScanner = store.scan(scanReq);
             IGTScanner finalScanner = scanReq.decorateScanner(rawScanner, behavior.filterToggledOn(), behavior.aggrToggledOn(), deadline);
+            if (GTSampleScaleScanner.isApplicable(scanReq)) {
+                finalScanner = new GTSampleScaleScanner(finalScanner, scanReq, sampleScale);
+            }
 
-            ByteBuffer buffer = ByteBuffer.allocate(BufferedMeasureCodec.DEFAULT_BUFFER_SIZE);
-
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(BufferedMeasureCodec.DEFAULT_BUFFER_SIZE);//ByteArrayOutputStream will auto grow
+            // rows are exported straight from the cells (or the aggregation) into a pooled direct buffer
+            output = outputBufferPool.borrow(BufferedMeasureCodec.DEFAULT_BUFFER_SIZE);
             int finalRowCount = 0;
 
             try {
@@ -304,16 +476,15 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
                         }
                     }
 
-                    buffer.clear();
+                    int start = output.position();
                     try {
-                        oneRecord.exportColumns(scanReq.getColumns(), buffer);
+                        oneRecord.exportColumns(scanReq.getColumns(), output);
                     } catch (BufferOverflowException boe) {
-                        buffer = ByteBuffer.allocate(oneRecord.sizeOf(scanReq.getColumns()) * 2);
-                        oneRecord.exportColumns(scanReq.getColumns(), buffer);
+                        output.position(start);
+                        output = outputBufferPool.grow(output, start + oneRecord.sizeOf(scanReq.getColumns()));
+                        oneRecord.exportColumns(scanReq.getColumns(), output);
                     }
 
-                    outputStream.write(buffer.array(), 0, buffer.position());
-
                     finalRowCount++;
 
                     //if it's doing storage aggr, then should rely on GTAggregateScanner's limit check
@@ -335,66 +506,60 @@ public class CubeVisitService extends CubeVisitProtos.CubeVisitService implement
 
             appendProfileInfo(sb, "agg done");
 
-            //outputStream.close() is not necessary
-            byte[] compressedAllRows;
-            if (scanNormalComplete.booleanValue()) {
-                allRows = outputStream.toByteArray();
-            } else {
-                allRows = new byte[0];
-            }
-            if (!kylinConfig.getCompressionResult()) {
-                compressedAllRows = allRows;
+            result.normalComplete = scanNormalComplete.booleanValue();
+            if (result.normalComplete) {
+                output.flip();
+                result.rows = toResponseRows(output, KylinConfig.getInstanceFromEnv().getCompressionResult());
             } else {
-                compressedAllRows = CompressionUtils.compress(allRows);
+                result.rows = ByteString.EMPTY;
             }
-
             appendProfileInfo(sb, "compress done");
+            result.scannedRowCount = finalScanner.getScannedRowCount();
+            result.finalRowCount = finalRowCount;
+            return result;
 
-            OperatingSystemMXBean operatingSystemMXBean = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
-            double systemCpuLoad = operatingSystemMXBean.getSystemCpuLoad();
-            double freePhysicalMemorySize = operatingSystemMXBean.getFreePhysicalMemorySize();
-            double freeSwapSpaceSize = operatingSystemMXBean.getFreeSwapSpaceSize();
-
-            appendProfileInfo(sb, "server stats done");
-            sb.append(" debugGitTag:" + debugGitTag);
-
-            CubeVisitProtos.CubeVisitResponse.Builder responseBuilder = CubeVisitProtos.CubeVisitResponse.newBuilder();
-            done.run(responseBuilder.//
-                    setCompressedRows(HBaseZeroCopyByteString.wrap(compressedAllRows)).//too many array copies 
-                    setStats(CubeVisitProtos.CubeVisitResponse.Stats.newBuilder().//
-                            setAggregatedRowCount(finalScanner.getScannedRowCount() - finalRowCount).//
-                            setScannedRowCount(finalScanner.getScannedRowCount()).//
-                            setServiceStartTime(serviceStartTime).//
-                            setServiceEndTime(System.currentTimeMillis()).//
-                            setSystemCpuLoad(systemCpuLoad).//
-                            setFreePhysicalMemorySize(freePhysicalMemorySize).//
-                            setFreeSwapSpaceSize(freeSwapSpaceSize).//
-                            setHostname(InetAddress.getLocalHost().getHostName()).// 
-                            setEtcMsg(sb.toString()).//
-                            setNormalComplete(scanNormalComplete.booleanValue() ? 1 : 0).build())
-                    .//
-                    build());
-
-        } catch (IOException ioe) {
-            logger.error(ioe.toString(), ioe);
-            IOException wrapped = new IOException("Error in coprocessor " + debugGitTag, ioe);
-            ResponseConverter.setControllerException(controller, wrapped);
-        } catch (OutOfMemoryError oom) {
-            logger.error(oom.toString(), oom);
-            IOException wrapped = new IOException("OOM in coprocessor " + debugGitTag, oom);
-            ResponseConverter.setControllerException(controller, wrapped);
         } finally {
+            if (output != null) {
+                outputBufferPool.release(output);
+            }
             for (RegionScanner innerScanner : regionScanners) {
                 IOUtils.closeQuietly(innerScanner);
             }
-            if (region != null) {
-                try {
-                    region.closeRegionOperation();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    throw new RuntimeException(e);
-                }
+        }
+    }
+
+    private static DirectBufferPool getOutputBufferPool() {
+        synchronized (CubeVisitService.class) {
+            if (outputBufferPool == null) {
+                KylinConfig config = KylinConfig.getInstanceFromEnv();
+                long maxIdleBytes = config.getQueryCoprocessorOutputBufferPoolMB() * 1024L * 1024L;
+                long maxDirectBytes = config.getQueryCoprocessorOutputDirectBufferMaxMB() * 1024L * 1024L;
+                outputBufferPool = new DirectBufferPool(maxIdleBytes, maxDirectBytes, BufferedMeasureCodec.DEFAULT_BUFFER_SIZE);
+            }
+            return outputBufferPool;
+        }
+    }
+
+    /**
+     * @return the rows between the position and the limit of the buffer, not sharing the pooled buffer
+     */
+    private static ByteString toResponseRows(ByteBuffer output, boolean compress) throws IOException {
+        if (!compress) {
+            return ByteString.copyFrom(output);
+        }
+        // the deflater takes arrays only
+        byte[] rows = new byte[output.remaining()];
+        output.get(rows);
+        return HBaseZeroCopyByteString.wrap(CompressionUtils.compress(rows));
+    }
+
+    private static ExecutorService getBatchedVisitPool() {
+        synchronized (CubeVisitService.class) {
+            if (batchedVisitPool == null) {
+                int threads = Math.max(1, KylinConfig.getInstanceFromEnv().getQuerySegmentBatchVisitThreads());
+                batchedVisitPool = Executors.newFixedThreadPool(threads, new DaemonThreadFactory());
             }
+            return batchedVisitPool;
         }
     }
 
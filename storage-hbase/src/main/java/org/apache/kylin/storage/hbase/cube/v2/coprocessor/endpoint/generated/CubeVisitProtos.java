@@ -92,6 +92,78 @@ public final class CubeVisitProtos {
      */
     com.google.protobuf.ByteString
         getKylinPropertiesBytes();
+
+    // repeated .CubeVisitRequest batchedVisits = 6;
+    /**
+     * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+     *
+     * <pre>
+     * regions of other segments on the same region server, visited in the same call
+     * </pre>
+     */
+    java.util.List<org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest> 
+        getBatchedVisitsList();
+    /**
+     * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+     *
+     * <pre>
+     * regions of other segments on the same region server, visited in the same call
+     * </pre>
+     */
+    org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest getBatchedVisits(int index);
+    /**
+     * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+     *
+     * <pre>
+     * regions of other segments on the same region server, visited in the same call
+     * </pre>
+     */
+    int getBatchedVisitsCount();
+    /**
+     * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+     *
+     * <pre>
+     * regions of other segments on the same region server, visited in the same call
+     * </pre>
+     */
+    java.util.List<? extends org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequestOrBuilder> 
+        getBatchedVisitsOrBuilderList();
+    /**
+     * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+     *
+     * <pre>
+     * regions of other segments on the same region server, visited in the same call
+     * </pre>
+     */
+    org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequestOrBuilder getBatchedVisitsOrBuilder(
+        int index);
+
+    // optional string encodedRegionName = 7;
+    /**
+     * <code>optional string encodedRegionName = 7;</code>
+     *
+     * <pre>
+     * the region of a batched visit
+     * </pre>
+     */
+    boolean hasEncodedRegionName();
+    /**
+     * <code>optional string encodedRegionName = 7;</code>
+     *
+     * <pre>
+     * the region of a batched visit
+     * </pre>
+     */
+    java.lang.String getEncodedRegionName();
+    /**
+     * <code>optional string encodedRegionName = 7;</code>
+     *
+     * <pre>
+     * the region of a batched visit
+     * </pre>
+     */
+    com.google.protobuf.ByteString
+        getEncodedRegionNameBytes();
   }
   /**
    * Protobuf type {@code CubeVisitRequest}
@@ -172,6 +244,19 @@ public final class CubeVisitProtos {
               kylinProperties_ = input.readBytes();
               break;
             }
+            case 50: {
+              if (!((mutable_bitField0_ & 0x00000020) == 0x00000020)) {
+                batchedVisits_ = new java.util.ArrayList<org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest>();
+                mutable_bitField0_ |= 0x00000020;
+              }
+              batchedVisits_.add(input.readMessage(org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest.PARSER, extensionRegistry));
+              break;
+            }
+            case 58: {
+              bitField0_ |= 0x00000010;
+              encodedRegionName_ = input.readBytes();
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -183,6 +268,9 @@ public final class CubeVisitProtos {
         if (((mutable_bitField0_ & 0x00000008) == 0x00000008)) {
           hbaseColumnsToGT_ = java.util.Collections.unmodifiableList(hbaseColumnsToGT_);
         }
+        if (((mutable_bitField0_ & 0x00000020) == 0x00000020)) {
+          batchedVisits_ = java.util.Collections.unmodifiableList(batchedVisits_);
+        }
         this.unknownFields = unknownFields.build();
         makeExtensionsImmutable();
       }
@@ -858,12 +946,125 @@ public final class CubeVisitProtos {
       }
     }
 
+    // repeated .CubeVisitRequest batchedVisits = 6;
+    public static final int BATCHEDVISITS_FIELD_NUMBER = 6;
+    private java.util.List<org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest> batchedVisits_;
+    /**
+     * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+     *
+     * <pre>
+     * regions of other segments on the same region server, visited in the same call
+     * </pre>
+     */
+    public java.util.List<org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest> getBatchedVisitsList() {
+      return batchedVisits_;
+    }
+    /**
+     * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+     *
+     * <pre>
+     * regions of other segments on the same region server, visited in the same call
+     * </pre>
+     */
+    public java.util.List<? extends org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequestOrBuilder> 
+        getBatchedVisitsOrBuilderList() {
+      return batchedVisits_;
+    }
+    /**
+     * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+     *
+     * <pre>
+     * regions of other segments on the same region server, visited in the same call
+     * </pre>
+     */
+    public int getBatchedVisitsCount() {
+      return batchedVisits_.size();
+    }
+    /**
+     * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+     *
+     * <pre>
+     * regions of other segments on the same region server, visited in the same call
+     * </pre>
+     */
+    public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest getBatchedVisits(int index) {
+      return batchedVisits_.get(index);
+    }
+    /**
+     * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+     *
+     * <pre>
+     * regions of other segments on the same region server, visited in the same call
+     * </pre>
+     */
+    public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequestOrBuilder getBatchedVisitsOrBuilder(
+        int index) {
+      return batchedVisits_.get(index);
+    }
+
+    // optional string encodedRegionName = 7;
+    public static final int ENCODEDREGIONNAME_FIELD_NUMBER = 7;
+    private java.lang.Object encodedRegionName_;
+    /**
+     * <code>optional string encodedRegionName = 7;</code>
+     *
+     * <pre>
+     * the region of a batched visit
+     * </pre>
+     */
+    public boolean hasEncodedRegionName() {
+      return ((bitField0_ & 0x00000010) == 0x00000010);
+    }
+    /**
+     * <code>optional string encodedRegionName = 7;</code>
+     *
+     * <pre>
+     * the region of a batched visit
+     * </pre>
+     */
+    public java.lang.String getEncodedRegionName() {
+      java.lang.Object ref = encodedRegionName_;
+      if (ref instanceof java.lang.String) {
+        return (java.lang.String) ref;
+      } else {
+        com.google.protobuf.ByteString bs = 
+            (com.google.protobuf.ByteString) ref;
+        java.lang.String s = bs.toStringUtf8();
+        if (bs.isValidUtf8()) {
+          encodedRegionName_ = s;
+        }
+        return s;
+      }
+    }
+    /**
+     * <code>optional string encodedRegionName = 7;</code>
+     *
+     * <pre>
+     * the region of a batched visit
+     * </pre>
+     */
+    public com.google.protobuf.ByteString
+        getEncodedRegionNameBytes() {
+      java.lang.Object ref = encodedRegionName_;
+      if (ref instanceof java.lang.String) {
+        com.google.protobuf.ByteString b = 
+            com.google.protobuf.ByteString.copyFromUtf8(
+                (java.lang.String) ref);
+        encodedRegionName_ = b;
+        return b;
+      } else {
+        return (com.google.protobuf.ByteString) ref;
+      }
+    }
+
     private void initFields() {
       gtScanRequest_ = com.google.protobuf.ByteString.EMPTY;
       hbaseRawScan_ = com.google.protobuf.ByteString.EMPTY;
       rowkeyPreambleSize_ = 0;
       hbaseColumnsToGT_ = java.util.Collections.emptyList();
       kylinProperties_ = "";
+      batchedVisits_ = java.util.Collections.emptyList();
+      encodedRegionName_ = "";
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -886,6 +1087,12 @@ public final class CubeVisitProtos {
         memoizedIsInitialized = 0;
         return false;
       }
+      for (int i = 0; i < getBatchedVisitsCount(); i++) {
+        if (!getBatchedVisits(i).isInitialized()) {
+          memoizedIsInitialized = 0;
+          return false;
+        }
+      }
       memoizedIsInitialized = 1;
       return true;
     }
@@ -908,6 +1115,12 @@ public final class CubeVisitProtos {
       if (((bitField0_ & 0x00000008) == 0x00000008)) {
         output.writeBytes(5, getKylinPropertiesBytes());
       }
+      for (int i = 0; i < batchedVisits_.size(); i++) {
+        output.writeMessage(6, batchedVisits_.get(i));
+      }
+      if (((bitField0_ & 0x00000010) == 0x00000010)) {
+        output.writeBytes(7, getEncodedRegionNameBytes());
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -937,6 +1150,14 @@ public final class CubeVisitProtos {
         size += com.google.protobuf.CodedOutputStream
           .computeBytesSize(5, getKylinPropertiesBytes());
       }
+      for (int i = 0; i < batchedVisits_.size(); i++) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeMessageSize(6, batchedVisits_.get(i));
+      }
+      if (((bitField0_ & 0x00000010) == 0x00000010)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(7, getEncodedRegionNameBytes());
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -982,6 +1203,13 @@ public final class CubeVisitProtos {
         result = result && getKylinProperties()
             .equals(other.getKylinProperties());
       }
+      result = result && getBatchedVisitsList()
+          .equals(other.getBatchedVisitsList());
+      result = result && (hasEncodedRegionName() == other.hasEncodedRegionName());
+      if (hasEncodedRegionName()) {
+        result = result && getEncodedRegionName()
+            .equals(other.getEncodedRegionName());
+      }
       result = result &&
           getUnknownFields().equals(other.getUnknownFields());
       return result;
@@ -1015,6 +1243,14 @@ public final class CubeVisitProtos {
         hash = (37 * hash) + KYLINPROPERTIES_FIELD_NUMBER;
         hash = (53 * hash) + getKylinProperties().hashCode();
       }
+      if (getBatchedVisitsCount() > 0) {
+        hash = (37 * hash) + BATCHEDVISITS_FIELD_NUMBER;
+        hash = (53 * hash) + getBatchedVisitsList().hashCode();
+      }
+      if (hasEncodedRegionName()) {
+        hash = (37 * hash) + ENCODEDREGIONNAME_FIELD_NUMBER;
+        hash = (53 * hash) + getEncodedRegionName().hashCode();
+      }
       hash = (29 * hash) + getUnknownFields().hashCode();
       memoizedHashCode = hash;
       return hash;
@@ -1117,6 +1353,7 @@ public final class CubeVisitProtos {
       private void maybeForceBuilderInitialization() {
         if (com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders) {
           getHbaseColumnsToGTFieldBuilder();
+          getBatchedVisitsFieldBuilder();
         }
       }
       private static Builder create() {
@@ -1139,6 +1376,14 @@ public final class CubeVisitProtos {
         }
         kylinProperties_ = "";
         bitField0_ = (bitField0_ & ~0x00000010);
+        if (batchedVisitsBuilder_ == null) {
+          batchedVisits_ = java.util.Collections.emptyList();
+          bitField0_ = (bitField0_ & ~0x00000020);
+        } else {
+          batchedVisitsBuilder_.clear();
+        }
+        encodedRegionName_ = "";
+        bitField0_ = (bitField0_ & ~0x00000040);
         return this;
       }
 
@@ -1192,6 +1437,19 @@ public final class CubeVisitProtos {
           to_bitField0_ |= 0x00000008;
         }
         result.kylinProperties_ = kylinProperties_;
+        if (batchedVisitsBuilder_ == null) {
+          if (((bitField0_ & 0x00000020) == 0x00000020)) {
+            batchedVisits_ = java.util.Collections.unmodifiableList(batchedVisits_);
+            bitField0_ = (bitField0_ & ~0x00000020);
+          }
+          result.batchedVisits_ = batchedVisits_;
+        } else {
+          result.batchedVisits_ = batchedVisitsBuilder_.build();
+        }
+        if (((from_bitField0_ & 0x00000040) == 0x00000040)) {
+          to_bitField0_ |= 0x00000010;
+        }
+        result.encodedRegionName_ = encodedRegionName_;
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -1248,6 +1506,37 @@ public final class CubeVisitProtos {
           kylinProperties_ = other.kylinProperties_;
           onChanged();
         }
+        if (batchedVisitsBuilder_ == null) {
+          if (!other.batchedVisits_.isEmpty()) {
+            if (batchedVisits_.isEmpty()) {
+              batchedVisits_ = other.batchedVisits_;
+              bitField0_ = (bitField0_ & ~0x00000020);
+            } else {
+              ensureBatchedVisitsIsMutable();
+              batchedVisits_.addAll(other.batchedVisits_);
+            }
+            onChanged();
+          }
+        } else {
+          if (!other.batchedVisits_.isEmpty()) {
+            if (batchedVisitsBuilder_.isEmpty()) {
+              batchedVisitsBuilder_.dispose();
+              batchedVisitsBuilder_ = null;
+              batchedVisits_ = other.batchedVisits_;
+              bitField0_ = (bitField0_ & ~0x00000020);
+              batchedVisitsBuilder_ = 
+                com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders ?
+                   getBatchedVisitsFieldBuilder() : null;
+            } else {
+              batchedVisitsBuilder_.addAllMessages(other.batchedVisits_);
+            }
+          }
+        }
+        if (other.hasEncodedRegionName()) {
+          bitField0_ |= 0x00000040;
+          encodedRegionName_ = other.encodedRegionName_;
+          onChanged();
+        }
         this.mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -1269,6 +1558,12 @@ public final class CubeVisitProtos {
           
           return false;
         }
+        for (int i = 0; i < getBatchedVisitsCount(); i++) {
+          if (!getBatchedVisits(i).isInitialized()) {
+            
+            return false;
+          }
+        }
         return true;
       }
 
@@ -1734,105 +2029,560 @@ public final class CubeVisitProtos {
         return this;
       }
 
-      // @@protoc_insertion_point(builder_scope:CubeVisitRequest)
-    }
-
-    static {
-      defaultInstance = new CubeVisitRequest(true);
-      defaultInstance.initFields();
-    }
-
-    // @@protoc_insertion_point(class_scope:CubeVisitRequest)
-  }
-
-  public interface CubeVisitResponseOrBuilder
-      extends com.google.protobuf.MessageOrBuilder {
-
-    // required bytes compressedRows = 1;
-    /**
-     * <code>required bytes compressedRows = 1;</code>
-     */
-    boolean hasCompressedRows();
-    /**
-     * <code>required bytes compressedRows = 1;</code>
-     */
-    com.google.protobuf.ByteString getCompressedRows();
-
-    // required .CubeVisitResponse.Stats stats = 2;
-    /**
-     * <code>required .CubeVisitResponse.Stats stats = 2;</code>
-     */
-    boolean hasStats();
-    /**
-     * <code>required .CubeVisitResponse.Stats stats = 2;</code>
-     */
-    org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Stats getStats();
-    /**
-     * <code>required .CubeVisitResponse.Stats stats = 2;</code>
-     */
-    org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.StatsOrBuilder getStatsOrBuilder();
-  }
-  /**
-   * Protobuf type {@code CubeVisitResponse}
-   */
-  public static final class CubeVisitResponse extends
-      com.google.protobuf.GeneratedMessage
-      implements CubeVisitResponseOrBuilder {
-    // Use CubeVisitResponse.newBuilder() to construct.
-    private CubeVisitResponse(com.google.protobuf.GeneratedMessage.Builder<?> builder) {
-      super(builder);
-      this.unknownFields = builder.getUnknownFields();
-    }
-    private CubeVisitResponse(boolean noInit) { this.unknownFields = com.google.protobuf.UnknownFieldSet.getDefaultInstance(); }
-
-    private static final CubeVisitResponse defaultInstance;
-    public static CubeVisitResponse getDefaultInstance() {
-      return defaultInstance;
-    }
+      // repeated .CubeVisitRequest batchedVisits = 6;
+      private java.util.List<org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest> batchedVisits_ =
+        java.util.Collections.emptyList();
+      private void ensureBatchedVisitsIsMutable() {
+        if (!((bitField0_ & 0x00000020) == 0x00000020)) {
+          batchedVisits_ = new java.util.ArrayList<org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest>(batchedVisits_);
+          bitField0_ |= 0x00000020;
+         }
+      }
 
-    public CubeVisitResponse getDefaultInstanceForType() {
-      return defaultInstance;
-    }
+      private com.google.protobuf.RepeatedFieldBuilder<
+          org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest.Builder, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequestOrBuilder> batchedVisitsBuilder_;
 
-    private final com.google.protobuf.UnknownFieldSet unknownFields;
-    @java.lang.Override
-    public final com.google.protobuf.UnknownFieldSet
-        getUnknownFields() {
-      return this.unknownFields;
-    }
-    private CubeVisitResponse(
-        com.google.protobuf.CodedInputStream input,
-        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
-        throws com.google.protobuf.InvalidProtocolBufferException {
-      initFields();
-      int mutable_bitField0_ = 0;
-      com.google.protobuf.UnknownFieldSet.Builder unknownFields =
-          com.google.protobuf.UnknownFieldSet.newBuilder();
-      try {
-        boolean done = false;
-        while (!done) {
-          int tag = input.readTag();
-          switch (tag) {
-            case 0:
-              done = true;
-              break;
-            default: {
-              if (!parseUnknownField(input, unknownFields,
-                                     extensionRegistry, tag)) {
-                done = true;
-              }
-              break;
-            }
-            case 10: {
-              bitField0_ |= 0x00000001;
-              compressedRows_ = input.readBytes();
-              break;
-            }
-            case 18: {
-              org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Stats.Builder subBuilder = null;
-              if (((bitField0_ & 0x00000002) == 0x00000002)) {
-                subBuilder = stats_.toBuilder();
-              }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public java.util.List<org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest> getBatchedVisitsList() {
+        if (batchedVisitsBuilder_ == null) {
+          return java.util.Collections.unmodifiableList(batchedVisits_);
+        } else {
+          return batchedVisitsBuilder_.getMessageList();
+        }
+      }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public int getBatchedVisitsCount() {
+        if (batchedVisitsBuilder_ == null) {
+          return batchedVisits_.size();
+        } else {
+          return batchedVisitsBuilder_.getCount();
+        }
+      }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest getBatchedVisits(int index) {
+        if (batchedVisitsBuilder_ == null) {
+          return batchedVisits_.get(index);
+        } else {
+          return batchedVisitsBuilder_.getMessage(index);
+        }
+      }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public Builder setBatchedVisits(
+          int index, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest value) {
+        if (batchedVisitsBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureBatchedVisitsIsMutable();
+          batchedVisits_.set(index, value);
+          onChanged();
+        } else {
+          batchedVisitsBuilder_.setMessage(index, value);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public Builder setBatchedVisits(
+          int index, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest.Builder builderForValue) {
+        if (batchedVisitsBuilder_ == null) {
+          ensureBatchedVisitsIsMutable();
+          batchedVisits_.set(index, builderForValue.build());
+          onChanged();
+        } else {
+          batchedVisitsBuilder_.setMessage(index, builderForValue.build());
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public Builder addBatchedVisits(org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest value) {
+        if (batchedVisitsBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureBatchedVisitsIsMutable();
+          batchedVisits_.add(value);
+          onChanged();
+        } else {
+          batchedVisitsBuilder_.addMessage(value);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public Builder addBatchedVisits(
+          int index, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest value) {
+        if (batchedVisitsBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureBatchedVisitsIsMutable();
+          batchedVisits_.add(index, value);
+          onChanged();
+        } else {
+          batchedVisitsBuilder_.addMessage(index, value);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public Builder addBatchedVisits(
+          org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest.Builder builderForValue) {
+        if (batchedVisitsBuilder_ == null) {
+          ensureBatchedVisitsIsMutable();
+          batchedVisits_.add(builderForValue.build());
+          onChanged();
+        } else {
+          batchedVisitsBuilder_.addMessage(builderForValue.build());
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public Builder addBatchedVisits(
+          int index, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest.Builder builderForValue) {
+        if (batchedVisitsBuilder_ == null) {
+          ensureBatchedVisitsIsMutable();
+          batchedVisits_.add(index, builderForValue.build());
+          onChanged();
+        } else {
+          batchedVisitsBuilder_.addMessage(index, builderForValue.build());
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public Builder addAllBatchedVisits(
+          java.lang.Iterable<? extends org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest> values) {
+        if (batchedVisitsBuilder_ == null) {
+          ensureBatchedVisitsIsMutable();
+          super.addAll(values, batchedVisits_);
+          onChanged();
+        } else {
+          batchedVisitsBuilder_.addAllMessages(values);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public Builder clearBatchedVisits() {
+        if (batchedVisitsBuilder_ == null) {
+          batchedVisits_ = java.util.Collections.emptyList();
+          bitField0_ = (bitField0_ & ~0x00000020);
+          onChanged();
+        } else {
+          batchedVisitsBuilder_.clear();
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public Builder removeBatchedVisits(int index) {
+        if (batchedVisitsBuilder_ == null) {
+          ensureBatchedVisitsIsMutable();
+          batchedVisits_.remove(index);
+          onChanged();
+        } else {
+          batchedVisitsBuilder_.remove(index);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest.Builder getBatchedVisitsBuilder(
+          int index) {
+        return getBatchedVisitsFieldBuilder().getBuilder(index);
+      }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequestOrBuilder getBatchedVisitsOrBuilder(
+          int index) {
+        if (batchedVisitsBuilder_ == null) {
+          return batchedVisits_.get(index);  } else {
+          return batchedVisitsBuilder_.getMessageOrBuilder(index);
+        }
+      }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public java.util.List<? extends org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequestOrBuilder> 
+           getBatchedVisitsOrBuilderList() {
+        if (batchedVisitsBuilder_ != null) {
+          return batchedVisitsBuilder_.getMessageOrBuilderList();
+        } else {
+          return java.util.Collections.unmodifiableList(batchedVisits_);
+        }
+      }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest.Builder addBatchedVisitsBuilder() {
+        return getBatchedVisitsFieldBuilder().addBuilder(
+            org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest.getDefaultInstance());
+      }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest.Builder addBatchedVisitsBuilder(
+          int index) {
+        return getBatchedVisitsFieldBuilder().addBuilder(
+            index, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest.getDefaultInstance());
+      }
+      /**
+       * <code>repeated .CubeVisitRequest batchedVisits = 6;</code>
+       *
+       * <pre>
+       * regions of other segments on the same region server, visited in the same call
+       * </pre>
+       */
+      public java.util.List<org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest.Builder> 
+           getBatchedVisitsBuilderList() {
+        return getBatchedVisitsFieldBuilder().getBuilderList();
+      }
+      private com.google.protobuf.RepeatedFieldBuilder<
+          org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest.Builder, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequestOrBuilder> 
+          getBatchedVisitsFieldBuilder() {
+        if (batchedVisitsBuilder_ == null) {
+          batchedVisitsBuilder_ = new com.google.protobuf.RepeatedFieldBuilder<
+              org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest.Builder, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequestOrBuilder>(
+                  batchedVisits_,
+                  ((bitField0_ & 0x00000020) == 0x00000020),
+                  getParentForChildren(),
+                  isClean());
+          batchedVisits_ = null;
+        }
+        return batchedVisitsBuilder_;
+      }
+
+      // optional string encodedRegionName = 7;
+      private java.lang.Object encodedRegionName_ = "";
+      /**
+       * <code>optional string encodedRegionName = 7;</code>
+       *
+       * <pre>
+       * the region of a batched visit
+       * </pre>
+       */
+      public boolean hasEncodedRegionName() {
+        return ((bitField0_ & 0x00000040) == 0x00000040);
+      }
+      /**
+       * <code>optional string encodedRegionName = 7;</code>
+       *
+       * <pre>
+       * the region of a batched visit
+       * </pre>
+       */
+      public java.lang.String getEncodedRegionName() {
+        java.lang.Object ref = encodedRegionName_;
+        if (!(ref instanceof java.lang.String)) {
+          java.lang.String s = ((com.google.protobuf.ByteString) ref)
+              .toStringUtf8();
+          encodedRegionName_ = s;
+          return s;
+        } else {
+          return (java.lang.String) ref;
+        }
+      }
+      /**
+       * <code>optional string encodedRegionName = 7;</code>
+       *
+       * <pre>
+       * the region of a batched visit
+       * </pre>
+       */
+      public com.google.protobuf.ByteString
+          getEncodedRegionNameBytes() {
+        java.lang.Object ref = encodedRegionName_;
+        if (ref instanceof String) {
+          com.google.protobuf.ByteString b = 
+              com.google.protobuf.ByteString.copyFromUtf8(
+                  (java.lang.String) ref);
+          encodedRegionName_ = b;
+          return b;
+        } else {
+          return (com.google.protobuf.ByteString) ref;
+        }
+      }
+      /**
+       * <code>optional string encodedRegionName = 7;</code>
+       *
+       * <pre>
+       * the region of a batched visit
+       * </pre>
+       */
+      public Builder setEncodedRegionName(
+          java.lang.String value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000040;
+        encodedRegionName_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string encodedRegionName = 7;</code>
+       *
+       * <pre>
+       * the region of a batched visit
+       * </pre>
+       */
+      public Builder clearEncodedRegionName() {
+        bitField0_ = (bitField0_ & ~0x00000040);
+        encodedRegionName_ = getDefaultInstance().getEncodedRegionName();
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional string encodedRegionName = 7;</code>
+       *
+       * <pre>
+       * the region of a batched visit
+       * </pre>
+       */
+      public Builder setEncodedRegionNameBytes(
+          com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000040;
+        encodedRegionName_ = value;
+        onChanged();
+        return this;
+      }
+
+      // @@protoc_insertion_point(builder_scope:CubeVisitRequest)
+    }
+
+    static {
+      defaultInstance = new CubeVisitRequest(true);
+      defaultInstance.initFields();
+    }
+
+    // @@protoc_insertion_point(class_scope:CubeVisitRequest)
+  }
+
+  public interface CubeVisitResponseOrBuilder
+      extends com.google.protobuf.MessageOrBuilder {
+
+    // required bytes compressedRows = 1;
+    /**
+     * <code>required bytes compressedRows = 1;</code>
+     */
+    boolean hasCompressedRows();
+    /**
+     * <code>required bytes compressedRows = 1;</code>
+     */
+    com.google.protobuf.ByteString getCompressedRows();
+
+    // required .CubeVisitResponse.Stats stats = 2;
+    /**
+     * <code>required .CubeVisitResponse.Stats stats = 2;</code>
+     */
+    boolean hasStats();
+    /**
+     * <code>required .CubeVisitResponse.Stats stats = 2;</code>
+     */
+    org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Stats getStats();
+    /**
+     * <code>required .CubeVisitResponse.Stats stats = 2;</code>
+     */
+    org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.StatsOrBuilder getStatsOrBuilder();
+
+    // repeated .CubeVisitResponse batchedResponses = 3;
+    /**
+     * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+     *
+     * <pre>
+     * one per batched visit, in the same order
+     * </pre>
+     */
+    java.util.List<org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse> 
+        getBatchedResponsesList();
+    /**
+     * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+     *
+     * <pre>
+     * one per batched visit, in the same order
+     * </pre>
+     */
+    org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse getBatchedResponses(int index);
+    /**
+     * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+     *
+     * <pre>
+     * one per batched visit, in the same order
+     * </pre>
+     */
+    int getBatchedResponsesCount();
+    /**
+     * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+     *
+     * <pre>
+     * one per batched visit, in the same order
+     * </pre>
+     */
+    java.util.List<? extends org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponseOrBuilder> 
+        getBatchedResponsesOrBuilderList();
+    /**
+     * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+     *
+     * <pre>
+     * one per batched visit, in the same order
+     * </pre>
+     */
+    org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponseOrBuilder getBatchedResponsesOrBuilder(
+        int index);
+  }
+  /**
+   * Protobuf type {@code CubeVisitResponse}
+   */
+  public static final class CubeVisitResponse extends
+      com.google.protobuf.GeneratedMessage
+      implements CubeVisitResponseOrBuilder {
+    // Use CubeVisitResponse.newBuilder() to construct.
+    private CubeVisitResponse(com.google.protobuf.GeneratedMessage.Builder<?> builder) {
+      super(builder);
+      this.unknownFields = builder.getUnknownFields();
+    }
+    private CubeVisitResponse(boolean noInit) { this.unknownFields = com.google.protobuf.UnknownFieldSet.getDefaultInstance(); }
+
+    private static final CubeVisitResponse defaultInstance;
+    public static CubeVisitResponse getDefaultInstance() {
+      return defaultInstance;
+    }
+
+    public CubeVisitResponse getDefaultInstanceForType() {
+      return defaultInstance;
+    }
+
+    private final com.google.protobuf.UnknownFieldSet unknownFields;
+    @java.lang.Override
+    public final com.google.protobuf.UnknownFieldSet
+        getUnknownFields() {
+      return this.unknownFields;
+    }
+    private CubeVisitResponse(
+        com.google.protobuf.CodedInputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      initFields();
+      int mutable_bitField0_ = 0;
+      com.google.protobuf.UnknownFieldSet.Builder unknownFields =
+          com.google.protobuf.UnknownFieldSet.newBuilder();
+      try {
+        boolean done = false;
+        while (!done) {
+          int tag = input.readTag();
+          switch (tag) {
+            case 0:
+              done = true;
+              break;
+            default: {
+              if (!parseUnknownField(input, unknownFields,
+                                     extensionRegistry, tag)) {
+                done = true;
+              }
+              break;
+            }
+            case 10: {
+              bitField0_ |= 0x00000001;
+              compressedRows_ = input.readBytes();
+              break;
+            }
+            case 18: {
+              org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Stats.Builder subBuilder = null;
+              if (((bitField0_ & 0x00000002) == 0x00000002)) {
+                subBuilder = stats_.toBuilder();
+              }
               stats_ = input.readMessage(org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Stats.PARSER, extensionRegistry);
               if (subBuilder != null) {
                 subBuilder.mergeFrom(stats_);
@@ -1841,6 +2591,14 @@ public final class CubeVisitProtos {
               bitField0_ |= 0x00000002;
               break;
             }
+            case 26: {
+              if (!((mutable_bitField0_ & 0x00000004) == 0x00000004)) {
+                batchedResponses_ = new java.util.ArrayList<org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse>();
+                mutable_bitField0_ |= 0x00000004;
+              }
+              batchedResponses_.add(input.readMessage(org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.PARSER, extensionRegistry));
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -1849,6 +2607,9 @@ public final class CubeVisitProtos {
         throw new com.google.protobuf.InvalidProtocolBufferException(
             e.getMessage()).setUnfinishedMessage(this);
       } finally {
+        if (((mutable_bitField0_ & 0x00000004) == 0x00000004)) {
+          batchedResponses_ = java.util.Collections.unmodifiableList(batchedResponses_);
+        }
         this.unknownFields = unknownFields.build();
         makeExtensionsImmutable();
       }
@@ -2000,6 +2761,24 @@ public final class CubeVisitProtos {
        * </pre>
        */
       int getNormalComplete();
+
+      // optional int64 cpuNanos = 11;
+      /**
+       * <code>optional int64 cpuNanos = 11;</code>
+       *
+       * <pre>
+       * cpu time of the thread that visited the region, in nanoseconds
+       * </pre>
+       */
+      boolean hasCpuNanos();
+      /**
+       * <code>optional int64 cpuNanos = 11;</code>
+       *
+       * <pre>
+       * cpu time of the thread that visited the region, in nanoseconds
+       * </pre>
+       */
+      long getCpuNanos();
     }
     /**
      * Protobuf type {@code CubeVisitResponse.Stats}
@@ -2102,6 +2881,11 @@ public final class CubeVisitProtos {
                 normalComplete_ = input.readInt32();
                 break;
               }
+              case 88: {
+                bitField0_ |= 0x00000400;
+                cpuNanos_ = input.readInt64();
+                break;
+              }
             }
           }
         } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -2364,6 +3148,30 @@ public final class CubeVisitProtos {
         return normalComplete_;
       }
 
+      // optional int64 cpuNanos = 11;
+      public static final int CPUNANOS_FIELD_NUMBER = 11;
+      private long cpuNanos_;
+      /**
+       * <code>optional int64 cpuNanos = 11;</code>
+       *
+       * <pre>
+       * cpu time of the thread that visited the region, in nanoseconds
+       * </pre>
+       */
+      public boolean hasCpuNanos() {
+        return ((bitField0_ & 0x00000400) == 0x00000400);
+      }
+      /**
+       * <code>optional int64 cpuNanos = 11;</code>
+       *
+       * <pre>
+       * cpu time of the thread that visited the region, in nanoseconds
+       * </pre>
+       */
+      public long getCpuNanos() {
+        return cpuNanos_;
+      }
+
       private void initFields() {
         serviceStartTime_ = 0L;
         serviceEndTime_ = 0L;
@@ -2375,6 +3183,7 @@ public final class CubeVisitProtos {
         hostname_ = "";
         etcMsg_ = "";
         normalComplete_ = 0;
+        cpuNanos_ = 0L;
       }
       private byte memoizedIsInitialized = -1;
       public final boolean isInitialized() {
@@ -2418,6 +3227,9 @@ public final class CubeVisitProtos {
         if (((bitField0_ & 0x00000200) == 0x00000200)) {
           output.writeInt32(10, normalComplete_);
         }
+        if (((bitField0_ & 0x00000400) == 0x00000400)) {
+          output.writeInt64(11, cpuNanos_);
+        }
         getUnknownFields().writeTo(output);
       }
 
@@ -2467,6 +3279,10 @@ public final class CubeVisitProtos {
           size += com.google.protobuf.CodedOutputStream
             .computeInt32Size(10, normalComplete_);
         }
+        if (((bitField0_ & 0x00000400) == 0x00000400)) {
+          size += com.google.protobuf.CodedOutputStream
+            .computeInt64Size(11, cpuNanos_);
+        }
         size += getUnknownFields().getSerializedSize();
         memoizedSerializedSize = size;
         return size;
@@ -2537,6 +3353,11 @@ public final class CubeVisitProtos {
           result = result && (getNormalComplete()
               == other.getNormalComplete());
         }
+        result = result && (hasCpuNanos() == other.hasCpuNanos());
+        if (hasCpuNanos()) {
+          result = result && (getCpuNanos()
+              == other.getCpuNanos());
+        }
         result = result &&
             getUnknownFields().equals(other.getUnknownFields());
         return result;
@@ -2593,6 +3414,10 @@ public final class CubeVisitProtos {
           hash = (37 * hash) + NORMALCOMPLETE_FIELD_NUMBER;
           hash = (53 * hash) + getNormalComplete();
         }
+        if (hasCpuNanos()) {
+          hash = (37 * hash) + CPUNANOS_FIELD_NUMBER;
+          hash = (53 * hash) + hashLong(getCpuNanos());
+        }
         hash = (29 * hash) + getUnknownFields().hashCode();
         memoizedHashCode = hash;
         return hash;
@@ -2722,6 +3547,8 @@ public final class CubeVisitProtos {
           bitField0_ = (bitField0_ & ~0x00000100);
           normalComplete_ = 0;
           bitField0_ = (bitField0_ & ~0x00000200);
+          cpuNanos_ = 0L;
+          bitField0_ = (bitField0_ & ~0x00000400);
           return this;
         }
 
@@ -2790,6 +3617,10 @@ public final class CubeVisitProtos {
             to_bitField0_ |= 0x00000200;
           }
           result.normalComplete_ = normalComplete_;
+          if (((from_bitField0_ & 0x00000400) == 0x00000400)) {
+            to_bitField0_ |= 0x00000400;
+          }
+          result.cpuNanos_ = cpuNanos_;
           result.bitField0_ = to_bitField0_;
           onBuilt();
           return result;
@@ -2840,6 +3671,9 @@ public final class CubeVisitProtos {
           if (other.hasNormalComplete()) {
             setNormalComplete(other.getNormalComplete());
           }
+          if (other.hasCpuNanos()) {
+            setCpuNanos(other.getCpuNanos());
+          }
           this.mergeUnknownFields(other.getUnknownFields());
           return this;
         }
@@ -3246,51 +4080,100 @@ public final class CubeVisitProtos {
           return this;
         }
 
-        // optional int32 normalComplete = 10;
-        private int normalComplete_ ;
+        // optional int32 normalComplete = 10;
+        private int normalComplete_ ;
+        /**
+         * <code>optional int32 normalComplete = 10;</code>
+         *
+         * <pre>
+         *when time outs, normalComplete will be false
+         * </pre>
+         */
+        public boolean hasNormalComplete() {
+          return ((bitField0_ & 0x00000200) == 0x00000200);
+        }
+        /**
+         * <code>optional int32 normalComplete = 10;</code>
+         *
+         * <pre>
+         *when time outs, normalComplete will be false
+         * </pre>
+         */
+        public int getNormalComplete() {
+          return normalComplete_;
+        }
+        /**
+         * <code>optional int32 normalComplete = 10;</code>
+         *
+         * <pre>
+         *when time outs, normalComplete will be false
+         * </pre>
+         */
+        public Builder setNormalComplete(int value) {
+          bitField0_ |= 0x00000200;
+          normalComplete_ = value;
+          onChanged();
+          return this;
+        }
+        /**
+         * <code>optional int32 normalComplete = 10;</code>
+         *
+         * <pre>
+         *when time outs, normalComplete will be false
+         * </pre>
+         */
+        public Builder clearNormalComplete() {
+          bitField0_ = (bitField0_ & ~0x00000200);
+          normalComplete_ = 0;
+          onChanged();
+          return this;
+        }
+
+        // optional int64 cpuNanos = 11;
+        private long cpuNanos_ ;
         /**
-         * <code>optional int32 normalComplete = 10;</code>
+         * <code>optional int64 cpuNanos = 11;</code>
          *
          * <pre>
-         *when time outs, normalComplete will be false
+         * cpu time of the thread that visited the region, in nanoseconds
          * </pre>
          */
-        public boolean hasNormalComplete() {
-          return ((bitField0_ & 0x00000200) == 0x00000200);
+        public boolean hasCpuNanos() {
+          return ((bitField0_ & 0x00000400) == 0x00000400);
         }
         /**
-         * <code>optional int32 normalComplete = 10;</code>
+         * <code>optional int64 cpuNanos = 11;</code>
          *
          * <pre>
-         *when time outs, normalComplete will be false
+         * cpu time of the thread that visited the region, in nanoseconds
          * </pre>
          */
-        public int getNormalComplete() {
-          return normalComplete_;
+        public long getCpuNanos() {
+          return cpuNanos_;
         }
         /**
-         * <code>optional int32 normalComplete = 10;</code>
+         * <code>optional int64 cpuNanos = 11;</code>
          *
          * <pre>
-         *when time outs, normalComplete will be false
+         * cpu time of the thread that visited the region, in nanoseconds
          * </pre>
          */
-        public Builder setNormalComplete(int value) {
-          bitField0_ |= 0x00000200;
-          normalComplete_ = value;
+        public Builder setCpuNanos(long value) {
+          bitField0_ |= 0x00000400;
+          cpuNanos_ = value;
           onChanged();
           return this;
         }
         /**
-         * <code>optional int32 normalComplete = 10;</code>
+         * <code>optional int64 cpuNanos = 11;</code>
          *
          * <pre>
-         *when time outs, normalComplete will be false
+         * cpu time of the thread that visited the region, in nanoseconds
          * </pre>
          */
-        public Builder clearNormalComplete() {
-          bitField0_ = (bitField0_ & ~0x00000200);
-          normalComplete_ = 0;
+        public Builder clearCpuNanos() {
+          bitField0_ = (bitField0_ & ~0x00000400);
+          cpuNanos_ = 0L;
           onChanged();
           return this;
         }
@@ -3345,9 +4228,66 @@ public final class CubeVisitProtos {
       return stats_;
     }
 
+    // repeated .CubeVisitResponse batchedResponses = 3;
+    public static final int BATCHEDRESPONSES_FIELD_NUMBER = 3;
+    private java.util.List<org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse> batchedResponses_;
+    /**
+     * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+     *
+     * <pre>
+     * one per batched visit, in the same order
+     * </pre>
+     */
+    public java.util.List<org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse> getBatchedResponsesList() {
+      return batchedResponses_;
+    }
+    /**
+     * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+     *
+     * <pre>
+     * one per batched visit, in the same order
+     * </pre>
+     */
+    public java.util.List<? extends org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponseOrBuilder> 
+        getBatchedResponsesOrBuilderList() {
+      return batchedResponses_;
+    }
+    /**
+     * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+     *
+     * <pre>
+     * one per batched visit, in the same order
+     * </pre>
+     */
+    public int getBatchedResponsesCount() {
+      return batchedResponses_.size();
+    }
+    /**
+     * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+     *
+     * <pre>
+     * one per batched visit, in the same order
+     * </pre>
+     */
+    public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse getBatchedResponses(int index) {
+      return batchedResponses_.get(index);
+    }
+    /**
+     * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+     *
+     * <pre>
+     * one per batched visit, in the same order
+     * </pre>
+     */
+    public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponseOrBuilder getBatchedResponsesOrBuilder(
+        int index) {
+      return batchedResponses_.get(index);
+    }
+
     private void initFields() {
       compressedRows_ = com.google.protobuf.ByteString.EMPTY;
       stats_ = org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Stats.getDefaultInstance();
+      batchedResponses_ = java.util.Collections.emptyList();
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -3362,6 +4302,12 @@ public final class CubeVisitProtos {
         memoizedIsInitialized = 0;
         return false;
       }
+      for (int i = 0; i < getBatchedResponsesCount(); i++) {
+        if (!getBatchedResponses(i).isInitialized()) {
+          memoizedIsInitialized = 0;
+          return false;
+        }
+      }
       memoizedIsInitialized = 1;
       return true;
     }
@@ -3375,6 +4321,9 @@ public final class CubeVisitProtos {
       if (((bitField0_ & 0x00000002) == 0x00000002)) {
         output.writeMessage(2, stats_);
       }
+      for (int i = 0; i < batchedResponses_.size(); i++) {
+        output.writeMessage(3, batchedResponses_.get(i));
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -3392,6 +4341,10 @@ public final class CubeVisitProtos {
         size += com.google.protobuf.CodedOutputStream
           .computeMessageSize(2, stats_);
       }
+      for (int i = 0; i < batchedResponses_.size(); i++) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeMessageSize(3, batchedResponses_.get(i));
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -3425,6 +4378,8 @@ public final class CubeVisitProtos {
         result = result && getStats()
             .equals(other.getStats());
       }
+      result = result && getBatchedResponsesList()
+          .equals(other.getBatchedResponsesList());
       result = result &&
           getUnknownFields().equals(other.getUnknownFields());
       return result;
@@ -3446,6 +4401,10 @@ public final class CubeVisitProtos {
         hash = (37 * hash) + STATS_FIELD_NUMBER;
         hash = (53 * hash) + getStats().hashCode();
       }
+      if (getBatchedResponsesCount() > 0) {
+        hash = (37 * hash) + BATCHEDRESPONSES_FIELD_NUMBER;
+        hash = (53 * hash) + getBatchedResponsesList().hashCode();
+      }
       hash = (29 * hash) + getUnknownFields().hashCode();
       memoizedHashCode = hash;
       return hash;
@@ -3548,6 +4507,7 @@ public final class CubeVisitProtos {
       private void maybeForceBuilderInitialization() {
         if (com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders) {
           getStatsFieldBuilder();
+          getBatchedResponsesFieldBuilder();
         }
       }
       private static Builder create() {
@@ -3564,6 +4524,12 @@ public final class CubeVisitProtos {
           statsBuilder_.clear();
         }
         bitField0_ = (bitField0_ & ~0x00000002);
+        if (batchedResponsesBuilder_ == null) {
+          batchedResponses_ = java.util.Collections.emptyList();
+          bitField0_ = (bitField0_ & ~0x00000004);
+        } else {
+          batchedResponsesBuilder_.clear();
+        }
         return this;
       }
 
@@ -3604,6 +4570,15 @@ public final class CubeVisitProtos {
         } else {
           result.stats_ = statsBuilder_.build();
         }
+        if (batchedResponsesBuilder_ == null) {
+          if (((bitField0_ & 0x00000004) == 0x00000004)) {
+            batchedResponses_ = java.util.Collections.unmodifiableList(batchedResponses_);
+            bitField0_ = (bitField0_ & ~0x00000004);
+          }
+          result.batchedResponses_ = batchedResponses_;
+        } else {
+          result.batchedResponses_ = batchedResponsesBuilder_.build();
+        }
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -3626,6 +4601,32 @@ public final class CubeVisitProtos {
         if (other.hasStats()) {
           mergeStats(other.getStats());
         }
+        if (batchedResponsesBuilder_ == null) {
+          if (!other.batchedResponses_.isEmpty()) {
+            if (batchedResponses_.isEmpty()) {
+              batchedResponses_ = other.batchedResponses_;
+              bitField0_ = (bitField0_ & ~0x00000004);
+            } else {
+              ensureBatchedResponsesIsMutable();
+              batchedResponses_.addAll(other.batchedResponses_);
+            }
+            onChanged();
+          }
+        } else {
+          if (!other.batchedResponses_.isEmpty()) {
+            if (batchedResponsesBuilder_.isEmpty()) {
+              batchedResponsesBuilder_.dispose();
+              batchedResponsesBuilder_ = null;
+              batchedResponses_ = other.batchedResponses_;
+              bitField0_ = (bitField0_ & ~0x00000004);
+              batchedResponsesBuilder_ = 
+                com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders ?
+                   getBatchedResponsesFieldBuilder() : null;
+            } else {
+              batchedResponsesBuilder_.addAllMessages(other.batchedResponses_);
+            }
+          }
+        }
         this.mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -3639,6 +4640,12 @@ public final class CubeVisitProtos {
           
           return false;
         }
+        for (int i = 0; i < getBatchedResponsesCount(); i++) {
+          if (!getBatchedResponses(i).isInitialized()) {
+            
+            return false;
+          }
+        }
         return true;
       }
 
@@ -3814,6 +4821,318 @@ public final class CubeVisitProtos {
         return statsBuilder_;
       }
 
+      // repeated .CubeVisitResponse batchedResponses = 3;
+      private java.util.List<org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse> batchedResponses_ =
+        java.util.Collections.emptyList();
+      private void ensureBatchedResponsesIsMutable() {
+        if (!((bitField0_ & 0x00000004) == 0x00000004)) {
+          batchedResponses_ = new java.util.ArrayList<org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse>(batchedResponses_);
+          bitField0_ |= 0x00000004;
+         }
+      }
+
+      private com.google.protobuf.RepeatedFieldBuilder<
+          org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Builder, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponseOrBuilder> batchedResponsesBuilder_;
+
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public java.util.List<org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse> getBatchedResponsesList() {
+        if (batchedResponsesBuilder_ == null) {
+          return java.util.Collections.unmodifiableList(batchedResponses_);
+        } else {
+          return batchedResponsesBuilder_.getMessageList();
+        }
+      }
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public int getBatchedResponsesCount() {
+        if (batchedResponsesBuilder_ == null) {
+          return batchedResponses_.size();
+        } else {
+          return batchedResponsesBuilder_.getCount();
+        }
+      }
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse getBatchedResponses(int index) {
+        if (batchedResponsesBuilder_ == null) {
+          return batchedResponses_.get(index);
+        } else {
+          return batchedResponsesBuilder_.getMessage(index);
+        }
+      }
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public Builder setBatchedResponses(
+          int index, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse value) {
+        if (batchedResponsesBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureBatchedResponsesIsMutable();
+          batchedResponses_.set(index, value);
+          onChanged();
+        } else {
+          batchedResponsesBuilder_.setMessage(index, value);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public Builder setBatchedResponses(
+          int index, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Builder builderForValue) {
+        if (batchedResponsesBuilder_ == null) {
+          ensureBatchedResponsesIsMutable();
+          batchedResponses_.set(index, builderForValue.build());
+          onChanged();
+        } else {
+          batchedResponsesBuilder_.setMessage(index, builderForValue.build());
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public Builder addBatchedResponses(org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse value) {
+        if (batchedResponsesBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureBatchedResponsesIsMutable();
+          batchedResponses_.add(value);
+          onChanged();
+        } else {
+          batchedResponsesBuilder_.addMessage(value);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public Builder addBatchedResponses(
+          int index, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse value) {
+        if (batchedResponsesBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureBatchedResponsesIsMutable();
+          batchedResponses_.add(index, value);
+          onChanged();
+        } else {
+          batchedResponsesBuilder_.addMessage(index, value);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public Builder addBatchedResponses(
+          org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Builder builderForValue) {
+        if (batchedResponsesBuilder_ == null) {
+          ensureBatchedResponsesIsMutable();
+          batchedResponses_.add(builderForValue.build());
+          onChanged();
+        } else {
+          batchedResponsesBuilder_.addMessage(builderForValue.build());
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public Builder addBatchedResponses(
+          int index, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Builder builderForValue) {
+        if (batchedResponsesBuilder_ == null) {
+          ensureBatchedResponsesIsMutable();
+          batchedResponses_.add(index, builderForValue.build());
+          onChanged();
+        } else {
+          batchedResponsesBuilder_.addMessage(index, builderForValue.build());
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public Builder addAllBatchedResponses(
+          java.lang.Iterable<? extends org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse> values) {
+        if (batchedResponsesBuilder_ == null) {
+          ensureBatchedResponsesIsMutable();
+          super.addAll(values, batchedResponses_);
+          onChanged();
+        } else {
+          batchedResponsesBuilder_.addAllMessages(values);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public Builder clearBatchedResponses() {
+        if (batchedResponsesBuilder_ == null) {
+          batchedResponses_ = java.util.Collections.emptyList();
+          bitField0_ = (bitField0_ & ~0x00000004);
+          onChanged();
+        } else {
+          batchedResponsesBuilder_.clear();
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public Builder removeBatchedResponses(int index) {
+        if (batchedResponsesBuilder_ == null) {
+          ensureBatchedResponsesIsMutable();
+          batchedResponses_.remove(index);
+          onChanged();
+        } else {
+          batchedResponsesBuilder_.remove(index);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Builder getBatchedResponsesBuilder(
+          int index) {
+        return getBatchedResponsesFieldBuilder().getBuilder(index);
+      }
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponseOrBuilder getBatchedResponsesOrBuilder(
+          int index) {
+        if (batchedResponsesBuilder_ == null) {
+          return batchedResponses_.get(index);  } else {
+          return batchedResponsesBuilder_.getMessageOrBuilder(index);
+        }
+      }
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public java.util.List<? extends org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponseOrBuilder> 
+           getBatchedResponsesOrBuilderList() {
+        if (batchedResponsesBuilder_ != null) {
+          return batchedResponsesBuilder_.getMessageOrBuilderList();
+        } else {
+          return java.util.Collections.unmodifiableList(batchedResponses_);
+        }
+      }
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Builder addBatchedResponsesBuilder() {
+        return getBatchedResponsesFieldBuilder().addBuilder(
+            org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.getDefaultInstance());
+      }
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Builder addBatchedResponsesBuilder(
+          int index) {
+        return getBatchedResponsesFieldBuilder().addBuilder(
+            index, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.getDefaultInstance());
+      }
+      /**
+       * <code>repeated .CubeVisitResponse batchedResponses = 3;</code>
+       *
+       * <pre>
+       * one per batched visit, in the same order
+       * </pre>
+       */
+      public java.util.List<org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Builder> 
+           getBatchedResponsesBuilderList() {
+        return getBatchedResponsesFieldBuilder().getBuilderList();
+      }
+      private com.google.protobuf.RepeatedFieldBuilder<
+          org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Builder, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponseOrBuilder> 
+          getBatchedResponsesFieldBuilder() {
+        if (batchedResponsesBuilder_ == null) {
+          batchedResponsesBuilder_ = new com.google.protobuf.RepeatedFieldBuilder<
+              org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse.Builder, org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponseOrBuilder>(
+                  batchedResponses_,
+                  ((bitField0_ & 0x00000004) == 0x00000004),
+                  getParentForChildren(),
+                  isClean());
+          batchedResponses_ = null;
+        }
+        return batchedResponsesBuilder_;
+      }
+
       // @@protoc_insertion_point(builder_scope:CubeVisitResponse)
     }
 
@@ -4088,25 +5407,28 @@ public final class CubeVisitProtos {
     java.lang.String[] descriptorData = {
       "\npstorage-hbase/src/main/java/org/apache" +
       "/kylin/storage/hbase/cube/v2/coprocessor" +
-      "/endpoint/protobuf/CubeVisit.proto\"\302\001\n\020C" +
+      "/endpoint/protobuf/CubeVisit.proto\"\207\002\n\020C" +
       "ubeVisitRequest\022\025\n\rgtScanRequest\030\001 \002(\014\022\024" +
       "\n\014hbaseRawScan\030\002 \002(\014\022\032\n\022rowkeyPreambleSi" +
       "ze\030\003 \002(\005\0223\n\020hbaseColumnsToGT\030\004 \003(\0132\031.Cub" +
       "eVisitRequest.IntList\022\027\n\017kylinProperties" +
-      "\030\005 \002(\t\032\027\n\007IntList\022\014\n\004ints\030\001 \003(\005\"\321\002\n\021Cube" +
-      "VisitResponse\022\026\n\016compressedRows\030\001 \002(\014\022\'\n" +
-      "\005stats\030\002 \002(\0132\030.CubeVisitResponse.Stats\032\372",
-      "\001\n\005Stats\022\030\n\020serviceStartTime\030\001 \001(\003\022\026\n\016se" +
-      "rviceEndTime\030\002 \001(\003\022\027\n\017scannedRowCount\030\003 " +
-      "\001(\003\022\032\n\022aggregatedRowCount\030\004 \001(\003\022\025\n\rsyste" +
-      "mCpuLoad\030\005 \001(\001\022\036\n\026freePhysicalMemorySize" +
-      "\030\006 \001(\001\022\031\n\021freeSwapSpaceSize\030\007 \001(\001\022\020\n\010hos" +
-      "tname\030\010 \001(\t\022\016\n\006etcMsg\030\t \001(\t\022\026\n\016normalCom" +
-      "plete\030\n \001(\0052F\n\020CubeVisitService\0222\n\tvisit" +
-      "Cube\022\021.CubeVisitRequest\032\022.CubeVisitRespo" +
-      "nseB`\nEorg.apache.kylin.storage.hbase.cu" +
-      "be.v2.coprocessor.endpoint.generatedB\017Cu",
-      "beVisitProtosH\001\210\001\001\240\001\001"
+      "\030\005 \002(\t\022(\n\rbatchedVisits\030\006 \003(\0132\021.CubeVisi" +
+      "tRequest\022\031\n\021encodedRegionName\030\007 \001(\t\032\027\n\007I" +
+      "ntList\022\014\n\004ints\030\001 \003(\005\"\221\003\n\021CubeVisitRespon",
+      "se\022\026\n\016compressedRows\030\001 \002(\014\022\'\n\005stats\030\002 \002(" +
+      "\0132\030.CubeVisitResponse.Stats\022,\n\020batchedRe" +
+      "sponses\030\003 \003(\0132\022.CubeVisitResponse\032\214\002\n\005St" +
+      "ats\022\030\n\020serviceStartTime\030\001 \001(\003\022\026\n\016service" +
+      "EndTime\030\002 \001(\003\022\027\n\017scannedRowCount\030\003 \001(\003\022\032" +
+      "\n\022aggregatedRowCount\030\004 \001(\003\022\025\n\rsystemCpuL" +
+      "oad\030\005 \001(\001\022\036\n\026freePhysicalMemorySize\030\006 \001(" +
+      "\001\022\031\n\021freeSwapSpaceSize\030\007 \001(\001\022\020\n\010hostname" +
+      "\030\010 \001(\t\022\016\n\006etcMsg\030\t \001(\t\022\026\n\016normalComplete" +
+      "\030\n \001(\005\022\020\n\010cpuNanos\030\013 \001(\0032F\n\020CubeVisitSer",
+      "vice\0222\n\tvisitCube\022\021.CubeVisitRequest\032\022.C" +
+      "ubeVisitResponseB`\nEorg.apache.kylin.sto" +
+      "rage.hbase.cube.v2.coprocessor.endpoint." +
+      "generatedB\017CubeVisitProtosH\001\210\001\001\240\001\001"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
       new com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner() {
@@ -4118,7 +5440,7 @@ public final class CubeVisitProtos {
           internal_static_CubeVisitRequest_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_CubeVisitRequest_descriptor,
-              new java.lang.String[] { "GtScanRequest", "HbaseRawScan", "RowkeyPreambleSize", "HbaseColumnsToGT", "KylinProperties", });
+              new java.lang.String[] { "GtScanRequest", "HbaseRawScan", "RowkeyPreambleSize", "HbaseColumnsToGT", "KylinProperties", "BatchedVisits", "EncodedRegionName", });
           internal_static_CubeVisitRequest_IntList_descriptor =
             internal_static_CubeVisitRequest_descriptor.getNestedTypes().get(0);
           internal_static_CubeVisitRequest_IntList_fieldAccessorTable = new
@@ -4130,13 +5452,13 @@ public final class CubeVisitProtos {
           internal_static_CubeVisitResponse_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_CubeVisitResponse_descriptor,
-              new java.lang.String[] { "CompressedRows", "Stats", });
+              new java.lang.String[] { "CompressedRows", "Stats", "BatchedResponses", });
           internal_static_CubeVisitResponse_Stats_descriptor =
             internal_static_CubeVisitResponse_descriptor.getNestedTypes().get(0);
           internal_static_CubeVisitResponse_Stats_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_CubeVisitResponse_Stats_descriptor,
-              new java.lang.String[] { "ServiceStartTime", "ServiceEndTime", "ScannedRowCount", "AggregatedRowCount", "SystemCpuLoad", "FreePhysicalMemorySize", "FreeSwapSpaceSize", "Hostname", "EtcMsg", "NormalComplete", });
+              new java.lang.String[] { "ServiceStartTime", "ServiceEndTime", "ScannedRowCount", "AggregatedRowCount", "SystemCpuLoad", "FreePhysicalMemorySize", "FreeSwapSpaceSize", "Hostname", "EtcMsg", "NormalComplete", "CpuNanos", });
           return null;
         }
       };
@@ -40,8 +40,10 @@ import org.apache.hadoop.util.ToolRunner;
 import org.apache.kylin.common.KylinConfig;
 import org.apache.kylin.cube.CubeInstance;
 import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.engine.mr.CubingJob;
 import org.apache.kylin.engine.mr.common.AbstractHadoopJob;
 import org.apache.kylin.engine.mr.common.BatchConstants;
+import org.apache.kylin.job.manager.ExecutableManager;
 import org.apache.kylin.storage.hbase.HBaseConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,6 +55,24 @@ public class CubeHFileJob extends AbstractHadoopJob {
 
     protected static final Logger logger = LoggerFactory.getLogger(CubeHFileJob.class);
 
+    private boolean skipped = false;
+
+    @Override
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    // the HFiles have been written by in-mem cubing directly, see InMemCuboidHFileJob
+    private boolean checkSkip(String cubingJobId) {
+        if (cubingJobId == null)
+            return false;
+
+        ExecutableManager execMgr = ExecutableManager.getInstance(KylinConfig.getInstanceFromEnv());
+        CubingJob cubingJob = (CubingJob) execMgr.getJob(cubingJobId);
+        skipped = cubingJob.isInMemCubing();
+        return skipped;
+    }
+
     public int run(String[] args) throws Exception {
         Options options = new Options();
 
@@ -63,8 +83,14 @@ public class CubeHFileJob extends AbstractHadoopJob {
             options.addOption(OPTION_INPUT_PATH);
             options.addOption(OPTION_OUTPUT_PATH);
             options.addOption(OPTION_HTABLE_NAME);
+            options.addOption(OPTION_CUBING_JOB_ID);
             parseOptions(options, args);
 
+            if (checkSkip(getOptionValue(OPTION_CUBING_JOB_ID))) {
+                logger.info("Skip job " + getOptionValue(OPTION_JOB_NAME) + ", HFiles are written by in-mem cubing");
+                return 0;
+            }
+
             Path partitionFilePath = new Path(getOptionValue(OPTION_PARTITION_FILE_PATH));
 
             Path output = new Path(getOptionValue(OPTION_OUTPUT_PATH));
@@ -22,6 +22,7 @@ import java.util.List;
 
 import org.apache.kylin.cube.CubeSegment;
 import org.apache.kylin.engine.mr.IMROutput2;
+import org.apache.kylin.engine.mr.common.AbstractHadoopJob;
 import org.apache.kylin.engine.mr.steps.MergeCuboidJob;
 import org.apache.kylin.job.execution.DefaultChainedExecutable;
 import org.slf4j.Logger;
@@ -36,6 +37,10 @@ import org.slf4j.LoggerFactory;
  * However multiple snapshots as MR input is only supported by HBase 1.x.
  * Before most users upgrade to latest HBase, they can only use this transitional
  * cuboid file solution.
+ *
+ * With "kylin.hbase.hfile.direct.output", in-mem cubing writes HFiles directly and no cuboid
+ * files are kept; such segments are marked and CubeManager refuses to merge them. Merge also writes
+ * HFiles directly with the option, while still keeping the merged cuboid files.
  */
 public class HBaseMROutput2Transition implements IMROutput2 {
 
@@ -44,31 +49,46 @@ public class HBaseMROutput2Transition implements IMROutput2 {
 
     @Override
     public IMRBatchCubingOutputSide2 getBatchCubingOutputSide(final CubeSegment seg) {
-        return new IMRBatchCubingOutputSide2() {
-            HBaseMRSteps steps = new HBaseMRSteps(seg);
+        return new CubingOutputSide(seg);
+    }
 
-            @Override
-            public void addStepPhase2_BuildDictionary(DefaultChainedExecutable jobFlow) {
-                jobFlow.addTask(steps.createCreateHTableStepWithStats(jobFlow.getId()));
-            }
+    private static class CubingOutputSide implements IMRBatchCubingOutputSide2, IMRInMemCubingOutputSide2 {
+        final HBaseMRSteps steps;
+        final boolean directHFileOutput;
 
-            @Override
-            public void addStepPhase3_BuildCube(DefaultChainedExecutable jobFlow) {
-                jobFlow.addTask(steps.createConvertCuboidToHfileStep(jobFlow.getId()));
-                jobFlow.addTask(steps.createBulkLoadStep(jobFlow.getId()));
-            }
+        CubingOutputSide(CubeSegment seg) {
+            this.steps = new HBaseMRSteps(seg);
+            this.directHFileOutput = seg.getConfig().isHBaseHFileDirectOutputEnabled();
+        }
 
-            @Override
-            public void addStepPhase4_Cleanup(DefaultChainedExecutable jobFlow) {
-                // nothing to do
-            }
-        };
+        @Override
+        public void addStepPhase2_BuildDictionary(DefaultChainedExecutable jobFlow) {
+            jobFlow.addTask(steps.createCreateHTableStepWithStats(jobFlow.getId()));
+        }
+
+        @Override
+        public void addStepPhase3_BuildCube(DefaultChainedExecutable jobFlow) {
+            // only layer cubing needs the conversion when in-mem cubing writes HFiles directly
+            jobFlow.addTask(steps.createConvertCuboidToHfileStep(jobFlow.getId(), directHFileOutput));
+            jobFlow.addTask(steps.createBulkLoadStep(jobFlow.getId()));
+        }
+
+        @Override
+        public void addStepPhase4_Cleanup(DefaultChainedExecutable jobFlow) {
+            // nothing to do
+        }
+
+        @Override
+        public Class<? extends AbstractHadoopJob> getInMemCuboidJob() {
+            return directHFileOutput ? InMemCuboidHFileJob.class : null;
+        }
     }
 
     @Override
     public IMRBatchMergeOutputSide2 getBatchMergeOutputSide(final CubeSegment seg) {
         return new IMRBatchMergeOutputSide2() {
             HBaseMRSteps steps = new HBaseMRSteps(seg);
+            boolean directHFileOutput = seg.getConfig().isHBaseHFileDirectOutputEnabled();
 
             @Override
             public void addStepPhase1_MergeDictionary(DefaultChainedExecutable jobFlow) {
@@ -77,8 +97,13 @@ public class HBaseMROutput2Transition implements IMROutput2 {
 
             @Override
             public void addStepPhase2_BuildCube(CubeSegment seg, List<CubeSegment> mergingSegments, DefaultChainedExecutable jobFlow) {
-                jobFlow.addTask(steps.createMergeCuboidDataStep(seg, mergingSegments, jobFlow.getId(), MergeCuboidJob.class));
-                jobFlow.addTask(steps.createConvertCuboidToHfileStep(jobFlow.getId()));
+                if (directHFileOutput) {
+                    jobFlow.addTask(steps.createMergeCuboidToHfileStep(seg, mergingSegments, jobFlow.getId()));
+                    jobFlow.addTask(steps.createMoveCuboidFilesStep(jobFlow.getId()));
+                } else {
+                    jobFlow.addTask(steps.createMergeCuboidDataStep(seg, mergingSegments, jobFlow.getId(), MergeCuboidJob.class));
+                    jobFlow.addTask(steps.createConvertCuboidToHfileStep(jobFlow.getId()));
+                }
                 jobFlow.addTask(steps.createBulkLoadStep(jobFlow.getId()));
             }
 
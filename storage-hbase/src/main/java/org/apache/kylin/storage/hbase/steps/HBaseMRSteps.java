@@ -122,7 +122,36 @@ public class HBaseMRSteps extends JobBuilderSupport {
         return mergeCuboidDataStep;
     }
 
+    /**
+     * Merge the cuboids of segments and write HFiles of the merged segment directly, by MergeCuboidHFileJob.
+     * Should be followed by createMoveCuboidFilesStep() to keep the merged cuboid files.
+     */
+    public MapReduceExecutable createMergeCuboidToHfileStep(CubeSegment seg, List<CubeSegment> mergingSegments, String jobID) {
+        MapReduceExecutable mergeStep = createMergeCuboidDataStep(seg, mergingSegments, jobID, MergeCuboidHFileJob.class);
+        mergeStep.setName(ExecutableConstants.STEP_NAME_MERGE_CUBOID_TO_HFILE);
+
+        StringBuilder cmd = new StringBuilder(mergeStep.getMapReduceParams());
+        appendExecCmdParameters(cmd, BatchConstants.ARG_CUBING_JOB_ID, jobID);
+        mergeStep.setMapReduceParams(cmd.toString());
+        return mergeStep;
+    }
+
+    public MoveCuboidFilesStep createMoveCuboidFilesStep(String jobId) {
+        MoveCuboidFilesStep result = new MoveCuboidFilesStep();
+        result.setName(ExecutableConstants.STEP_NAME_MOVE_CUBOID_FILES);
+        result.setHFilePath(getHFilePath(jobId));
+        result.setCuboidPath(getCuboidRootPath(jobId));
+        return result;
+    }
+
     public MapReduceExecutable createConvertCuboidToHfileStep(String jobId) {
+        return createConvertCuboidToHfileStep(jobId, false);
+    }
+
+    /**
+     * @param skipOnInMemCubing skip the step at runtime if in-mem cubing is selected, as it writes HFiles directly
+     */
+    public MapReduceExecutable createConvertCuboidToHfileStep(String jobId, boolean skipOnInMemCubing) {
         String cuboidRootPath = getCuboidRootPath(jobId);
         String inputPath = cuboidRootPath + (cuboidRootPath.endsWith("/") ? "" : "/") + "*";
 
@@ -137,6 +166,9 @@ public class HBaseMRSteps extends JobBuilderSupport {
         appendExecCmdParameters(cmd, BatchConstants.ARG_OUTPUT, getHFilePath(jobId));
         appendExecCmdParameters(cmd, BatchConstants.ARG_HTABLE_NAME, seg.getStorageLocationIdentifier());
         appendExecCmdParameters(cmd, BatchConstants.ARG_JOB_NAME, "Kylin_HFile_Generator_" + seg.getRealization().getName() + "_Step");
+        if (skipOnInMemCubing) {
+            appendExecCmdParameters(cmd, BatchConstants.ARG_CUBING_JOB_ID, jobId);
+        }
 
         createHFilesStep.setMapReduceParams(cmd.toString());
         createHFilesStep.setMapReduceJobClass(CubeHFileJob.class);
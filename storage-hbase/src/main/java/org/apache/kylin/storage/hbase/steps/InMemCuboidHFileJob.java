@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.storage.hbase.steps;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.mapreduce.HFileOutputFormat;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.engine.mr.HadoopUtil;
+import org.apache.kylin.engine.mr.steps.InMemCuboidJob;
+import org.apache.kylin.storage.hbase.HBaseConnection;
+
+import com.google.common.collect.Lists;
+
+/**
+ * In-mem cubing that writes HFiles directly, ready for bulk load, skipping the cuboid files and the CubeHFileJob pass.
+ *
+ * The reducers are partitioned by the HFile splits from CreateHTableJob (or the region splits if there is none),
+ * so each reducer writes the sorted rows of one HFile. Enabled by "kylin.hbase.hfile.direct.output".
+ */
+public class InMemCuboidHFileJob extends InMemCuboidJob {
+
+    @Override
+    protected void setupReducerAndOutput(CubeSegment cubeSeg, String cubingJobId, String output) throws IOException {
+        setupHFileOutput(job, getConf(), cubeSeg, cubingJobId, InMemCuboidHFileReducer.class);
+    }
+
+    /**
+     * Let the given reducer write HFiles of the segment's HTable, each reducer the sorted rows of one HFile split.
+     * The reducer should output ImmutableBytesWritable and KeyValue, and its input is partitioned by RowKeyRangePartitioner.
+     */
+    @SuppressWarnings("rawtypes")
+    static void setupHFileOutput(Job job, Configuration conf, CubeSegment cubeSeg, String cubingJobId, Class<? extends Reducer> reducerClass) throws IOException {
+        HBaseMRSteps steps = new HBaseMRSteps(cubeSeg);
+        Path hfilePath = new Path(steps.getHFilePath(cubingJobId));
+        Path partitionFilePath = new Path(steps.getRowkeyDistributionOutputPath(cubingJobId) + "/part-r-00000_hfile");
+
+        // For separate HBase cluster, note the output is a qualified HDFS path, ref HBaseMRSteps.getHFilePath()
+        HBaseConnection.addHBaseClusterNNHAConfiguration(job.getConfiguration());
+        Configuration hbaseConf = HBaseConfiguration.create(conf);
+
+        HTable htable = new HTable(hbaseConf, cubeSeg.getStorageLocationIdentifier());
+        try {
+            // output format, compression and block settings of the column families
+            HFileOutputFormat.configureIncrementalLoad(job, htable);
+
+            FileSystem fs = partitionFilePath.getFileSystem(job.getConfiguration());
+            if (!fs.exists(partitionFilePath)) {
+                logger.info("File '" + partitionFilePath + "' doesn't exist, partition by the region splits");
+                partitionFilePath = new Path(partitionFilePath.getParent(), "part-r-00000_region");
+                List<byte[]> regionSplits = Lists.newArrayList();
+                for (byte[] startKey : htable.getStartKeys()) {
+                    if (startKey.length > 0) // skip the first region
+                        regionSplits.add(startKey);
+                }
+                RowKeyRangePartitioner.writeSplits(job.getConfiguration(), partitionFilePath, regionSplits);
+            }
+        } finally {
+            htable.close();
+        }
+
+        // replace what configureIncrementalLoad() sets for KeyValue input
+        job.setReducerClass(reducerClass);
+        job.setPartitionerClass(RowKeyRangePartitioner.class);
+        RowKeyRangePartitioner.setPartitionFile(job.getConfiguration(), partitionFilePath);
+        int splitCount = RowKeyRangePartitioner.readSplits(job.getConfiguration(), partitionFilePath).length;
+        // the reduce tasks should be one more than split keys
+        job.setNumReduceTasks(splitCount + 1);
+        logger.info("Write HFiles to " + hfilePath + " by " + (splitCount + 1) + " reducers");
+
+        FileOutputFormat.setOutputPath(job, hfilePath);
+        HadoopUtil.deletePath(job.getConfiguration(), hfilePath);
+    }
+
+    public static void main(String[] args) throws Exception {
+        InMemCuboidHFileJob job = new InMemCuboidHFileJob();
+        int exitCode = ToolRunner.run(job, args);
+        System.exit(exitCode);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.storage.hbase.steps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.kylin.engine.mr.ByteArrayWritable;
+import org.apache.kylin.engine.mr.steps.InMemCuboidReducer;
+
+/**
+ * Aggregates the output of in-mem cubing like InMemCuboidReducer, but writes the rows as HBase KeyValues
+ * to HFileOutputFormat instead of cuboid files, doing the work of CubeHFileMapper in the same pass.
+ */
+public class InMemCuboidHFileReducer extends InMemCuboidReducer {
+
+    private RowKeyValueBuilder keyValueBuilder;
+    private ImmutableBytesWritable outputKey = new ImmutableBytesWritable();
+
+    @Override
+    protected void setup(Context context) throws IOException {
+        super.setup(context);
+        keyValueBuilder = new RowKeyValueBuilder(cubeDesc);
+    }
+
+    @Override
+    protected void writeResult(ByteArrayWritable key, Object[] measures, ByteBuffer valueBuf, Context context) throws IOException, InterruptedException {
+        outputKey.set(key.array(), key.offset(), key.length());
+        for (KeyValue kv : keyValueBuilder.build(key.array(), key.offset(), key.length(), measures, valueBuf)) {
+            context.write(outputKey, kv);
+        }
+    }
+}
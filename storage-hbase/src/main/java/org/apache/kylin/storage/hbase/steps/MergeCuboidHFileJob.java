@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.steps;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.kylin.cube.CubeSegment;
+import org.apache.kylin.engine.mr.ByteArrayWritable;
+import org.apache.kylin.engine.mr.steps.MergeCuboidJob;
+
+/**
+ * Merges the cuboids of segments and writes the HFiles of the merged segment in one pass, skipping the
+ * shuffle of MergeCuboidJob and the whole CubeHFileJob that follows it.
+ *
+ * The mappers re-encode rows of all merging segments in parallel like MergeCuboidJob, the rows are range partitioned
+ * by the HFile splits so that each reducer gets the merge-sorted rows of one HFile and aggregates equal keys on the fly.
+ * The shuffle cannot be skipped by merging the sorted cuboid files directly: the shard at the head of a rowkey is the
+ * hash of the re-encoded key, so the re-encoded rows of a segment are no longer sorted and must be redistributed.
+ *
+ * Segments built with HFile direct output have no cuboid files, CubeManager refuses to merge them.
+ * The merged cuboid files are also written under the "_cuboid" dir of the HFile output (which bulk load skips),
+ * and are moved to the cuboid path of the job by MoveCuboidFilesStep, so that the merged segment can be merged again.
+ */
+public class MergeCuboidHFileJob extends MergeCuboidJob {
+
+    public static final String CUBOID_OUTPUT = "cuboid";
+    public static final String CUBOID_OUTPUT_DIR = "_cuboid";
+
+    @Override
+    protected void setupReducerAndOutput(CubeSegment mergedSeg, String cubingJobId, Path output) throws Exception {
+        // the same map output as in-mem cubing, for RowKeyRangePartitioner
+        job.setMapperClass(MergeCuboidHFileMapper.class);
+        job.setMapOutputKeyClass(ByteArrayWritable.class);
+        job.setMapOutputValueClass(ByteArrayWritable.class);
+
+        InMemCuboidHFileJob.setupHFileOutput(job, getConf(), mergedSeg, cubingJobId, MergeCuboidHFileReducer.class);
+
+        // the cuboid file and KV class must be compatible with 0.7 version for smooth upgrade
+        MultipleOutputs.addNamedOutput(job, CUBOID_OUTPUT, SequenceFileOutputFormat.class, Text.class, Text.class);
+    }
+
+    public static void main(String[] args) throws Exception {
+        MergeCuboidHFileJob job = new MergeCuboidHFileJob();
+        int exitCode = ToolRunner.run(job, args);
+        System.exit(exitCode);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.steps;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.kylin.engine.mr.ByteArrayWritable;
+import org.apache.kylin.engine.mr.steps.MergeCuboidMapperBase;
+
+/**
+ * Re-encodes the rows of merging segments like MergeCuboidMapper, output as ByteArrayWritable like InMemCuboidMapper
+ * does, so that both are partitioned by RowKeyRangePartitioner.
+ */
+public class MergeCuboidHFileMapper extends MergeCuboidMapperBase<ByteArrayWritable, ByteArrayWritable> {
+
+    private ByteArrayWritable outputKey = new ByteArrayWritable();
+    private ByteArrayWritable outputValue = new ByteArrayWritable();
+
+    @Override
+    protected void outputKV(byte[] key, int keyLength, Text value, Context context) throws IOException, InterruptedException {
+        outputKey.set(key, 0, keyLength);
+        outputValue.set(value.getBytes(), 0, value.getLength());
+        context.write(outputKey, outputValue);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.steps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.engine.mr.ByteArrayWritable;
+import org.apache.kylin.engine.mr.KylinReducer;
+import org.apache.kylin.engine.mr.common.AbstractHadoopJob;
+import org.apache.kylin.engine.mr.common.BatchConstants;
+import org.apache.kylin.measure.BufferedMeasureCodec;
+import org.apache.kylin.measure.MeasureAggregators;
+import org.apache.kylin.metadata.model.MeasureDesc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates the re-encoded rows of the merging segments like CuboidReducer does in MergeCuboidJob, and writes
+ * each merged row both as HBase KeyValues to HFileOutputFormat and as a cuboid file row for later merges.
+ *
+ * The map outputs of all segments arrive merge-sorted by rowkey, so a row is complete when its key group ends.
+ */
+public class MergeCuboidHFileReducer extends KylinReducer<ByteArrayWritable, ByteArrayWritable, ImmutableBytesWritable, KeyValue> {
+
+    private static final Logger logger = LoggerFactory.getLogger(MergeCuboidHFileReducer.class);
+
+    private BufferedMeasureCodec codec;
+    private MeasureAggregators aggs;
+    private RowKeyValueBuilder keyValueBuilder;
+    private MultipleOutputs<ImmutableBytesWritable, KeyValue> cuboidOutput;
+
+    private int counter;
+    private Object[] input;
+    private Object[] result;
+
+    private ImmutableBytesWritable outputKey = new ImmutableBytesWritable();
+    private Text cuboidKey = new Text();
+    private Text cuboidValue = new Text();
+
+    @Override
+    protected void setup(Context context) throws IOException {
+        super.bindCurrentConfiguration(context.getConfiguration());
+        String cubeName = context.getConfiguration().get(BatchConstants.CFG_CUBE_NAME).toUpperCase();
+
+        KylinConfig config = AbstractHadoopJob.loadKylinPropsAndMetadata();
+
+        CubeDesc cubeDesc = CubeManager.getInstance(config).getCube(cubeName).getDescriptor();
+        List<MeasureDesc> measuresDescs = cubeDesc.getMeasures();
+
+        codec = new BufferedMeasureCodec(measuresDescs);
+        aggs = new MeasureAggregators(measuresDescs);
+        keyValueBuilder = new RowKeyValueBuilder(cubeDesc);
+        cuboidOutput = new MultipleOutputs<ImmutableBytesWritable, KeyValue>(context);
+
+        input = new Object[measuresDescs.size()];
+        result = new Object[measuresDescs.size()];
+    }
+
+    @Override
+    public void reduce(ByteArrayWritable key, Iterable<ByteArrayWritable> values, Context context) throws IOException, InterruptedException {
+        aggs.reset();
+
+        for (ByteArrayWritable value : values) {
+            codec.decode(value.asBuffer(), input);
+            aggs.aggregate(input);
+        }
+        aggs.collectStates(result);
+
+        ByteBuffer valueBuf = codec.encode(result);
+
+        outputKey.set(key.array(), key.offset(), key.length());
+        for (KeyValue kv : keyValueBuilder.build(key.array(), key.offset(), key.length(), result, valueBuf)) {
+            context.write(outputKey, kv);
+        }
+
+        cuboidKey.set(key.array(), key.offset(), key.length());
+        cuboidValue.set(valueBuf.array(), 0, valueBuf.position());
+        cuboidOutput.write(MergeCuboidHFileJob.CUBOID_OUTPUT, cuboidKey, cuboidValue, MergeCuboidHFileJob.CUBOID_OUTPUT_DIR + "/part");
+
+        counter++;
+        if (counter % BatchConstants.NORMAL_RECORD_LOG_THRESHOLD == 0) {
+            logger.info("Handled " + counter + " records!");
+        }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        cuboidOutput.close();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.steps;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.kylin.engine.mr.CubingJob;
+import org.apache.kylin.engine.mr.HadoopUtil;
+import org.apache.kylin.job.exception.ExecuteException;
+import org.apache.kylin.job.execution.AbstractExecutable;
+import org.apache.kylin.job.execution.ExecutableContext;
+import org.apache.kylin.job.execution.ExecuteResult;
+import org.apache.kylin.storage.hbase.HBaseConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves the cuboid files written by MergeCuboidHFileJob out of the HFile output to the cuboid path of the job,
+ * and records the size of the remaining HFiles as the cube size, as the convert-to-HFile step would.
+ *
+ * The HFile output may be on a separate HBase cluster, then the cuboid files are copied across.
+ */
+public class MoveCuboidFilesStep extends AbstractExecutable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MoveCuboidFilesStep.class);
+
+    private static final String HFILE_PATH = "hfilePath";
+    private static final String CUBOID_PATH = "cuboidPath";
+
+    @Override
+    protected ExecuteResult doWork(ExecutableContext context) throws ExecuteException {
+        StringBuffer output = new StringBuffer();
+        try {
+            Path hfilePath = new Path(getHFilePath());
+            Path from = new Path(hfilePath, MergeCuboidHFileJob.CUBOID_OUTPUT_DIR);
+            Path to = new Path(getCuboidPath());
+
+            Configuration conf = HadoopUtil.getCurrentConfiguration();
+            FileSystem fromFs = hfilePath.getFileSystem(HBaseConnection.getCurrentHBaseConfiguration());
+            FileSystem toFs = to.getFileSystem(conf);
+
+            if (toFs.exists(to)) {
+                toFs.delete(to, true);
+            }
+            toFs.mkdirs(to.getParent());
+
+            if (fromFs.getUri().equals(toFs.getUri())) {
+                if (!fromFs.rename(from, to)) {
+                    throw new IOException("Failed to rename " + from + " to " + to);
+                }
+            } else {
+                if (!FileUtil.copy(fromFs, from, toFs, to, true, conf)) {
+                    throw new IOException("Failed to copy " + from + " to " + to);
+                }
+            }
+            output.append("Moved cuboid files from " + from + " to " + to + "\n");
+
+            long hfileSize = fromFs.getContentSummary(hfilePath).getLength();
+            addExtraInfo(CubingJob.CUBE_SIZE_BYTES, String.valueOf(hfileSize));
+            output.append("HFile size " + hfileSize + " bytes\n");
+        } catch (IOException e) {
+            logger.error("job:" + getId() + " execute finished with exception", e);
+            output.append("\n").append(e.getLocalizedMessage());
+            return new ExecuteResult(ExecuteResult.State.ERROR, output.toString());
+        }
+
+        return new ExecuteResult(ExecuteResult.State.SUCCEED, output.toString());
+    }
+
+    public void setHFilePath(String path) {
+        setParam(HFILE_PATH, path);
+    }
+
+    public String getHFilePath() {
+        return getParam(HFILE_PATH);
+    }
+
+    public void setCuboidPath(String path) {
+        setParam(CUBOID_PATH, path);
+    }
+
+    public String getCuboidPath() {
+        return getParam(CUBOID_PATH);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package org.apache.kylin.storage.hbase.steps;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.engine.mr.ByteArrayWritable;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Partitions rowkeys by the split keys of a partition file, i.e. the region (or HFile) splits written by CreateHTableJob,
+ * so that each reducer writes the sorted rows of one HFile.
+ *
+ * Works on ByteArrayWritable keys, which TotalOrderPartitioner cannot read split keys into.
+ */
+public class RowKeyRangePartitioner<V> extends Partitioner<ByteArrayWritable, V> implements Configurable {
+
+    public static final String CFG_PARTITION_FILE = "kylin.rowkey.range.partition.file";
+
+    private Configuration conf;
+    private byte[][] splits;
+
+    public static void setPartitionFile(Configuration conf, Path path) {
+        conf.set(CFG_PARTITION_FILE, path.toString());
+    }
+
+    /**
+     * @return the sorted split keys in a partition file of ImmutableBytesWritable keys
+     */
+    @SuppressWarnings("deprecation")
+    public static byte[][] readSplits(Configuration conf, Path path) throws IOException {
+        List<byte[]> result = Lists.newArrayList();
+        FileSystem fs = path.getFileSystem(conf);
+        SequenceFile.Reader reader = null;
+        try {
+            reader = new SequenceFile.Reader(fs, path, conf);
+            ImmutableBytesWritable key = new ImmutableBytesWritable();
+            while (reader.next(key, NullWritable.get())) {
+                result.add(key.copyBytes());
+            }
+        } finally {
+            IOUtils.closeStream(reader);
+        }
+        return result.toArray(new byte[result.size()][]);
+    }
+
+    public static void writeSplits(Configuration conf, Path path, List<byte[]> splits) throws IOException {
+        SequenceFile.Writer writer = SequenceFile.createWriter(conf, SequenceFile.Writer.file(path), SequenceFile.Writer.keyClass(ImmutableBytesWritable.class), SequenceFile.Writer.valueClass(NullWritable.class));
+        try {
+            for (byte[] split : splits) {
+                writer.append(new ImmutableBytesWritable(split), NullWritable.get());
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+        try {
+            splits = readSplits(conf, new Path(conf.get(CFG_PARTITION_FILE)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to read partition file " + conf.get(CFG_PARTITION_FILE), e);
+        }
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    @Override
+    public int getPartition(ByteArrayWritable key, V value, int numPartitions) {
+        // the number of splits not greater than the key, like a region holds keys from its start key (inclusive)
+        int lo = 0, hi = splits.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Bytes.compareTo(splits[mid], 0, splits[mid].length, key.array(), key.offset(), key.length()) <= 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return Math.min(lo, numPartitions - 1);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.steps;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.cube.model.HBaseColumnDesc;
+import org.apache.kylin.cube.model.HBaseColumnFamilyDesc;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Builds the KeyValues of an aggregated cube row for all HBase columns, like CubeHFileMapper does,
+ * for reducers that write HFiles directly.
+ */
+public class RowKeyValueBuilder {
+
+    private final List<KeyValueCreator> keyValueCreators = Lists.newArrayList();
+    private final List<KeyValue> rowKeyValues = Lists.newArrayList();
+
+    public RowKeyValueBuilder(CubeDesc cubeDesc) {
+        for (HBaseColumnFamilyDesc cfDesc : cubeDesc.getHbaseMapping().getColumnFamily()) {
+            for (HBaseColumnDesc colDesc : cfDesc.getColumns()) {
+                keyValueCreators.add(new KeyValueCreator(cubeDesc, colDesc));
+            }
+        }
+    }
+
+    /**
+     * @param valueBuf the encoded measures up to its position
+     * @return the KeyValues of the row in the order of family and qualifier, the list is reused by the next call
+     */
+    public List<KeyValue> build(byte[] key, int offset, int length, Object[] measures, ByteBuffer valueBuf) {
+        rowKeyValues.clear();
+
+        int n = keyValueCreators.size();
+        if (n == 1 && keyValueCreators.get(0).isFullCopy) { // shortcut for simple full copy
+            rowKeyValues.add(keyValueCreators.get(0).create(key, offset, length, valueBuf.array(), 0, valueBuf.position()));
+        } else {
+            for (int i = 0; i < n; i++) {
+                rowKeyValues.add(keyValueCreators.get(i).create(key, offset, length, measures));
+            }
+            // cells of a row must be written in the order of family and qualifier, as KeyValueSortReducer does
+            Collections.sort(rowKeyValues, KeyValue.COMPARATOR);
+        }
+        return rowKeyValues;
+    }
+}
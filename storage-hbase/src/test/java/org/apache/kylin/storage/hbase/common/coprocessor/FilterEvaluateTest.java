@@ -21,9 +21,14 @@ package org.apache.kylin.storage.hbase.common.coprocessor;
 import static org.junit.Assert.assertEquals;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
+import org.apache.kylin.metadata.filter.ColumnTupleFilter;
+import org.apache.kylin.metadata.filter.CompareTupleFilter;
+import org.apache.kylin.metadata.filter.DynamicTupleFilter;
 import org.apache.kylin.metadata.filter.TupleFilter;
+import org.apache.kylin.metadata.filter.TupleFilter.FilterOperatorEnum;
 import org.apache.kylin.metadata.filter.TupleFilterSerializer;
 import org.apache.kylin.metadata.model.TblColRef;
 import org.apache.kylin.metadata.tuple.Tuple;
@@ -179,4 +184,26 @@ public class FilterEvaluateTest extends FilterBaseTest {
         assertEquals(match, number - matcheCounts[0] - matcheCounts[1] + matcheCounts[2]);
     }
 
+    @Test
+    public void testRebindVariable() {
+        List<TblColRef> groups = buildGroups();
+        CompareTupleFilter filter = new CompareTupleFilter(FilterOperatorEnum.EQ);
+        filter.addChild(new ColumnTupleFilter(groups.get(0)));
+        filter.addChild(new DynamicTupleFilter("?0"));
+
+        int number = 10000;
+        int[] matcheCounts = new int[] { 0, 0, 0 };
+        Collection<Tuple> tuples = generateTuple(number, groups, matcheCounts);
+
+        filter.unbindVariables();
+        filter.bindVariable("?0", "2013-03-10");
+        assertEquals(matcheCounts[0], evaluateTuples(tuples, filter));
+
+        // the same filter run again with another value, as by a cached query plan
+        filter.unbindVariables();
+        filter.bindVariable("?0", "2013-03-11");
+        assertEquals(Collections.singleton("2013-03-11"), filter.getValues());
+        assertEquals("2013-03-11", filter.getFirstValue());
+        assertEquals(0, evaluateTuples(tuples, filter));
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.gridtable.GTInfo;
+import org.apache.kylin.gridtable.GTRecord;
+import org.apache.kylin.gridtable.GTScanRequestBuilder;
+import org.apache.kylin.gridtable.IGTScanner;
+import org.apache.kylin.gridtable.IGTWriter;
+import org.apache.kylin.gridtable.UnitTestSupport;
+import org.apache.kylin.gridtable.memstore.GTMappedFileStore;
+import org.apache.kylin.gridtable.memstore.GTSimpleMemStore;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+public class LocalCuboidCacheTest extends LocalFileMetadataTestCase {
+
+    private static GTInfo INFO;
+    private static GTSimpleMemStore SOURCE;
+
+    private File dir;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        staticCreateTestMetadata();
+        INFO = UnitTestSupport.advancedInfo();
+        SOURCE = new GTSimpleMemStore(INFO);
+        IGTWriter writer = SOURCE.rebuild();
+        for (GTRecord record : UnitTestSupport.mockupData(INFO, 100)) {
+            writer.write(record);
+        }
+        writer.close();
+    }
+
+    @AfterClass
+    public static void after() throws Exception {
+        cleanAfterClass();
+    }
+
+    @Before
+    public void createDir() throws IOException {
+        dir = new File(System.getProperty("java.io.tmpdir"), "LocalCuboidCacheTest");
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @After
+    public void deleteDir() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testAdmitOnThirdScan() {
+        LocalCuboidCache cache = newCache(1024 * 1024, 1024 * 1024);
+
+        cache.recordScan("c1", INFO, source());
+        cache.recordScan("c1", INFO, source());
+        assertNull(cache.get("c1"));
+
+        cache.recordScan("c1", INFO, source());
+        GTMappedFileStore store = cache.get("c1");
+        assertNotNull(store);
+        assertEquals(100, store.getRowCount());
+
+        int count = 0;
+        for (GTRecord r : store.scan(new GTScanRequestBuilder().setInfo(INFO).setRanges(null).setDimensions(null).setFilterPushDown(null).createGTScanRequest())) {
+            count++;
+        }
+        assertEquals(100, count);
+    }
+
+    @Test
+    public void testTooLarge() {
+        LocalCuboidCache cache = newCache(1024 * 1024, SOURCE.memoryUsage() / 2);
+        for (int i = 0; i < 5; i++) {
+            cache.recordScan("c1", INFO, source());
+        }
+        assertNull(cache.get("c1"));
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void testEvictBySize() {
+        long maxBytes = SOURCE.memoryUsage() * 3;
+        LocalCuboidCache cache = newCache(maxBytes, 1024 * 1024);
+        for (int c = 0; c < 10; c++) {
+            for (int i = 0; i < 3; i++) {
+                cache.recordScan("c" + c, INFO, source());
+            }
+        }
+
+        assertTrue(cache.size() < 10);
+        assertEquals(cache.size(), dir.listFiles().length);
+        long total = 0;
+        for (File file : dir.listFiles()) {
+            total += file.length();
+        }
+        assertTrue(total <= maxBytes);
+
+        cache.invalidateAll();
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    private LocalCuboidCache newCache(long maxBytes, long maxCuboidBytes) {
+        return new LocalCuboidCache(dir, maxBytes, maxCuboidBytes, 3, 600, MoreExecutors.sameThreadExecutor());
+    }
+
+    private LocalCuboidCache.CuboidSource source() {
+        return new LocalCuboidCache.CuboidSource() {
+            @Override
+            public IGTScanner scanAll() throws IOException {
+                return SOURCE.scan(null);
+            }
+        };
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.Pair;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class RawScanSplitterTest {
+
+    @Test
+    public void testDecideSplitCount() {
+        assertEquals(1, RawScanSplitter.decideSplitCount(-1, 3, 1000, 8));
+        assertEquals(1, RawScanSplitter.decideSplitCount(2000, 3, 1000, 8));
+        assertEquals(3, RawScanSplitter.decideSplitCount(5000, 2, 1000, 8));
+        assertEquals(8, RawScanSplitter.decideSplitCount(1000000, 2, 1000, 8));
+    }
+
+    @Test
+    public void testSplitKeys() {
+        byte[] start = new byte[] { 0, 0, 0, 1, 0x00, 0x00 };
+        byte[] end = new byte[] { 0, 0, 0, 1, (byte) 0xff, (byte) 0xff, 0 };
+
+        List<byte[]> keys = RawScanSplitter.splitKeys(start, end, 4, 4);
+        assertEquals(3, keys.size());
+        assertArrayEquals(new byte[] { 0, 0, 0, 1, 0x3f, (byte) 0xff }, keys.get(0));
+        assertArrayEquals(new byte[] { 0, 0, 0, 1, 0x7f, (byte) 0xff }, keys.get(1));
+        assertArrayEquals(new byte[] { 0, 0, 0, 1, (byte) 0xbf, (byte) 0xff }, keys.get(2));
+
+        byte[] prev = start;
+        for (byte[] key : keys) {
+            assertTrue(Bytes.compareTo(prev, key) < 0);
+            prev = key;
+        }
+        assertTrue(Bytes.compareTo(prev, end) < 0);
+    }
+
+    @Test
+    public void testSplitNarrowRange() {
+        byte[] start = new byte[] { 0, 0, 5 };
+        byte[] end = new byte[] { 0, 0, 7, 0 };
+        List<byte[]> keys = RawScanSplitter.splitKeys(start, end, 4, 2);
+        assertEquals(1, keys.size());
+        assertArrayEquals(new byte[] { 0, 0, 6 }, keys.get(0));
+    }
+
+    @Test
+    public void testSplitRawScans() {
+        List<Pair<byte[], byte[]>> empty = Lists.newArrayList();
+        RawScan wide = new RawScan(new byte[] { 0, 0, 0 }, new byte[] { 0, 0, (byte) 0xff, 0 }, empty, empty, 100, 100);
+        RawScan narrow = new RawScan(new byte[] { 0, 0, 5 }, new byte[] { 0, 0, 5, 0 }, empty, empty, 100, 100);
+
+        List<List<RawScan>> groups = RawScanSplitter.split(Lists.newArrayList(wide, narrow), 3, 2);
+        assertEquals(3, groups.size());
+        assertEquals(2, groups.get(0).size());
+        assertEquals(1, groups.get(1).size());
+        assertEquals(1, groups.get(2).size());
+
+        // sub ranges of the wide scan are contiguous
+        assertArrayEquals(wide.startKey, groups.get(0).get(0).startKey);
+        assertArrayEquals(groups.get(0).get(0).endKey, groups.get(1).get(0).startKey);
+        assertArrayEquals(groups.get(1).get(0).endKey, groups.get(2).get(0).startKey);
+        assertArrayEquals(wide.endKey, groups.get(2).get(0).endKey);
+
+        // the narrow scan is not split
+        assertArrayEquals(narrow.startKey, groups.get(0).get(1).startKey);
+        assertArrayEquals(narrow.endKey, groups.get(0).get(1).endKey);
+    }
+
+    @Test
+    public void testSplitRawScansNarrowerThanSplitCount() {
+        List<Pair<byte[], byte[]>> empty = Lists.newArrayList();
+        RawScan narrow = new RawScan(new byte[] { 0, 0, 5 }, new byte[] { 0, 0, 7, 0 }, empty, empty, 100, 100);
+        RawScan single = new RawScan(new byte[] { 0, 0, 9 }, new byte[] { 0, 0, 9, 0 }, empty, empty, 100, 100);
+
+        // no empty group is sent, the coprocessor expects at least one raw scan per call
+        List<List<RawScan>> groups = RawScanSplitter.split(Lists.newArrayList(narrow, single), 4, 2);
+        assertEquals(2, groups.size());
+        assertEquals(2, groups.get(0).size());
+        assertEquals(1, groups.get(1).size());
+
+        assertArrayEquals(narrow.startKey, groups.get(0).get(0).startKey);
+        assertArrayEquals(new byte[] { 0, 0, 6 }, groups.get(0).get(0).endKey);
+        assertArrayEquals(new byte[] { 0, 0, 6 }, groups.get(1).get(0).startKey);
+        assertArrayEquals(narrow.endKey, groups.get(1).get(0).endKey);
+        assertArrayEquals(single.startKey, groups.get(0).get(1).startKey);
+
+        assertTrue(RawScanSplitter.split(Lists.<RawScan> newArrayList(), 4, 2).isEmpty());
+    }
+
+    @Test
+    public void testSampleBlocks() {
+        List<Pair<byte[], byte[]>> empty = Lists.newArrayList();
+        RawScan wide = new RawScan(new byte[] { 0, 0, 0 }, new byte[] { 0, 0, (byte) 0xff, 0 }, empty, empty, 100, 100);
+
+        Pair<List<RawScan>, Double> sampled = RawScanSplitter.sampleBlocks(Lists.newArrayList(wide), 25, 8, 2);
+        assertEquals(2, sampled.getFirst().size());
+        assertEquals(4.0, sampled.getSecond(), 0.0001);
+
+        // blocks are kept in rowkey order
+        assertTrue(Bytes.compareTo(sampled.getFirst().get(0).endKey, sampled.getFirst().get(1).startKey) <= 0);
+
+        // at least one block even when the percentage is tiny
+        sampled = RawScanSplitter.sampleBlocks(Lists.newArrayList(wide), 1, 8, 2);
+        assertEquals(1, sampled.getFirst().size());
+        assertEquals(8.0, sampled.getSecond(), 0.0001);
+    }
+}
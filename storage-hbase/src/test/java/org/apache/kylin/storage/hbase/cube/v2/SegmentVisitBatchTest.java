@@ -0,0 +1,298 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.cube.v2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.hbase.HRegionInfo;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.NotServingRegionException;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.kylin.common.KylinConfig;
+import org.apache.kylin.common.QueryContext;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.CompressionUtils;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.common.util.Pair;
+import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitRequest;
+import org.apache.kylin.storage.hbase.cube.v2.coprocessor.endpoint.generated.CubeVisitProtos.CubeVisitResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.HBaseZeroCopyByteString;
+
+public class SegmentVisitBatchTest extends LocalFileMetadataTestCase {
+
+    private static final ServerName SERVER_1 = ServerName.valueOf("rs1", 16020, 1L);
+    private static final ServerName SERVER_2 = ServerName.valueOf("rs2", 16020, 1L);
+
+    /**
+     * answers each region with its encoded name as the rows, like a coprocessor that supports batching or not
+     */
+    private static class MockBatch extends SegmentVisitBatch {
+        final boolean supportBatching;
+        final List<CubeVisitRequest> calls = Lists.newArrayList();
+
+        MockBatch(boolean supportBatching) {
+            super(MoreExecutors.sameThreadExecutor());
+            this.supportBatching = supportBatching;
+        }
+
+        @Override
+        CubeVisitResponse visitRegion(SegmentVisit visit, HRegionLocation region, CubeVisitRequest request) throws IOException {
+            calls.add(request);
+            CubeVisitResponse.Builder response = respond(region.getRegionInfo().getEncodedName());
+            if (supportBatching) {
+                for (CubeVisitRequest batchedVisit : request.getBatchedVisitsList()) {
+                    response.addBatchedResponses(respond(batchedVisit.getEncodedRegionName()));
+                }
+            }
+            return response.build();
+        }
+    }
+
+    private static CubeVisitResponse.Builder respond(String encodedRegionName) throws IOException {
+        byte[] rows = Bytes.toBytes(encodedRegionName);
+        if (KylinConfig.getInstanceFromEnv().getCompressionResult()) {
+            rows = CompressionUtils.compress(rows);
+        }
+        return CubeVisitResponse.newBuilder().setCompressedRows(HBaseZeroCopyByteString.wrap(rows)) //
+                .setStats(CubeVisitResponse.Stats.newBuilder().setAggregatedRowCount(0).setScannedRowCount(1).setServiceStartTime(0).setServiceEndTime(1) //
+                        .setSystemCpuLoad(0).setFreePhysicalMemorySize(0).setFreeSwapSpaceSize(0).setHostname("rs").setEtcMsg("").setNormalComplete(1));
+    }
+
+    private static HRegionLocation region(String table, String start, String end, ServerName server) {
+        return new HRegionLocation(new HRegionInfo(TableName.valueOf(table), Bytes.toBytes(start), Bytes.toBytes(end)), server);
+    }
+
+    private static SegmentVisitBatch.SegmentVisit visit(String table, HRegionLocation... regions) {
+        CubeVisitRequest request = CubeVisitRequest.newBuilder().setGtScanRequest(ByteString.copyFromUtf8(table)).setHbaseRawScan(ByteString.EMPTY) //
+                .setRowkeyPreambleSize(0).setKylinProperties("kylin.props").build();
+        return new SegmentVisitBatch.SegmentVisit(null, Lists.newArrayList(regions), request, new ExpectedSizeIterator(regions.length));
+    }
+
+    private static List<HRegionInfo> regionInfos(List<HRegionLocation> locations) {
+        List<HRegionInfo> ret = Lists.newArrayList();
+        for (HRegionLocation location : locations) {
+            ret.add(location.getRegionInfo());
+        }
+        return ret;
+    }
+
+    private static List<String> drain(Iterator<byte[]> results) {
+        List<String> ret = Lists.newArrayList();
+        while (results.hasNext()) {
+            ret.add(Bytes.toString(results.next()));
+        }
+        return ret;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+        QueryContext.reset();
+    }
+
+    @After
+    public void after() throws Exception {
+        QueryContext.reset();
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testBatchedVisitsPerRegionServer() {
+        HRegionLocation a1 = region("A", "", "m", SERVER_1);
+        HRegionLocation a2 = region("A", "m", "", SERVER_2);
+        HRegionLocation b1 = region("B", "", "", SERVER_1);
+        SegmentVisitBatch.SegmentVisit visitA = visit("A", a1, a2);
+        SegmentVisitBatch.SegmentVisit visitB = visit("B", b1);
+
+        MockBatch batch = new MockBatch(true);
+        batch.register(visitA);
+        batch.register(visitB);
+
+        assertEquals(Lists.newArrayList(a1.getRegionInfo().getEncodedName(), a2.getRegionInfo().getEncodedName()), drain(batch.dispatchOnFirstAccess(visitA.resultItr)));
+        assertEquals(Lists.newArrayList(b1.getRegionInfo().getEncodedName()), drain(batch.dispatchOnFirstAccess(visitB.resultItr)));
+
+        // one call to each region server, the region of segment B rides along with the first region of segment A
+        assertEquals(2, batch.calls.size());
+        CubeVisitRequest call1 = batch.calls.get(0);
+        assertEquals("A", call1.getGtScanRequest().toStringUtf8());
+        assertEquals(1, call1.getBatchedVisitsCount());
+        CubeVisitRequest batched = call1.getBatchedVisits(0);
+        assertEquals("B", batched.getGtScanRequest().toStringUtf8());
+        assertEquals(b1.getRegionInfo().getEncodedName(), batched.getEncodedRegionName());
+        assertEquals("", batched.getKylinProperties());
+        assertFalse(call1.hasEncodedRegionName());
+        assertEquals(0, batch.calls.get(1).getBatchedVisitsCount());
+    }
+
+    @Test
+    public void testFallbackToSingleVisits() {
+        HRegionLocation a1 = region("A", "", "", SERVER_1);
+        HRegionLocation b1 = region("B", "", "", SERVER_1);
+        SegmentVisitBatch.SegmentVisit visitA = visit("A", a1);
+        SegmentVisitBatch.SegmentVisit visitB = visit("B", b1);
+
+        MockBatch batch = new MockBatch(false);
+        batch.register(visitA);
+        batch.register(visitB);
+
+        assertEquals(Lists.newArrayList(a1.getRegionInfo().getEncodedName()), drain(batch.dispatchOnFirstAccess(visitA.resultItr)));
+        assertEquals(Lists.newArrayList(b1.getRegionInfo().getEncodedName()), drain(batch.dispatchOnFirstAccess(visitB.resultItr)));
+
+        // the batched call, then segment B on its own
+        assertEquals(2, batch.calls.size());
+        assertEquals(1, batch.calls.get(0).getBatchedVisitsCount());
+        assertEquals("B", batch.calls.get(1).getGtScanRequest().toStringUtf8());
+        assertEquals(0, batch.calls.get(1).getBatchedVisitsCount());
+    }
+
+    @Test
+    public void testMismatchedBatchedResponses() {
+        HRegionLocation a1 = region("A", "", "", SERVER_1);
+        HRegionLocation b1 = region("B", "", "", SERVER_1);
+        HRegionLocation c1 = region("C", "", "", SERVER_1);
+        SegmentVisitBatch.SegmentVisit visitA = visit("A", a1);
+        SegmentVisitBatch.SegmentVisit visitB = visit("B", b1);
+        SegmentVisitBatch.SegmentVisit visitC = visit("C", c1);
+
+        SegmentVisitBatch batch = new MockBatch(true) {
+            @Override
+            CubeVisitResponse visitRegion(SegmentVisit visit, HRegionLocation region, CubeVisitRequest request) throws IOException {
+                CubeVisitResponse response = super.visitRegion(visit, region, request);
+                return response.toBuilder().clearBatchedResponses().addBatchedResponses(response.getBatchedResponses(0)).build();
+            }
+        };
+        batch.register(visitA);
+        batch.register(visitB);
+        batch.register(visitC);
+
+        try {
+            drain(batch.dispatchOnFirstAccess(visitB.resultItr));
+            fail("batched responses of a wrong count should fail the query");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testMaxRegionsPerCall() {
+        KylinConfig.getInstanceFromEnv().setProperty("kylin.query.segment.batch.visit.max.regions", "2");
+        List<SegmentVisitBatch.SegmentVisit> visits = Lists.newArrayList();
+        MockBatch batch = new MockBatch(true);
+        for (int i = 0; i < 5; i++) {
+            SegmentVisitBatch.SegmentVisit visit = visit("T" + i, region("T" + i, "", "", SERVER_1));
+            visits.add(visit);
+            batch.register(visit);
+        }
+
+        for (SegmentVisitBatch.SegmentVisit visit : visits) {
+            assertEquals(1, drain(batch.dispatchOnFirstAccess(visit.resultItr)).size());
+        }
+        assertEquals(3, batch.calls.size());
+        assertEquals(1, batch.calls.get(0).getBatchedVisitsCount());
+        assertEquals(1, batch.calls.get(1).getBatchedVisitsCount());
+        assertEquals(0, batch.calls.get(2).getBatchedVisitsCount());
+    }
+
+    @Test
+    public void testRelocateRegionNotServed() {
+        final HRegionLocation a1 = region("A", "", "m", SERVER_1);
+        HRegionLocation a2 = region("A", "m", "", SERVER_2);
+        HRegionLocation b1 = region("B", "", "", SERVER_1);
+        // a1 was split and moved since it was located
+        final HRegionLocation a1x = region("A", "", "g", SERVER_2);
+        final HRegionLocation a1y = region("A", "g", "m", SERVER_2);
+        SegmentVisitBatch.SegmentVisit visitA = visit("A", a1, a2);
+        SegmentVisitBatch.SegmentVisit visitB = visit("B", b1);
+
+        MockBatch batch = new MockBatch(true) {
+            @Override
+            CubeVisitResponse visitRegion(SegmentVisit visit, HRegionLocation region, CubeVisitRequest request) throws IOException {
+                if (region == a1) {
+                    throw new NotServingRegionException(region.getRegionInfo().getEncodedName());
+                }
+                return super.visitRegion(visit, region, request);
+            }
+
+            @Override
+            List<HRegionLocation> relocateRegion(SegmentVisit visit, HRegionInfo region) {
+                if (region.equals(a1.getRegionInfo())) {
+                    return Lists.newArrayList(a1x, a1y);
+                }
+                return Collections.singletonList(new HRegionLocation(region, SERVER_2));
+            }
+        };
+        batch.register(visitA);
+        batch.register(visitB);
+
+        // the rows of both daughter regions come as the result of the split region
+        assertEquals(Lists.newArrayList(a1x.getRegionInfo().getEncodedName() + a1y.getRegionInfo().getEncodedName(), a2.getRegionInfo().getEncodedName()), //
+                drain(batch.dispatchOnFirstAccess(visitA.resultItr)));
+        assertEquals(Lists.newArrayList(b1.getRegionInfo().getEncodedName()), drain(batch.dispatchOnFirstAccess(visitB.resultItr)));
+    }
+
+    @Test
+    public void testLocateRegionsFromCache() throws IOException {
+        final List<HRegionLocation> regions = Lists.newArrayList(region("T", "", "b", SERVER_1), region("T", "b", "d", SERVER_2), region("T", "d", "f", SERVER_1), region("T", "f", "", SERVER_2));
+        final List<Boolean> reloads = Lists.newArrayList();
+        HConnection conn = (HConnection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HConnection.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (!method.getName().equals("getRegionLocation")) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                reloads.add((Boolean) args[2]);
+                for (HRegionLocation location : regions) {
+                    if (location.getRegionInfo().containsRow((byte[]) args[1])) {
+                        return location;
+                    }
+                }
+                throw new IllegalStateException();
+            }
+        });
+
+        // end keys are inclusive, the region starting at "d" holds the key "d"
+        List<Pair<byte[], byte[]>> ranges = Lists.newArrayList(Pair.newPair(Bytes.toBytes("a"), Bytes.toBytes("d")), Pair.newPair(Bytes.toBytes("c"), Bytes.toBytes("c")));
+        assertEquals(regionInfos(regions.subList(0, 3)), regionInfos(SegmentVisitBatch.locateRegions(conn, "T", ranges)));
+        assertFalse(reloads.contains(true));
+
+        reloads.clear();
+        assertEquals(regionInfos(regions.subList(1, 4)), regionInfos(SegmentVisitBatch.relocateRegion(conn, TableName.valueOf("T"), new HRegionInfo(TableName.valueOf("T"), Bytes.toBytes("b"), Bytes.toBytes("")))));
+        assertFalse(reloads.contains(false));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.steps;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.kylin.engine.mr.ByteArrayWritable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class RowKeyRangePartitionerTest {
+
+    private Configuration conf;
+    private File partitionFile;
+
+    @Before
+    public void setup() throws Exception {
+        conf = new Configuration();
+        conf.set("fs.default.name", "file:///");
+        partitionFile = File.createTempFile("partition", ".seq");
+        partitionFile.delete();
+    }
+
+    @After
+    public void after() throws Exception {
+        partitionFile.delete();
+    }
+
+    @Test
+    public void testReadWriteSplits() throws Exception {
+        List<byte[]> splits = Lists.newArrayList(new byte[] { 0, 5 }, new byte[] { 1 }, new byte[] { 1, 0, 3 });
+        Path path = new Path(partitionFile.getAbsolutePath());
+        RowKeyRangePartitioner.writeSplits(conf, path, splits);
+
+        byte[][] read = RowKeyRangePartitioner.readSplits(conf, path);
+        assertEquals(splits.size(), read.length);
+        for (int i = 0; i < read.length; i++) {
+            assertArrayEquals(splits.get(i), read[i]);
+        }
+    }
+
+    @Test
+    public void testGetPartition() throws Exception {
+        RowKeyRangePartitioner<Object> partitioner = newPartitioner(new byte[] { 0, 5 }, new byte[] { 1 }, new byte[] { 1, 0, 3 });
+
+        // keys before the first split go to the first region, a split key starts its region
+        assertEquals(0, partitioner.getPartition(key(0), null, 4));
+        assertEquals(0, partitioner.getPartition(key(0, 4, 9), null, 4));
+        assertEquals(1, partitioner.getPartition(key(0, 5), null, 4));
+        assertEquals(1, partitioner.getPartition(key(0, 9), null, 4));
+        assertEquals(2, partitioner.getPartition(key(1), null, 4));
+        assertEquals(2, partitioner.getPartition(key(1, 0, 2, 9), null, 4));
+        assertEquals(3, partitioner.getPartition(key(1, 0, 3), null, 4));
+        assertEquals(3, partitioner.getPartition(key(2), null, 4));
+    }
+
+    @Test
+    public void testKeyWithOffset() throws Exception {
+        RowKeyRangePartitioner<Object> partitioner = newPartitioner(new byte[] { 5 });
+
+        byte[] buf = new byte[] { 9, 9, 4, 7 };
+        assertEquals(0, partitioner.getPartition(new ByteArrayWritable(buf, 2, 2), null, 2));
+        assertEquals(1, partitioner.getPartition(new ByteArrayWritable(buf, 0, 2), null, 2));
+    }
+
+    @Test
+    public void testFewerReducersThanRegions() throws Exception {
+        RowKeyRangePartitioner<Object> partitioner = newPartitioner(new byte[] { 1 }, new byte[] { 2 }, new byte[] { 3 });
+
+        assertEquals(1, partitioner.getPartition(key(1), null, 2));
+        assertEquals(1, partitioner.getPartition(key(3), null, 2));
+    }
+
+    private RowKeyRangePartitioner<Object> newPartitioner(byte[]... splits) throws Exception {
+        Path path = new Path(partitionFile.getAbsolutePath());
+        RowKeyRangePartitioner.writeSplits(conf, path, Lists.newArrayList(splits));
+        RowKeyRangePartitioner.setPartitionFile(conf, path);
+
+        RowKeyRangePartitioner<Object> partitioner = new RowKeyRangePartitioner<Object>();
+        partitioner.setConf(conf);
+        return partitioner;
+    }
+
+    private static ByteArrayWritable key(int... bytes) {
+        byte[] result = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            result[i] = (byte) bytes[i];
+        }
+        return new ByteArrayWritable(result);
+    }
+}
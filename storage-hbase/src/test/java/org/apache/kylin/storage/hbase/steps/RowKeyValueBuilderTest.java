@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kylin.storage.hbase.steps;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.kylin.common.util.Bytes;
+import org.apache.kylin.common.util.LocalFileMetadataTestCase;
+import org.apache.kylin.cube.CubeManager;
+import org.apache.kylin.cube.model.CubeDesc;
+import org.apache.kylin.measure.BufferedMeasureCodec;
+import org.apache.kylin.measure.hllc.HyperLogLogPlusCounter;
+import org.apache.kylin.metadata.datatype.LongMutable;
+import org.apache.kylin.metadata.model.MeasureDesc;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RowKeyValueBuilderTest extends LocalFileMetadataTestCase {
+
+    private static final byte[] KEY = new byte[] { 9, 0, 0, 1, 2, 3, 9 };
+
+    @Before
+    public void setUp() throws Exception {
+        this.createTestMetadata();
+    }
+
+    @After
+    public void after() throws Exception {
+        this.cleanupTestMetadata();
+    }
+
+    @Test
+    public void testFullCopy() {
+        CubeDesc cubeDesc = CubeManager.getInstance(getTestConfig()).getCube("test_kylin_cube_with_slr_empty").getDescriptor();
+        Object[] measures = new Object[] { new BigDecimal("35.43"), new BigDecimal("15.09"), new BigDecimal("20.34"), new LongMutable(2), new LongMutable(1500) };
+        ByteBuffer valueBuf = new BufferedMeasureCodec(cubeDesc.getMeasures()).encode(measures);
+
+        List<KeyValue> kvs = new RowKeyValueBuilder(cubeDesc).build(KEY, 1, 5, measures, valueBuf);
+
+        assertEquals(1, kvs.size());
+        KeyValue kv = kvs.get(0);
+        assertArrayEquals(new byte[] { 0, 0, 1, 2, 3 }, kv.getRow());
+        assertEquals("f1", Bytes.toString(kv.getFamily()));
+        assertEquals("m", Bytes.toString(kv.getQualifier()));
+        assertArrayEquals(Bytes.copy(valueBuf.array(), 0, valueBuf.position()), kv.getValue());
+    }
+
+    @Test
+    public void testColumnsInOrder() {
+        CubeDesc cubeDesc = CubeManager.getInstance(getTestConfig()).getCube("test_kylin_cube_with_slr_left_join_empty").getDescriptor();
+        HyperLogLogPlusCounter hll = new HyperLogLogPlusCounter(12);
+        hll.add("seller");
+        Object[] measures = new Object[] { new BigDecimal("35.43"), new BigDecimal("15.09"), new BigDecimal("20.34"), new LongMutable(2), new LongMutable(1500), hll };
+        ByteBuffer valueBuf = new BufferedMeasureCodec(cubeDesc.getMeasures()).encode(measures);
+
+        List<KeyValue> kvs = new RowKeyValueBuilder(cubeDesc).build(KEY, 1, 5, measures, valueBuf);
+
+        // the cells of a row are sorted by family, "F2" before "f1"
+        assertEquals(2, kvs.size());
+        assertEquals("F2", Bytes.toString(kvs.get(0).getFamily()));
+        assertEquals("f1", Bytes.toString(kvs.get(1).getFamily()));
+        for (KeyValue kv : kvs) {
+            assertArrayEquals(new byte[] { 0, 0, 1, 2, 3 }, kv.getRow());
+        }
+
+        List<MeasureDesc> measureDescs = cubeDesc.getMeasures();
+        Object[] f2 = new Object[1];
+        new BufferedMeasureCodec(measureDescs.subList(5, 6)).decode(ByteBuffer.wrap(kvs.get(0).getValue()), f2);
+        assertEquals(1, ((HyperLogLogPlusCounter) f2[0]).getCountEstimate());
+        Object[] f1 = new Object[5];
+        new BufferedMeasureCodec(measureDescs.subList(0, 5)).decode(ByteBuffer.wrap(kvs.get(1).getValue()), f1);
+        assertEquals(new BigDecimal("35.43"), ((BigDecimal) f1[0]).stripTrailingZeros());
+        assertEquals(1500, ((LongMutable) f1[4]).get());
+    }
+}